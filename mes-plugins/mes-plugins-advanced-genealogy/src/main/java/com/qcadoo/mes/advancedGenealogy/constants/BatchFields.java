@@ -41,6 +41,10 @@ public final class BatchFields {
 
     public static final String TRACKING_RECORDS = "trackingRecords";
 
+    public static final String PRODUCED_GENEALOGY_EDGES = "producedGenealogyEdges";
+
+    public static final String USED_GENEALOGY_EDGES = "usedGenealogyEdges";
+
     public static final String TRACKING_RECORD_TREE = "trackingRecordTree";
 
     public static final String PARENT = "parent";
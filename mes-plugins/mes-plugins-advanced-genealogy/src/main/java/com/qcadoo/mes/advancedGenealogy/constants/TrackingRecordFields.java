@@ -40,6 +40,8 @@ public final class TrackingRecordFields {
 
     public static final String STATE_CHANGES = "stateChanges";
 
+    public static final String GENEALOGY_EDGES = "genealogyEdges";
+
     public static final String GENEALOGY_TREE = "genealogyTree";
 
     public static final String TREE_TYPE = "treeType";
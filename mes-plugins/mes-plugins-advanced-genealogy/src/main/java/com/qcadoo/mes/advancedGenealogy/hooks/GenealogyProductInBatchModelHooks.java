@@ -0,0 +1,83 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.advancedGenealogy.hooks;
+
+import java.util.Objects;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.mes.advancedGenealogy.tree.GenealogyEdgeService;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Hooks of advancedGenealogyForOrders' genealogyProductInBatch model, which keep genealogy edges of for order tracking records
+ * up to date, when batches used for order's components change.
+ */
+@Service
+public class GenealogyProductInBatchModelHooks {
+
+    private static final String L_GENEALOGY_PRODUCT_IN_COMPONENT = "genealogyProductInComponent";
+
+    private static final String L_TRACKING_RECORD = "trackingRecord";
+
+    @Autowired
+    private GenealogyEdgeService genealogyEdgeService;
+
+    public void onSave(final DataDefinition genealogyProductInBatchDD, final Entity genealogyProductInBatch) {
+        updateEdges(genealogyProductInBatchDD, genealogyProductInBatch);
+    }
+
+    public boolean onDelete(final DataDefinition genealogyProductInBatchDD, final Entity genealogyProductInBatch) {
+        updateEdges(genealogyProductInBatchDD, genealogyProductInBatch);
+
+        return true;
+    }
+
+    private void updateEdges(final DataDefinition genealogyProductInBatchDD, final Entity genealogyProductInBatch) {
+        updateEdgesOfTrackingRecord(genealogyProductInBatch);
+
+        if (Objects.nonNull(genealogyProductInBatch.getId())) {
+            Entity genealogyProductInBatchFromDB = genealogyProductInBatchDD.get(genealogyProductInBatch.getId());
+
+            if (Objects.nonNull(genealogyProductInBatchFromDB)) {
+                updateEdgesOfTrackingRecord(genealogyProductInBatchFromDB);
+            }
+        }
+    }
+
+    private void updateEdgesOfTrackingRecord(final Entity genealogyProductInBatch) {
+        Entity genealogyProductInComponent = genealogyProductInBatch.getBelongsToField(L_GENEALOGY_PRODUCT_IN_COMPONENT);
+
+        if (Objects.nonNull(genealogyProductInComponent)) {
+            Entity trackingRecord = genealogyProductInComponent.getBelongsToField(L_TRACKING_RECORD);
+
+            if (Objects.nonNull(trackingRecord)) {
+                genealogyEdgeService.updateEdges(trackingRecord.getId());
+            }
+        }
+    }
+
+}
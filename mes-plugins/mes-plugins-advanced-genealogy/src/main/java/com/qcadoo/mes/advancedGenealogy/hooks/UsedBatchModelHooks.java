@@ -28,6 +28,8 @@ import java.util.Date;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.qcadoo.mes.advancedGenealogy.constants.UsedBatchSimpleFields;
+import com.qcadoo.mes.advancedGenealogy.tree.GenealogyEdgeService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.security.api.SecurityService;
@@ -42,6 +44,9 @@ public class UsedBatchModelHooks {
     @Autowired
     private SecurityService securityService;
 
+    @Autowired
+    private GenealogyEdgeService genealogyEdgeService;
+
     public final void setDateAndWorker(final DataDefinition usedBatchDD, final Entity usedBatch) {
         final Date dateAndTime = new Date();
         final String worker = securityService.getCurrentUserName();
@@ -50,4 +55,34 @@ public class UsedBatchModelHooks {
         usedBatch.setField(L_WORKER, worker);
     }
 
+    public void onSave(final DataDefinition usedBatchDD, final Entity usedBatch) {
+        updateEdges(usedBatchDD, usedBatch);
+    }
+
+    public boolean onDelete(final DataDefinition usedBatchDD, final Entity usedBatch) {
+        updateEdges(usedBatchDD, usedBatch);
+
+        return true;
+    }
+
+    private void updateEdges(final DataDefinition usedBatchDD, final Entity usedBatch) {
+        Entity trackingRecord = usedBatch.getBelongsToField(UsedBatchSimpleFields.TRACKING_RECORD);
+
+        if (trackingRecord != null) {
+            genealogyEdgeService.updateEdges(trackingRecord.getId());
+        }
+
+        if (usedBatch.getId() != null) {
+            Entity usedBatchFromDB = usedBatchDD.get(usedBatch.getId());
+
+            if (usedBatchFromDB != null) {
+                Entity trackingRecordFromDB = usedBatchFromDB.getBelongsToField(UsedBatchSimpleFields.TRACKING_RECORD);
+
+                if (trackingRecordFromDB != null) {
+                    genealogyEdgeService.updateEdges(trackingRecordFromDB.getId());
+                }
+            }
+        }
+    }
+
 }
@@ -31,36 +31,37 @@ import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.PRIORITY;
 import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.PRODUCT;
 import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.SUPPLIER;
 import static com.qcadoo.mes.advancedGenealogy.constants.BatchFields.TRACKING_RECORDS;
-import static com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordFields.STATE;
-import static com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordFields.USED_BATCHES_SIMPLE;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.advancedGenealogy.constants.AdvancedGenealogyConstants;
-import com.qcadoo.mes.advancedGenealogy.constants.BatchFields;
-import com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordFields;
-import com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordType;
-import com.qcadoo.mes.advancedGenealogy.constants.UsedBatchSimpleFields;
-import com.qcadoo.mes.advancedGenealogy.states.constants.TrackingRecordState;
 import com.qcadoo.mes.basic.constants.CompanyFields;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.plugin.api.PluginAccessor;
 
 @Service
 public class AdvancedGenealogyTreeService {
 
+    private static final String L_ID = "id";
+
     private static final String L_BATCH = "batch";
 
     private static final String L_ORDER = "order";
@@ -69,6 +70,8 @@ public class AdvancedGenealogyTreeService {
 
     private static final String L_ADVANCED_GENEALOGY_FOR_ORDERS = "advancedGenealogyForOrders";
 
+    private static final int L_MAX_IDS_IN_QUERY = 1000;
+
     @Autowired
     private PluginAccessor pluginAccessor;
 
@@ -78,12 +81,19 @@ public class AdvancedGenealogyTreeService {
     @Autowired
     private TranslationService translationService;
 
+    @Autowired
+    private GenealogyEdgeService genealogyEdgeService;
+
     public List<Entity> getProducedFromTree(final Entity batch, final boolean includeDrafts, final boolean makeIdsUnique) {
         List<Entity> tree = new ArrayList<>();
 
+        Long realId = batch.getId();
+
         addChild(tree, batch, makeIdsUnique);
 
-        generateProducedFromTree(batch, tree, includeDrafts, makeIdsUnique);
+        if (Objects.nonNull(realId)) {
+            generateTree(batch, realId, genealogyEdgeService.getProducedFromGraph(realId, includeDrafts), tree, makeIdsUnique);
+        }
 
         return tree;
     }
@@ -91,20 +101,22 @@ public class AdvancedGenealogyTreeService {
     public List<Entity> getUsedToProduceTree(final Entity batch, final boolean includeDrafts, final boolean makeIdsUnique) {
         List<Entity> tree = new ArrayList<>();
 
-        long realParentId = batch.getId();
+        Long realId = batch.getId();
 
         addChild(tree, batch, true);
 
-        generateUsedToProduceTree(batch, tree, includeDrafts, true, realParentId);
+        if (Objects.nonNull(realId)) {
+            generateTree(batch, realId, genealogyEdgeService.getUsedToProduceGraph(realId, includeDrafts), tree, true);
+        }
 
         return tree;
     }
 
-    private boolean addChild(final List<Entity> tree, final Entity child, final boolean makeIdsUnique) {
+    private void addChild(final List<Entity> tree, final Entity child, final boolean makeIdsUnique) {
         child.setField(PARENT, null);
         String genealogyTreeNodeLabel = createGenealogyTreeNodeLabel(child);
         child.setField(GENEALOGY_TREE_NODE_LABEL, genealogyTreeNodeLabel);
-        return addToList(tree, child, makeIdsUnique);
+        addToList(tree, child, makeIdsUnique);
     }
 
     private String createGenealogyTreeNodeLabel(Entity batch) {
@@ -130,140 +142,73 @@ public class AdvancedGenealogyTreeService {
         return sb.toString();
     }
 
-    private boolean addChild(final List<Entity> tree, final Entity child, final Entity parent, final boolean makeIdsUnique) {
+    private void addChild(final List<Entity> tree, final Entity child, final Entity parent, final String genealogyTreeNodeLabel,
+            final boolean makeIdsUnique) {
         child.setField(PARENT, parent);
-        String genealogyTreeNodeLabel = createGenealogyTreeNodeLabel(child);
         child.setField(GENEALOGY_TREE_NODE_LABEL, genealogyTreeNodeLabel);
-        return addToList(tree, child, makeIdsUnique);
+        addToList(tree, child, makeIdsUnique);
     }
 
-    private boolean addToList(final List<Entity> tree, final Entity child, final boolean makeIdsUnique) {
+    private void addToList(final List<Entity> tree, final Entity child, final boolean makeIdsUnique) {
         child.setField(PRIORITY, 1);
         child.setField(ENTITY_TYPE, L_BATCH);
 
-        if (checkIfTreeContainsEntity(tree, child)) {
-            return false;
-        } else {
-            if (makeIdsUnique) {
-                child.setId((long) tree.size());
-            }
-            tree.add(child);
-            return true;
+        if (makeIdsUnique) {
+            child.setId((long) tree.size());
         }
+        tree.add(child);
     }
 
-    private boolean checkIfTreeContainsEntity(final List<Entity> tree, final Entity child) {
-        for (Entity entity : tree) {
-            if (child.getField(PARENT).equals(entity.getField(PARENT))
-                    && entity.getField(NUMBER).equals(child.getField(NUMBER))) {
-                return true;
-            }
+    private void generateTree(final Entity root, final Long rootId, final Multimap<Long, Long> graph, final List<Entity> tree,
+            final boolean makeIdsUnique) {
+        if (graph.isEmpty()) {
+            return;
         }
-        return false;
-    }
 
-    private void generateUsedToProduceTree(final Entity parent, final List<Entity> tree, final boolean includeDrafts,
-            final boolean makeIdsUnique, final long realParentId) {
-        List<Entity> batches = getDD().find().list().getEntities();
-
-        for (Entity producedBatch : batches) {
-            EntityList trackingRecords = producedBatch.getHasManyField(TRACKING_RECORDS);
-            for (Entity trackingRecord : trackingRecords) {
-                String entityType = trackingRecord.getStringField(ENTITY_TYPE);
-                if (entityType == null) {
-                    continue;
-                }
-
-                String state = trackingRecord.getStringField(STATE);
-
-                if (!TrackingRecordState.ACCEPTED.getStringValue().equals(state)) {
-                    boolean isDraftAndWeIncludeDrafts = TrackingRecordState.DRAFT.getStringValue().equals(state) && includeDrafts;
-
-                    if (!isDraftAndWeIncludeDrafts) {
-                        continue;
-                    }
-                }
-
-                if (TrackingRecordType.SIMPLE.equals(entityType)) {
-                    EntityList usedBatches = trackingRecord.getHasManyField(USED_BATCHES_SIMPLE);
-                    for (Entity usedBatch : usedBatches) {
-                        Entity batch = usedBatch.getBelongsToField(UsedBatchSimpleFields.BATCH);
-                        if (batch.getId().equals(realParentId)) {
-                            long realId = producedBatch.getId();
-                            boolean addedChild = addChild(tree, producedBatch, parent, makeIdsUnique);
-                            if (addedChild) {
-                                generateUsedToProduceTree(producedBatch, tree, includeDrafts, makeIdsUnique, realId);
-                            }
-                        }
-                    }
-                } else if (TrackingRecordType.FOR_ORDER.equals(entityType) && isEnabled(L_ADVANCED_GENEALOGY_FOR_ORDERS)) {
-                    EntityList genealogyProductInComponents = trackingRecord.getHasManyField("genealogyProductInComponents");
-                    for (Entity genealogyProductInComponent : genealogyProductInComponents) {
-                        EntityList productInBatches = genealogyProductInComponent.getHasManyField("productInBatches");
-                        for (Entity producedInBatch : productInBatches) {
-                            Entity batch = producedInBatch.getBelongsToField(L_BATCH);
-                            if (batch == null) {
-                                continue;
-                            }
-                            if (batch.getId().equals(realParentId)) {
-                                long realId = producedBatch.getId();
-                                boolean addedChild = addChild(tree, producedBatch, parent, makeIdsUnique);
-                                if (addedChild) {
-                                    generateUsedToProduceTree(producedBatch, tree, includeDrafts, makeIdsUnique, realId);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        }
+        Map<Long, Entity> batches = getBatches(Sets.newHashSet(graph.values()));
+        Map<Long, String> genealogyTreeNodeLabels = Maps.newHashMap();
+        Set<Long> addedBatchIds = Sets.newHashSet();
+        Set<Long> path = Sets.newHashSet(rootId);
+
+        generateTree(root, rootId, graph, batches, genealogyTreeNodeLabels, addedBatchIds, path, tree, makeIdsUnique);
     }
 
-    private void generateProducedFromTree(final Entity producedBatch, final List<Entity> tree, final boolean includeDrafts,
-            final boolean makeIdsUnique) {
-        EntityList trackingRecords = producedBatch.getHasManyField(BatchFields.TRACKING_RECORDS);
-        for (Entity trackingRecord : trackingRecords) {
-            String type = trackingRecord.getStringField(TrackingRecordFields.ENTITY_TYPE);
-            if (type == null) {
+    private void generateTree(final Entity parent, final Long parentId, final Multimap<Long, Long> graph,
+            final Map<Long, Entity> batches, final Map<Long, String> genealogyTreeNodeLabels, final Set<Long> addedBatchIds,
+            final Set<Long> path, final List<Entity> tree, final boolean makeIdsUnique) {
+        Set<Object> childNumbers = Sets.newHashSet();
+
+        for (Long childId : graph.get(parentId)) {
+            Entity batch = batches.get(childId);
+
+            if (Objects.isNull(batch) || path.contains(childId) || !childNumbers.add(batch.getField(NUMBER))) {
                 continue;
             }
 
-            String state = trackingRecord.getStringField(STATE);
+            Entity child = addedBatchIds.add(childId) ? batch : batch.copy();
+            String genealogyTreeNodeLabel = genealogyTreeNodeLabels.computeIfAbsent(childId,
+                    id -> createGenealogyTreeNodeLabel(batch));
 
-            if (!TrackingRecordState.ACCEPTED.getStringValue().equals(state)) {
-                boolean isDraftAndWeIncludeDrafts = TrackingRecordState.DRAFT.getStringValue().equals(state) && includeDrafts;
+            addChild(tree, child, parent, genealogyTreeNodeLabel, makeIdsUnique);
 
-                if (!isDraftAndWeIncludeDrafts) {
-                    continue;
-                }
-            }
+            path.add(childId);
 
-            if (TrackingRecordType.SIMPLE.equals(type)) {
-                EntityList usedBatches = trackingRecord.getHasManyField(USED_BATCHES_SIMPLE);
-                for (Entity usedBatch : usedBatches) {
-                    Entity batch = usedBatch.getBelongsToField(UsedBatchSimpleFields.BATCH);
-                    boolean addedChild = addChild(tree, batch, producedBatch, makeIdsUnique);
-                    if (addedChild) {
-                        generateProducedFromTree(batch, tree, includeDrafts, makeIdsUnique);
-                    }
-                }
-            } else if (TrackingRecordType.FOR_ORDER.equals(type) && isEnabled(L_ADVANCED_GENEALOGY_FOR_ORDERS)) {
-                EntityList genealogyProductInComponents = trackingRecord.getHasManyField("genealogyProductInComponents");
-                for (Entity genealogyProductInComponent : genealogyProductInComponents) {
-                    EntityList productInBatches = genealogyProductInComponent.getHasManyField("productInBatches");
-                    for (Entity producedInBatch : productInBatches) {
-                        Entity batch = producedInBatch.getBelongsToField(L_BATCH);
-                        if (batch == null) {
-                            continue;
-                        }
-                        boolean addedChild = addChild(tree, batch, producedBatch, makeIdsUnique);
-                        if (addedChild) {
-                            generateProducedFromTree(batch, tree, includeDrafts, makeIdsUnique);
-                        }
-                    }
-                }
+            generateTree(child, childId, graph, batches, genealogyTreeNodeLabels, addedBatchIds, path, tree, makeIdsUnique);
+
+            path.remove(childId);
+        }
+    }
+
+    private Map<Long, Entity> getBatches(final Set<Long> batchIds) {
+        Map<Long, Entity> batches = Maps.newHashMap();
+
+        for (List<Long> ids : Lists.partition(Lists.newArrayList(batchIds), L_MAX_IDS_IN_QUERY)) {
+            for (Entity batch : getDD().find().add(SearchRestrictions.in(L_ID, ids)).list().getEntities()) {
+                batches.put(batch.getId(), batch);
             }
         }
+
+        return batches;
     }
 
     private DataDefinition getDD() {
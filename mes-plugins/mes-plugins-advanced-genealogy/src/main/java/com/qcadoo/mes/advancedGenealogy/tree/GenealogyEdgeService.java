@@ -0,0 +1,330 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.advancedGenealogy.tree;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.advancedGenealogy.constants.AdvancedGenealogyConstants;
+import com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordFields;
+import com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordType;
+import com.qcadoo.mes.advancedGenealogy.constants.UsedBatchSimpleFields;
+import com.qcadoo.mes.advancedGenealogy.states.constants.TrackingRecordState;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.plugin.api.PluginAccessor;
+
+/**
+ * Maintains advancedGenealogy_genealogyEdge table, which holds one row for each batch used in a tracking record (produced batch
+ * -> used batch) together with tracking record type and state, and answers genealogy graph queries with recursive SQL.
+ */
+@Service
+public class GenealogyEdgeService {
+
+    private static final String L_ADVANCED_GENEALOGY_FOR_ORDERS = "advancedGenealogyForOrders";
+
+    private static final String L_GENEALOGY_PRODUCT_IN_COMPONENTS = "genealogyProductInComponents";
+
+    private static final String L_PRODUCT_IN_BATCHES = "productInBatches";
+
+    private static final String L_BATCH = "batch";
+
+    private static final String L_TRACKING_RECORD_ID = "trackingRecordId";
+
+    private static final String L_BATCH_ID = "batchId";
+
+    private static final String L_STATES = "states";
+
+    private static final String L_ENTITY_TYPES = "entityTypes";
+
+    private static final String L_INSERT_EDGE = "INSERT INTO advancedgenealogy_genealogyedge "
+            + "(trackingrecord_id, producedbatch_id, usedbatch_id, entitytype, state, succession) "
+            + "VALUES (:trackingRecordId, :producedBatchId, :usedBatchId, :entityType, :state, :succession)";
+
+    private static final String L_DELETE_EDGES = "DELETE FROM advancedgenealogy_genealogyedge "
+            + "WHERE trackingrecord_id = :trackingRecordId";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private PluginAccessor pluginAccessor;
+
+    private final Object trackingRecordIdsKey = new Object();
+
+    /**
+     * Returns graph of batches the given batch was produced from, directly or indirectly.
+     * 
+     * @param batchId
+     *            produced batch id
+     * @param includeDrafts
+     *            if true draft tracking records are taken into account
+     * @return produced batch id -> used batch ids, in tracking record and used batch order
+     */
+    public Multimap<Long, Long> getProducedFromGraph(final Long batchId, final boolean includeDrafts) {
+        String query = "WITH RECURSIVE genealogy (batchid) AS ("
+                + "SELECT CAST(:batchId AS bigint) "
+                + "UNION "
+                + "SELECT edge.usedbatch_id FROM advancedgenealogy_genealogyedge edge "
+                + "JOIN genealogy ON genealogy.batchid = edge.producedbatch_id "
+                + "WHERE edge.state IN (:states) AND edge.entitytype IN (:entityTypes)) "
+                + "SELECT edge.producedbatch_id AS parentid, edge.usedbatch_id AS childid "
+                + "FROM advancedgenealogy_genealogyedge edge "
+                + "JOIN genealogy ON genealogy.batchid = edge.producedbatch_id "
+                + "WHERE edge.state IN (:states) AND edge.entitytype IN (:entityTypes) "
+                + "ORDER BY edge.trackingrecord_id, edge.succession";
+
+        return getGraph(query, batchId, includeDrafts);
+    }
+
+    /**
+     * Returns graph of batches produced from the given batch, directly or indirectly.
+     * 
+     * @param batchId
+     *            used batch id
+     * @param includeDrafts
+     *            if true draft tracking records are taken into account
+     * @return used batch id -> produced batch ids, in produced batch, tracking record and used batch order
+     */
+    public Multimap<Long, Long> getUsedToProduceGraph(final Long batchId, final boolean includeDrafts) {
+        String query = "WITH RECURSIVE genealogy (batchid) AS ("
+                + "SELECT CAST(:batchId AS bigint) "
+                + "UNION "
+                + "SELECT edge.producedbatch_id FROM advancedgenealogy_genealogyedge edge "
+                + "JOIN genealogy ON genealogy.batchid = edge.usedbatch_id "
+                + "WHERE edge.state IN (:states) AND edge.entitytype IN (:entityTypes)) "
+                + "SELECT edge.usedbatch_id AS parentid, edge.producedbatch_id AS childid "
+                + "FROM advancedgenealogy_genealogyedge edge "
+                + "JOIN genealogy ON genealogy.batchid = edge.usedbatch_id "
+                + "WHERE edge.state IN (:states) AND edge.entitytype IN (:entityTypes) "
+                + "ORDER BY edge.producedbatch_id, edge.trackingrecord_id, edge.succession";
+
+        return getGraph(query, batchId, includeDrafts);
+    }
+
+    private Multimap<Long, Long> getGraph(final String query, final Long batchId, final boolean includeDrafts) {
+        Multimap<Long, Long> graph = ArrayListMultimap.create();
+
+        List<String> states = Lists.newArrayList(TrackingRecordState.ACCEPTED.getStringValue());
+
+        if (includeDrafts) {
+            states.add(TrackingRecordState.DRAFT.getStringValue());
+        }
+
+        List<String> entityTypes = Lists.newArrayList(TrackingRecordType.SIMPLE);
+
+        if (isEnabled(L_ADVANCED_GENEALOGY_FOR_ORDERS)) {
+            entityTypes.add(TrackingRecordType.FOR_ORDER);
+        }
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put(L_BATCH_ID, batchId);
+        params.put(L_STATES, states);
+        params.put(L_ENTITY_TYPES, entityTypes);
+
+        jdbcTemplate.query(query, params,
+                (RowCallbackHandler) resultSet -> graph.put(resultSet.getLong("parentid"), resultSet.getLong("childid")));
+
+        return graph;
+    }
+
+    /**
+     * Schedules rewriting of edges of given tracking record. Edges are rewritten from the database state just before the
+     * current transaction commits, so changes rejected by validators or made by later hooks in the same transaction are
+     * handled correctly.
+     * 
+     * @param trackingRecordId
+     *            id of saved, changed or deleted tracking record
+     */
+    public void updateEdges(final Long trackingRecordId) {
+        if (Objects.isNull(trackingRecordId)) {
+            return;
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            rewriteEdges(trackingRecordId);
+
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        Set<Long> trackingRecordIds = (Set<Long>) TransactionSynchronizationManager.getResource(trackingRecordIdsKey);
+
+        if (Objects.isNull(trackingRecordIds)) {
+            Set<Long> newTrackingRecordIds = Sets.newLinkedHashSet();
+
+            TransactionSynchronizationManager.bindResource(trackingRecordIdsKey, newTrackingRecordIds);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void beforeCommit(final boolean readOnly) {
+                    newTrackingRecordIds.forEach(GenealogyEdgeService.this::rewriteEdges);
+                }
+
+                @Override
+                public void afterCompletion(final int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(trackingRecordIdsKey);
+                }
+            });
+
+            trackingRecordIds = newTrackingRecordIds;
+        }
+
+        trackingRecordIds.add(trackingRecordId);
+    }
+
+    private void rewriteEdges(final Long trackingRecordId) {
+        jdbcTemplate.update(L_DELETE_EDGES, new MapSqlParameterSource(L_TRACKING_RECORD_ID, trackingRecordId));
+
+        Entity trackingRecord = getTrackingRecordDD().get(trackingRecordId);
+
+        if (Objects.nonNull(trackingRecord)) {
+            insertEdges(trackingRecord, getUsedBatchIds(trackingRecord));
+        }
+    }
+
+    /**
+     * Creates indexes used by graph queries, if they don't exist yet.
+     */
+    public void createIndexes() {
+        jdbcTemplate.getJdbcOperations().execute("CREATE INDEX IF NOT EXISTS advancedgenealogy_genealogyedge_producedbatch_id_idx "
+                + "ON advancedgenealogy_genealogyedge (producedbatch_id)");
+        jdbcTemplate.getJdbcOperations().execute("CREATE INDEX IF NOT EXISTS advancedgenealogy_genealogyedge_usedbatch_id_idx "
+                + "ON advancedgenealogy_genealogyedge (usedbatch_id)");
+        jdbcTemplate.getJdbcOperations().execute(
+                "CREATE INDEX IF NOT EXISTS advancedgenealogy_genealogyedge_trackingrecord_id_idx "
+                        + "ON advancedgenealogy_genealogyedge (trackingrecord_id)");
+    }
+
+    /**
+     * Creates edges of tracking records, which have none yet, e.g. records created before the edge table was introduced.
+     */
+    public void createMissingEdges() {
+        String query = "INSERT INTO advancedgenealogy_genealogyedge "
+                + "(trackingrecord_id, producedbatch_id, usedbatch_id, entitytype, state, succession) "
+                + "SELECT trackingrecord.id, trackingrecord.producedbatch_id, usedbatchsimple.batch_id, "
+                + "trackingrecord.entitytype, trackingrecord.state, "
+                + "row_number() OVER (PARTITION BY trackingrecord.id ORDER BY usedbatchsimple.id) "
+                + "FROM advancedgenealogy_trackingrecord trackingrecord "
+                + "JOIN advancedgenealogy_usedbatchsimple usedbatchsimple "
+                + "ON usedbatchsimple.trackingrecord_id = trackingrecord.id "
+                + "WHERE trackingrecord.entitytype = :entityType AND NOT EXISTS ("
+                + "SELECT 1 FROM advancedgenealogy_genealogyedge edge WHERE edge.trackingrecord_id = trackingrecord.id)";
+
+        jdbcTemplate.update(query, new MapSqlParameterSource("entityType", TrackingRecordType.SIMPLE));
+
+        if (isEnabled(L_ADVANCED_GENEALOGY_FOR_ORDERS)) {
+            String forOrderQuery = "SELECT trackingrecord.id FROM advancedgenealogy_trackingrecord trackingrecord "
+                    + "WHERE trackingrecord.entitytype = :entityType AND NOT EXISTS ("
+                    + "SELECT 1 FROM advancedgenealogy_genealogyedge edge WHERE edge.trackingrecord_id = trackingrecord.id)";
+
+            List<Long> trackingRecordIds = jdbcTemplate.queryForList(forOrderQuery,
+                    new MapSqlParameterSource("entityType", TrackingRecordType.FOR_ORDER), Long.class);
+
+            trackingRecordIds.forEach(this::rewriteEdges);
+        }
+    }
+
+    private List<Long> getUsedBatchIds(final Entity trackingRecord) {
+        List<Long> usedBatchIds = Lists.newArrayList();
+        String entityType = trackingRecord.getStringField(TrackingRecordFields.ENTITY_TYPE);
+
+        if (TrackingRecordType.SIMPLE.equals(entityType)) {
+            for (Entity usedBatch : trackingRecord.getHasManyField(TrackingRecordFields.USED_BATCHES_SIMPLE)) {
+                addBatchId(usedBatchIds, usedBatch.getBelongsToField(UsedBatchSimpleFields.BATCH));
+            }
+        } else if (TrackingRecordType.FOR_ORDER.equals(entityType) && isEnabled(L_ADVANCED_GENEALOGY_FOR_ORDERS)) {
+            for (Entity genealogyProductInComponent : trackingRecord.getHasManyField(L_GENEALOGY_PRODUCT_IN_COMPONENTS)) {
+                for (Entity productInBatch : genealogyProductInComponent.getHasManyField(L_PRODUCT_IN_BATCHES)) {
+                    addBatchId(usedBatchIds, productInBatch.getBelongsToField(L_BATCH));
+                }
+            }
+        }
+
+        return usedBatchIds;
+    }
+
+    private void addBatchId(final List<Long> batchIds, final Entity batch) {
+        if (Objects.nonNull(batch)) {
+            batchIds.add(batch.getId());
+        }
+    }
+
+    private void insertEdges(final Entity trackingRecord, final List<Long> usedBatchIds) {
+        Entity producedBatch = trackingRecord.getBelongsToField(TrackingRecordFields.PRODUCED_BATCH);
+        String entityType = trackingRecord.getStringField(TrackingRecordFields.ENTITY_TYPE);
+        String state = trackingRecord.getStringField(TrackingRecordFields.STATE);
+
+        if (Objects.isNull(producedBatch) || Objects.isNull(entityType) || Objects.isNull(state) || usedBatchIds.isEmpty()) {
+            return;
+        }
+
+        MapSqlParameterSource[] batchParams = new MapSqlParameterSource[usedBatchIds.size()];
+
+        for (int index = 0; index < usedBatchIds.size(); index++) {
+            MapSqlParameterSource params = new MapSqlParameterSource();
+
+            params.addValue(L_TRACKING_RECORD_ID, trackingRecord.getId());
+            params.addValue("producedBatchId", producedBatch.getId());
+            params.addValue("usedBatchId", usedBatchIds.get(index));
+            params.addValue("entityType", entityType);
+            params.addValue("state", state);
+            params.addValue("succession", index + 1);
+
+            batchParams[index] = params;
+        }
+
+        jdbcTemplate.batchUpdate(L_INSERT_EDGE, batchParams);
+    }
+
+    private boolean isEnabled(final String pluginIdentifier) {
+        return pluginAccessor.getPlugin(pluginIdentifier) != null;
+    }
+
+    private DataDefinition getTrackingRecordDD() {
+        return dataDefinitionService.get(AdvancedGenealogyConstants.PLUGIN_IDENTIFIER,
+                AdvancedGenealogyConstants.MODEL_TRACKING_RECORD);
+    }
+
+}
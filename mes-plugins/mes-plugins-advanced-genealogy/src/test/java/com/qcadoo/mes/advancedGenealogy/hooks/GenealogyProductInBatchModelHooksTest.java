@@ -0,0 +1,129 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.advancedGenealogy.hooks;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.mes.advancedGenealogy.tree.GenealogyEdgeService;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+public class GenealogyProductInBatchModelHooksTest {
+
+    private GenealogyProductInBatchModelHooks genealogyProductInBatchModelHooks;
+
+    @Mock
+    private GenealogyEdgeService genealogyEdgeService;
+
+    @Mock
+    private DataDefinition genealogyProductInBatchDD;
+
+    @Mock
+    private Entity genealogyProductInBatch, genealogyProductInBatchFromDB, genealogyProductInComponent,
+            genealogyProductInComponentFromDB, trackingRecord, trackingRecordFromDB;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        genealogyProductInBatchModelHooks = new GenealogyProductInBatchModelHooks();
+
+        ReflectionTestUtils.setField(genealogyProductInBatchModelHooks, "genealogyEdgeService", genealogyEdgeService);
+
+        given(genealogyProductInBatch.getBelongsToField("genealogyProductInComponent")).willReturn(genealogyProductInComponent);
+        given(genealogyProductInComponent.getBelongsToField("trackingRecord")).willReturn(trackingRecord);
+        given(trackingRecord.getId()).willReturn(1L);
+
+        given(genealogyProductInBatchFromDB.getBelongsToField("genealogyProductInComponent")).willReturn(
+                genealogyProductInComponentFromDB);
+        given(genealogyProductInComponentFromDB.getBelongsToField("trackingRecord")).willReturn(trackingRecordFromDB);
+        given(trackingRecordFromDB.getId()).willReturn(2L);
+    }
+
+    @Test
+    public void shouldUpdateEdgesOfTrackingRecordOfNewProductInBatch() {
+        // given
+        given(genealogyProductInBatch.getId()).willReturn(null);
+
+        // when
+        genealogyProductInBatchModelHooks.onSave(genealogyProductInBatchDD, genealogyProductInBatch);
+
+        // then
+        verify(genealogyEdgeService).updateEdges(1L);
+        verify(genealogyEdgeService, never()).updateEdges(2L);
+    }
+
+    @Test
+    public void shouldUpdateEdgesOfCurrentAndPreviousTrackingRecord() {
+        // given
+        given(genealogyProductInBatch.getId()).willReturn(5L);
+        given(genealogyProductInBatchDD.get(5L)).willReturn(genealogyProductInBatchFromDB);
+
+        // when
+        genealogyProductInBatchModelHooks.onSave(genealogyProductInBatchDD, genealogyProductInBatch);
+
+        // then
+        verify(genealogyEdgeService).updateEdges(1L);
+        verify(genealogyEdgeService).updateEdges(2L);
+    }
+
+    @Test
+    public void shouldUpdateEdgesOfTrackingRecordOfDeletedProductInBatch() {
+        // given
+        given(genealogyProductInBatch.getId()).willReturn(5L);
+        given(genealogyProductInBatchDD.get(5L)).willReturn(genealogyProductInBatchFromDB);
+
+        // when
+        boolean result = genealogyProductInBatchModelHooks.onDelete(genealogyProductInBatchDD, genealogyProductInBatch);
+
+        // then
+        assertTrue(result);
+        verify(genealogyEdgeService).updateEdges(1L);
+        verify(genealogyEdgeService).updateEdges(2L);
+    }
+
+    @Test
+    public void shouldNotUpdateEdgesIfProductInBatchHasNoComponent() {
+        // given
+        given(genealogyProductInBatch.getId()).willReturn(null);
+        given(genealogyProductInBatch.getBelongsToField("genealogyProductInComponent")).willReturn(null);
+
+        // when
+        genealogyProductInBatchModelHooks.onSave(genealogyProductInBatchDD, genealogyProductInBatch);
+
+        // then
+        verify(genealogyEdgeService, never()).updateEdges(anyLong());
+    }
+
+}
@@ -25,30 +25,33 @@ package com.qcadoo.mes.advancedGenealogy.tree;
 
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 
 import org.junit.Before;
-import org.junit.Ignore;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.advancedGenealogy.constants.AdvancedGenealogyConstants;
-import com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordType;
-import com.qcadoo.mes.advancedGenealogy.states.constants.TrackingRecordState;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.EntityList;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
 import com.qcadoo.model.api.search.SearchResult;
 import com.qcadoo.plugin.api.Plugin;
 import com.qcadoo.plugin.api.PluginAccessor;
@@ -73,10 +76,13 @@ public class AdvancedGenealogyTreeServiceTest {
     private PluginAccessor pluginAccessor;
 
     @Mock
-    private SearchResult searchResult;
+    private GenealogyEdgeService genealogyEdgeService;
+
+    @Mock
+    private TranslationService translationService;
 
     @Mock
-    private Entity batch1Tr;
+    private SearchResult searchResult;
 
     @Mock
     private Entity parent1, parent2;
@@ -85,12 +91,40 @@ public class AdvancedGenealogyTreeServiceTest {
 
     private String productNumber1 = "productNumber1";
 
-    private EntityList mockEntityList(List<Entity> list) {
+    private EntityList mockEntityList(final List<Entity> list) {
         EntityList entityList = mock(EntityList.class);
-        when(entityList.iterator()).thenReturn(list.iterator());
+        when(entityList.iterator()).thenAnswer(invocation -> list.iterator());
+        when(entityList.size()).thenReturn(list.size());
+        when(entityList.stream()).thenAnswer(invocation -> list.stream());
         return entityList;
     }
 
+    private void stubForOrdersPlugin() {
+        Plugin plugin = mock(Plugin.class);
+        when(pluginAccessor.getPlugin("advancedGenealogyForOrders")).thenReturn(plugin);
+
+        when(translationService.translate(Mockito.eq("advancedGenealogy.batch.report.order"), any(Locale.class))).thenReturn(
+                "Order");
+
+        Entity order = mock(Entity.class);
+        when(order.getStringField("number")).thenReturn("ORDER1");
+
+        Entity batch1Tr = mock(Entity.class);
+        when(batch1Tr.getBelongsToField("order")).thenReturn(order);
+
+        EntityList batch1Trs = mockEntityList(Collections.singletonList(batch1Tr));
+        when(batch1.getHasManyField("trackingRecords")).thenReturn(batch1Trs);
+
+        EntityList batch2Trs = mockEntityList(Collections.<Entity> emptyList());
+        when(batch2.getHasManyField("trackingRecords")).thenReturn(batch2Trs);
+    }
+
+    private Multimap<Long, Long> createGraph(final Long parentId, final Long childId) {
+        Multimap<Long, Long> graph = ArrayListMultimap.create();
+        graph.put(parentId, childId);
+        return graph;
+    }
+
     @Before
     public void init() {
         MockitoAnnotations.initMocks(this);
@@ -99,6 +133,8 @@ public class AdvancedGenealogyTreeServiceTest {
 
         ReflectionTestUtils.setField(treeService, "dataDefinitionService", dataDefinitionService);
         ReflectionTestUtils.setField(treeService, "pluginAccessor", pluginAccessor);
+        ReflectionTestUtils.setField(treeService, "genealogyEdgeService", genealogyEdgeService);
+        ReflectionTestUtils.setField(treeService, "translationService", translationService);
 
         when(pluginAccessor.getPlugin("advancedGenealogyForOrders")).thenReturn(null);
 
@@ -108,22 +144,14 @@ public class AdvancedGenealogyTreeServiceTest {
         when(batch1.getId()).thenReturn(1L);
         when(batch2.getId()).thenReturn(2L);
 
-        EntityList batch1Trs = mockEntityList(asList(batch1Tr));
-        when(batch1.getHasManyField("trackingRecords")).thenReturn(batch1Trs);
-        when(batch1Tr.getStringField("entityType")).thenReturn(TrackingRecordType.SIMPLE);
-        when(batch1Tr.getStringField("state")).thenReturn(TrackingRecordState.DRAFT.getStringValue());
-        Entity batch1TrUsedBatch1 = mock(Entity.class);
-        when(batch1TrUsedBatch1.getBelongsToField("batch")).thenReturn(batch2);
-        EntityList batch1TrUsedBatches = mockEntityList(asList(batch1TrUsedBatch1));
-        when(batch1Tr.getHasManyField("usedBatchesSimple")).thenReturn(batch1TrUsedBatches);
-
-        EntityList batch2Trs = mockEntityList(new LinkedList<Entity>());
-        when(batch2.getHasManyField("trackingRecords")).thenReturn(batch2Trs);
+        when(genealogyEdgeService.getProducedFromGraph(1L, true)).thenReturn(createGraph(1L, 2L));
+        when(genealogyEdgeService.getProducedFromGraph(1L, false)).thenReturn(ArrayListMultimap.<Long, Long> create());
+        when(genealogyEdgeService.getUsedToProduceGraph(2L, true)).thenReturn(createGraph(2L, 1L));
 
         SearchCriteriaBuilder searchCriteriaBuilder = Mockito.mock(SearchCriteriaBuilder.class);
         when(dataDefinition.find()).thenReturn(searchCriteriaBuilder);
+        when(searchCriteriaBuilder.add(any(SearchCriterion.class))).thenReturn(searchCriteriaBuilder);
         when(searchCriteriaBuilder.list()).thenReturn(searchResult);
-        when(searchResult.getEntities()).thenReturn(asList(batch1));
 
         String number1 = "QWD33";
         String number2 = "POS22";
@@ -145,11 +173,11 @@ public class AdvancedGenealogyTreeServiceTest {
     public void shouldReturnOnlyTheRootIfThereAreNoRelatedBatchesForProducedFromTree() {
         // given
         Entity batch = mock(Entity.class);
+        when(batch.getId()).thenReturn(3L);
         when(batch.getBelongsToField("product")).thenReturn(product1);
         when(product1.getStringField("name")).thenReturn(productName1);
         when(product1.getStringField("number")).thenReturn(productNumber1);
-        EntityList trackingRecords = mockEntityList(new LinkedList<Entity>());
-        when(batch.getHasManyField("trackingRecords")).thenReturn(trackingRecords);
+        when(genealogyEdgeService.getProducedFromGraph(3L, true)).thenReturn(ArrayListMultimap.<Long, Long> create());
 
         // when
         List<Entity> tree = treeService.getProducedFromTree(batch, true, false);
@@ -163,9 +191,11 @@ public class AdvancedGenealogyTreeServiceTest {
     public void shouldReturnOnlyTheRootIfThereAreNoRelatedBatchesForUsedToProduceTree() {
         // given
         Entity batch = mock(Entity.class);
+        when(batch.getId()).thenReturn(3L);
         when(batch.getBelongsToField("product")).thenReturn(product1);
         when(product1.getStringField("name")).thenReturn(productName1);
         when(product1.getStringField("number")).thenReturn(productNumber1);
+        when(genealogyEdgeService.getUsedToProduceGraph(3L, true)).thenReturn(ArrayListMultimap.<Long, Long> create());
 
         when(searchResult.getEntities()).thenReturn(new LinkedList<Entity>());
 
@@ -180,6 +210,7 @@ public class AdvancedGenealogyTreeServiceTest {
     @Test
     public void shouldReturnCorrectProducedFromTree() {
         // given
+        when(searchResult.getEntities()).thenReturn(asList(batch2));
 
         // when
         List<Entity> tree = treeService.getProducedFromTree(batch1, true, false);
@@ -193,6 +224,7 @@ public class AdvancedGenealogyTreeServiceTest {
     @Test
     public void shouldReturnCorrectUsedToProduceTree() {
         // given
+        when(searchResult.getEntities()).thenReturn(asList(batch1));
 
         // when
         List<Entity> tree = treeService.getUsedToProduceTree(batch2, true, false);
@@ -206,6 +238,7 @@ public class AdvancedGenealogyTreeServiceTest {
     @Test
     public void shouldRespectIncludeDraftParameter() {
         // given
+        when(searchResult.getEntities()).thenReturn(asList(batch2));
 
         // when
         List<Entity> tree = treeService.getProducedFromTree(batch1, false, false);
@@ -216,22 +249,27 @@ public class AdvancedGenealogyTreeServiceTest {
     }
 
     @Test
-    @Ignore
-    public void shouldReturnCorrectProducedFromTreeForOrders() {
+    public void shouldSkipBatchesClosingCycle() {
         // given
-        Plugin plugin = mock(Plugin.class);
-        when(pluginAccessor.getPlugin("advancedGenealogyForOrders")).thenReturn(plugin);
-        when(batch1Tr.getStringField("entityType")).thenReturn(TrackingRecordType.FOR_ORDER);
+        Multimap<Long, Long> graph = createGraph(1L, 2L);
+        graph.put(2L, 1L);
+        when(genealogyEdgeService.getProducedFromGraph(1L, true)).thenReturn(graph);
+        when(searchResult.getEntities()).thenReturn(asList(batch1, batch2));
 
-        Entity genProdInComp = mock(Entity.class);
-        EntityList genProdInComps = mockEntityList(asList(genProdInComp));
+        // when
+        List<Entity> tree = treeService.getProducedFromTree(batch1, true, false);
 
-        Entity prodInBatch = mock(Entity.class);
-        when(prodInBatch.getBelongsToField("batch")).thenReturn(batch2);
+        // then
+        assertEquals(2, tree.size());
+        assertEquals(batch1, tree.get(0));
+        assertEquals(batch2, tree.get(1));
+    }
 
-        EntityList prodInBatches = mockEntityList(asList(prodInBatch));
-        when(genProdInComp.getHasManyField("productInBatches")).thenReturn(prodInBatches);
-        when(batch1Tr.getHasManyField("genealogyProductInComponents")).thenReturn(genProdInComps);
+    @Test
+    public void shouldReturnCorrectProducedFromTreeForOrders() {
+        // given
+        stubForOrdersPlugin();
+        when(searchResult.getEntities()).thenReturn(asList(batch2));
 
         // when
         List<Entity> tree = treeService.getProducedFromTree(batch1, true, false);
@@ -240,25 +278,14 @@ public class AdvancedGenealogyTreeServiceTest {
         assertEquals(2, tree.size());
         assertEquals(batch1, tree.get(0));
         assertEquals(batch2, tree.get(1));
+        verify(batch1).setField("genealogyTreeNodeLabel", " - productName1 (productNumber1) - Order: ORDER1");
     }
 
     @Test
-    @Ignore
     public void shouldReturnCorrectUsedToProduceTreeForOrders() {
         // given
-        Plugin plugin = mock(Plugin.class);
-        when(pluginAccessor.getPlugin("advancedGenealogyForOrders")).thenReturn(plugin);
-        when(batch1Tr.getStringField("entityType")).thenReturn(TrackingRecordType.FOR_ORDER);
-
-        Entity genProdInComp = mock(Entity.class);
-        EntityList genProdInComps = mockEntityList(asList(genProdInComp));
-
-        Entity prodInBatch = mock(Entity.class);
-        when(prodInBatch.getBelongsToField("batch")).thenReturn(batch2);
-
-        EntityList prodInBatches = mockEntityList(asList(prodInBatch));
-        when(genProdInComp.getHasManyField("productInBatches")).thenReturn(prodInBatches);
-        when(batch1Tr.getHasManyField("genealogyProductInComponents")).thenReturn(genProdInComps);
+        stubForOrdersPlugin();
+        when(searchResult.getEntities()).thenReturn(asList(batch1));
 
         // when
         List<Entity> tree = treeService.getUsedToProduceTree(batch2, true, false);
@@ -267,5 +294,7 @@ public class AdvancedGenealogyTreeServiceTest {
         assertEquals(2, tree.size());
         assertEquals(batch2, tree.get(0));
         assertEquals(batch1, tree.get(1));
+        verify(batch2).setField("genealogyTreeNodeLabel", " - productName2 (productNumber2)");
     }
+
 }
@@ -0,0 +1,391 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.advancedGenealogy.tree;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.sql.ResultSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import com.qcadoo.mes.advancedGenealogy.constants.AdvancedGenealogyConstants;
+import com.qcadoo.mes.advancedGenealogy.constants.TrackingRecordType;
+import com.qcadoo.mes.advancedGenealogy.states.constants.TrackingRecordState;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.plugin.api.Plugin;
+import com.qcadoo.plugin.api.PluginAccessor;
+
+public class GenealogyEdgeServiceTest {
+
+    private static final Long L_TRACKING_RECORD_ID = 10L;
+
+    private GenealogyEdgeService genealogyEdgeService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private DataDefinition trackingRecordDD;
+
+    @Mock
+    private PluginAccessor pluginAccessor;
+
+    @Mock
+    private Entity trackingRecord, producedBatch, usedBatch1, usedBatch2;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        genealogyEdgeService = new GenealogyEdgeService();
+
+        ReflectionTestUtils.setField(genealogyEdgeService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(genealogyEdgeService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(genealogyEdgeService, "pluginAccessor", pluginAccessor);
+
+        given(dataDefinitionService.get(AdvancedGenealogyConstants.PLUGIN_IDENTIFIER,
+                AdvancedGenealogyConstants.MODEL_TRACKING_RECORD)).willReturn(trackingRecordDD);
+
+        given(trackingRecord.getId()).willReturn(L_TRACKING_RECORD_ID);
+        given(trackingRecord.getBelongsToField("producedBatch")).willReturn(producedBatch);
+        given(trackingRecord.getStringField("state")).willReturn(TrackingRecordState.ACCEPTED.getStringValue());
+
+        given(producedBatch.getId()).willReturn(1L);
+        given(usedBatch1.getId()).willReturn(2L);
+        given(usedBatch2.getId()).willReturn(3L);
+    }
+
+    @After
+    public void cleanUp() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private EntityList mockEntityList(final List<Entity> list) {
+        EntityList entityList = mock(EntityList.class);
+        given(entityList.iterator()).willAnswer(invocation -> list.iterator());
+        return entityList;
+    }
+
+    private void stubForOrdersPlugin(final boolean enabled) {
+        given(pluginAccessor.getPlugin("advancedGenealogyForOrders")).willReturn(enabled ? mock(Plugin.class) : null);
+    }
+
+    private void stubSimpleTrackingRecord(final Entity... usedBatches) {
+        List<Entity> usedBatchesSimple = Lists.newArrayList();
+
+        for (Entity batch : usedBatches) {
+            Entity usedBatchSimple = mock(Entity.class);
+            given(usedBatchSimple.getBelongsToField("batch")).willReturn(batch);
+            usedBatchesSimple.add(usedBatchSimple);
+        }
+
+        given(trackingRecord.getStringField("entityType")).willReturn(TrackingRecordType.SIMPLE);
+        EntityList usedBatchesSimpleList = mockEntityList(usedBatchesSimple);
+        given(trackingRecord.getHasManyField("usedBatchesSimple")).willReturn(usedBatchesSimpleList);
+        given(trackingRecordDD.get(L_TRACKING_RECORD_ID)).willReturn(trackingRecord);
+    }
+
+    private void stubForOrderTrackingRecord(final Entity... usedBatches) {
+        List<Entity> productInBatches = Lists.newArrayList();
+
+        for (Entity batch : usedBatches) {
+            Entity productInBatch = mock(Entity.class);
+            given(productInBatch.getBelongsToField("batch")).willReturn(batch);
+            productInBatches.add(productInBatch);
+        }
+
+        Entity genealogyProductInComponent = mock(Entity.class);
+        EntityList productInBatchesList = mockEntityList(productInBatches);
+        given(genealogyProductInComponent.getHasManyField("productInBatches")).willReturn(productInBatchesList);
+
+        given(trackingRecord.getStringField("entityType")).willReturn(TrackingRecordType.FOR_ORDER);
+        EntityList genealogyProductInComponents = mockEntityList(Collections.singletonList(genealogyProductInComponent));
+        given(trackingRecord.getHasManyField("genealogyProductInComponents")).willReturn(genealogyProductInComponents);
+        given(trackingRecordDD.get(L_TRACKING_RECORD_ID)).willReturn(trackingRecord);
+    }
+
+    private void stubGraphQuery(final long[][] rows) throws Exception {
+        List<ResultSet> resultSets = Lists.newArrayList();
+
+        for (long[] row : rows) {
+            ResultSet resultSet = mock(ResultSet.class);
+            given(resultSet.getLong("parentid")).willReturn(row[0]);
+            given(resultSet.getLong("childid")).willReturn(row[1]);
+            resultSets.add(resultSet);
+        }
+
+        willAnswer(invocation -> {
+            RowCallbackHandler rowCallbackHandler = (RowCallbackHandler) invocation.getArguments()[2];
+
+            for (ResultSet resultSet : resultSets) {
+                rowCallbackHandler.processRow(resultSet);
+            }
+
+            return null;
+        }).given(jdbcTemplate).query(anyString(), anyMapOf(String.class, Object.class), any(RowCallbackHandler.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> verifyGraphQuery(final ArgumentCaptor<String> queryCaptor) {
+        ArgumentCaptor<Map> paramsCaptor = ArgumentCaptor.forClass(Map.class);
+
+        verify(jdbcTemplate).query(queryCaptor.capture(), paramsCaptor.capture(), any(RowCallbackHandler.class));
+
+        return paramsCaptor.getValue();
+    }
+
+    private List<Map<String, Object>> verifyInsertedEdges() {
+        ArgumentCaptor<SqlParameterSource[]> edgesCaptor = ArgumentCaptor.forClass(SqlParameterSource[].class);
+
+        verify(jdbcTemplate).batchUpdate(anyString(), edgesCaptor.capture());
+
+        List<Map<String, Object>> edges = Lists.newArrayList();
+
+        for (SqlParameterSource edge : edgesCaptor.getValue()) {
+            edges.add(((MapSqlParameterSource) edge).getValues());
+        }
+
+        return edges;
+    }
+
+    @Test
+    public void shouldReadProducedFromGraphWithRecursiveQuery() throws Exception {
+        // given
+        stubForOrdersPlugin(false);
+        stubGraphQuery(new long[][] { { 1L, 2L }, { 1L, 3L }, { 2L, 3L } });
+
+        // when
+        Multimap<Long, Long> graph = genealogyEdgeService.getProducedFromGraph(1L, false);
+
+        // then
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        Map<String, Object> params = verifyGraphQuery(queryCaptor);
+
+        String query = queryCaptor.getValue();
+        assertTrue(query.startsWith("WITH RECURSIVE genealogy (batchid)"));
+        assertTrue(query.contains("CAST(:batchId AS bigint)"));
+        assertTrue(query.contains("SELECT edge.usedbatch_id FROM advancedgenealogy_genealogyedge edge "
+                + "JOIN genealogy ON genealogy.batchid = edge.producedbatch_id"));
+        assertTrue(query.endsWith("ORDER BY edge.trackingrecord_id, edge.succession"));
+
+        assertEquals(1L, params.get("batchId"));
+        assertEquals(asList(TrackingRecordState.ACCEPTED.getStringValue()), params.get("states"));
+        assertEquals(asList(TrackingRecordType.SIMPLE), params.get("entityTypes"));
+
+        assertEquals(asList(2L, 3L), graph.get(1L));
+        assertEquals(asList(3L), graph.get(2L));
+        assertEquals(3, graph.size());
+    }
+
+    @Test
+    public void shouldReadUsedToProduceGraphWithRecursiveQuery() throws Exception {
+        // given
+        stubForOrdersPlugin(false);
+        stubGraphQuery(new long[][] { { 3L, 1L } });
+
+        // when
+        Multimap<Long, Long> graph = genealogyEdgeService.getUsedToProduceGraph(3L, false);
+
+        // then
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        Map<String, Object> params = verifyGraphQuery(queryCaptor);
+
+        String query = queryCaptor.getValue();
+        assertTrue(query.contains("CAST(:batchId AS bigint)"));
+        assertTrue(query.contains("SELECT edge.producedbatch_id FROM advancedgenealogy_genealogyedge edge "
+                + "JOIN genealogy ON genealogy.batchid = edge.usedbatch_id"));
+        assertTrue(query.endsWith("ORDER BY edge.producedbatch_id, edge.trackingrecord_id, edge.succession"));
+
+        assertEquals(3L, params.get("batchId"));
+        assertEquals(asList(1L), graph.get(3L));
+    }
+
+    @Test
+    public void shouldPassBigintBatchIdToGraphQuery() throws Exception {
+        // given
+        Long batchId = Integer.MAX_VALUE + 1L;
+        stubForOrdersPlugin(false);
+        stubGraphQuery(new long[0][]);
+
+        // when
+        genealogyEdgeService.getProducedFromGraph(batchId, false);
+
+        // then
+        Map<String, Object> params = verifyGraphQuery(ArgumentCaptor.forClass(String.class));
+
+        assertEquals(batchId, params.get("batchId"));
+    }
+
+    @Test
+    public void shouldIncludeDraftsAndForOrderTrackingRecordsInGraphQuery() throws Exception {
+        // given
+        stubForOrdersPlugin(true);
+        stubGraphQuery(new long[0][]);
+
+        // when
+        Multimap<Long, Long> graph = genealogyEdgeService.getProducedFromGraph(1L, true);
+
+        // then
+        Map<String, Object> params = verifyGraphQuery(ArgumentCaptor.forClass(String.class));
+
+        assertEquals(asList(TrackingRecordState.ACCEPTED.getStringValue(), TrackingRecordState.DRAFT.getStringValue()),
+                params.get("states"));
+        assertEquals(asList(TrackingRecordType.SIMPLE, TrackingRecordType.FOR_ORDER), params.get("entityTypes"));
+        assertTrue(graph.isEmpty());
+    }
+
+    @Test
+    public void shouldRewriteEdgesOfSimpleTrackingRecord() {
+        // given
+        stubForOrdersPlugin(false);
+        stubSimpleTrackingRecord(usedBatch1, usedBatch2);
+
+        // when
+        genealogyEdgeService.updateEdges(L_TRACKING_RECORD_ID);
+
+        // then
+        verify(jdbcTemplate).update(eq("DELETE FROM advancedgenealogy_genealogyedge WHERE trackingrecord_id = :trackingRecordId"),
+                any(MapSqlParameterSource.class));
+
+        List<Map<String, Object>> edges = verifyInsertedEdges();
+
+        assertEquals(2, edges.size());
+        assertEquals(L_TRACKING_RECORD_ID, edges.get(0).get("trackingRecordId"));
+        assertEquals(1L, edges.get(0).get("producedBatchId"));
+        assertEquals(2L, edges.get(0).get("usedBatchId"));
+        assertEquals(TrackingRecordType.SIMPLE, edges.get(0).get("entityType"));
+        assertEquals(TrackingRecordState.ACCEPTED.getStringValue(), edges.get(0).get("state"));
+        assertEquals(1, edges.get(0).get("succession"));
+        assertEquals(3L, edges.get(1).get("usedBatchId"));
+        assertEquals(2, edges.get(1).get("succession"));
+    }
+
+    @Test
+    public void shouldRewriteEdgesOfForOrderTrackingRecord() {
+        // given
+        stubForOrdersPlugin(true);
+        stubForOrderTrackingRecord(usedBatch1, usedBatch2);
+
+        // when
+        genealogyEdgeService.updateEdges(L_TRACKING_RECORD_ID);
+
+        // then
+        List<Map<String, Object>> edges = verifyInsertedEdges();
+
+        assertEquals(2, edges.size());
+        assertEquals(1L, edges.get(0).get("producedBatchId"));
+        assertEquals(2L, edges.get(0).get("usedBatchId"));
+        assertEquals(TrackingRecordType.FOR_ORDER, edges.get(0).get("entityType"));
+        assertEquals(3L, edges.get(1).get("usedBatchId"));
+    }
+
+    @Test
+    public void shouldNotWriteEdgesOfForOrderTrackingRecordIfPluginIsDisabled() {
+        // given
+        stubForOrdersPlugin(false);
+        stubForOrderTrackingRecord(usedBatch1);
+
+        // when
+        genealogyEdgeService.updateEdges(L_TRACKING_RECORD_ID);
+
+        // then
+        verify(jdbcTemplate).update(anyString(), any(MapSqlParameterSource.class));
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), any(SqlParameterSource[].class));
+    }
+
+    @Test
+    public void shouldOnlyDeleteEdgesOfDeletedTrackingRecord() {
+        // given
+        given(trackingRecordDD.get(L_TRACKING_RECORD_ID)).willReturn(null);
+
+        // when
+        genealogyEdgeService.updateEdges(L_TRACKING_RECORD_ID);
+
+        // then
+        verify(jdbcTemplate).update(anyString(), any(MapSqlParameterSource.class));
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), any(SqlParameterSource[].class));
+    }
+
+    @Test
+    public void shouldRewriteEdgesOnceBeforeCommit() {
+        // given
+        stubForOrdersPlugin(false);
+        stubSimpleTrackingRecord(usedBatch1);
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        // when
+        genealogyEdgeService.updateEdges(L_TRACKING_RECORD_ID);
+        genealogyEdgeService.updateEdges(L_TRACKING_RECORD_ID);
+
+        // then
+        verify(jdbcTemplate, never()).update(anyString(), any(MapSqlParameterSource.class));
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.beforeCommit(false);
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+
+        verify(jdbcTemplate, times(1)).update(anyString(), any(MapSqlParameterSource.class));
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), any(SqlParameterSource[].class));
+    }
+
+}
@@ -385,6 +385,8 @@ public class BasicProductionCountingServiceImpl implements BasicProductionCounti
     private void updateProductionCountingQuantities(final Entity order,
             final OperationProductComponentWithQuantityContainer productComponentQuantities,
             final Set<OperationProductComponentHolder> nonComponents) {
+        Map<String, Entity> productionCountingQuantities = getProductionCountingQuantitiesByKey(order);
+
         for (Entry<OperationProductComponentHolder, BigDecimal> productComponentQuantity : productComponentQuantities.asMap()
                 .entrySet()) {
             OperationProductComponentHolder operationProductComponentHolder = productComponentQuantity.getKey();
@@ -397,22 +399,43 @@ public class BasicProductionCountingServiceImpl implements BasicProductionCounti
 
             boolean isNonComponent = nonComponents.contains(operationProductComponentHolder);
 
-            updateProductionCountingQuantity(order, technologyOperationComponent, product, role, isNonComponent, plannedQuantity);
+            updateProductionCountingQuantity(productionCountingQuantities, order, technologyOperationComponent, product, role,
+                    isNonComponent, plannedQuantity);
         }
 
-        updateProductionCountingQuantity(order, getOrderTechnologyOperationComponent(order),
+        updateProductionCountingQuantity(productionCountingQuantities, order, getOrderTechnologyOperationComponent(order),
                 order.getBelongsToField(OrderFields.PRODUCT), ProductionCountingQuantityRole.PRODUCED.getStringValue(), false,
                 order.getDecimalField(OrderFields.PLANNED_QUANTITY));
     }
 
-    private void updateProductionCountingQuantity(final Entity order, final Entity technologyOperationComponent,
-            final Entity product, final String role, final boolean isNonComponent, final BigDecimal plannedQuantity) {
-        Entity productionCountingQuantity = getProductionCountingQuantityDD().find()
-                .add(SearchRestrictions.belongsTo(ProductionCountingQuantityFields.ORDER, order))
-                .add(SearchRestrictions.belongsTo(ProductionCountingQuantityFields.TECHNOLOGY_OPERATION_COMPONENT,
-                        technologyOperationComponent))
-                .add(SearchRestrictions.belongsTo(ProductionCountingQuantityFields.PRODUCT, product))
-                .add(SearchRestrictions.eq(ProductionCountingQuantityFields.ROLE, role)).setMaxResults(1).uniqueResult();
+    private Map<String, Entity> getProductionCountingQuantitiesByKey(final Entity order) {
+        Map<String, Entity> productionCountingQuantities = Maps.newHashMap();
+
+        for (Entity productionCountingQuantity : getProductionCountingQuantityDD().find()
+                .add(SearchRestrictions.belongsTo(ProductionCountingQuantityFields.ORDER, order)).list().getEntities()) {
+            productionCountingQuantities.putIfAbsent(getProductionCountingQuantityKey(
+                    productionCountingQuantity.getBelongsToField(ProductionCountingQuantityFields.TECHNOLOGY_OPERATION_COMPONENT),
+                    productionCountingQuantity.getBelongsToField(ProductionCountingQuantityFields.PRODUCT),
+                    productionCountingQuantity.getStringField(ProductionCountingQuantityFields.ROLE)), productionCountingQuantity);
+        }
+
+        return productionCountingQuantities;
+    }
+
+    private String getProductionCountingQuantityKey(final Entity technologyOperationComponent, final Entity product,
+            final String role) {
+        Long technologyOperationComponentId = Objects.isNull(technologyOperationComponent) ? null
+                : technologyOperationComponent.getId();
+        Long productId = Objects.isNull(product) ? null : product.getId();
+
+        return technologyOperationComponentId + "_" + productId + "_" + role;
+    }
+
+    private void updateProductionCountingQuantity(final Map<String, Entity> productionCountingQuantities, final Entity order,
+            final Entity technologyOperationComponent, final Entity product, final String role, final boolean isNonComponent,
+            final BigDecimal plannedQuantity) {
+        Entity productionCountingQuantity = productionCountingQuantities.get(getProductionCountingQuantityKey(
+                technologyOperationComponent, product, role));
 
         if (productionCountingQuantity != null) {
             productionCountingQuantity.setField(ProductionCountingQuantityFields.ORDER, order);
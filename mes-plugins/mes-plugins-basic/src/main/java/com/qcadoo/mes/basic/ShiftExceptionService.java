@@ -1,6 +1,7 @@
 package com.qcadoo.mes.basic;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.commons.dateTime.TimeRange;
 import com.qcadoo.mes.basic.constants.ShiftFields;
 import com.qcadoo.mes.basic.constants.ShiftTimetableExceptionFields;
@@ -9,13 +10,16 @@ import com.qcadoo.mes.basic.shift.Shift;
 import com.qcadoo.mes.basic.util.DateTimeRange;
 import com.qcadoo.model.api.Entity;
 import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Service
 public class ShiftExceptionService {
@@ -34,7 +38,16 @@ public class ShiftExceptionService {
             exceptions = timetableExceptionService.findFor(productionLine, shiftEntity, dateOfDay);
         }
 
-        Shift shiftForDay = new Shift(shiftEntity, new DateTime(dateOfDay), false);
+        return manageExceptions(shiftWorkDateTime, shift, exceptions, dateOfDay, removeFreeTimeException);
+    }
+
+    List<DateTimeRange> manageExceptions(List<DateTimeRange> shiftWorkDateTime, final Shift shift,
+            final List<Entity> exceptions, final Date dateOfDay, final boolean removeFreeTimeException) {
+        if (exceptions.isEmpty()) {
+            return shiftWorkDateTime;
+        }
+
+        Shift shiftForDay = new Shift(shift.getEntity(), new DateTime(dateOfDay), false);
 
         for (Entity exception : exceptions) {
             if (removeFreeTimeException && TimetableExceptionType.FREE_TIME.getStringValue()
@@ -53,6 +66,56 @@ public class ShiftExceptionService {
 
     public List<DateTimeRange> getShiftWorkDateTimes(final Entity productionLine, final Shift shift, DateTime dateOfDay,
             final boolean removeFreeTimeException) {
+        List<DateTimeRange> shiftWorkDateTime = getShiftWorkDateTimes(shift, dateOfDay);
+
+        shiftWorkDateTime = manageExceptions(shiftWorkDateTime, productionLine, shift, dateOfDay.toDate(),
+                removeFreeTimeException);
+
+        return shiftWorkDateTime;
+    }
+
+    /**
+     * Returns the same work times as {@link #getShiftWorkDateTimes(Entity, Shift, DateTime, boolean)} for every day from
+     * fromDay to toDay, reading timetable exceptions of the line once for the whole period.
+     */
+    public Map<LocalDate, List<DateTimeRange>> getShiftWorkDateTimes(final Entity productionLine, final Shift shift,
+            final LocalDate fromDay, final LocalDate toDay, final boolean removeFreeTimeException) {
+        Map<LocalDate, List<DateTimeRange>> shiftWorkDateTimesPerDay = Maps.newHashMap();
+        List<Entity> exceptions;
+
+        if (Objects.isNull(productionLine)) {
+            exceptions = shift.getEntity().getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS);
+        } else {
+            exceptions = timetableExceptionService.findFor(productionLine, shift.getEntity(), fromDay.toDate(), toDay.toDate());
+        }
+
+        for (LocalDate day = fromDay; !day.isAfter(toDay); day = day.plusDays(1)) {
+            DateTime dateOfDay = day.toDateTimeAtStartOfDay();
+            List<Entity> exceptionsForDay = exceptions;
+
+            if (Objects.nonNull(productionLine)) {
+                exceptionsForDay = filterExceptionsForDay(exceptions, day);
+            }
+
+            shiftWorkDateTimesPerDay.put(day, manageExceptions(getShiftWorkDateTimes(shift, dateOfDay), shift, exceptionsForDay,
+                    dateOfDay.toDate(), removeFreeTimeException));
+        }
+
+        return shiftWorkDateTimesPerDay;
+    }
+
+    List<Entity> filterExceptionsForDay(final List<Entity> exceptions, final LocalDate day) {
+        return exceptions.stream()
+                .filter(exception -> !day.isBefore(toLocalDate(exception, ShiftTimetableExceptionFields.FROM_DATE))
+                        && !day.isAfter(toLocalDate(exception, ShiftTimetableExceptionFields.TO_DATE)))
+                .collect(Collectors.toList());
+    }
+
+    private LocalDate toLocalDate(final Entity exception, final String fieldName) {
+        return new LocalDate(exception.getDateField(fieldName));
+    }
+
+    List<DateTimeRange> getShiftWorkDateTimes(final Shift shift, final DateTime dateOfDay) {
         List<TimeRange> shiftWorkTime = Lists.newArrayList();
         List<DateTimeRange> shiftWorkDateTime = Lists.newArrayList();
         if (shift.worksAt(dateOfDay.dayOfWeek().get())) {
@@ -62,9 +125,6 @@ public class ShiftExceptionService {
             shiftWorkDateTime.add(new DateTimeRange(dateOfDay, range));
         }
 
-        shiftWorkDateTime = manageExceptions(shiftWorkDateTime, productionLine, shift, dateOfDay.toDate(),
-                removeFreeTimeException);
-
         return shiftWorkDateTime;
     }
 
@@ -30,6 +30,7 @@ import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.ShiftFields;
 import com.qcadoo.mes.basic.constants.TimetableExceptionType;
 import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.shift.WorkingTimeCalendar;
 import com.qcadoo.mes.basic.util.DateTimeRange;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
@@ -59,6 +60,7 @@ import org.joda.time.DateTimeZone;
 import org.joda.time.Days;
 import org.joda.time.IllegalFieldValueException;
 import org.joda.time.Interval;
+import org.joda.time.LocalDate;
 import org.joda.time.LocalTime;
 import org.joda.time.Period;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -96,6 +98,8 @@ public class ShiftsServiceImpl implements ShiftsService {
 
     private static final int MILLS = 1000;
 
+    private static final int INITIAL_CALENDAR_DAYS = 32;
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -105,6 +109,9 @@ public class ShiftsServiceImpl implements ShiftsService {
     @Autowired
     private ShiftExceptionService shiftExceptionService;
 
+    @Autowired
+    private WorkingTimeCalendarService workingTimeCalendarService;
+
     private static final String[] WEEK_DAYS = { L_MONDAY, L_TUESDAY, L_WENSDAY, L_THURSDAY, L_FRIDAY, L_SATURDAY, L_SUNDAY };
 
     private static final Map<Integer, String> DAY_OF_WEEK = buildDayNumToNameMap();
@@ -343,38 +350,51 @@ public class ShiftsServiceImpl implements ShiftsService {
 
     @Override
     public Date findDateToForProductionLine(final Date dateFrom, final long seconds, final Entity productionLine) {
-        if (getShiftDataDefinition().find().list().getTotalNumberOfEntities() == 0) {
+        if (!workingTimeCalendarService.shiftsExist() || seconds <= 0L) {
             return Date.from(dateFrom.toInstant().plusSeconds(seconds));
         }
 
         DateTime dateFromDT = new DateTime(dateFrom, DateTimeZone.getDefault());
+        LocalDate firstDay = dateFromDT.minusDays(1).toLocalDate();
+        LocalDate lastDay = firstDay.plusDays(MAX_LOOPS);
+        LocalDate calendarLastDay = firstDay.plusDays(INITIAL_CALENDAR_DAYS - 1);
 
-        List<Shift> shifts = findAll(productionLine);
-        DateTime dateOfDay = new DateTime(dateFrom);
-        dateOfDay = dateOfDay.minusDays(1);
-        dateOfDay = dateOfDay.toLocalDate().toDateTimeAtStartOfDay();
+        WorkingTimeCalendar calendar = workingTimeCalendarService.getCalendar(productionLine, firstDay, calendarLastDay);
+
+        LocalDate day = firstDay;
         long leftMilliseconds = seconds * MILLS;
-        int loopCount = 0;
-        while (leftMilliseconds > 0L) {
-            if (loopCount > MAX_LOOPS) {
-                return Date.from(dateFrom.toInstant().plusSeconds(seconds));
-            }
-            for (Shift shift : shifts) {
-                for (DateTimeRange range : shiftExceptionService.getShiftWorkDateTimes(productionLine, shift, dateOfDay, true)) {
-                    if (dateFrom.after(dateOfDay.toDate())) {
-                        range = range.trimBefore(dateFromDT);
-                    }
-                    if (range != null) {
-                        if (leftMilliseconds > range.durationMillis()) {
-                            leftMilliseconds = leftMilliseconds - range.durationMillis();
-                        } else {
-                            return range.getFrom().plusMillis((int) leftMilliseconds).toDate();
-                        }
+
+        while (!day.isAfter(lastDay) && dateFromDT.isAfter(day.toDateTimeAtStartOfDay())) {
+            for (DateTimeRange workTime : calendar.getWorkTimes(day)) {
+                DateTimeRange range = workTime.trimBefore(dateFromDT);
+
+                if (range != null) {
+                    if (leftMilliseconds > range.durationMillis()) {
+                        leftMilliseconds = leftMilliseconds - range.durationMillis();
+                    } else {
+                        return range.getFrom().plusMillis((int) leftMilliseconds).toDate();
                     }
                 }
             }
-            loopCount++;
-            dateOfDay = dateOfDay.plusDays(1);
+
+            day = day.plusDays(1);
+        }
+
+        while (!day.isAfter(lastDay)) {
+            Optional<DateTime> dateTo = calendar.findWorkTimeEnd(day, calendarLastDay, leftMilliseconds);
+
+            if (dateTo.isPresent()) {
+                return dateTo.get().toDate();
+            }
+
+            if (!calendarLastDay.isBefore(lastDay)) {
+                break;
+            }
+
+            int calendarDays = Days.daysBetween(firstDay, calendarLastDay).getDays() + 1;
+
+            calendarLastDay = firstDay.plusDays(Math.min(calendarDays * 2 - 1, MAX_LOOPS));
+            calendar = workingTimeCalendarService.getCalendar(productionLine, firstDay, calendarLastDay);
         }
 
         return Date.from(dateFrom.toInstant().plusSeconds(seconds));
@@ -382,29 +402,29 @@ public class ShiftsServiceImpl implements ShiftsService {
 
     @Override
     public long getTotalAvailableTimeForProductionLine(final Date dateFrom, final Date dateTo, final Entity productionLine) {
-        if (getShiftDataDefinition().find().list().getTotalNumberOfEntities() == 0) {
+        if (!workingTimeCalendarService.shiftsExist()) {
             return (dateTo.getTime() - dateFrom.getTime()) / 1000;
         }
 
-        long totalAvailableTime = 0;
+        DateTime dateFromDT = new DateTime(dateFrom);
+        DateTime dateToDT = new DateTime(dateTo);
 
-        List<Shift> shifts = findAll(productionLine);
-        DateTime dateOfDay = new DateTime(dateFrom);
-        int loopCount = 0;
-        while (!dateOfDay.isAfter(new DateTime(dateTo))) {
-            if (loopCount > MAX_LOOPS) {
-                return (dateTo.getTime() - dateFrom.getTime()) / 1000;
-            }
-            for (Shift shift : shifts) {
-                for (DateTimeRange range : shiftExceptionService.getShiftWorkDateTimes(productionLine, shift, dateOfDay, false)) {
-                    totalAvailableTime += range.durationMillis();
-                }
-            }
-            loopCount++;
-            dateOfDay = dateOfDay.plusDays(1);
+        if (dateFromDT.isAfter(dateToDT)) {
+            return 0L;
+        }
+
+        int days = Days.daysBetween(dateFromDT, dateToDT).getDays();
+
+        if (days > MAX_LOOPS) {
+            return (dateTo.getTime() - dateFrom.getTime()) / 1000;
         }
 
-        return totalAvailableTime / 1000;
+        LocalDate firstDay = dateFromDT.toLocalDate();
+        LocalDate lastDay = dateFromDT.plusDays(days).toLocalDate();
+
+        WorkingTimeCalendar calendar = workingTimeCalendarService.getCalendar(productionLine, firstDay, lastDay);
+
+        return calendar.getAvailableTimeMillis(firstDay, lastDay) / 1000;
     }
 
     @Override
@@ -22,15 +22,19 @@ class TimetableExceptionService {
     private DataDefinitionService dataDefinitionService;
 
     List<Entity> findFor(final Entity productionLine, final Entity shift, final Date date) {
-        return findFor(Lists.newArrayList(productionLine.getId()), Lists.newArrayList(shift.getId()), date, null);
+        return findFor(Lists.newArrayList(productionLine.getId()), Lists.newArrayList(shift.getId()), date, date, null);
+    }
+
+    List<Entity> findFor(final Entity productionLine, final Entity shift, final Date dateFrom, final Date dateTo) {
+        return findFor(Lists.newArrayList(productionLine.getId()), Lists.newArrayList(shift.getId()), dateFrom, dateTo, null);
     }
 
     List<Entity> findFor(final Entity productionLine, final Entity shift, final Date date, final String type) {
-        return findFor(Lists.newArrayList(productionLine.getId()), Lists.newArrayList(shift.getId()), date, type);
+        return findFor(Lists.newArrayList(productionLine.getId()), Lists.newArrayList(shift.getId()), date, date, type);
     }
 
-    private List<Entity> findFor(final List<Long> productionLineIds, final List<Long> shiftIds, final Date date,
-            final String type) {
+    private List<Entity> findFor(final List<Long> productionLineIds, final List<Long> shiftIds, final Date dateFrom,
+            final Date dateTo, final String type) {
         List<Entity> shiftTimetableExceptions = Lists.newArrayList();
 
         if (!productionLineIds.isEmpty() && !shiftIds.isEmpty()) {
@@ -42,20 +46,23 @@ class TimetableExceptionService {
             query.append(" WHERE productionLine.id IN (:productionLines)");
             query.append(" AND shift.id IN (:shifts)");
 
-            if (date != null) {
+            if (dateFrom != null && dateTo != null) {
                 query.append(
-                        " AND to_char(timetableException.fromDate,'yyyy-MM-dd') <= :date AND to_char(timetableException.toDate,'yyyy-MM-dd') >= :date");
+                        " AND to_char(timetableException.fromDate,'yyyy-MM-dd') <= :dateTo AND to_char(timetableException.toDate,'yyyy-MM-dd') >= :dateFrom");
             }
 
             if (StringUtils.isNotEmpty(type)) {
                 query.append(" AND type = :type");
             }
 
+            query.append(" ORDER BY timetableException.id");
+
             SearchQueryBuilder searchQueryBuilder = getShiftTimetableExceptionDD().find(query.toString())
                     .setParameterList("productionLines", productionLineIds).setParameterList("shifts", shiftIds);
 
-            if (date != null) {
-                searchQueryBuilder.setParameter("date", DateUtils.toDateString(date));
+            if (dateFrom != null && dateTo != null) {
+                searchQueryBuilder.setParameter("dateFrom", DateUtils.toDateString(dateFrom));
+                searchQueryBuilder.setParameter("dateTo", DateUtils.toDateString(dateTo));
             }
 
             if (StringUtils.isNotEmpty(type)) {
@@ -0,0 +1,267 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.joda.time.DateTime;
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.constants.ShiftFields;
+import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.shift.WorkingTimeCalendar;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Keeps {@link WorkingTimeCalendar} of each production line, so scheduling does not have to read shifts and timetable
+ * exceptions day by day on every call.
+ * 
+ * Calendars are extended on demand and dropped by shift, timetable exception and production line hooks.
+ */
+@Service
+public class WorkingTimeCalendarService {
+
+    private static final Long L_WITHOUT_PRODUCTION_LINE = 0L;
+
+    private static final int L_MAX_CALENDAR_DAYS = 3 * 1001;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private ShiftsService shiftsService;
+
+    @Autowired
+    private ShiftExceptionService shiftExceptionService;
+
+    @Autowired
+    private TimetableExceptionService timetableExceptionService;
+
+    private final Map<Long, WorkingTimeCalendar> calendars = Maps.newConcurrentMap();
+
+    private volatile Boolean shiftsExist;
+
+    private volatile long version;
+
+    public boolean shiftsExist() {
+        Boolean exist = shiftsExist;
+
+        if (Objects.isNull(exist)) {
+            long currentVersion = version;
+
+            exist = getShiftDD().find().setMaxResults(1).list().getTotalNumberOfEntities() > 0;
+
+            synchronized (this) {
+                if (currentVersion == version) {
+                    shiftsExist = exist;
+                }
+            }
+        }
+
+        return exist;
+    }
+
+    /**
+     * Returns calendar of production line covering at least given days.
+     * 
+     * @param productionLine
+     *            production line, if null shifts and their own timetable exceptions are used
+     * @param fromDay
+     *            first day, inclusive
+     * @param toDay
+     *            last day, inclusive
+     * @return working time calendar
+     */
+    public WorkingTimeCalendar getCalendar(final Entity productionLine, final LocalDate fromDay, final LocalDate toDay) {
+        Long key = Objects.isNull(productionLine) ? L_WITHOUT_PRODUCTION_LINE : productionLine.getId();
+
+        if (Objects.isNull(key)) {
+            return buildCalendar(productionLine, null, fromDay, toDay);
+        }
+
+        long currentVersion = version;
+
+        WorkingTimeCalendar calendar = calendars.get(key);
+
+        if (Objects.nonNull(calendar) && calendar.covers(fromDay, toDay)) {
+            return calendar;
+        }
+
+        calendar = buildCalendar(productionLine, calendar, fromDay, toDay);
+
+        synchronized (this) {
+            if (currentVersion == version) {
+                calendars.put(key, calendar);
+            }
+        }
+
+        return calendar;
+    }
+
+    private WorkingTimeCalendar buildCalendar(final Entity productionLine, final WorkingTimeCalendar calendar,
+            final LocalDate fromDay, final LocalDate toDay) {
+        List<Shift> shifts = shiftsService.findAll(productionLine);
+        List<List<DateTimeRange>> workTimesPerDay = Lists.newArrayList();
+        List<Long> availableTimeMillisPerDay = Lists.newArrayList();
+
+        if (Objects.isNull(calendar) || Days.daysBetween(min(fromDay, calendar.getFirstDay()),
+                max(toDay, calendar.getLastDay())).getDays() >= L_MAX_CALENDAR_DAYS) {
+            collectDays(productionLine, shifts, fromDay, toDay, workTimesPerDay, availableTimeMillisPerDay);
+
+            return new WorkingTimeCalendar(fromDay, workTimesPerDay, availableTimeMillisPerDay);
+        }
+
+        LocalDate firstDay = min(fromDay, calendar.getFirstDay());
+
+        if (firstDay.isBefore(calendar.getFirstDay())) {
+            collectDays(productionLine, shifts, firstDay, calendar.getFirstDay().minusDays(1), workTimesPerDay,
+                    availableTimeMillisPerDay);
+        }
+
+        for (LocalDate day = calendar.getFirstDay(); !day.isAfter(calendar.getLastDay()); day = day.plusDays(1)) {
+            workTimesPerDay.add(calendar.getWorkTimes(day));
+            availableTimeMillisPerDay.add(calendar.getAvailableTimeMillis(day, day));
+        }
+
+        if (toDay.isAfter(calendar.getLastDay())) {
+            collectDays(productionLine, shifts, calendar.getLastDay().plusDays(1), toDay, workTimesPerDay,
+                    availableTimeMillisPerDay);
+        }
+
+        return new WorkingTimeCalendar(firstDay, workTimesPerDay, availableTimeMillisPerDay);
+    }
+
+    private void collectDays(final Entity productionLine, final List<Shift> shifts, final LocalDate fromDay,
+            final LocalDate toDay, final List<List<DateTimeRange>> workTimesPerDay, final List<Long> availableTimeMillisPerDay) {
+        Map<Long, List<Entity>> exceptionsByShiftId = Maps.newHashMap();
+
+        for (Shift shift : shifts) {
+            if (Objects.isNull(productionLine)) {
+                exceptionsByShiftId.put(shift.getId(), shift.getEntity().getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS));
+            } else {
+                exceptionsByShiftId.put(shift.getId(),
+                        timetableExceptionService.findFor(productionLine, shift.getEntity(), fromDay.toDate(), toDay.toDate()));
+            }
+        }
+
+        for (LocalDate day = fromDay; !day.isAfter(toDay); day = day.plusDays(1)) {
+            DateTime dateOfDay = day.toDateTimeAtStartOfDay();
+            List<DateTimeRange> workTimes = Lists.newArrayList();
+            long availableTimeMillis = 0L;
+
+            for (Shift shift : shifts) {
+                List<Entity> exceptions = exceptionsByShiftId.get(shift.getId());
+
+                if (Objects.nonNull(productionLine)) {
+                    exceptions = shiftExceptionService.filterExceptionsForDay(exceptions, day);
+                }
+
+                List<DateTimeRange> shiftWorkTimes = shiftExceptionService.getShiftWorkDateTimes(shift, dateOfDay);
+
+                workTimes.addAll(shiftExceptionService.manageExceptions(shiftWorkTimes, shift, exceptions, dateOfDay.toDate(),
+                        true));
+
+                for (DateTimeRange range : shiftExceptionService.manageExceptions(shiftWorkTimes, shift, exceptions,
+                        dateOfDay.toDate(), false)) {
+                    availableTimeMillis += range.durationMillis();
+                }
+            }
+
+            workTimesPerDay.add(workTimes);
+            availableTimeMillisPerDay.add(availableTimeMillis);
+        }
+    }
+
+    private LocalDate min(final LocalDate day, final LocalDate otherDay) {
+        return day.isBefore(otherDay) ? day : otherDay;
+    }
+
+    private LocalDate max(final LocalDate day, final LocalDate otherDay) {
+        return day.isAfter(otherDay) ? day : otherDay;
+    }
+
+    /**
+     * Drops all calendars, should be called when shifts or timetable exceptions change.
+     */
+    public void invalidate() {
+        invalidate(L_WITHOUT_PRODUCTION_LINE, true);
+    }
+
+    /**
+     * Drops calendar of given production line, should be called when production line changes.
+     * 
+     * @param productionLine
+     *            changed production line
+     */
+    public void invalidate(final Entity productionLine) {
+        if (Objects.nonNull(productionLine.getId())) {
+            invalidate(productionLine.getId(), false);
+        }
+    }
+
+    private void invalidate(final Long key, final boolean all) {
+        clear(key, all);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(int status) {
+                    super.afterCompletion(status);
+
+                    clear(key, all);
+                }
+            });
+        }
+    }
+
+    private synchronized void clear(final Long key, final boolean all) {
+        version++;
+
+        if (all) {
+            calendars.clear();
+            shiftsExist = null;
+        } else {
+            calendars.remove(key);
+        }
+    }
+
+    private DataDefinition getShiftDD() {
+        return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT);
+    }
+
+}
@@ -0,0 +1,154 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.notifications;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Holds counts shown by notifications, so browsers polling for notifications share one query per counter and group of users
+ * instead of running it on every poll. A count is reloaded on the next poll after its counter is invalidated, and after
+ * {@link #maxAge} milliseconds at the latest.
+ */
+@Service
+public class NotificationCountersService {
+
+    private static final String L_INVALIDATION_KEY_PREFIX = NotificationCountersService.class.getName() + ".";
+
+    @Value("${notifications.countersMaxAge:10000}")
+    private long maxAge;
+
+    private LongSupplier clock = System::currentTimeMillis;
+
+    private final Map<String, NotificationCounter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * @param counterName
+     *            name of the counter, shared by all groups
+     * @param groupKey
+     *            key of the users group sharing the count, e.g. their factory
+     * @param loader
+     *            loads the count from the database, called at most once per group at a time
+     * @return count loaded not earlier than {@link #maxAge} milliseconds ago and not before the last invalidation
+     */
+    public long getCount(final String counterName, final Object groupKey, final Supplier<Long> loader) {
+        return getCounter(counterName).getCount(groupKey, loader);
+    }
+
+    /**
+     * Marks counts of given counter to be reloaded once the current transaction commits.
+     */
+    public void invalidate(final String counterName) {
+        NotificationCounter counter = getCounter(counterName);
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            counter.invalidate();
+
+            return;
+        }
+
+        String invalidationKey = L_INVALIDATION_KEY_PREFIX + counterName;
+
+        if (TransactionSynchronizationManager.hasResource(invalidationKey)) {
+            return;
+        }
+
+        TransactionSynchronizationManager.bindResource(invalidationKey, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            @Override
+            public void afterCompletion(final int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(invalidationKey);
+
+                if (STATUS_COMMITTED == status) {
+                    counter.invalidate();
+                }
+            }
+        });
+    }
+
+    private NotificationCounter getCounter(final String counterName) {
+        return counters.computeIfAbsent(counterName, name -> new NotificationCounter());
+    }
+
+    private final class NotificationCounter {
+
+        private final Map<Object, CountSnapshot> snapshots = new ConcurrentHashMap<>();
+
+        private final AtomicLong generation = new AtomicLong();
+
+        private long getCount(final Object groupKey, final Supplier<Long> loader) {
+            CountSnapshot snapshot = snapshots.get(groupKey);
+
+            if (!isValid(snapshot)) {
+                snapshot = snapshots.compute(groupKey, (key, current) -> isValid(current) ? current : load(loader));
+            }
+
+            return snapshot.count;
+        }
+
+        private boolean isValid(final CountSnapshot snapshot) {
+            return Objects.nonNull(snapshot) && snapshot.generation == generation.get()
+                    && clock.getAsLong() - snapshot.loadTime <= maxAge;
+        }
+
+        private CountSnapshot load(final Supplier<Long> loader) {
+            long loadGeneration = generation.get();
+            long loadTime = clock.getAsLong();
+
+            return new CountSnapshot(loader.get(), loadTime, loadGeneration);
+        }
+
+        private void invalidate() {
+            generation.incrementAndGet();
+        }
+
+    }
+
+    private static final class CountSnapshot {
+
+        private final long count;
+
+        private final long loadTime;
+
+        private final long generation;
+
+        private CountSnapshot(final long count, final long loadTime, final long generation) {
+            this.count = count;
+            this.loadTime = loadTime;
+            this.generation = generation;
+        }
+
+    }
+
+}
@@ -0,0 +1,77 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xlsx;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Base class for generated reports saved as XLSX files. Workbooks are written with {@link SXSSFWorkbook}, which keeps only a
+ * sliding window of rows in memory and flushes older rows to a temporary file, so neither the memory used nor the number of
+ * rows is limited by the size of the report.
+ */
+public abstract class XlsxDocumentService {
+
+    public static final String XLSX_EXTENSION = ".xlsx";
+
+    public static final String XLSX_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+    private static final String L_FILE_NAME = "fileName";
+
+    private static final int L_ROW_ACCESS_WINDOW_SIZE = 100;
+
+    public void generateDocument(final Entity entity, final Locale locale) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(L_ROW_ACCESS_WINDOW_SIZE);
+
+        workbook.setCompressTempFiles(true);
+
+        try (OutputStream outputStream = new FileOutputStream(getFilePath(entity))) {
+            addSheets(workbook, new XlsxStylesContainer(workbook), entity, locale);
+
+            workbook.write(outputStream);
+        } finally {
+            workbook.dispose();
+        }
+    }
+
+    public static String getFilePath(final Entity entity) {
+        return entity.getStringField(L_FILE_NAME) + XLSX_EXTENSION;
+    }
+
+    protected XlsxSheetWriter createSheet(final SXSSFWorkbook workbook, final XlsxStylesContainer stylesContainer,
+            final String title) {
+        return new XlsxSheetWriter(workbook.createSheet(WorkbookUtil.createSafeSheetName(title)), stylesContainer);
+    }
+
+    protected abstract void addSheets(final SXSSFWorkbook workbook, final XlsxStylesContainer stylesContainer,
+            final Entity entity, final Locale locale);
+
+}
@@ -0,0 +1,152 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xlsx;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Writes rows of one sheet in order. Only the rows inside the workbook's row access window are kept in memory, so column
+ * widths are computed from the lengths of written values instead of using {@link Sheet#autoSizeColumn(int)}, which would
+ * only see the rows still in memory.
+ */
+public class XlsxSheetWriter {
+
+    private static final int L_MAX_COLUMN_LENGTH = 100;
+
+    private static final int L_COLUMN_PADDING = 2;
+
+    private static final int L_TIME_LENGTH = 9;
+
+    private static final int L_DATE_TIME_LENGTH = 16;
+
+    private final Sheet sheet;
+
+    private final XlsxStylesContainer stylesContainer;
+
+    private final Map<Integer, Integer> columnLengths = Maps.newHashMap();
+
+    private Row row;
+
+    private int rowIndex = 0;
+
+    public XlsxSheetWriter(final Sheet sheet, final XlsxStylesContainer stylesContainer) {
+        this.sheet = sheet;
+        this.stylesContainer = stylesContainer;
+    }
+
+    public void addHeaderRow(final List<String> headers) {
+        nextRow();
+
+        for (int column = 0; column < headers.size(); column++) {
+            Cell cell = row.createCell(column);
+
+            cell.setCellValue(headers.get(column));
+            cell.setCellStyle(stylesContainer.getHeaderStyle());
+
+            updateColumnLength(column, headers.get(column));
+        }
+    }
+
+    public void nextRow() {
+        row = sheet.createRow(rowIndex);
+
+        rowIndex++;
+    }
+
+    public void addRegularCell(final int column, final String value) {
+        Cell cell = row.createCell(column);
+
+        cell.setCellValue(value);
+        cell.setCellStyle(stylesContainer.getRegularStyle());
+
+        updateColumnLength(column, value);
+    }
+
+    public void addNumericCell(final int column, final BigDecimal value, final boolean bold) {
+        Cell cell = row.createCell(column, Cell.CELL_TYPE_NUMERIC);
+
+        cell.setCellValue(value.doubleValue());
+        cell.setCellStyle(stylesContainer.getNumberStyle(bold));
+
+        updateColumnLength(column, value.toPlainString());
+    }
+
+    public void addTimeCell(final int column, final Integer value, final boolean bold) {
+        Cell cell = row.createCell(column, Cell.CELL_TYPE_NUMERIC);
+        int seconds = (value == null) ? 0 : value;
+
+        cell.setCellValue(Math.abs(seconds) / 86400d);
+
+        if (seconds >= 0) {
+            cell.setCellStyle(stylesContainer.getTimeStyle(bold));
+        } else {
+            cell.setCellStyle(stylesContainer.getNegativeTimeStyle());
+        }
+
+        updateColumnLength(column, L_TIME_LENGTH);
+    }
+
+    public void addDateTimeCell(final int column, final Date value) {
+        Cell cell = row.createCell(column);
+
+        if (value != null) {
+            cell.setCellValue(value);
+            cell.setCellStyle(stylesContainer.getDateTimeStyle());
+
+            updateColumnLength(column, L_DATE_TIME_LENGTH);
+        }
+    }
+
+    private void updateColumnLength(final int column, final String value) {
+        if (value != null) {
+            updateColumnLength(column, value.length());
+        }
+    }
+
+    private void updateColumnLength(final int column, final int length) {
+        columnLengths.merge(column, length, Math::max);
+    }
+
+    public void autoSizeColumns() {
+        for (Map.Entry<Integer, Integer> columnLength : columnLengths.entrySet()) {
+            int length = Math.min(columnLength.getValue() + L_COLUMN_PADDING, L_MAX_COLUMN_LENGTH);
+
+            sheet.setColumnWidth(columnLength.getKey(), length * 256);
+        }
+    }
+
+    public int getRowIndex() {
+        return rowIndex;
+    }
+
+}
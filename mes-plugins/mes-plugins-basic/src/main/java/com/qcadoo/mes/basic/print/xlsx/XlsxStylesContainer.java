@@ -0,0 +1,125 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xlsx;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Cell styles shared by all sheets of one workbook. Styles are created once, with their alignment, and never modified when
+ * cells are written, so the workbook contains a fixed number of styles regardless of report size.
+ */
+public class XlsxStylesContainer {
+
+    private static final String L_TIME_FORMAT = "[HH]:MM:SS";
+
+    private static final String L_NEGATIVE_TIME_FORMAT = "-[HH]:MM:SS";
+
+    private static final String L_NUMBER_FORMAT = "0.00###";
+
+    private static final String L_DATE_TIME_FORMAT = "yyyy-mm-dd hh:mm";
+
+    private final CellStyle headerStyle;
+
+    private final CellStyle regularStyle;
+
+    private final CellStyle numberStyle;
+
+    private final CellStyle numberBoldStyle;
+
+    private final CellStyle timeStyle;
+
+    private final CellStyle timeBoldStyle;
+
+    private final CellStyle negativeTimeStyle;
+
+    private final CellStyle dateTimeStyle;
+
+    public XlsxStylesContainer(final Workbook workbook) {
+        Font boldFont = workbook.createFont();
+        boldFont.setBoldweight(Font.BOLDWEIGHT_BOLD);
+
+        DataFormat dataFormat = workbook.createDataFormat();
+
+        headerStyle = workbook.createCellStyle();
+        headerStyle.setFont(boldFont);
+        headerStyle.setFillPattern(CellStyle.SOLID_FOREGROUND);
+        headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
+        headerStyle.setBorderBottom(CellStyle.BORDER_MEDIUM);
+        headerStyle.setWrapText(true);
+        headerStyle.setAlignment(CellStyle.ALIGN_LEFT);
+
+        regularStyle = workbook.createCellStyle();
+        regularStyle.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
+        regularStyle.setAlignment(CellStyle.ALIGN_LEFT);
+
+        numberStyle = createStyle(workbook, dataFormat.getFormat(L_NUMBER_FORMAT), null);
+        numberBoldStyle = createStyle(workbook, dataFormat.getFormat(L_NUMBER_FORMAT), boldFont);
+        timeStyle = createStyle(workbook, dataFormat.getFormat(L_TIME_FORMAT), null);
+        timeBoldStyle = createStyle(workbook, dataFormat.getFormat(L_TIME_FORMAT), boldFont);
+        negativeTimeStyle = createStyle(workbook, dataFormat.getFormat(L_NEGATIVE_TIME_FORMAT), null);
+        dateTimeStyle = createStyle(workbook, dataFormat.getFormat(L_DATE_TIME_FORMAT), null);
+    }
+
+    private CellStyle createStyle(final Workbook workbook, final short format, final Font font) {
+        CellStyle style = workbook.createCellStyle();
+
+        style.setDataFormat(format);
+        style.setAlignment(CellStyle.ALIGN_RIGHT);
+
+        if (font != null) {
+            style.setFont(font);
+        }
+
+        return style;
+    }
+
+    public CellStyle getHeaderStyle() {
+        return headerStyle;
+    }
+
+    public CellStyle getRegularStyle() {
+        return regularStyle;
+    }
+
+    public CellStyle getNumberStyle(final boolean bold) {
+        return bold ? numberBoldStyle : numberStyle;
+    }
+
+    public CellStyle getTimeStyle(final boolean bold) {
+        return bold ? timeBoldStyle : timeStyle;
+    }
+
+    public CellStyle getNegativeTimeStyle() {
+        return negativeTimeStyle;
+    }
+
+    public CellStyle getDateTimeStyle() {
+        return dateTimeStyle;
+    }
+
+}
@@ -0,0 +1,188 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.joda.time.DateTime;
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+
+/**
+ * Working time of a production line materialized for a continuous range of days.
+ * 
+ * For every day it keeps work time ranges of all shifts (in shift id order) with timetable exceptions applied, the same way
+ * {@link com.qcadoo.mes.basic.ShiftExceptionService#getShiftWorkDateTimes} returns them, together with cumulative sums of their
+ * durations. Thanks to that finding the moment when given amount of working time ends and summing available time between days
+ * do not need to walk through the days one by one.
+ */
+public class WorkingTimeCalendar {
+
+    private final LocalDate firstDay;
+
+    private final int numberOfDays;
+
+    private final List<DateTimeRange> workTimes;
+
+    private final int[] firstWorkTimeIndexes;
+
+    private final long[] cumulativeWorkTimeMillis;
+
+    private final long[] cumulativeAvailableTimeMillis;
+
+    /**
+     * @param firstDay
+     *            first day of calendar
+     * @param workTimesPerDay
+     *            work time ranges of consecutive days, without free time exceptions
+     * @param availableTimeMillisPerDay
+     *            available time of consecutive days, including free time exceptions
+     */
+    public WorkingTimeCalendar(final LocalDate firstDay, final List<List<DateTimeRange>> workTimesPerDay,
+            final List<Long> availableTimeMillisPerDay) {
+        Preconditions.checkArgument(workTimesPerDay.size() == availableTimeMillisPerDay.size(),
+                "Work times and available times have to cover the same days.");
+
+        this.firstDay = firstDay;
+        this.numberOfDays = workTimesPerDay.size();
+        this.workTimes = Lists.newArrayList();
+        this.firstWorkTimeIndexes = new int[numberOfDays + 1];
+        this.cumulativeAvailableTimeMillis = new long[numberOfDays + 1];
+
+        for (int day = 0; day < numberOfDays; day++) {
+            firstWorkTimeIndexes[day] = workTimes.size();
+            cumulativeAvailableTimeMillis[day + 1] = cumulativeAvailableTimeMillis[day] + availableTimeMillisPerDay.get(day);
+
+            workTimes.addAll(workTimesPerDay.get(day));
+        }
+
+        firstWorkTimeIndexes[numberOfDays] = workTimes.size();
+
+        this.cumulativeWorkTimeMillis = new long[workTimes.size() + 1];
+
+        for (int index = 0; index < workTimes.size(); index++) {
+            cumulativeWorkTimeMillis[index + 1] = cumulativeWorkTimeMillis[index] + workTimes.get(index).durationMillis();
+        }
+    }
+
+    public LocalDate getFirstDay() {
+        return firstDay;
+    }
+
+    public LocalDate getLastDay() {
+        return firstDay.plusDays(numberOfDays - 1);
+    }
+
+    public boolean covers(final LocalDate fromDay, final LocalDate toDay) {
+        return numberOfDays > 0 && !fromDay.isBefore(firstDay) && !toDay.isAfter(getLastDay());
+    }
+
+    /**
+     * Returns work time ranges of given day, without free time exceptions.
+     * 
+     * @param day
+     *            day covered by calendar
+     * @return work time ranges in shift order
+     */
+    public List<DateTimeRange> getWorkTimes(final LocalDate day) {
+        int dayIndex = getDayIndex(day);
+
+        return Collections.unmodifiableList(workTimes.subList(firstWorkTimeIndexes[dayIndex],
+                firstWorkTimeIndexes[dayIndex + 1]));
+    }
+
+    /**
+     * Returns available time of given days, including free time exceptions.
+     * 
+     * @param fromDay
+     *            first day, inclusive
+     * @param toDay
+     *            last day, inclusive
+     * @return available time in milliseconds
+     */
+    public long getAvailableTimeMillis(final LocalDate fromDay, final LocalDate toDay) {
+        if (toDay.isBefore(fromDay)) {
+            return 0L;
+        }
+
+        return cumulativeAvailableTimeMillis[getDayIndex(toDay) + 1] - cumulativeAvailableTimeMillis[getDayIndex(fromDay)];
+    }
+
+    /**
+     * Finds the moment when given amount of work time, counted from the beginning of the first day, ends.
+     * 
+     * @param fromDay
+     *            first day, inclusive
+     * @param toDay
+     *            last day, inclusive
+     * @param millis
+     *            work time in milliseconds, greater than zero
+     * @return end of work time or empty when there is not enough work time in given days
+     */
+    public Optional<DateTime> findWorkTimeEnd(final LocalDate fromDay, final LocalDate toDay, final long millis) {
+        if (toDay.isBefore(fromDay)) {
+            return Optional.empty();
+        }
+
+        int fromIndex = firstWorkTimeIndexes[getDayIndex(fromDay)];
+        int toIndex = firstWorkTimeIndexes[getDayIndex(toDay) + 1];
+        long targetMillis = cumulativeWorkTimeMillis[fromIndex] + millis;
+
+        if (fromIndex == toIndex || cumulativeWorkTimeMillis[toIndex] < targetMillis) {
+            return Optional.empty();
+        }
+
+        int low = fromIndex;
+        int high = toIndex - 1;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (cumulativeWorkTimeMillis[middle + 1] < targetMillis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        long leftMillis = targetMillis - cumulativeWorkTimeMillis[low];
+
+        return Optional.of(workTimes.get(low).getFrom().plusMillis((int) leftMillis));
+    }
+
+    private int getDayIndex(final LocalDate day) {
+        int dayIndex = Days.daysBetween(firstDay, day).getDays();
+
+        Preconditions.checkArgument(dayIndex >= 0 && dayIndex < numberOfDays, "Day %s is not covered by calendar.", day);
+
+        return dayIndex;
+    }
+
+}
@@ -0,0 +1,57 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.util;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+@Service
+public class StreamingJdbcTemplateFactory {
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Creates template fetching rows from the shared data source in chunks of the given size. The driver only fetches rows
+     * through a cursor for queries run in a transaction. Templates are meant to be created once, when the bean using them is
+     * initialized.
+     */
+    public NamedParameterJdbcTemplate create(final int fetchSize) {
+        JdbcOperations jdbcOperations = jdbcTemplate.getJdbcOperations();
+
+        if (jdbcOperations instanceof JdbcTemplate) {
+            JdbcTemplate fetchingJdbcTemplate = new JdbcTemplate(((JdbcTemplate) jdbcOperations).getDataSource());
+
+            fetchingJdbcTemplate.setFetchSize(fetchSize);
+
+            return new NamedParameterJdbcTemplate(fetchingJdbcTemplate);
+        }
+
+        return jdbcTemplate;
+    }
+
+}
@@ -41,6 +41,7 @@ QCD.dashboard = (function () {
 		registerChart();
 		registerButtons();
 		registerKanban();
+		registerKanbanRefresh();
 	}
 
 	function registerChart() {
@@ -164,6 +165,52 @@ QCD.dashboard = (function () {
         );
     }
 
+    function registerKanbanRefresh() {
+        if ($('#dashboardKanban #ordersPending').length || $('#dashboardKanban #operationalTasksPending').length) {
+            setInterval(refreshKanban, 15000);
+        }
+    }
+
+    function refreshKanban() {
+        if ($('#dashboardKanban #ordersPending').length) {
+            refreshKanbanColumn('ordersPending', appendOrder);
+            refreshKanbanColumn('ordersInProgress', appendOrder);
+            refreshKanbanColumn('ordersCompleted', appendOrder);
+        }
+        if ($('#dashboardKanban #operationalTasksPending').length) {
+            refreshKanbanColumn('operationalTasksPending', appendOperationalTask);
+            refreshKanbanColumn('operationalTasksInProgress', appendOperationalTask);
+            refreshKanbanColumn('operationalTasksCompleted', appendOperationalTask);
+        }
+    }
+
+    function refreshKanbanColumn(columnType, appendItem) {
+        $.ajax({
+            url : "/rest/dashboardKanban/" + columnType,
+            type : "GET",
+            ifModified : true,
+            success : function(data, textStatus) {
+                if (textStatus === "notmodified") {
+                    return;
+                }
+
+                QCD.dashboardContext[columnType] = data;
+
+                $('#' + columnType).empty();
+                $.each(data, function (i, item) {
+                    appendItem(columnType, item);
+                });
+
+                if ($('#dashboardKanban #ordersPending').length) {
+                    updateDropzones();
+                }
+            },
+            error : function(data) {
+                console.log("error")
+            }
+        });
+    }
+
     function appendOrder(ordersType, order) {
         $('#' + ordersType).append(
             createOrderDiv(order)
@@ -243,11 +290,14 @@ QCD.dashboard = (function () {
             url : "/rest/dashboardKanban/ordersPending",
             type : "GET",
             async : false,
+            ifModified : true,
             beforeSend : function() {
                 //$("#loader").modal('show');
             },
-            success : function(data) {
-                QCD.dashboardContext.ordersPending = data;
+            success : function(data, textStatus) {
+                if (textStatus !== "notmodified") {
+                    QCD.dashboardContext.ordersPending = data;
+                }
             },
             error : function(data) {
                 console.log("error")
@@ -263,11 +313,14 @@ QCD.dashboard = (function () {
             url : "/rest/dashboardKanban/ordersInProgress",
             type : "GET",
             async : false,
+            ifModified : true,
             beforeSend : function() {
                 //$("#loader").modal('show');
             },
-            success : function(data) {
-                QCD.dashboardContext.ordersInProgress = data;
+            success : function(data, textStatus) {
+                if (textStatus !== "notmodified") {
+                    QCD.dashboardContext.ordersInProgress = data;
+                }
             },
             error : function(data) {
                 console.log("error")
@@ -283,11 +336,14 @@ QCD.dashboard = (function () {
             url : "/rest/dashboardKanban/ordersCompleted",
             type : "GET",
             async : false,
+            ifModified : true,
             beforeSend : function() {
                 //$("#loader").modal('show');
             },
-            success : function(data) {
-                QCD.dashboardContext.ordersCompleted = data;
+            success : function(data, textStatus) {
+                if (textStatus !== "notmodified") {
+                    QCD.dashboardContext.ordersCompleted = data;
+                }
             },
             error : function(data) {
                 console.log("error")
@@ -311,11 +367,14 @@ QCD.dashboard = (function () {
             url : "/rest/dashboardKanban/operationalTasksPending",
             type : "GET",
             async : false,
+            ifModified : true,
             beforeSend : function() {
                 //$("#loader").modal('show');
             },
-            success : function(data) {
-                QCD.dashboardContext.operationalTasksPending = data;
+            success : function(data, textStatus) {
+                if (textStatus !== "notmodified") {
+                    QCD.dashboardContext.operationalTasksPending = data;
+                }
             },
             error : function(data) {
                 console.log("error")
@@ -331,11 +390,14 @@ QCD.dashboard = (function () {
             url : "/rest/dashboardKanban/operationalTasksInProgress",
             type : "GET",
             async : false,
+            ifModified : true,
             beforeSend : function() {
                 //$("#loader").modal('show');
             },
-            success : function(data) {
-                QCD.dashboardContext.operationalTasksInProgress = data;
+            success : function(data, textStatus) {
+                if (textStatus !== "notmodified") {
+                    QCD.dashboardContext.operationalTasksInProgress = data;
+                }
             },
             error : function(data) {
                 console.log("error")
@@ -351,11 +413,14 @@ QCD.dashboard = (function () {
             url : "/rest/dashboardKanban/operationalTasksCompleted",
             type : "GET",
             async : false,
+            ifModified : true,
             beforeSend : function() {
                 //$("#loader").modal('show');
             },
-            success : function(data) {
-                QCD.dashboardContext.operationalTasksCompleted = data;
+            success : function(data, textStatus) {
+                if (textStatus !== "notmodified") {
+                    QCD.dashboardContext.operationalTasksCompleted = data;
+                }
             },
             error : function(data) {
                 console.log("error")
@@ -0,0 +1,181 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.constants.ShiftFields;
+import com.qcadoo.mes.basic.constants.ShiftTimetableExceptionFields;
+import com.qcadoo.mes.basic.constants.TimetableExceptionType;
+import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+
+public class ShiftExceptionServiceTest {
+
+    private static final LocalDate FROM_DAY = new LocalDate(2020, 3, 2);
+
+    private static final LocalDate TO_DAY = new LocalDate(2020, 3, 15);
+
+    private ShiftExceptionService shiftExceptionService;
+
+    @Mock
+    private TimetableExceptionService timetableExceptionService;
+
+    @Mock
+    private Entity productionLine;
+
+    @Mock
+    private Entity shiftEntity;
+
+    private List<Entity> exceptions;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        shiftExceptionService = new ShiftExceptionService();
+
+        ReflectionTestUtils.setField(shiftExceptionService, "timetableExceptionService", timetableExceptionService);
+
+        given(shiftEntity.copy()).willReturn(shiftEntity);
+        given(shiftEntity.getBooleanField(anyString())).willReturn(true);
+        given(shiftEntity.getBooleanField(ShiftFields.SATURDAY_WORKING)).willReturn(false);
+        given(shiftEntity.getBooleanField(ShiftFields.SUNDAY_WORKING)).willReturn(false);
+        given(shiftEntity.getStringField(anyString())).willReturn("6:00-14:00, 22:00-6:00");
+
+        exceptions = Lists.newArrayList(
+                mockTimetableException(TimetableExceptionType.FREE_TIME, new DateTime(2020, 3, 3, 8, 0),
+                        new DateTime(2020, 3, 3, 10, 0)),
+                mockTimetableException(TimetableExceptionType.FREE_TIME, new DateTime(2020, 3, 5, 20, 0),
+                        new DateTime(2020, 3, 6, 7, 0)),
+                mockTimetableException(TimetableExceptionType.WORK_TIME, new DateTime(2020, 3, 7, 8, 0),
+                        new DateTime(2020, 3, 7, 12, 0)),
+                mockTimetableException(TimetableExceptionType.WORK_TIME, new DateTime(2020, 3, 9, 14, 0),
+                        new DateTime(2020, 3, 9, 18, 0)));
+
+        given(timetableExceptionService.findFor(eq(productionLine), eq(shiftEntity), any(Date.class))).willAnswer(
+                invocation -> findExceptions((Date) invocation.getArguments()[2], (Date) invocation.getArguments()[2]));
+        given(timetableExceptionService.findFor(eq(productionLine), eq(shiftEntity), any(Date.class), any(Date.class)))
+                .willAnswer(invocation -> findExceptions((Date) invocation.getArguments()[2],
+                        (Date) invocation.getArguments()[3]));
+    }
+
+    @Test
+    public void shouldReturnSameWorkTimesAsPerDayLookupForProductionLine() {
+        // given
+        mockShiftTimetableExceptions(Lists.newArrayList());
+
+        Shift shift = new Shift(shiftEntity);
+
+        for (boolean removeFreeTimeException : new boolean[] { true, false }) {
+            // when
+            Map<LocalDate, List<DateTimeRange>> shiftWorkDateTimes = shiftExceptionService.getShiftWorkDateTimes(productionLine,
+                    shift, FROM_DAY, TO_DAY, removeFreeTimeException);
+
+            // then
+            assertSameAsPerDayLookup(productionLine, shift, shiftWorkDateTimes, removeFreeTimeException);
+        }
+
+        verify(timetableExceptionService, times(2)).findFor(eq(productionLine), eq(shiftEntity), any(Date.class),
+                any(Date.class));
+    }
+
+    @Test
+    public void shouldReturnSameWorkTimesAsPerDayLookupWithoutProductionLine() {
+        // given
+        mockShiftTimetableExceptions(exceptions);
+
+        Shift shift = new Shift(shiftEntity);
+
+        for (boolean removeFreeTimeException : new boolean[] { true, false }) {
+            // when
+            Map<LocalDate, List<DateTimeRange>> shiftWorkDateTimes = shiftExceptionService.getShiftWorkDateTimes(null, shift,
+                    FROM_DAY, TO_DAY, removeFreeTimeException);
+
+            // then
+            assertSameAsPerDayLookup(null, shift, shiftWorkDateTimes, removeFreeTimeException);
+        }
+    }
+
+    private void assertSameAsPerDayLookup(final Entity productionLine, final Shift shift,
+            final Map<LocalDate, List<DateTimeRange>> shiftWorkDateTimes, final boolean removeFreeTimeException) {
+        assertEquals(TO_DAY.getDayOfYear() - FROM_DAY.getDayOfYear() + 1, shiftWorkDateTimes.size());
+
+        for (LocalDate day = FROM_DAY; !day.isAfter(TO_DAY); day = day.plusDays(1)) {
+            assertEquals(day.toString(), shiftExceptionService.getShiftWorkDateTimes(productionLine, shift,
+                    day.toDateTimeAtStartOfDay(), removeFreeTimeException), shiftWorkDateTimes.get(day));
+        }
+    }
+
+    private List<Entity> findExceptions(final Date dateFrom, final Date dateTo) {
+        return exceptions.stream()
+                .filter(exception -> !new LocalDate(dateTo)
+                        .isBefore(new LocalDate(exception.getDateField(ShiftTimetableExceptionFields.FROM_DATE)))
+                        && !new LocalDate(dateFrom)
+                                .isAfter(new LocalDate(exception.getDateField(ShiftTimetableExceptionFields.TO_DATE))))
+                .collect(Collectors.toList());
+    }
+
+    private void mockShiftTimetableExceptions(final List<Entity> entities) {
+        EntityList entityList = mock(EntityList.class);
+
+        given(entityList.iterator()).willAnswer(invocation -> entities.iterator());
+        given(entityList.isEmpty()).willReturn(entities.isEmpty());
+        given(shiftEntity.getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS)).willReturn(entityList);
+    }
+
+    private Entity mockTimetableException(final TimetableExceptionType type, final DateTime from, final DateTime to) {
+        Entity timetableException = mock(Entity.class);
+
+        given(timetableException.getStringField(ShiftTimetableExceptionFields.TYPE)).willReturn(type.getStringValue());
+        given(timetableException.getDateField(ShiftTimetableExceptionFields.FROM_DATE)).willReturn(from.toDate());
+        given(timetableException.getDateField(ShiftTimetableExceptionFields.TO_DATE)).willReturn(to.toDate());
+
+        return timetableException;
+    }
+
+}
@@ -0,0 +1,253 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.notifications;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class NotificationCountersServiceTest {
+
+    private static final long L_MAX_AGE = 10000L;
+
+    private static final String L_COUNTER = "counter";
+
+    private static final String L_OTHER_COUNTER = "otherCounter";
+
+    private NotificationCountersService notificationCountersService;
+
+    private final AtomicLong time = new AtomicLong(1000000L);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final Supplier<Long> loader = () -> {
+        loads.incrementAndGet();
+
+        return count.get();
+    };
+
+    @Before
+    public void init() {
+        notificationCountersService = new NotificationCountersService();
+
+        ReflectionTestUtils.setField(notificationCountersService, "maxAge", L_MAX_AGE);
+        ReflectionTestUtils.setField(notificationCountersService, "clock", (LongSupplier) time::get);
+    }
+
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void shouldServeAllPollsWithinMaxAgeFromOneLoad() {
+        // given
+        count.set(3L);
+
+        // when
+        long first = notificationCountersService.getCount(L_COUNTER, 1L, loader);
+
+        count.set(5L);
+        time.addAndGet(L_MAX_AGE);
+
+        long second = notificationCountersService.getCount(L_COUNTER, 1L, loader);
+
+        // then
+        assertEquals(3L, first);
+        assertEquals(3L, second);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void shouldNeverLagMoreThanMaxAge() {
+        // given
+        notificationCountersService.getCount(L_COUNTER, 1L, loader);
+
+        for (int poll = 1; poll <= 100; poll++) {
+            // when
+            count.set(poll);
+            time.addAndGet(L_MAX_AGE / 3);
+
+            long changeTime = time.get();
+
+            while (notificationCountersService.getCount(L_COUNTER, 1L, loader) != poll) {
+                time.addAndGet(1000L);
+            }
+
+            // then
+            assertTrue(time.get() - changeTime <= L_MAX_AGE);
+        }
+    }
+
+    @Test
+    public void shouldReloadAfterMaxAge() {
+        // given
+        count.set(3L);
+        notificationCountersService.getCount(L_COUNTER, 1L, loader);
+        count.set(5L);
+
+        // when
+        time.addAndGet(L_MAX_AGE + 1);
+
+        long result = notificationCountersService.getCount(L_COUNTER, 1L, loader);
+
+        // then
+        assertEquals(5L, result);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void shouldLoadEachGroupSeparately() {
+        // given
+        count.set(3L);
+        notificationCountersService.getCount(L_COUNTER, 1L, loader);
+        count.set(5L);
+
+        // when
+        long firstGroup = notificationCountersService.getCount(L_COUNTER, 1L, loader);
+        long secondGroup = notificationCountersService.getCount(L_COUNTER, 2L, loader);
+
+        // then
+        assertEquals(3L, firstGroup);
+        assertEquals(5L, secondGroup);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void shouldReloadAfterInvalidationOutsideTransaction() {
+        // given
+        count.set(3L);
+        notificationCountersService.getCount(L_COUNTER, 1L, loader);
+        count.set(5L);
+
+        // when
+        notificationCountersService.invalidate(L_COUNTER);
+
+        long result = notificationCountersService.getCount(L_COUNTER, 1L, loader);
+
+        // then
+        assertEquals(5L, result);
+    }
+
+    @Test
+    public void shouldNotReloadOtherCountersAfterInvalidation() {
+        // given
+        count.set(3L);
+        notificationCountersService.getCount(L_COUNTER, 1L, loader);
+        count.set(5L);
+
+        // when
+        notificationCountersService.invalidate(L_OTHER_COUNTER);
+
+        long result = notificationCountersService.getCount(L_COUNTER, 1L, loader);
+
+        // then
+        assertEquals(3L, result);
+    }
+
+    @Test
+    public void shouldReloadOnlyAfterCommit() {
+        // given
+        count.set(3L);
+        notificationCountersService.getCount(L_COUNTER, 1L, loader);
+        TransactionSynchronizationManager.initSynchronization();
+
+        // when
+        notificationCountersService.invalidate(L_COUNTER);
+        notificationCountersService.invalidate(L_COUNTER);
+        count.set(5L);
+
+        long beforeCommit = notificationCountersService.getCount(L_COUNTER, 1L, loader);
+
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+
+        long afterCommit = notificationCountersService.getCount(L_COUNTER, 1L, loader);
+
+        // then
+        assertEquals(3L, beforeCommit);
+        assertEquals(5L, afterCommit);
+    }
+
+    @Test
+    public void shouldNotReloadAfterRollback() {
+        // given
+        count.set(3L);
+        notificationCountersService.getCount(L_COUNTER, 1L, loader);
+        TransactionSynchronizationManager.initSynchronization();
+
+        // when
+        notificationCountersService.invalidate(L_COUNTER);
+        count.set(5L);
+
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        long result = notificationCountersService.getCount(L_COUNTER, 1L, loader);
+
+        // then
+        assertEquals(3L, result);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void shouldReloadWhenInvalidatedDuringLoad() {
+        // given
+        Supplier<Long> invalidatingLoader = () -> {
+            notificationCountersService.invalidate(L_COUNTER);
+
+            return count.get();
+        };
+
+        count.set(3L);
+        notificationCountersService.getCount(L_COUNTER, 1L, invalidatingLoader);
+        count.set(5L);
+
+        // when
+        long result = notificationCountersService.getCount(L_COUNTER, 1L, loader);
+
+        // then
+        assertEquals(5L, result);
+    }
+
+    private void completeTransaction(final int status) {
+        TransactionSynchronizationManager.getSynchronizations().forEach(
+                synchronization -> synchronization.afterCompletion(status));
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+}
@@ -0,0 +1,120 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xlsx;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.model.api.Entity;
+
+public class XlsxDocumentServiceTest {
+
+    private static final int L_ROWS = 1000;
+
+    private XlsxDocumentService xlsxDocumentService;
+
+    @Mock
+    private Entity entity;
+
+    private File file;
+
+    @Before
+    public void init() throws IOException {
+        MockitoAnnotations.initMocks(this);
+
+        file = File.createTempFile("report", XlsxDocumentService.XLSX_EXTENSION);
+
+        String fileName = file.getAbsolutePath();
+
+        given(entity.getStringField("fileName")).willReturn(
+                fileName.substring(0, fileName.length() - XlsxDocumentService.XLSX_EXTENSION.length()));
+
+        xlsxDocumentService = new XlsxDocumentService() {
+
+            @Override
+            protected void addSheets(final SXSSFWorkbook workbook, final XlsxStylesContainer stylesContainer,
+                    final Entity entity, final Locale locale) {
+                XlsxSheetWriter sheet = createSheet(workbook, stylesContainer, "Orders/Products");
+
+                sheet.addHeaderRow(Lists.newArrayList("number"));
+
+                for (int i = 0; i < L_ROWS; i++) {
+                    sheet.nextRow();
+                    sheet.addRegularCell(0, "O" + i);
+                }
+
+                sheet.autoSizeColumns();
+            }
+
+        };
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void shouldReturnFilePathOfEntity() {
+        // when
+        String filePath = XlsxDocumentService.getFilePath(entity);
+
+        // then
+        assertEquals(file.getAbsolutePath(), filePath);
+    }
+
+    @Test
+    public void shouldWriteAllRowsOfSheetsToFile() throws IOException {
+        // when
+        xlsxDocumentService.generateDocument(entity, Locale.ENGLISH);
+
+        // then
+        try (InputStream inputStream = new FileInputStream(file)) {
+            Workbook workbook = new XSSFWorkbook(inputStream);
+
+            assertEquals(1, workbook.getNumberOfSheets());
+            assertEquals("Orders Products", workbook.getSheetName(0));
+            assertEquals(L_ROWS, workbook.getSheetAt(0).getLastRowNum());
+            assertEquals("number", workbook.getSheetAt(0).getRow(0).getCell(0).getStringCellValue());
+            assertEquals("O999", workbook.getSheetAt(0).getRow(L_ROWS).getCell(0).getStringCellValue());
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.print.xlsx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class XlsxSheetWriterTest {
+
+    private static final int L_ROW_ACCESS_WINDOW_SIZE = 10;
+
+    private SXSSFWorkbook workbook;
+
+    private XlsxStylesContainer stylesContainer;
+
+    private Sheet sheet;
+
+    private XlsxSheetWriter sheetWriter;
+
+    @Before
+    public void init() {
+        workbook = new SXSSFWorkbook(L_ROW_ACCESS_WINDOW_SIZE);
+        stylesContainer = new XlsxStylesContainer(workbook);
+        sheet = workbook.createSheet("sheet");
+        sheetWriter = new XlsxSheetWriter(sheet, stylesContainer);
+    }
+
+    @After
+    public void tearDown() {
+        workbook.dispose();
+    }
+
+    @Test
+    public void shouldWriteRowsInOrder() {
+        // given
+        Date date = new Date(1500000000000L);
+
+        // when
+        sheetWriter.addHeaderRow(Lists.newArrayList("number", "quantity", "time", "date"));
+
+        sheetWriter.nextRow();
+        sheetWriter.addRegularCell(0, "P1");
+        sheetWriter.addNumericCell(1, new BigDecimal("1.5"), false);
+        sheetWriter.addTimeCell(2, 3600, true);
+        sheetWriter.addDateTimeCell(3, date);
+
+        sheetWriter.nextRow();
+        sheetWriter.addTimeCell(2, -60, false);
+        sheetWriter.addDateTimeCell(3, null);
+
+        // then
+        assertEquals(3, sheetWriter.getRowIndex());
+
+        Row header = sheet.getRow(0);
+        Row first = sheet.getRow(1);
+        Row second = sheet.getRow(2);
+
+        assertEquals("quantity", header.getCell(1).getStringCellValue());
+        assertEquals(stylesContainer.getHeaderStyle().getIndex(), header.getCell(1).getCellStyle().getIndex());
+
+        assertEquals("P1", first.getCell(0).getStringCellValue());
+        assertEquals(1.5d, first.getCell(1).getNumericCellValue(), 0d);
+        assertEquals(stylesContainer.getNumberStyle(false).getIndex(), first.getCell(1).getCellStyle().getIndex());
+        assertEquals(1 / 24d, first.getCell(2).getNumericCellValue(), 1e-9);
+        assertEquals(stylesContainer.getTimeStyle(true).getIndex(), first.getCell(2).getCellStyle().getIndex());
+        assertEquals(date, first.getCell(3).getDateCellValue());
+
+        assertEquals(60 / 86400d, second.getCell(2).getNumericCellValue(), 1e-9);
+        assertEquals(stylesContainer.getNegativeTimeStyle().getIndex(), second.getCell(2).getCellStyle().getIndex());
+        assertEquals(Cell.CELL_TYPE_BLANK, second.getCell(3).getCellType());
+    }
+
+    @Test
+    public void shouldKeepOnlyRowAccessWindowInMemory() {
+        // when
+        for (int i = 0; i < 5 * L_ROW_ACCESS_WINDOW_SIZE; i++) {
+            sheetWriter.nextRow();
+            sheetWriter.addRegularCell(0, "row" + i);
+        }
+
+        // then
+        assertEquals(5 * L_ROW_ACCESS_WINDOW_SIZE, sheetWriter.getRowIndex());
+        assertNull(sheet.getRow(0));
+        assertEquals("row49", sheet.getRow(49).getCell(0).getStringCellValue());
+    }
+
+    @Test
+    public void shouldSizeColumnsByLongestValueUpToLimit() {
+        // given
+        sheetWriter.addHeaderRow(Lists.newArrayList("number", "name"));
+
+        sheetWriter.nextRow();
+        sheetWriter.addRegularCell(0, "P1");
+        sheetWriter.addRegularCell(1, new String(new char[500]).replace('\0', 'x'));
+
+        // when
+        sheetWriter.autoSizeColumns();
+
+        // then
+        assertEquals((6 + 2) * 256, sheet.getColumnWidth(0));
+        assertEquals(100 * 256, sheet.getColumnWidth(1));
+    }
+
+}
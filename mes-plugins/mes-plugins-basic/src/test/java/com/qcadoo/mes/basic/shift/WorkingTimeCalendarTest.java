@@ -0,0 +1,131 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.joda.time.LocalTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+
+public class WorkingTimeCalendarTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private static final LocalDate FIRST_DAY = new LocalDate(2020, 3, 2);
+
+    private WorkingTimeCalendar calendar;
+
+    @Before
+    public void init() {
+        List<List<DateTimeRange>> workTimesPerDay = Lists.newArrayList();
+
+        workTimesPerDay.add(Lists.newArrayList(range(FIRST_DAY, 6, 14), range(FIRST_DAY, 14, 22)));
+        workTimesPerDay.add(Lists.newArrayList());
+        workTimesPerDay.add(Lists.newArrayList(range(FIRST_DAY.plusDays(2), 8, 12)));
+
+        calendar = new WorkingTimeCalendar(FIRST_DAY, workTimesPerDay, Lists.newArrayList(16 * HOUR, 0L, 8 * HOUR));
+    }
+
+    @Test
+    public void shouldFindWorkTimeEndWithinFirstRange() {
+        // when
+        Optional<DateTime> workTimeEnd = calendar.findWorkTimeEnd(FIRST_DAY, FIRST_DAY.plusDays(2), 3 * HOUR);
+
+        // then
+        assertEquals(FIRST_DAY.toDateTime(new LocalTime(9, 0)), workTimeEnd.get());
+    }
+
+    @Test
+    public void shouldFindWorkTimeEndAtEndOfRange() {
+        // when
+        Optional<DateTime> workTimeEnd = calendar.findWorkTimeEnd(FIRST_DAY, FIRST_DAY.plusDays(2), 8 * HOUR);
+
+        // then
+        assertEquals(FIRST_DAY.toDateTime(new LocalTime(14, 0)), workTimeEnd.get());
+    }
+
+    @Test
+    public void shouldFindWorkTimeEndSkippingDayWithoutWorkTime() {
+        // when
+        Optional<DateTime> workTimeEnd = calendar.findWorkTimeEnd(FIRST_DAY, FIRST_DAY.plusDays(2), 17 * HOUR);
+
+        // then
+        assertEquals(FIRST_DAY.plusDays(2).toDateTime(new LocalTime(9, 0)), workTimeEnd.get());
+    }
+
+    @Test
+    public void shouldCountWorkTimeFromGivenDay() {
+        // when
+        Optional<DateTime> workTimeEnd = calendar.findWorkTimeEnd(FIRST_DAY.plusDays(1), FIRST_DAY.plusDays(2), 2 * HOUR);
+
+        // then
+        assertEquals(FIRST_DAY.plusDays(2).toDateTime(new LocalTime(10, 0)), workTimeEnd.get());
+    }
+
+    @Test
+    public void shouldNotFindWorkTimeEndWhenNotEnoughWorkTime() {
+        // when
+        Optional<DateTime> workTimeEnd = calendar.findWorkTimeEnd(FIRST_DAY, FIRST_DAY.plusDays(1), 17 * HOUR);
+
+        // then
+        assertFalse(workTimeEnd.isPresent());
+    }
+
+    @Test
+    public void shouldSumAvailableTime() {
+        // when
+        long availableTime = calendar.getAvailableTimeMillis(FIRST_DAY.plusDays(1), FIRST_DAY.plusDays(2));
+        long totalAvailableTime = calendar.getAvailableTimeMillis(FIRST_DAY, FIRST_DAY.plusDays(2));
+
+        // then
+        assertEquals(8 * HOUR, availableTime);
+        assertEquals(24 * HOUR, totalAvailableTime);
+    }
+
+    @Test
+    public void shouldReturnWorkTimesOfDay() {
+        // when
+        List<DateTimeRange> workTimes = calendar.getWorkTimes(FIRST_DAY);
+
+        // then
+        assertEquals(2, workTimes.size());
+        assertEquals(0, calendar.getWorkTimes(FIRST_DAY.plusDays(1)).size());
+    }
+
+    private DateTimeRange range(final LocalDate day, final int hourFrom, final int hourTo) {
+        return new DateTimeRange(day.toDateTimeAtStartOfDay().withHourOfDay(hourFrom),
+                day.toDateTimeAtStartOfDay().withHourOfDay(hourTo));
+    }
+
+}
@@ -23,6 +23,7 @@
  */
 package com.qcadoo.mes.cmmsMachineParts;
 
+import com.qcadoo.mes.basic.notifications.NotificationCountersService;
 import com.qcadoo.mes.cmmsMachineParts.constants.CmmsMachinePartsConstants;
 import com.qcadoo.mes.cmmsMachineParts.constants.MaintenanceEventFields;
 import com.qcadoo.mes.cmmsMachineParts.constants.MaintenanceEventType;
@@ -44,9 +45,14 @@ import java.util.Optional;
 @Service
 public class MaintenanceEventService {
 
+    private static final String L_NEW_EVENTS_COUNTER = "cmmsMachineParts.newMaintenanceEvents";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private NotificationCountersService notificationCountersService;
+
     public boolean existOpenFailrueForObjectFromEvent(final Entity event) {
 
         return !getExistingEventsForEvent(event, MaintenanceEventType.FAILURE.getStringValue()).isEmpty();
@@ -117,7 +123,21 @@ public class MaintenanceEventService {
                 .get(currentUserId);
         Entity factory = user.getBelongsToField("factory");
 
-       SearchCriteriaBuilder scb = getMaintenanceEventDD()
+        Optional<Long> factoryId = Optional.ofNullable(factory).map(Entity::getId);
+
+        return notificationCountersService.getCount(L_NEW_EVENTS_COUNTER, factoryId,
+                () -> countNewEventsToNotification(factory)) > 0;
+    }
+
+    /**
+     * Makes notifications about new events reload their count once the current transaction commits.
+     */
+    public void invalidateNewEventsToNotification() {
+        notificationCountersService.invalidate(L_NEW_EVENTS_COUNTER);
+    }
+
+    private long countNewEventsToNotification(final Entity factory) {
+        SearchCriteriaBuilder scb = getMaintenanceEventDD()
                 .find()
                 .setProjection(SearchProjections.alias(SearchProjections.rowCount(), "countrows"))
                 .add(SearchRestrictions.eq(MaintenanceEventFields.SOUND_NOTIFICATIONS, true));
@@ -129,9 +149,6 @@ public class MaintenanceEventService {
         scb = scb.addOrder(SearchOrders.asc("countrows"));
 
         Entity entity = scb.setFirstResult(0).setMaxResults(1).uniqueResult();
-        if (entity.getLongField("countrows") > 0) {
-            return true;
-        }
-        return false;
+        return entity.getLongField("countrows");
     }
 }
@@ -2,21 +2,59 @@ package com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.util.StreamingJdbcTemplateFactory;
 import com.qcadoo.mes.cmmsMachineParts.constants.TimeUsageReportFilterFields;
 import com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage.dto.TimeUsageDTO;
 
 @Service
 public class TimeUsageXlsDataProvider {
 
+    @Value("${timeUsageReport.fetchSize:1000}")
+    private int fetchSize;
+
     @Autowired
-    private NamedParameterJdbcTemplate jdbcTemplate;
+    private StreamingJdbcTemplateFactory streamingJdbcTemplateFactory;
+
+    private NamedParameterJdbcTemplate streamingJdbcTemplate;
+
+    private final static String plannedRealizationQuery = "SELECT worker_id, plannedevent_id, sum(duration) AS duration, (startdate - interval '6 hours')::date as startdate FROM cmmsmachineparts_plannedeventrealization WHERE confirmed='true' GROUP BY 1,2,4";
+
+    private final static String maintenanceRealizationQuery = "SELECT worker_id, maintenanceevent_id, sum(labortime) AS duration, (effectiveexecutiontimestart - interval '6 hours')::date as startdate FROM cmmsmachineparts_staffworktime GROUP BY 1,2,4";
+
+    private final static String eventTimelinesQuery = "plannedEventTimeline AS (\n"
+            + "SELECT plannedevent_id, MIN(CASE WHEN targetstate='04inRealization' THEN dateandtime END) AS registeredStart,\n"
+            + "MAX(CASE WHEN targetstate='08inEditing' THEN dateandtime END) AS registeredEnd\n"
+            + "FROM cmmsmachineparts_plannedeventstatechange\n"
+            + "WHERE targetstate IN ('04inRealization', '08inEditing') AND plannedevent_id IN (SELECT plannedevent_id FROM plannedRealization)\n"
+            + "GROUP BY plannedevent_id),\n"
+            + "plannedEventParts AS (\n"
+            + "SELECT DISTINCT plannedevent_id FROM cmmsmachineparts_machinepartforevent\n"
+            + "WHERE plannedevent_id IN (SELECT plannedevent_id FROM plannedRealization)),\n"
+            + "maintenanceEventTimeline AS (\n"
+            + "SELECT maintenanceevent_id, MIN(CASE WHEN targetstate='02inProgress' THEN dateandtime END) AS registeredStart,\n"
+            + "MAX(CASE WHEN targetstate='03edited' THEN dateandtime END) AS registeredEnd\n"
+            + "FROM cmmsmachineparts_maintenanceeventstatechange\n"
+            + "WHERE targetstate IN ('02inProgress', '03edited') AND maintenanceevent_id IN (SELECT maintenanceevent_id FROM maintenanceRealization)\n"
+            + "GROUP BY maintenanceevent_id),\n"
+            + "maintenanceEventParts AS (\n"
+            + "SELECT partForEvent.maintenanceevent_id, ARRAY_TO_STRING(ARRAY_AGG(product.name ORDER BY product.id),', ') AS parts\n"
+            + "FROM (SELECT DISTINCT maintenanceevent_id, machinepart_id FROM cmmsmachineparts_machinepartforevent\n"
+            + "WHERE maintenanceevent_id IN (SELECT maintenanceevent_id FROM maintenanceRealization)) AS partForEvent\n"
+            + "JOIN basic_product product ON partForEvent.machinepart_id=product.id\n"
+            + "GROUP BY partForEvent.maintenanceevent_id)\n";
 
     private final static String plannedEventQuery = "SELECT staff.surname || ' ' || staff.name AS worker, staff.id AS worker_id, 'planned' AS event_type,\n"
             + "realization.startdate,\n"
@@ -24,15 +62,16 @@ public class TimeUsageXlsDataProvider {
             + "event.type,\n"
             + "event.state,\n"
             + "COALESCE(subassembly.number, workstation.number, line.number, division.number, factory.number) AS object,\n"
-            + "(SELECT CASE WHEN EXISTS (SELECT id FROM cmmsmachineparts_machinepartforevent WHERE plannedevent_id=event.id) THEN 'tak' ELSE 'nie' END) as parts,\n"
+            + "CASE WHEN parts.plannedevent_id IS NOT NULL THEN 'tak' ELSE 'nie' END as parts,\n"
             + "event.solutiondescription AS description,\n"
             + "realization.duration AS duration,\n"
-            + "(SELECT MIN(dateandtime) FROM cmmsmachineparts_plannedeventstatechange WHERE plannedevent_id = event.id and targetstate='04inRealization') AS registeredStart,\n"
-            + "(SELECT MAX(dateandtime) FROM cmmsmachineparts_plannedeventstatechange WHERE plannedevent_id = event.id and targetstate='08inEditing') AS registeredEnd\n"
-            + "FROM (\n"
-            + "SELECT worker_id, plannedevent_id, sum(duration) AS duration, (startdate - interval '6 hours')::date as startdate FROM cmmsmachineparts_plannedeventrealization WHERE confirmed='true' GROUP BY 1,2,4) AS realization\n"
+            + "timeline.registeredStart,\n"
+            + "timeline.registeredEnd\n"
+            + "FROM plannedRealization realization\n"
             + "LEFT JOIN basic_staff staff ON realization.worker_id=staff.id\n"
-            + "LEFT JOIN cmmsmachineparts_plannedevent event ON plannedevent_id=event.id\n"
+            + "LEFT JOIN cmmsmachineparts_plannedevent event ON realization.plannedevent_id=event.id\n"
+            + "LEFT JOIN plannedEventTimeline timeline ON realization.plannedevent_id=timeline.plannedevent_id\n"
+            + "LEFT JOIN plannedEventParts parts ON realization.plannedevent_id=parts.plannedevent_id\n"
             + "LEFT JOIN productionlines_productionline line ON event.productionline_id=line.id\n"
             + "LEFT JOIN basic_subassembly subassembly ON event.subassembly_id=subassembly.id\n"
             + "LEFT JOIN basic_workstation workstation ON event.workstation_id=workstation.id\n"
@@ -45,42 +84,74 @@ public class TimeUsageXlsDataProvider {
             + "event.type,\n"
             + "event.state,\n"
             + "COALESCE(subassembly.number, workstation.number, line.number, division.number, factory.number) AS object,\n"
-            + "(SELECT COALESCE(ARRAY_TO_STRING(ARRAY_AGG(name),', '),'nie') FROM basic_product WHERE id IN(SELECT machinepart_id FROM cmmsmachineparts_machinepartforevent WHERE maintenanceevent_id=event.id)) as parts,\n"
+            + "COALESCE(parts.parts,'nie') as parts,\n"
             + "event.solutiondescription AS description,\n"
             + "realization.duration AS duration,\n"
-            + "(SELECT MIN(dateandtime) FROM cmmsmachineparts_maintenanceeventstatechange WHERE maintenanceevent_id = event.id and targetstate='02inProgress') AS registeredStart,\n"
-            + "(SELECT MAX(dateandtime) FROM cmmsmachineparts_maintenanceeventstatechange WHERE maintenanceevent_id = event.id and targetstate='03edited') AS registeredEnd\n"
-            + "FROM (\n"
-            + "SELECT worker_id, maintenanceevent_id, sum(labortime) AS duration, (effectiveexecutiontimestart - interval '6 hours')::date as startdate FROM cmmsmachineparts_staffworktime GROUP BY 1,2,4) AS realization\n"
+            + "timeline.registeredStart,\n"
+            + "timeline.registeredEnd\n"
+            + "FROM maintenanceRealization realization\n"
             + "LEFT JOIN basic_staff staff ON realization.worker_id=staff.id\n"
-            + "LEFT JOIN cmmsmachineparts_maintenanceevent event ON maintenanceevent_id=event.id\n"
+            + "LEFT JOIN cmmsmachineparts_maintenanceevent event ON realization.maintenanceevent_id=event.id\n"
+            + "LEFT JOIN maintenanceEventTimeline timeline ON realization.maintenanceevent_id=timeline.maintenanceevent_id\n"
+            + "LEFT JOIN maintenanceEventParts parts ON realization.maintenanceevent_id=parts.maintenanceevent_id\n"
             + "LEFT JOIN productionlines_productionline line ON event.productionline_id=line.id\n"
             + "LEFT JOIN basic_subassembly subassembly ON event.subassembly_id=subassembly.id\n"
             + "LEFT JOIN basic_workstation workstation ON event.workstation_id=workstation.id\n"
             + "LEFT JOIN basic_division division ON event.division_id=division.id\n"
             + "LEFT JOIN basic_factory factory ON event.factory_id=factory.id\n";
 
-    public List<TimeUsageDTO> getUsages(Map<String, Object> filters) {
-        String query = prepareQuery(filters, plannedEventQuery, maintenanceEventQuery);
-        return jdbcTemplate.query(query, filters, new TimeUsageRowMapper());
+    private final static String orderBy = " ORDER BY worker COLLATE \"C\", startdate, event_type DESC, number";
+
+    @PostConstruct
+    public void init() {
+        streamingJdbcTemplate = streamingJdbcTemplateFactory.create(fetchSize);
     }
 
-    private String prepareQuery(Map<String, Object> filters, String plannedEventQueryPart, String maintenanceEventQueryPart) {
-        StringBuilder builder = new StringBuilder("SELECT * FROM ( " + plannedEventQueryPart + "UNION ALL "
-                + maintenanceEventQueryPart + " ) AS events");
-        if (!filters.isEmpty()) {
-            List<String> whereFilters = Lists.newLinkedList();
-            if (filters.containsKey(TimeUsageReportFilterFields.FROM_DATE)) {
-                whereFilters.add("startDate >= :fromDate");
-            }
-            if (filters.containsKey(TimeUsageReportFilterFields.TO_DATE)) {
-                whereFilters.add("startDate <= :toDate");
-            }
-            if (filters.containsKey(TimeUsageReportFilterFields.WORKERS)) {
-                whereFilters.add("worker_id in (:workers)");
-            }
-            builder.append(" WHERE ").append(StringUtils.collectionToDelimitedString(whereFilters, " AND "));
-        }
+    /**
+     * Passes usages to the consumer as they are fetched, ordered by worker and start date, so usages of one worker and day
+     * come one after another. Runs in a read only transaction, as the driver only fetches rows through a cursor when auto
+     * commit is off.
+     */
+    @Transactional(readOnly = true)
+    public void processUsages(final Map<String, Object> filters, final Consumer<TimeUsageDTO> consumer) {
+        TimeUsageRowMapper rowMapper = new TimeUsageRowMapper();
+
+        streamingJdbcTemplate.query(prepareQuery(filters), filters,
+                (RowCallbackHandler) rs -> consumer.accept(rowMapper.mapRow(rs, rs.getRow())));
+    }
+
+    private String prepareQuery(final Map<String, Object> filters) {
+        String realizationFilter = prepareRealizationFilter(filters);
+        StringBuilder builder = new StringBuilder("WITH ");
+
+        builder.append("plannedRealization AS (SELECT * FROM (").append(plannedRealizationQuery).append(") AS realization")
+                .append(realizationFilter).append("),\n");
+        builder.append("maintenanceRealization AS (SELECT * FROM (").append(maintenanceRealizationQuery)
+                .append(") AS realization").append(realizationFilter).append("),\n");
+        builder.append(eventTimelinesQuery);
+        builder.append("SELECT * FROM ( ").append(plannedEventQuery).append("UNION ALL ").append(maintenanceEventQuery)
+                .append(" ) AS events");
+        builder.append(orderBy);
+
         return builder.toString();
     }
+
+    private String prepareRealizationFilter(final Map<String, Object> filters) {
+        if (filters.isEmpty()) {
+            return "";
+        }
+
+        List<String> whereFilters = Lists.newLinkedList();
+        if (filters.containsKey(TimeUsageReportFilterFields.FROM_DATE)) {
+            whereFilters.add("startDate >= :fromDate");
+        }
+        if (filters.containsKey(TimeUsageReportFilterFields.TO_DATE)) {
+            whereFilters.add("startDate <= :toDate");
+        }
+        if (filters.containsKey(TimeUsageReportFilterFields.WORKERS)) {
+            whereFilters.add("worker_id in (:workers)");
+        }
+        return " WHERE " + StringUtils.collectionToDelimitedString(whereFilters, " AND ");
+    }
+
 }
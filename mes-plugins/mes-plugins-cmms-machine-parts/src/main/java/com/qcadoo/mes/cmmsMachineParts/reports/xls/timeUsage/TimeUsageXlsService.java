@@ -5,8 +5,8 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.stream.Collectors;
+import java.util.Objects;
+import java.util.function.Consumer;
 
 import org.apache.poi.hssf.usermodel.HSSFCell;
 import org.apache.poi.hssf.usermodel.HSSFCellStyle;
@@ -59,31 +59,25 @@ import com.qcadoo.security.constants.QcadooSecurityConstants;
     public void buildExcelContent(final HSSFWorkbook workbook, final HSSFSheet sheet, Map<String, Object> filters,
             final Locale locale) {
         reportStyleFactory = new ReportStyleFactory(workbook);
-        List<TimeUsageDTO> usages = timeUsageXLSDataProvider.getUsages((Map<String, Object>) filters.get("filtersMap"));
-        updatePartsAndDescription(usages, locale);
         fillHeaderData(workbook, sheet, 0, locale, (Map<String, Object>) filters.get("filtersMap"));
         fillHeaderRow(workbook, sheet, 4, locale);
-        List<TimeUsageGroupDTO> timeUsageGroups = group(usages);
-        int rowCounter = 5;
-        for (TimeUsageGroupDTO timeUsageGroupDTO : timeUsageGroups) {
-            rowCounter = fillTimeUsageRows(workbook, sheet, timeUsageGroupDTO, rowCounter++, locale);
-        }
+        TimeUsageRowsWriter timeUsageRowsWriter = new TimeUsageRowsWriter(workbook, sheet, 5, locale);
+        timeUsageXLSDataProvider.processUsages((Map<String, Object>) filters.get("filtersMap"), timeUsageRowsWriter);
+        timeUsageRowsWriter.flush();
         setColumnsWidths(sheet);
     }
 
-    private void updatePartsAndDescription(List<TimeUsageDTO> usages, Locale locale) {
-        for (TimeUsageDTO usage : usages) {
-            if ("planned".equals(usage.getEventType())) {
-                PlannedEventType type = PlannedEventType.parseString(usage.getType());
-                FieldsForType fields = fieldsForTypeFactory.createFieldsForType(type);
-                if (fields.getHiddenTabs().contains(PlannedEventFields.MACHINE_PARTS_TAB)) {
-                    String notApplicable = translationService.translate("cmmsMachineParts.timeUsageReport.na", locale);
-                    usage.setParts(notApplicable);
-                }
-                if (fields.getHiddenTabs().contains(PlannedEventFields.SOLUTION_DESCRIPTION_TAB)) {
-                    String notApplicable = translationService.translate("cmmsMachineParts.timeUsageReport.na", locale);
-                    usage.setDescription(notApplicable);
-                }
+    private void updatePartsAndDescription(TimeUsageDTO usage, Locale locale) {
+        if ("planned".equals(usage.getEventType())) {
+            PlannedEventType type = PlannedEventType.parseString(usage.getType());
+            FieldsForType fields = fieldsForTypeFactory.createFieldsForType(type);
+            if (fields.getHiddenTabs().contains(PlannedEventFields.MACHINE_PARTS_TAB)) {
+                String notApplicable = translationService.translate("cmmsMachineParts.timeUsageReport.na", locale);
+                usage.setParts(notApplicable);
+            }
+            if (fields.getHiddenTabs().contains(PlannedEventFields.SOLUTION_DESCRIPTION_TAB)) {
+                String notApplicable = translationService.translate("cmmsMachineParts.timeUsageReport.na", locale);
+                usage.setDescription(notApplicable);
             }
         }
     }
@@ -103,26 +97,6 @@ import com.qcadoo.security.constants.QcadooSecurityConstants;
         sheet.setColumnWidth(11, 5000);
     }
 
-    private List<TimeUsageGroupDTO> group(List<TimeUsageDTO> usages) {
-        List<TimeUsageGroupDTO> groups = Lists.newLinkedList();
-        Map<String, List<TimeUsageDTO>> workerMap = usages.stream().collect(Collectors.groupingBy(TimeUsageDTO::getWorker));
-        for (Entry<String, List<TimeUsageDTO>> entry : workerMap.entrySet()) {
-            Map<Date, List<TimeUsageDTO>> dateMap = entry.getValue().stream()
-                    .collect(Collectors.groupingBy(TimeUsageDTO::getStartDate));
-            for (Date date : dateMap.keySet()) {
-                TimeUsageGroupDTO timeUsageGroup = new TimeUsageGroupDTO(date, entry.getKey(), dateMap.get(date));
-                groups.add(timeUsageGroup);
-            }
-        }
-        return groups.stream().sorted((g1, g2) -> {
-            if (g1.getWorker().equals(g2.getWorker())) {
-                return g1.getDate().compareTo(g2.getDate());
-            } else {
-                return g1.getWorker().compareTo(g2.getWorker());
-            }
-        }).collect(Collectors.toList());
-    }
-
     private void fillHeaderData(final HSSFWorkbook workbook, final HSSFSheet sheet, Integer rowNum, final Locale locale,
             Map<String, Object> filters) {
         Font font = workbook.createFont();
@@ -204,11 +178,6 @@ import com.qcadoo.security.constants.QcadooSecurityConstants;
 
     private int fillTimeUsageRows(final HSSFWorkbook workbook, final HSSFSheet sheet, final TimeUsageGroupDTO timeUsage,
             int rowCounter, final Locale locale) {
-        Font font = workbook.createFont();
-        font.setFontName(HSSFFont.FONT_ARIAL);
-        font.setFontHeightInPoints((short) 10);
-        font.setBoldweight(Font.BOLDWEIGHT_NORMAL);
-
         int usagesCounter = 0;
 
         for (TimeUsageDTO usage : timeUsage.getTimeUsages()) {
@@ -300,4 +269,60 @@ import com.qcadoo.security.constants.QcadooSecurityConstants;
 
         return time;
     }
+
+    /**
+     * Writes usages as they come from the data provider. Usages arrive ordered by worker and start date, so only usages of
+     * the current worker and day are kept until the group, headed by its sums, can be written.
+     */
+    private class TimeUsageRowsWriter implements Consumer<TimeUsageDTO> {
+
+        private final HSSFWorkbook workbook;
+
+        private final HSSFSheet sheet;
+
+        private final Locale locale;
+
+        private final List<TimeUsageDTO> groupUsages = Lists.newArrayList();
+
+        private int rowCounter;
+
+        private TimeUsageRowsWriter(final HSSFWorkbook workbook, final HSSFSheet sheet, final int rowCounter,
+                final Locale locale) {
+            this.workbook = workbook;
+            this.sheet = sheet;
+            this.rowCounter = rowCounter;
+            this.locale = locale;
+        }
+
+        @Override
+        public void accept(final TimeUsageDTO usage) {
+            updatePartsAndDescription(usage, locale);
+
+            if (!groupUsages.isEmpty() && !isSameGroup(groupUsages.get(0), usage)) {
+                flush();
+            }
+
+            groupUsages.add(usage);
+        }
+
+        private boolean isSameGroup(final TimeUsageDTO usage, final TimeUsageDTO otherUsage) {
+            return Objects.equals(usage.getWorker(), otherUsage.getWorker())
+                    && Objects.equals(usage.getStartDate(), otherUsage.getStartDate());
+        }
+
+        private void flush() {
+            if (groupUsages.isEmpty()) {
+                return;
+            }
+
+            TimeUsageDTO firstUsage = groupUsages.get(0);
+            TimeUsageGroupDTO timeUsageGroup = new TimeUsageGroupDTO(firstUsage.getStartDate(), firstUsage.getWorker(),
+                    Lists.newArrayList(groupUsages));
+
+            rowCounter = fillTimeUsageRows(workbook, sheet, timeUsageGroup, rowCounter, locale);
+            groupUsages.clear();
+        }
+
+    }
+
 }
@@ -0,0 +1,231 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFCellStyle;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.cmmsMachineParts.constants.PlannedEventFields;
+import com.qcadoo.mes.cmmsMachineParts.constants.PlannedEventType;
+import com.qcadoo.mes.cmmsMachineParts.plannedEvents.factory.EventFieldsForTypeFactory;
+import com.qcadoo.mes.cmmsMachineParts.plannedEvents.fieldsForType.FieldsForType;
+import com.qcadoo.mes.cmmsMachineParts.reports.xls.timeUsage.dto.TimeUsageDTO;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.security.api.SecurityService;
+import com.qcadoo.security.constants.QcadooSecurityConstants;
+
+public class TimeUsageXlsServiceTest {
+
+    private static final String L_GOLDEN_FILE = "/reports/timeUsageReport.txt";
+
+    private static final int L_HEADER_ROW = 4;
+
+    private TimeUsageXlsService timeUsageXlsService;
+
+    @Mock
+    private TranslationService translationService;
+
+    @Mock
+    private TimeUsageXlsDataProvider timeUsageXlsDataProvider;
+
+    @Mock
+    private SecurityService securityService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private EventFieldsForTypeFactory fieldsForTypeFactory;
+
+    @Mock
+    private DataDefinition userDD;
+
+    @Mock
+    private Entity user;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        timeUsageXlsService = new TimeUsageXlsService();
+
+        ReflectionTestUtils.setField(timeUsageXlsService, "translationService", translationService);
+        ReflectionTestUtils.setField(timeUsageXlsService, "timeUsageXLSDataProvider", timeUsageXlsDataProvider);
+        ReflectionTestUtils.setField(timeUsageXlsService, "securityService", securityService);
+        ReflectionTestUtils.setField(timeUsageXlsService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(timeUsageXlsService, "fieldsForTypeFactory", fieldsForTypeFactory);
+
+        given(translationService.translate(anyString(), any(Locale.class))).willAnswer(
+                invocation -> invocation.getArguments()[0]);
+        given(securityService.getCurrentUserId()).willReturn(1L);
+        given(dataDefinitionService.get(QcadooSecurityConstants.PLUGIN_IDENTIFIER, QcadooSecurityConstants.MODEL_USER))
+                .willReturn(userDD);
+        given(userDD.get(1L)).willReturn(user);
+
+        FieldsForType review = mock(FieldsForType.class);
+        FieldsForType repairs = mock(FieldsForType.class);
+
+        given(review.getHiddenTabs()).willReturn(Lists.newArrayList());
+        given(repairs.getHiddenTabs()).willReturn(
+                Lists.newArrayList(PlannedEventFields.MACHINE_PARTS_TAB, PlannedEventFields.SOLUTION_DESCRIPTION_TAB));
+        given(fieldsForTypeFactory.createFieldsForType(PlannedEventType.REVIEW)).willReturn(review);
+        given(fieldsForTypeFactory.createFieldsForType(PlannedEventType.REPAIRS)).willReturn(repairs);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldWriteSameCellsAsGoldenFile() throws IOException {
+        // given
+        List<TimeUsageDTO> usages = Lists.newArrayList(
+                usage("Kowalski Jan", "2020-03-02", "planned", "PE-1", "01review", "05realized", "L1", "tak", "Review done", 120,
+                        100),
+                usage("Kowalski Jan", "2020-03-02", "maintenance", "ME-1", "01failure", "03edited", "W1", "Bearing, Belt",
+                        "Replaced", 30, 25),
+                usage("Kowalski Jan", "2020-03-03", "maintenance", "ME-2", "02issue", "04closed", "W2", "nie", "Adjusted", 10,
+                        60),
+                usage("Nowak Anna", "2020-03-02", "planned", "PE-2", "02repairs", "05realized", "L2", "tak", "Repaired", 45, 0),
+                usage("Nowak Anna", "2020-03-02", "maintenance", "ME-3", "01failure", "04closed", "W1", "nie", "Cleaned", 50,
+                        40));
+
+        willAnswer(invocation -> {
+            Consumer<TimeUsageDTO> consumer = (Consumer<TimeUsageDTO>) invocation.getArguments()[1];
+
+            usages.forEach(consumer);
+
+            return null;
+        }).given(timeUsageXlsDataProvider).processUsages(anyMapOf(String.class, Object.class), any(Consumer.class));
+
+        HSSFWorkbook workbook = new HSSFWorkbook();
+        HSSFSheet sheet = workbook.createSheet();
+        Map<String, Object> filters = ImmutableMap.of("filtersMap", Collections.emptyMap());
+
+        // when
+        timeUsageXlsService.buildExcelContent(workbook, sheet, filters, Locale.ENGLISH);
+
+        // then
+        assertEquals(readGoldenFile(), describeCells(sheet));
+    }
+
+    private TimeUsageDTO usage(final String worker, final String startDate, final String eventType, final String number,
+            final String type, final String state, final String object, final String parts, final String description,
+            final int duration, final int registeredTime) {
+        TimeUsageDTO usage = new TimeUsageDTO();
+
+        usage.setWorker(worker);
+        usage.setStartDate(java.sql.Date.valueOf(startDate));
+        usage.setEventType(eventType);
+        usage.setNumber(number);
+        usage.setType(type);
+        usage.setState(state);
+        usage.setObject(object);
+        usage.setParts(parts);
+        usage.setDescription(description);
+        usage.setDuration(duration);
+        usage.setRegisteredTime(registeredTime);
+
+        return usage;
+    }
+
+    private String describeCells(final HSSFSheet sheet) {
+        StringBuilder description = new StringBuilder();
+
+        for (int rowNumber = L_HEADER_ROW; rowNumber <= sheet.getLastRowNum(); rowNumber++) {
+            HSSFRow row = sheet.getRow(rowNumber);
+
+            for (int columnNumber = 0; columnNumber < row.getLastCellNum(); columnNumber++) {
+                HSSFCell cell = row.getCell(columnNumber);
+
+                description.append(rowNumber).append(':').append(columnNumber).append(" \"").append(describeValue(cell))
+                        .append('"').append(describeStyle(cell.getCellStyle())).append('\n');
+            }
+        }
+
+        return description.toString();
+    }
+
+    private String describeValue(final HSSFCell cell) {
+        if (cell.getCellType() == Cell.CELL_TYPE_NUMERIC) {
+            return String.valueOf((long) cell.getNumericCellValue());
+        }
+
+        return cell.getStringCellValue();
+    }
+
+    private String describeStyle(final HSSFCellStyle style) {
+        StringBuilder description = new StringBuilder();
+
+        if (style.getBorderTop() == HSSFCellStyle.BORDER_THIN) {
+            description.append(" top");
+        }
+        if (style.getFillPattern() == HSSFCellStyle.SOLID_FOREGROUND) {
+            description.append(" fill=").append(style.getFillForegroundColor());
+        }
+        if (style.getAlignment() == HSSFCellStyle.ALIGN_RIGHT) {
+            description.append(" right");
+        } else if (style.getAlignment() == HSSFCellStyle.ALIGN_CENTER) {
+            description.append(" center");
+        }
+
+        return description.toString();
+    }
+
+    private String readGoldenFile() throws IOException {
+        try (InputStream inputStream = getClass().getResourceAsStream(L_GOLDEN_FILE)) {
+            return IOUtils.toString(inputStream, StandardCharsets.UTF_8.name());
+        }
+    }
+
+}
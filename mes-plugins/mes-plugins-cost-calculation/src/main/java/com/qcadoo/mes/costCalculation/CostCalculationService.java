@@ -24,6 +24,7 @@
 package com.qcadoo.mes.costCalculation;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 import com.qcadoo.model.api.Entity;
 
@@ -39,6 +40,17 @@ public interface CostCalculationService {
      */
     Entity calculateTotalCost(final Entity entity);
 
+    /**
+     * Calculates total costs of many cost calculations at once, fetching product costs and order's material costs in bulk, and
+     * saves them in one transaction
+     * 
+     * @param entities
+     *            entities
+     * 
+     * @return saved entities
+     */
+    List<Entity> calculateTotalCosts(final List<Entity> entities);
+
     /**
      * Calculates operations and products costs
      * 
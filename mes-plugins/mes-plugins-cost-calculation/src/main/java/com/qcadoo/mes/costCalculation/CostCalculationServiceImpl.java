@@ -31,7 +31,9 @@ import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.collect.Lists;
 import com.qcadoo.mes.costCalculation.constants.CostCalculationFields;
 import com.qcadoo.mes.costCalculation.constants.SourceOfOperationCosts;
 import com.qcadoo.mes.costNormsForMaterials.ProductsCostCalculationService;
@@ -72,8 +74,43 @@ public class CostCalculationServiceImpl implements CostCalculationService {
         return entity.getDataDefinition().save(entity);
     }
 
+    @Override
+    @Transactional
+    public List<Entity> calculateTotalCosts(final List<Entity> entities) {
+        Date date = new Date();
+
+        for (Entity entity : entities) {
+            entity.setField(CostCalculationFields.DATE, date);
+            calculateOperationsCost(entity);
+        }
+
+        productsCostCalculationService.calculateTotalProductsCosts(entities);
+
+        List<Entity> savedEntities = Lists.newArrayList();
+
+        for (Entity entity : entities) {
+            final BigDecimal productionCosts = calculateProductionCost(entity);
+            calculateMarginsAndOverheads(entity, productionCosts);
+            final BigDecimal effectiveQuantity = getEffectiveQuantity(entity);
+
+            calculateTotalCosts(entity, productionCosts, effectiveQuantity);
+
+            savedEntities.add(entity.getDataDefinition().save(entity));
+        }
+
+        return savedEntities;
+    }
+
     @Override
     public void calculateOperationsAndProductsCosts(final Entity entity) {
+        calculateOperationsCost(entity);
+
+        final String sourceOfMaterialCosts = entity.getStringField(CostCalculationFields.SOURCE_OF_MATERIAL_COSTS);
+
+        productsCostCalculationService.calculateTotalProductsCost(entity, sourceOfMaterialCosts);
+    }
+
+    private void calculateOperationsCost(final Entity entity) {
         boolean hourlyCostFromOperation = true;
         String sourceOfOperationCosts = entity.getStringField("sourceOfOperationCosts");
         if (sourceOfOperationCosts != null
@@ -81,10 +118,6 @@ public class CostCalculationServiceImpl implements CostCalculationService {
             hourlyCostFromOperation = false;
         }
         operationsCostCalculationService.calculateOperationsCost(entity, hourlyCostFromOperation);
-
-        final String sourceOfMaterialCosts = entity.getStringField(CostCalculationFields.SOURCE_OF_MATERIAL_COSTS);
-
-        productsCostCalculationService.calculateTotalProductsCost(entity, sourceOfMaterialCosts);
     }
 
     @Override
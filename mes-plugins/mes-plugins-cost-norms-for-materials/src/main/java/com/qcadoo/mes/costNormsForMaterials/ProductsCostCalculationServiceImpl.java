@@ -26,22 +26,28 @@ package com.qcadoo.mes.costNormsForMaterials;
 import static com.google.common.base.Preconditions.checkArgument;
 
 import java.math.BigDecimal;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
 import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityFields;
 import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityRole;
 import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityTypeOfMaterial;
-import com.qcadoo.mes.costNormsForMaterials.constants.OrderFieldsCNFM;
 import com.qcadoo.mes.costNormsForMaterials.constants.ProductsCostFields;
 import com.qcadoo.mes.costNormsForMaterials.constants.TechnologyInstOperProductInCompFields;
 import com.qcadoo.mes.costNormsForMaterials.orderRawMaterialCosts.dataProvider.OrderMaterialCostsDataProvider;
@@ -55,6 +61,12 @@ import com.qcadoo.model.api.NumberService;
 @Service
 public class ProductsCostCalculationServiceImpl implements ProductsCostCalculationService {
 
+    private static final String L_FROM_ORDERS_MATERIAL_COSTS = "02fromOrdersMaterialCosts";
+
+    private static final String L_CURRENT_GLOBAL_DEFINITIONS_IN_PRODUCT = "01currentGlobalDefinitionsInProduct";
+
+    private static final String L_SOURCE_OF_MATERIAL_COSTS = "sourceOfMaterialCosts";
+
     @Autowired
     private ProductQuantitiesService productQuantitiesService;
 
@@ -69,34 +81,41 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
 
     @Override
     public void calculateTotalProductsCost(final Entity entity, final String sourceOfMaterialCosts) {
-        Map<Entity, BigDecimal> listProductWithCost = calculateListProductsCostForPlannedQuantity(entity, sourceOfMaterialCosts);
-        BigDecimal result = BigDecimal.ZERO;
-        for (Entry<Entity, BigDecimal> productWithCost : listProductWithCost.entrySet()) {
-            result = result.add(productWithCost.getValue(), numberService.getMathContext());
-        }
-        entity.setField("totalMaterialCosts", numberService.setScaleWithDefaultMathContext(result));
+        checkArgument(entity != null);
+
+        calculateTotalProductsCosts(Collections.singletonList(entity), Collections.singletonList(sourceOfMaterialCosts));
     }
 
-    private Map<Entity, BigDecimal> calculateListProductsCostForPlannedQuantity(final Entity entity,
-            final String sourceOfMaterialCosts) {
-        checkArgument(entity != null);
-        BigDecimal quantity = BigDecimalUtils.convertNullToZero(entity.getDecimalField("quantity"));
+    @Override
+    public void calculateTotalProductsCosts(final List<Entity> entities) {
+        List<String> sourcesOfMaterialCosts = Lists.newArrayList();
 
-        String calculateMaterialCostsMode = entity.getStringField("calculateMaterialCostsMode");
+        for (Entity entity : entities) {
+            checkArgument(entity != null);
 
-        checkArgument(calculateMaterialCostsMode != null, "calculateMaterialCostsMode is null!");
+            sourcesOfMaterialCosts.add(entity.getStringField(L_SOURCE_OF_MATERIAL_COSTS));
+        }
 
-        Entity technology = entity.getBelongsToField("technology");
+        calculateTotalProductsCosts(entities, sourcesOfMaterialCosts);
+    }
 
-        Entity order = entity.getBelongsToField("order");
+    private void calculateTotalProductsCosts(final List<Entity> entities, final List<String> sourcesOfMaterialCosts) {
+        MaterialCostsBatch batch = new MaterialCostsBatch();
 
-        if ("02fromOrdersMaterialCosts".equals(sourceOfMaterialCosts)) {
-            return getProductWithCostForPlannedQuantities(technology, quantity, calculateMaterialCostsMode, order);
-        } else if ("01currentGlobalDefinitionsInProduct".equals(sourceOfMaterialCosts)) {
-            return getProductWithCostForPlannedQuantities(entity, technology, quantity, calculateMaterialCostsMode);
+        for (int i = 0; i < entities.size(); i++) {
+            batch.add(entities.get(i), sourcesOfMaterialCosts.get(i));
         }
 
-        throw new IllegalStateException("sourceOfProductCosts is neither FROM_ORDER nor GLOBAL");
+        batch.fetch();
+
+        for (MaterialCostsItem item : batch.items) {
+            Map<Long, BigDecimal> listProductWithCost = batch.calculateListProductsCostForPlannedQuantity(item);
+            BigDecimal result = BigDecimal.ZERO;
+            for (BigDecimal productCost : listProductWithCost.values()) {
+                result = result.add(productCost, numberService.getMathContext());
+            }
+            item.entity.setField("totalMaterialCosts", numberService.setScaleWithDefaultMathContext(result));
+        }
     }
 
     @Override
@@ -113,70 +132,189 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
         return costPerUnit.multiply(quantity, numberService.getMathContext());
     }
 
-    private Map<Entity, BigDecimal> getProductWithCostForPlannedQuantities(final Entity entity, final Entity technology,
-                                                                           final BigDecimal quantity, final String calculateMaterialCostsMode) {
-        Map<Long, BigDecimal> neededProductQuantities = getNeededProductQuantities(entity, technology, quantity,
-                MrpAlgorithm.ONLY_COMPONENTS);
-        Map<Entity, BigDecimal> results = new HashMap<>();
-        for (Entry<Long, BigDecimal> productQuantity : neededProductQuantities.entrySet()) {
-            Entity product = productQuantitiesService.getProduct(productQuantity.getKey());
-            BigDecimal thisProductsCost = calculateProductCostForGivenQuantity(product, productQuantity.getValue(),
-                    calculateMaterialCostsMode);
-            results.put(product, thisProductsCost);
+    private static final class MaterialCostsItem {
+
+        private final Entity entity;
+
+        private final String sourceOfMaterialCosts;
+
+        private final String calculateMaterialCostsMode;
+
+        private final Entity order;
+
+        private Map<Long, BigDecimal> neededProductQuantities;
+
+        private List<Entity> usedMaterials;
+
+        private MaterialCostsItem(final Entity entity, final String sourceOfMaterialCosts,
+                final String calculateMaterialCostsMode, final Entity order) {
+            this.entity = entity;
+            this.sourceOfMaterialCosts = sourceOfMaterialCosts;
+            this.calculateMaterialCostsMode = calculateMaterialCostsMode;
+            this.order = order;
         }
-        return results;
-    }
 
-    private Map<Long, BigDecimal> getNeededProductQuantities(final Entity entity, final Entity technology,
-            final BigDecimal quantity, final MrpAlgorithm algorithm) {
-        return productQuantitiesService.getNeededProductQuantities(technology, quantity, algorithm);
     }
 
-    private Map<Entity, BigDecimal> getProductWithCostForPlannedQuantities(final Entity technology, final BigDecimal quantity,
-                                                                           final String calculateMaterialCostsMode, final Entity order) {
-        Map<Entity, BigDecimal> results = Maps.newHashMap();
-        if (OrderState.PENDING.equals(OrderState.of(order))) {
-            Map<Long, BigDecimal> neededProductQuantities = productQuantitiesService.getNeededProductQuantities(technology,
-                    quantity, MrpAlgorithm.ONLY_COMPONENTS);
+    /**
+     * Collects everything the given cost calculations need first, so products and order's material costs are fetched with one
+     * query each and technologies shared by calculations with equal quantities are exploded once.
+     */
+    private final class MaterialCostsBatch {
 
-            for (Entry<Long, BigDecimal> productQuantity : neededProductQuantities.entrySet()) {
-                Entity product = productQuantitiesService.getProduct(productQuantity.getKey());
-                for (Entity orderMaterialCosts : findOrderMaterialCosts(order, product).asSet()) {
-                    BigDecimal thisProductsCost = calculateProductCostForGivenQuantity(orderMaterialCosts,
-                            productQuantity.getValue(), calculateMaterialCostsMode);
-                    results.put(product, thisProductsCost);
+        private final List<MaterialCostsItem> items = Lists.newArrayList();
+
+        private final Map<String, Map<Long, BigDecimal>> neededProductQuantitiesCache = Maps.newHashMap();
+
+        private final Set<Long> productIds = Sets.newHashSet();
+
+        private final Set<Long> orderIds = Sets.newHashSet();
+
+        private Map<Long, Entity> productsById = Collections.emptyMap();
+
+        private final Map<Long, ListMultimap<Long, Entity>> orderMaterialCostsByOrderId = Maps.newHashMap();
+
+        private void add(final Entity entity, final String sourceOfMaterialCosts) {
+            BigDecimal quantity = BigDecimalUtils.convertNullToZero(entity.getDecimalField("quantity"));
+
+            String calculateMaterialCostsMode = entity.getStringField("calculateMaterialCostsMode");
+
+            checkArgument(calculateMaterialCostsMode != null, "calculateMaterialCostsMode is null!");
+
+            Entity technology = entity.getBelongsToField("technology");
+
+            Entity order = entity.getBelongsToField("order");
+
+            MaterialCostsItem item = new MaterialCostsItem(entity, sourceOfMaterialCosts, calculateMaterialCostsMode, order);
+
+            if (L_FROM_ORDERS_MATERIAL_COSTS.equals(sourceOfMaterialCosts)) {
+                if (OrderState.PENDING.equals(OrderState.of(order))) {
+                    item.neededProductQuantities = getNeededProductQuantities(technology, quantity);
+                } else {
+                    item.usedMaterials = getUsedComponents(order);
                 }
+
+                orderIds.add(order.getId());
+            } else if (L_CURRENT_GLOBAL_DEFINITIONS_IN_PRODUCT.equals(sourceOfMaterialCosts)) {
+                item.neededProductQuantities = getNeededProductQuantities(technology, quantity);
+
+                productIds.addAll(item.neededProductQuantities.keySet());
+            } else {
+                throw new IllegalStateException("sourceOfProductCosts is neither FROM_ORDER nor GLOBAL");
             }
-        } else {
 
-            List<Entity> usedMaterials = basicProductionCountingService.getUsedMaterialsFromProductionCountingQuantities(order);
-            usedMaterials = usedMaterials
+            items.add(item);
+        }
+
+        private void fetch() {
+            productsById = productQuantitiesService.getProducts(productIds);
+
+            for (Entity orderMaterialCosts : orderMaterialCostsDataProvider.findAll(orderIds)) {
+                Long orderId = orderMaterialCosts.getBelongsToField(TechnologyInstOperProductInCompFields.ORDER).getId();
+                Long productId = orderMaterialCosts.getBelongsToField(TechnologyInstOperProductInCompFields.PRODUCT).getId();
+
+                ListMultimap<Long, Entity> orderMaterialCostsByProductId = orderMaterialCostsByOrderId.get(orderId);
+
+                if (orderMaterialCostsByProductId == null) {
+                    orderMaterialCostsByProductId = ArrayListMultimap.create();
+                    orderMaterialCostsByOrderId.put(orderId, orderMaterialCostsByProductId);
+                }
+
+                orderMaterialCostsByProductId.put(productId, orderMaterialCosts);
+            }
+        }
+
+        private Map<Long, BigDecimal> getNeededProductQuantities(final Entity technology, final BigDecimal quantity) {
+            if (technology.getId() == null) {
+                return productQuantitiesService.getNeededProductQuantities(technology, quantity, MrpAlgorithm.ONLY_COMPONENTS);
+            }
+
+            String key = technology.getId() + "_" + quantity.stripTrailingZeros().toPlainString();
+
+            Map<Long, BigDecimal> neededProductQuantities = neededProductQuantitiesCache.get(key);
+
+            if (neededProductQuantities == null) {
+                neededProductQuantities = productQuantitiesService.getNeededProductQuantities(technology, quantity,
+                        MrpAlgorithm.ONLY_COMPONENTS);
+                neededProductQuantitiesCache.put(key, neededProductQuantities);
+            }
+
+            return neededProductQuantities;
+        }
+
+        private List<Entity> getUsedComponents(final Entity order) {
+            return basicProductionCountingService
+                    .getUsedMaterialsFromProductionCountingQuantities(order)
                     .stream()
                     .filter(material -> material.getStringField(ProductionCountingQuantityFields.ROLE).equals(
                             ProductionCountingQuantityRole.USED.getStringValue())
                             && material.getStringField(ProductionCountingQuantityFields.TYPE_OF_MATERIAL).equals(
                                     ProductionCountingQuantityTypeOfMaterial.COMPONENT.getStringValue()))
                     .collect(Collectors.toList());
-            List<Entity> allOrderMaterialCosts = order.getHasManyField(OrderFieldsCNFM.TECHNOLOGY_INST_OPER_PRODUCT_IN_COMPS);
-            for (Entity usedMaterial : usedMaterials) {
-                Entity product = usedMaterial.getBelongsToField(ProductionCountingQuantityFields.PRODUCT);
-                for (Entity orderMaterialCosts : allOrderMaterialCosts
-                        .stream()
-                        .filter(cost -> cost.getBelongsToField(TechnologyInstOperProductInCompFields.PRODUCT).getId()
-                                .equals(product.getId())).collect(Collectors.toList())) {
-                    BigDecimal thisProductsCost = calculateProductCostForGivenQuantity(orderMaterialCosts,
-                            usedMaterial.getDecimalField(ProductionCountingQuantityFields.PLANNED_QUANTITY),
-                            calculateMaterialCostsMode);
-                    results.put(product, thisProductsCost);
+        }
+
+        private List<Entity> getOrderMaterialCosts(final Entity order, final Long productId) {
+            ListMultimap<Long, Entity> orderMaterialCostsByProductId = orderMaterialCostsByOrderId.get(order.getId());
+
+            if (orderMaterialCostsByProductId == null) {
+                return Collections.emptyList();
+            }
+
+            return orderMaterialCostsByProductId.get(productId);
+        }
+
+        private Map<Long, BigDecimal> calculateListProductsCostForPlannedQuantity(final MaterialCostsItem item) {
+            if (L_FROM_ORDERS_MATERIAL_COSTS.equals(item.sourceOfMaterialCosts)) {
+                return getProductWithCostForPlannedQuantities(item.order, item.calculateMaterialCostsMode,
+                        item.neededProductQuantities, item.usedMaterials);
+            }
+
+            return getProductWithCostForPlannedQuantities(item.calculateMaterialCostsMode, item.neededProductQuantities);
+        }
+
+        private Map<Long, BigDecimal> getProductWithCostForPlannedQuantities(final String calculateMaterialCostsMode,
+                final Map<Long, BigDecimal> neededProductQuantities) {
+            Map<Long, BigDecimal> results = new HashMap<>();
+            for (Entry<Long, BigDecimal> productQuantity : neededProductQuantities.entrySet()) {
+                Entity product = productsById.get(productQuantity.getKey());
+                BigDecimal thisProductsCost = calculateProductCostForGivenQuantity(product, productQuantity.getValue(),
+                        calculateMaterialCostsMode);
+                results.put(productQuantity.getKey(), thisProductsCost);
+            }
+            return results;
+        }
+
+        private Map<Long, BigDecimal> getProductWithCostForPlannedQuantities(final Entity order,
+                final String calculateMaterialCostsMode, final Map<Long, BigDecimal> neededProductQuantities,
+                final List<Entity> usedMaterials) {
+            Map<Long, BigDecimal> results = Maps.newHashMap();
+            if (neededProductQuantities != null) {
+                for (Entry<Long, BigDecimal> productQuantity : neededProductQuantities.entrySet()) {
+                    for (Entity orderMaterialCosts : Iterables.limit(getOrderMaterialCosts(order, productQuantity.getKey()), 1)) {
+                        BigDecimal thisProductsCost = calculateProductCostForGivenQuantity(orderMaterialCosts,
+                                productQuantity.getValue(), calculateMaterialCostsMode);
+                        results.put(productQuantity.getKey(), thisProductsCost);
+                    }
+                }
+            } else {
+                for (Entity usedMaterial : usedMaterials) {
+                    Long productId = usedMaterial.getBelongsToField(ProductionCountingQuantityFields.PRODUCT).getId();
+                    for (Entity orderMaterialCosts : getOrderMaterialCosts(order, productId)) {
+                        BigDecimal thisProductsCost = calculateProductCostForGivenQuantity(orderMaterialCosts,
+                                usedMaterial.getDecimalField(ProductionCountingQuantityFields.PLANNED_QUANTITY),
+                                calculateMaterialCostsMode);
+                        results.put(productId, thisProductsCost);
+                    }
                 }
             }
+            return results;
         }
-        return results;
+
     }
 
     @Override
     public Entity getAppropriateCostNormForProduct(final Entity product, final Entity order, final String sourceOfMaterialCosts) {
-        if ("01currentGlobalDefinitionsInProduct".equals(sourceOfMaterialCosts)) {
+        if (L_CURRENT_GLOBAL_DEFINITIONS_IN_PRODUCT.equals(sourceOfMaterialCosts)) {
             return product;
         }
         for (Entity orderMaterialCosts : findOrderMaterialCosts(order, product).asSet()) {
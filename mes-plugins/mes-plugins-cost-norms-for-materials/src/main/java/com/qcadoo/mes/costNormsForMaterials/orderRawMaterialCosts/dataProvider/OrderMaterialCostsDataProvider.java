@@ -23,6 +23,7 @@
  */
 package com.qcadoo.mes.costNormsForMaterials.orderRawMaterialCosts.dataProvider;
 
+import java.util.Collection;
 import java.util.List;
 
 import com.google.common.base.Optional;
@@ -66,4 +67,14 @@ public interface OrderMaterialCostsDataProvider {
      * @since 1.4
      */
     Optional<Entity> find(final Long orderId, final Long productId);
+
+    /**
+     * Find order's material costs entities that belong to any of given orders
+     *
+     * @param orderIds
+     *            ids of orders
+     * @return order's material costs entities belonging to given orders
+     * @since 1.4
+     */
+    List<Entity> findAll(final Collection<Long> orderIds);
 }
@@ -25,6 +25,8 @@ package com.qcadoo.mes.costNormsForMaterials.orderRawMaterialCosts.dataProvider;
 
 import static com.qcadoo.model.api.search.SearchRestrictions.idEq;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -41,6 +43,7 @@ import com.qcadoo.model.api.search.SearchCriteriaBuilder;
 import com.qcadoo.model.api.search.SearchCriterion;
 import com.qcadoo.model.api.search.SearchOrder;
 import com.qcadoo.model.api.search.SearchProjection;
+import com.qcadoo.model.api.search.SearchRestrictions;
 
 @Service
 final class OrderMaterialCostsDataProviderImpl implements OrderMaterialCostsDataProvider {
@@ -67,6 +70,18 @@ final class OrderMaterialCostsDataProviderImpl implements OrderMaterialCostsData
         return find(OrderMaterialCostsCriteria.forOrder(orderId).setProductCriteria(idEq(productId)));
     }
 
+    @Override
+    public List<Entity> findAll(final Collection<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        SearchCriteriaBuilder scb = createCriteriaBuilder();
+        scb.createCriteria(TechnologyInstOperProductInCompFields.ORDER, ORDER_ALIAS, JoinType.INNER).add(
+                SearchRestrictions.in("id", orderIds));
+        return scb.list().getEntities();
+    }
+
     private SearchCriteriaBuilder prepareCriteria(final OrderMaterialCostsCriteria criteria) {
         SearchCriteriaBuilder scb = createCriteriaBuilder();
         scb.createCriteria(TechnologyInstOperProductInCompFields.ORDER, ORDER_ALIAS, JoinType.INNER).add(
@@ -31,11 +31,14 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Before;
@@ -49,7 +52,9 @@ import org.springframework.test.util.ReflectionTestUtils;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.qcadoo.mes.costNormsForMaterials.constants.ProductsCostFields;
+import com.qcadoo.mes.costNormsForMaterials.constants.TechnologyInstOperProductInCompFields;
 import com.qcadoo.mes.costNormsForMaterials.orderRawMaterialCosts.dataProvider.OrderMaterialCostsDataProvider;
 import com.qcadoo.mes.costNormsForProduct.constants.ProductFieldsCNFP;
 import com.qcadoo.mes.orders.constants.OrderFields;
@@ -108,6 +113,18 @@ public class ProductsCostCalculationServiceTest {
         });
     }
 
+    private void stubOrderMaterialCostsBulkSearchResults(final Map<Long, Entity> materialCostsByProductId) {
+        List<Entity> materialCosts = Lists.newArrayList();
+        for (Map.Entry<Long, Entity> materialCostsForProduct : materialCostsByProductId.entrySet()) {
+            Entity orderMaterialCosts = materialCostsForProduct.getValue();
+            stubBelongsToField(orderMaterialCosts, TechnologyInstOperProductInCompFields.ORDER, order);
+            stubBelongsToField(orderMaterialCosts, TechnologyInstOperProductInCompFields.PRODUCT,
+                    mockEntity(materialCostsForProduct.getKey()));
+            materialCosts.add(orderMaterialCosts);
+        }
+        given(orderMaterialCostsDataProvider.findAll(anyCollectionOf(Long.class))).willReturn(materialCosts);
+    }
+
     private void verifySetDecimalField(final Entity entity, final String fieldName, final BigDecimal expectedValue) {
         ArgumentCaptor<BigDecimal> decimalCaptor = ArgumentCaptor.forClass(BigDecimal.class);
         verify(entity).setField(eq(fieldName), decimalCaptor.capture());
@@ -135,14 +152,7 @@ public class ProductsCostCalculationServiceTest {
     }
 
     private void stubProductLookupResults(final Map<Long, Entity> productsById) {
-        given(productQuantitiesService.getProduct(anyLong())).willAnswer(new Answer<Entity>() {
-
-            @Override
-            public Entity answer(final InvocationOnMock invocation) throws Throwable {
-                Long productId = (Long) invocation.getArguments()[0];
-                return productsById.get(productId);
-            }
-        });
+        given(productQuantitiesService.getProducts(anyCollectionOf(Long.class))).willReturn(productsById);
     }
 
     private void stubNeededProductQuantities(final Map<Long, BigDecimal> neededProductQuantities) {
@@ -178,7 +188,7 @@ public class ProductsCostCalculationServiceTest {
         Entity secondMaterialCosts = mockCostsHolder(2L, calculateMaterialCostsMode, BigDecimal.valueOf(75L),
                 BigDecimal.valueOf(3L));
         Map<Long, Entity> materialCostsByProductId = ImmutableMap.of(1L, firstMaterialCosts, 2L, secondMaterialCosts);
-        stubOrderMaterialCostsSearchResults(materialCostsByProductId);
+        stubOrderMaterialCostsBulkSearchResults(materialCostsByProductId);
 
         // when
         productsCostCalculationService.calculateTotalProductsCost(costCalculation, sourceOfMaterialCosts);
@@ -208,6 +218,46 @@ public class ProductsCostCalculationServiceTest {
 
         // then
         verifySetDecimalField(costCalculation, "totalMaterialCosts", BigDecimal.valueOf(255));
+        verify(productQuantitiesService, times(1)).getProducts(anyCollectionOf(Long.class));
+    }
+
+    @Test
+    public void shouldCalculateTotalProductsCostsOfManyCalculationsSharingTechnology() throws Exception {
+        // given
+        String sourceOfMaterialCosts = "01currentGlobalDefinitionsInProduct";
+        String calculateMaterialCostsMode = "02average";
+
+        Entity technology = mockEntity(7L);
+
+        Entity firstCostCalculation = mockEntity();
+        stubStringField(firstCostCalculation, "sourceOfMaterialCosts", sourceOfMaterialCosts);
+        stubStringField(firstCostCalculation, "calculateMaterialCostsMode", calculateMaterialCostsMode);
+        stubDecimalField(firstCostCalculation, "quantity", BigDecimal.valueOf(5L));
+        stubBelongsToField(firstCostCalculation, "technology", technology);
+
+        Entity secondCostCalculation = mockEntity();
+        stubStringField(secondCostCalculation, "sourceOfMaterialCosts", sourceOfMaterialCosts);
+        stubStringField(secondCostCalculation, "calculateMaterialCostsMode", calculateMaterialCostsMode);
+        stubDecimalField(secondCostCalculation, "quantity", new BigDecimal("5.000"));
+        stubBelongsToField(secondCostCalculation, "technology", technology);
+
+        Map<Long, BigDecimal> neededProductQuantities = ImmutableMap.of(1L, BigDecimal.ONE, 2L, BigDecimal.valueOf(10L));
+        stubNeededProductQuantities(neededProductQuantities);
+
+        Entity firstProduct = mockCostsHolder(1L, calculateMaterialCostsMode, BigDecimal.valueOf(100L), BigDecimal.valueOf(20));
+        Entity secondProduct = mockCostsHolder(2L, calculateMaterialCostsMode, BigDecimal.valueOf(75L), BigDecimal.valueOf(3L));
+        stubProductLookupResults(ImmutableMap.of(1L, firstProduct, 2L, secondProduct));
+
+        // when
+        productsCostCalculationService.calculateTotalProductsCosts(Lists.newArrayList(firstCostCalculation,
+                secondCostCalculation));
+
+        // then
+        verifySetDecimalField(firstCostCalculation, "totalMaterialCosts", BigDecimal.valueOf(255));
+        verifySetDecimalField(secondCostCalculation, "totalMaterialCosts", BigDecimal.valueOf(255));
+        verify(productQuantitiesService, times(1)).getNeededProductQuantities(any(Entity.class), any(BigDecimal.class),
+                any(MrpAlgorithm.class));
+        verify(productQuantitiesService, times(1)).getProducts(anyCollectionOf(Long.class));
     }
 
     @Test
@@ -55,11 +55,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 @Service
@@ -94,6 +96,9 @@ public class DeliveriesMinStateHelper {
     @Autowired
     private UnitConversionService unitConversionService;
 
+    @Autowired
+    private MinimalStateCheckService minimalStateCheckService;
+
     private void sendEmailNotifications(final List<String> createdDeliveries) {
         if (!createdDeliveries.isEmpty()) {
             List<String> emails = dataDefinitionService
@@ -102,7 +107,7 @@ public class DeliveriesMinStateHelper {
                     .getEntities().stream().map(entity -> entity.getStringField(StaffNotificationFields.EMAIL))
                     .collect(Collectors.toList());
 
-            mailingService.sendTemplateDeliveryInfoEmailsBySendinblue(emails, createdDeliveries);
+            mailingService.queueTemplateDeliveryInfoEmailsBySendinblue(emails, createdDeliveries);
         }
 
     }
@@ -196,6 +201,84 @@ public class DeliveriesMinStateHelper {
         return minimalStatePerWarehousesAndSupplier;
     }
 
+    /**
+     * Creates draft deliveries for all minimal states, waiting until no other run creates deliveries from minimal states.
+     */
+    @Transactional
+    public Map<Long, Multimap<Long, Entity>> createDeliveriesFromMinimalStateExclusively() {
+        minimalStateCheckService.lockDeliveriesCreation();
+
+        return createDeliveriesFromMinimalState();
+    }
+
+    /**
+     * Creates draft deliveries for all minimal states, unless another run creates deliveries from minimal states at the moment.
+     *
+     * @return false, if another run creates deliveries from minimal states
+     */
+    @Transactional
+    public boolean tryCreateDeliveriesFromMinimalState() {
+        if (!minimalStateCheckService.tryLockDeliveriesCreation()) {
+            return false;
+        }
+
+        createDeliveriesFromMinimalState();
+
+        return true;
+    }
+
+    /**
+     * Creates draft deliveries only for (warehouse, product) pairs queued by {@link MinimalStateCheckService} since the last
+     * run, grouped by warehouse and default supplier exactly like {@link #createDeliveriesFromMinimalState()}. Queued changes
+     * are left in place, if another run creates deliveries from minimal states at the moment, so the next run handles them.
+     */
+    @Transactional
+    public Map<Long, Multimap<Long, Entity>> createDeliveriesFromChangedMinimalStates() {
+        Map<Long, Multimap<Long, Entity>> minimalStatePerWarehousesAndSupplier = Maps.newHashMap();
+
+        if (!minimalStateCheckService.tryLockDeliveriesCreation()) {
+            return minimalStatePerWarehousesAndSupplier;
+        }
+
+        Long lastQueuedId = minimalStateCheckService.getLastQueuedId();
+
+        if (Objects.isNull(lastQueuedId)) {
+            return minimalStatePerWarehousesAndSupplier;
+        }
+
+        Multimap<Long, Long> queuedProductIds = minimalStateCheckService.getQueuedProductIds(lastQueuedId);
+
+        minimalStateCheckService.dequeue(lastQueuedId);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("CreateDeliveriesFromChangedMinimalStates invoked with: %d warehouses.", queuedProductIds
+                    .keySet().size()));
+        }
+
+        if (!queuedProductIds.isEmpty()) {
+            DataDefinition locationDD = dataDefinitionService.get(MaterialFlowConstants.PLUGIN_IDENTIFIER,
+                    MaterialFlowConstants.MODEL_LOCATION);
+
+            for (Long warehouseId : queuedProductIds.keySet()) {
+                Entity warehouse = locationDD.get(warehouseId);
+
+                if (Objects.nonNull(warehouse)) {
+                    fillPositions(warehouse,
+                            getMinimalStateGreaterThanZeroForWarehouseAndProducts(warehouse, queuedProductIds.get(warehouseId)),
+                            minimalStatePerWarehousesAndSupplier);
+                }
+            }
+
+            List<String> createdDeliveries = Lists.newArrayList();
+            minimalStatePerWarehousesAndSupplier.keySet().forEach(
+                    p -> createdDeliveries.addAll(createDeliveries(p, minimalStatePerWarehousesAndSupplier.get(p))));
+
+            sendEmailNotifications(createdDeliveries);
+        }
+
+        return minimalStatePerWarehousesAndSupplier;
+    }
+
     private List<String> createDeliveries(Long warehouse, Multimap<Long, Entity> multiMap) {
         List<String> deliveriesNumbers = Lists.newArrayList();
         multiMap.keySet().forEach(p -> deliveriesNumbers.add(createDelivery(warehouse, p, multiMap.get(p))));
@@ -214,8 +297,11 @@ public class DeliveriesMinStateHelper {
 
     private void fillPositions(final Entity warehouse,
             final Map<Long, Multimap<Long, Entity>> minimalStatePerWarehousesAndSupplier) {
+        fillPositions(warehouse, getMinimalStateGreaterThanZeroForWarehouse(warehouse), minimalStatePerWarehousesAndSupplier);
+    }
 
-        List<Entity> minmialStates = getMinimalStateGreaterThanZeroForWarehouse(warehouse);
+    private void fillPositions(final Entity warehouse, final List<Entity> minmialStates,
+            final Map<Long, Multimap<Long, Entity>> minimalStatePerWarehousesAndSupplier) {
         Map<Long, Entity> minmialStatesByProduct = minmialStates.stream().collect(
                 Collectors.toMap(res -> res.getBelongsToField("product").getId(), res -> res));
         List<Entity> stocks = getWarehouseStockWithTooSmallMinState(warehouse,
@@ -263,6 +349,14 @@ public class DeliveriesMinStateHelper {
         return getWarehouseMinimumStateDD().find(query).setParameter("warehouseId", warehouse.getId()).list().getEntities();
     }
 
+    private List<Entity> getMinimalStateGreaterThanZeroForWarehouseAndProducts(final Entity warehouse,
+            final Collection<Long> productIds) {
+        String query = "select state from #warehouseMinimalState_warehouseMinimumState as state where state.minimumState > 0"
+                + " and state.location.id = :warehouseId and state.product.id in (:productIds)";
+        return getWarehouseMinimumStateDD().find(query).setParameter("warehouseId", warehouse.getId())
+                .setParameterList("productIds", productIds).list().getEntities();
+    }
+
     // WARNING unused argument is used in aspect in plugin integration
     public List<Entity> getWarehouseStockWithTooSmallMinState(final Entity warehouse, final List<Entity> products) {
         String query = "select stock from #materialFlowResources_resourceStockDto as stock where stock.minimumState > 0"
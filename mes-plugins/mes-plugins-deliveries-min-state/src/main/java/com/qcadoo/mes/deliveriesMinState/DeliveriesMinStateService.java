@@ -34,6 +34,11 @@ import com.qcadoo.tenant.api.MultiTenantService;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ViewDefinitionState;
 
+/**
+ * Runs creation of deliveries from minimal states. Runs are serialized with a database lock, taken by
+ * {@link DeliveriesMinStateHelper}, so the full scan, the changed minimal states job and the manual action don't create
+ * deliveries for the same warehouse and product at the same time, also when the application runs on several nodes.
+ */
 @Service
 @RunIfEnabled(DeliveriesMinStateConstants.PLUGIN_IDENTIFIER)
 public class DeliveriesMinStateService {
@@ -44,6 +49,9 @@ public class DeliveriesMinStateService {
     @Autowired
     private DeliveriesMinStateHelper deliveriesMinStateHelper;
 
+    @Autowired
+    private MinimalStateCheckService minimalStateCheckService;
+
     @Autowired
     ParameterService parameterService;
 
@@ -53,17 +61,34 @@ public class DeliveriesMinStateService {
             @Override
             public void invoke() {
                 if (parameterService.getParameter().getBooleanField("automaticDeliveriesMinState")) {
-                    deliveriesMinStateHelper.createDeliveriesFromMinimalState();
+                    deliveriesMinStateHelper.createDeliveriesFromMinimalStateExclusively();
                 }
             }
 
         });
     }
 
-    public void triggerDeliveriesMinState(final ViewDefinitionState view, final ComponentState componentState, final String[] args) {
-        deliveriesMinStateHelper.createDeliveriesFromMinimalState();
-        componentState.addMessage("deliveriesMinState.createDeliveries.info", ComponentState.MessageType.SUCCESS);
+    public void changedMinimalStatesTrigger() {
+        multiTenantService.doInMultiTenantContext(new MultiTenantCallback() {
+
+            @Override
+            public void invoke() {
+                if (parameterService.getParameter().getBooleanField("automaticDeliveriesMinState")) {
+                    deliveriesMinStateHelper.createDeliveriesFromChangedMinimalStates();
+                } else {
+                    minimalStateCheckService.clear();
+                }
+            }
 
+        });
+    }
+
+    public void triggerDeliveriesMinState(final ViewDefinitionState view, final ComponentState componentState, final String[] args) {
+        if (deliveriesMinStateHelper.tryCreateDeliveriesFromMinimalState()) {
+            componentState.addMessage("deliveriesMinState.createDeliveries.info", ComponentState.MessageType.SUCCESS);
+        } else {
+            componentState.addMessage("deliveriesMinState.createDeliveries.inProgress", ComponentState.MessageType.INFO);
+        }
     }
 
 }
@@ -0,0 +1,182 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveriesMinState;
+
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.qcadoo.mes.deliveries.constants.DeliveryFields;
+import com.qcadoo.mes.deliveries.constants.OrderedProductFields;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Queues (warehouse, product) pairs whose stock or ordered quantity changed, so that only these pairs are checked against
+ * their minimal states by {@link DeliveriesMinStateHelper#createDeliveriesFromChangedMinimalStates()}.
+ */
+@Service
+public class MinimalStateCheckService {
+
+    private static final String L_LOCATION_ID = "locationId";
+
+    private static final String L_PRODUCT_ID = "productId";
+
+    private static final String L_PRODUCT_IDS = "productIds";
+
+    private static final String L_MAX_ID = "maxId";
+
+    private static final String L_LOCK_KEY = "lockKey";
+
+    private static final int L_MAX_PRODUCTS_IN_QUERY = 1000;
+
+    private static final long L_DELIVERIES_CREATION_LOCK_KEY = 7301001L;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public void enqueueForDocument(final Entity document) {
+        Set<Long> productIds = document.getHasManyField(DocumentFields.POSITIONS).stream()
+                .map(position -> position.getBelongsToField(PositionFields.PRODUCT)).filter(Objects::nonNull)
+                .map(Entity::getId).collect(Collectors.toSet());
+
+        enqueue(document.getBelongsToField(DocumentFields.LOCATION_FROM), productIds);
+        enqueue(document.getBelongsToField(DocumentFields.LOCATION_TO), productIds);
+    }
+
+    public void enqueueForDelivery(final Entity delivery) {
+        Set<Long> productIds = delivery.getHasManyField(DeliveryFields.ORDERED_PRODUCTS).stream()
+                .map(orderedProduct -> orderedProduct.getBelongsToField(OrderedProductFields.PRODUCT))
+                .filter(Objects::nonNull).map(Entity::getId).collect(Collectors.toSet());
+
+        enqueue(delivery.getBelongsToField(DeliveryFields.LOCATION), productIds);
+    }
+
+    /**
+     * Queues given products in given warehouse, skipping products without minimal state in it.
+     */
+    public void enqueue(final Entity location, final Collection<Long> productIds) {
+        if (Objects.isNull(location) || productIds.isEmpty()) {
+            return;
+        }
+
+        String query = "INSERT INTO deliveriesminstate_minimalstatecheck (id, locationid, productid) "
+                + "SELECT nextval('deliveriesminstate_minimalstatecheck_id_seq'), state.location_id, state.product_id "
+                + "FROM warehouseminimalstate_warehouseminimumstate state "
+                + "WHERE state.location_id = :locationId AND state.product_id IN (:productIds) AND state.minimumstate > 0";
+
+        for (List<Long> productIdsPart : Lists.partition(Lists.newArrayList(productIds), L_MAX_PRODUCTS_IN_QUERY)) {
+            Map<String, Object> params = Maps.newHashMap();
+
+            params.put(L_LOCATION_ID, location.getId());
+            params.put(L_PRODUCT_IDS, productIdsPart);
+
+            jdbcTemplate.update(query, params);
+        }
+    }
+
+    public void enqueue(final Long locationId, final Long productId) {
+        if (Objects.isNull(locationId) || Objects.isNull(productId)) {
+            return;
+        }
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put(L_LOCATION_ID, locationId);
+        params.put(L_PRODUCT_ID, productId);
+
+        jdbcTemplate.update("INSERT INTO deliveriesminstate_minimalstatecheck (id, locationid, productid) "
+                + "VALUES (nextval('deliveriesminstate_minimalstatecheck_id_seq'), :locationId, :productId)", params);
+    }
+
+    public Long getLastQueuedId() {
+        return jdbcTemplate.queryForObject("SELECT max(id) FROM deliveriesminstate_minimalstatecheck", Maps.newHashMap(),
+                Long.class);
+    }
+
+    /**
+     * Returns products queued up to given id, which have minimal state greater than zero, grouped by warehouse.
+     */
+    public Multimap<Long, Long> getQueuedProductIds(final Long maxId) {
+        String query = "SELECT DISTINCT state.location_id, state.product_id FROM warehouseminimalstate_warehouseminimumstate state "
+                + "JOIN deliveriesminstate_minimalstatecheck msc "
+                + "ON msc.locationid = state.location_id AND msc.productid = state.product_id "
+                + "WHERE msc.id <= :maxId AND state.minimumstate > 0 ORDER BY state.location_id, state.product_id";
+
+        Multimap<Long, Long> productIdsByLocationId = LinkedHashMultimap.create();
+
+        jdbcTemplate.query(query, Collections.singletonMap(L_MAX_ID, maxId),
+                (RowCallbackHandler) resultSet -> productIdsByLocationId.put(resultSet.getLong("location_id"),
+                        resultSet.getLong("product_id")));
+
+        return productIdsByLocationId;
+    }
+
+    /**
+     * Takes database lock, which serializes creation of deliveries from minimal states among all application instances, waiting
+     * until it is free. Lock is released when the current transaction ends.
+     */
+    public void lockDeliveriesCreation() {
+        jdbcTemplate.execute("SELECT pg_advisory_xact_lock(:lockKey)",
+                Collections.singletonMap(L_LOCK_KEY, L_DELIVERIES_CREATION_LOCK_KEY),
+                (PreparedStatementCallback<Boolean>) PreparedStatement::execute);
+    }
+
+    /**
+     * Takes database lock, which serializes creation of deliveries from minimal states among all application instances. Lock is
+     * released when the current transaction ends.
+     *
+     * @return false without waiting, if the lock is held by another run
+     */
+    public boolean tryLockDeliveriesCreation() {
+        return jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(:lockKey)",
+                Collections.singletonMap(L_LOCK_KEY, L_DELIVERIES_CREATION_LOCK_KEY), Boolean.class);
+    }
+
+    public void clear() {
+        jdbcTemplate.update("DELETE FROM deliveriesminstate_minimalstatecheck", Maps.newHashMap());
+    }
+
+    public void dequeue(final Long maxId) {
+        jdbcTemplate.update("DELETE FROM deliveriesminstate_minimalstatecheck WHERE id <= :maxId",
+                Collections.singletonMap(L_MAX_ID, maxId));
+    }
+
+}
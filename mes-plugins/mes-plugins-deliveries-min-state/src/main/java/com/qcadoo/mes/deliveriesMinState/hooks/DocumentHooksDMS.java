@@ -0,0 +1,61 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveriesMinState.hooks;
+
+import java.util.Objects;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.mes.deliveriesMinState.MinimalStateCheckService;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentState;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+@Service
+public class DocumentHooksDMS {
+
+    @Autowired
+    private MinimalStateCheckService minimalStateCheckService;
+
+    public void onSave(final DataDefinition documentDD, final Entity document) {
+        if (DocumentState.ACCEPTED.getStringValue().equals(document.getStringField(DocumentFields.STATE))
+                && !isAlreadyAccepted(documentDD, document)) {
+            minimalStateCheckService.enqueueForDocument(document);
+        }
+    }
+
+    private boolean isAlreadyAccepted(final DataDefinition documentDD, final Entity document) {
+        if (Objects.isNull(document.getId())) {
+            return false;
+        }
+
+        Entity documentFromDB = documentDD.get(document.getId());
+
+        return Objects.nonNull(documentFromDB)
+                && DocumentState.ACCEPTED.getStringValue().equals(documentFromDB.getStringField(DocumentFields.STATE));
+    }
+
+}
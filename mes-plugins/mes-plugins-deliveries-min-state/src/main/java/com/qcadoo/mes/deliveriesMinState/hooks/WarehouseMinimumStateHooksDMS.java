@@ -0,0 +1,54 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveriesMinState.hooks;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.mes.deliveriesMinState.MinimalStateCheckService;
+import com.qcadoo.mes.warehouseMinimalState.constants.WarehouseMinimumStateFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+@Service
+public class WarehouseMinimumStateHooksDMS {
+
+    @Autowired
+    private MinimalStateCheckService minimalStateCheckService;
+
+    public void onSave(final DataDefinition warehouseMinimumStateDD, final Entity warehouseMinimumState) {
+        BigDecimal minimumState = warehouseMinimumState.getDecimalField(WarehouseMinimumStateFields.MINIMUM_STATE);
+        Entity product = warehouseMinimumState.getBelongsToField(WarehouseMinimumStateFields.PRODUCT);
+        Entity location = warehouseMinimumState.getBelongsToField(WarehouseMinimumStateFields.LOCATION);
+
+        if (Objects.nonNull(minimumState) && (minimumState.compareTo(BigDecimal.ZERO) > 0) && Objects.nonNull(product)
+                && Objects.nonNull(location)) {
+            minimalStateCheckService.enqueue(location.getId(), product.getId());
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveriesMinState.notifications.outbound;
+
+import java.util.List;
+
+public class OutboundMail {
+
+    private final Long id;
+
+    private final String templateId;
+
+    private final List<String> recipients;
+
+    private final String content;
+
+    private final int attempts;
+
+    public OutboundMail(final Long id, final String templateId, final List<String> recipients, final String content,
+            final int attempts) {
+        this.id = id;
+        this.templateId = templateId;
+        this.recipients = recipients;
+        this.content = content;
+        this.attempts = attempts;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getTemplateId() {
+        return templateId;
+    }
+
+    public List<String> getRecipients() {
+        return recipients;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+}
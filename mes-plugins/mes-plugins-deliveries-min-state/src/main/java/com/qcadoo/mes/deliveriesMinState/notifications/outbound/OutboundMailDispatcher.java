@@ -0,0 +1,151 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveriesMinState.notifications.outbound;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.AsyncResult;
+import org.springframework.stereotype.Service;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Sends mails queued by {@link OutboundMailService}, run every minute by a scheduled job. Mails are sent asynchronously on the
+ * application task executor, so the number of mails sent at a time is bounded by its pool size. A mail the provider did not
+ * accept is retried after an exponentially growing delay, and is marked as dead letter after {@link #maxAttempts} attempts.
+ */
+@Service
+public class OutboundMailDispatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OutboundMailDispatcher.class);
+
+    static final String L_DELIVERIES = "DELIVERIES";
+
+    @Value("${outboundMail.batchSize:100}")
+    private int batchSize;
+
+    @Value("${outboundMail.maxAttempts:8}")
+    private int maxAttempts;
+
+    @Value("${outboundMail.retryDelay:60000}")
+    private long retryDelay;
+
+    @Value("${outboundMail.maxRetryDelay:21600000}")
+    private long maxRetryDelay;
+
+    @Value("${outboundMail.claimTimeout:600000}")
+    private long claimTimeout;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    @Autowired
+    private OutboundMailService outboundMailService;
+
+    @Autowired
+    private MailTransport mailTransport;
+
+    public void dispatchOutboundMailsTrigger() {
+        multiTenantService.doInMultiTenantContext(this::dispatch);
+    }
+
+    /**
+     * Sends a batch of claimed due mails, waiting until all of them are sent or rescheduled.
+     */
+    public void dispatch() {
+        List<Future<Void>> sendings = outboundMailService.claimDueMails(batchSize, claimTimeout).stream()
+                .map(this::send).collect(Collectors.toList());
+
+        for (Future<Void> sending : sendings) {
+            try {
+                sending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                return;
+            } catch (ExecutionException e) {
+                LOG.error("Outbound mail dispatching failed", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Sends given mail and records the outcome, both in one multi tenant context, as the executor thread has none.
+     */
+    @Async
+    public Future<Void> send(final OutboundMail mail) {
+        multiTenantService.doInMultiTenantContext(() -> {
+            Map<String, String> attributes = ImmutableMap.of(L_DELIVERIES, Strings.nullToEmpty(mail.getContent()));
+
+            try {
+                mailTransport.sendTemplateEmail(mail.getTemplateId(), mail.getRecipients(), attributes);
+            } catch (RuntimeException e) {
+                int attempts = mail.getAttempts() + 1;
+
+                if (attempts >= maxAttempts) {
+                    LOG.error(String.format("Outbound mail %d not sent after %d attempts", mail.getId(), attempts), e);
+
+                    outboundMailService.markDeadLetter(mail, e.getMessage());
+                } else {
+                    LOG.warn(String.format("Outbound mail %d not sent, attempt %d", mail.getId(), attempts), e);
+
+                    outboundMailService.markFailed(mail, new Date(System.currentTimeMillis() + getRetryDelay(attempts)),
+                            e.getMessage());
+                }
+
+                return;
+            }
+
+            outboundMailService.markSent(mail);
+        });
+
+        return new AsyncResult<>(null);
+    }
+
+    /**
+     * @return delay before the next attempt, doubled after each failed attempt up to {@link #maxRetryDelay}
+     */
+    long getRetryDelay(final int attempts) {
+        long delay = retryDelay;
+
+        for (int attempt = 1; attempt < attempts && delay < maxRetryDelay; attempt++) {
+            delay *= 2;
+        }
+
+        return Math.min(delay, maxRetryDelay);
+    }
+
+}
@@ -0,0 +1,123 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveriesMinState.notifications.outbound;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.deliveriesMinState.notifications.constants.OutboundMailStatus;
+
+/**
+ * Persistent queue of mails sent by {@link OutboundMailDispatcher}. Producers only insert rows, in their own transaction, so
+ * mails about data which was rolled back are never sent.
+ */
+@Service
+public class OutboundMailService {
+
+    private static final String L_RECIPIENTS_SEPARATOR = "|";
+
+    private static final int L_MAX_ERROR_LENGTH = 2048;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public void enqueue(final String templateId, final List<String> recipients, final String content) {
+        if (recipients.isEmpty()) {
+            return;
+        }
+
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("templateId", templateId);
+        params.put("recipients", String.join(L_RECIPIENTS_SEPARATOR, recipients));
+        params.put("content", content);
+        params.put("status", OutboundMailStatus.PENDING.getStringValue());
+
+        jdbcTemplate.update("INSERT INTO deliveriesminstate_outboundmail "
+                + "(id, templateid, recipients, content, status, attempts, createdate, nextattemptdate) "
+                + "VALUES (nextval('deliveriesminstate_outboundmail_id_seq'), :templateId, :recipients, :content, :status, 0, "
+                + "now(), now())", params);
+    }
+
+    /**
+     * Claims due mails by moving their next attempt date by given claim timeout, so other nodes and overlapping runs skip them.
+     * A mail which is neither marked as sent nor rescheduled, e.g. because the node died, becomes due again after the timeout.
+     */
+    public List<OutboundMail> claimDueMails(final int limit, final long claimTimeout) {
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("status", OutboundMailStatus.PENDING.getStringValue());
+        params.put("limit", limit);
+        params.put("claimTimeout", claimTimeout);
+
+        return jdbcTemplate.query("UPDATE deliveriesminstate_outboundmail "
+                + "SET nextattemptdate = now() + :claimTimeout * interval '1 millisecond' "
+                + "WHERE id IN (SELECT id FROM deliveriesminstate_outboundmail "
+                + "WHERE status = :status AND nextattemptdate <= now() ORDER BY nextattemptdate, id LIMIT :limit "
+                + "FOR UPDATE SKIP LOCKED) "
+                + "RETURNING id, templateid, recipients, content, attempts", params,
+                (resultSet, rowNum) -> new OutboundMail(resultSet.getLong("id"), resultSet.getString("templateid"), Arrays
+                        .asList(StringUtils.split(resultSet.getString("recipients"), L_RECIPIENTS_SEPARATOR)), resultSet
+                        .getString("content"), resultSet.getInt("attempts")));
+    }
+
+    public void markSent(final OutboundMail mail) {
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("id", mail.getId());
+        params.put("status", OutboundMailStatus.SENT.getStringValue());
+        params.put("attempts", mail.getAttempts() + 1);
+
+        jdbcTemplate.update("UPDATE deliveriesminstate_outboundmail SET status = :status, attempts = :attempts, "
+                + "sentdate = now(), nextattemptdate = NULL WHERE id = :id", params);
+    }
+
+    public void markFailed(final OutboundMail mail, final Date nextAttemptDate, final String error) {
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("id", mail.getId());
+        params.put("attempts", mail.getAttempts() + 1);
+        params.put("nextAttemptDate", nextAttemptDate);
+        params.put("lastError", StringUtils.left(error, L_MAX_ERROR_LENGTH));
+
+        jdbcTemplate.update("UPDATE deliveriesminstate_outboundmail SET attempts = :attempts, "
+                + "nextattemptdate = :nextAttemptDate, lasterror = :lastError WHERE id = :id", params);
+    }
+
+    public void markDeadLetter(final OutboundMail mail, final String error) {
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("id", mail.getId());
+        params.put("status", OutboundMailStatus.DEAD_LETTER.getStringValue());
+        params.put("attempts", mail.getAttempts() + 1);
+        params.put("lastError", StringUtils.left(error, L_MAX_ERROR_LENGTH));
+
+        jdbcTemplate.update("UPDATE deliveriesminstate_outboundmail SET status = :status, attempts = :attempts, "
+                + "nextattemptdate = NULL, lasterror = :lastError WHERE id = :id", params);
+    }
+
+}
@@ -0,0 +1,86 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveriesMinState.notifications.outbound;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Maps;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.qcadoo.mes.emailNotifications.sendinblue.Mailin;
+
+@Service
+public class SendinblueMailTransport implements MailTransport {
+
+    private static final String L_SENDINBLUE_URL = "https://api.sendinblue.com/v2.0";
+
+    private static final String L_CODE = "code";
+
+    private static final String L_SUCCESS = "success";
+
+    @Value("${mandrillApiKey}")
+    private String apiKey;
+
+    @Override
+    public void sendTemplateEmail(final String templateId, final List<String> recipients, final Map<String, String> attributes) {
+        Mailin http = new Mailin(L_SENDINBLUE_URL, apiKey);
+
+        Map<String, Object> data = Maps.newHashMap();
+        data.put("id", templateId);
+        data.put("to", String.join("|", recipients));
+        data.put("attr", attributes);
+
+        String response = http.send_transactional_template(data);
+
+        if (!isSuccess(response)) {
+            throw new IllegalStateException("Sending email by sendinblue failed, response: " + response);
+        }
+    }
+
+    private boolean isSuccess(final String response) {
+        if (response == null) {
+            return false;
+        }
+
+        try {
+            JsonElement json = new JsonParser().parse(response);
+
+            if (!json.isJsonObject()) {
+                return false;
+            }
+
+            JsonObject jsonObject = json.getAsJsonObject();
+
+            return jsonObject.has(L_CODE) && L_SUCCESS.equals(jsonObject.get(L_CODE).getAsString());
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+}
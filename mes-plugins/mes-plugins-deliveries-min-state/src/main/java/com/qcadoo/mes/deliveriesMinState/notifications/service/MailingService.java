@@ -34,5 +34,5 @@ public interface MailingService {
 
     SendingStatus sendTemplateDeliveryInfoEmailsByMandrill(final List<String> emails, final List<String> productNumbers);
 
-    SendingStatus sendTemplateDeliveryInfoEmailsBySendinblue(final List<String> emails, final List<String> deliveries);
+    SendingStatus queueTemplateDeliveryInfoEmailsBySendinblue(final List<String> emails, final List<String> deliveries);
 }
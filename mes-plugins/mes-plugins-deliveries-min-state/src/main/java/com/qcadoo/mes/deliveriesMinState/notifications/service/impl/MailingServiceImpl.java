@@ -24,7 +24,6 @@
 package com.qcadoo.mes.deliveriesMinState.notifications.service.impl;
 
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
@@ -33,13 +32,12 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.qcadoo.mes.deliveriesMinState.notifications.constants.SendingStatus;
 import com.qcadoo.mes.deliveriesMinState.notifications.mandrill.ContentItem;
 import com.qcadoo.mes.deliveriesMinState.notifications.mandrill.Recipient;
 import com.qcadoo.mes.deliveriesMinState.notifications.mandrill.SendResponse;
 import com.qcadoo.mes.deliveriesMinState.notifications.mandrill.TemplateEmail;
-import com.qcadoo.mes.emailNotifications.sendinblue.Mailin;
+import com.qcadoo.mes.deliveriesMinState.notifications.outbound.OutboundMailService;
 import com.qcadoo.mes.deliveriesMinState.notifications.service.MailingService;
 import com.qcadoo.mes.deliveriesMinState.notifications.service.MandrillService;
 
@@ -55,6 +53,9 @@ public class MailingServiceImpl implements MailingService {
     @Autowired
     private MandrillService mandrillService;
 
+    @Autowired
+    private OutboundMailService outboundMailService;
+
     @Override
     public SendingStatus sendTemplateEmailByMandrill(TemplateEmail email) {
         SendingStatus result = SendingStatus.sent;
@@ -101,18 +102,11 @@ public class MailingServiceImpl implements MailingService {
     }
 
     @Override
-    public SendingStatus sendTemplateDeliveryInfoEmailsBySendinblue(List<String> emails, List<String> deliveries) {
-        Mailin http = new Mailin("https://api.sendinblue.com/v2.0", apiKey);
-        Map<String, String> attr = Maps.newHashMap();
-        attr.put("DELIVERIES", prepareDeliveriesList(deliveries).getContent());
-
-        Map<String, Object> data = Maps.newHashMap();
-        data.put("id", getRandomTemplate(deliveryTemplateEmail));
-        data.put("to", emails.stream().collect(Collectors.joining("|")));
-        data.put("attr", attr);
-        http.send_transactional_template(data);
-
-        return SendingStatus.sent;
+    public SendingStatus queueTemplateDeliveryInfoEmailsBySendinblue(List<String> emails, List<String> deliveries) {
+        outboundMailService.enqueue(getRandomTemplate(deliveryTemplateEmail), emails, prepareDeliveriesList(deliveries)
+                .getContent());
+
+        return SendingStatus.queued;
     }
 
     private ContentItem prepareDeliveriesList(List<String> deliveries) {
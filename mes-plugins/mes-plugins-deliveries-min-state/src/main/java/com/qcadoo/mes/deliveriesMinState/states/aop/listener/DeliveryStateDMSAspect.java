@@ -0,0 +1,66 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveriesMinState.states.aop.listener;
+
+import static com.qcadoo.mes.states.aop.RunForStateTransitionAspect.WILDCARD_STATE;
+
+import org.aspectj.lang.annotation.After;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+
+import com.qcadoo.mes.deliveries.states.aop.DeliveryStateChangeAspect;
+import com.qcadoo.mes.deliveries.states.constants.DeliveryStateChangePhase;
+import com.qcadoo.mes.deliveriesMinState.MinimalStateCheckService;
+import com.qcadoo.mes.deliveriesMinState.constants.DeliveriesMinStateConstants;
+import com.qcadoo.mes.states.StateChangeContext;
+import com.qcadoo.mes.states.annotation.RunForStateTransition;
+import com.qcadoo.mes.states.annotation.RunInPhase;
+import com.qcadoo.mes.states.aop.AbstractStateListenerAspect;
+import com.qcadoo.plugin.api.RunIfEnabled;
+
+@Aspect
+@Configurable
+@RunIfEnabled(DeliveriesMinStateConstants.PLUGIN_IDENTIFIER)
+public class DeliveryStateDMSAspect extends AbstractStateListenerAspect {
+
+    @Autowired
+    private MinimalStateCheckService minimalStateCheckService;
+
+    @Pointcut(DeliveryStateChangeAspect.SELECTOR_POINTCUT)
+    protected void targetServicePointcut() {
+
+    }
+
+    @RunInPhase(DeliveryStateChangePhase.LAST)
+    @RunForStateTransition(sourceState = WILDCARD_STATE, targetState = WILDCARD_STATE)
+    @After(PHASE_EXECUTION_POINTCUT)
+    public void enqueueMinimalStateCheck(final StateChangeContext stateChangeContext, final int phase) {
+        if (stateChangeContext.isOwnerValid()) {
+            minimalStateCheckService.enqueueForDelivery(stateChangeContext.getOwner());
+        }
+    }
+
+}
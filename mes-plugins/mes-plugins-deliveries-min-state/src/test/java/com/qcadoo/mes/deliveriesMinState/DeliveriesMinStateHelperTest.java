@@ -0,0 +1,108 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveriesMinState;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.model.api.DataDefinitionService;
+
+public class DeliveriesMinStateHelperTest {
+
+    private DeliveriesMinStateHelper deliveriesMinStateHelper;
+
+    @Mock
+    private MinimalStateCheckService minimalStateCheckService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        deliveriesMinStateHelper = new DeliveriesMinStateHelper();
+
+        ReflectionTestUtils.setField(deliveriesMinStateHelper, "minimalStateCheckService", minimalStateCheckService);
+        ReflectionTestUtils.setField(deliveriesMinStateHelper, "dataDefinitionService", dataDefinitionService);
+    }
+
+    @Test
+    public void shouldLeaveQueuedChangesIfOtherRunCreatesDeliveries() {
+        // given
+        given(minimalStateCheckService.tryLockDeliveriesCreation()).willReturn(false);
+
+        // when
+        boolean empty = deliveriesMinStateHelper.createDeliveriesFromChangedMinimalStates().isEmpty();
+
+        // then
+        assertTrue(empty);
+
+        verify(minimalStateCheckService, never()).getLastQueuedId();
+        verify(minimalStateCheckService, never()).dequeue(anyLong());
+        verifyZeroInteractions(dataDefinitionService);
+    }
+
+    @Test
+    public void shouldNotDequeueIfNothingIsQueued() {
+        // given
+        given(minimalStateCheckService.tryLockDeliveriesCreation()).willReturn(true);
+        given(minimalStateCheckService.getLastQueuedId()).willReturn(null);
+
+        // when
+        boolean empty = deliveriesMinStateHelper.createDeliveriesFromChangedMinimalStates().isEmpty();
+
+        // then
+        assertTrue(empty);
+
+        verify(minimalStateCheckService, never()).dequeue(anyLong());
+        verifyZeroInteractions(dataDefinitionService);
+    }
+
+    @Test
+    public void shouldNotCreateDeliveriesOnDemandIfOtherRunCreatesDeliveries() {
+        // given
+        given(minimalStateCheckService.tryLockDeliveriesCreation()).willReturn(false);
+
+        // when
+        boolean created = deliveriesMinStateHelper.tryCreateDeliveriesFromMinimalState();
+
+        // then
+        assertFalse(created);
+
+        verifyZeroInteractions(dataDefinitionService);
+    }
+
+}
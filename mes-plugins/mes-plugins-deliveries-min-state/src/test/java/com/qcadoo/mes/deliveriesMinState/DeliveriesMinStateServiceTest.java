@@ -0,0 +1,150 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveriesMinState;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
+import com.qcadoo.view.api.ComponentState;
+import com.qcadoo.view.api.ViewDefinitionState;
+
+public class DeliveriesMinStateServiceTest {
+
+    private DeliveriesMinStateService deliveriesMinStateService;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    @Mock
+    private DeliveriesMinStateHelper deliveriesMinStateHelper;
+
+    @Mock
+    private MinimalStateCheckService minimalStateCheckService;
+
+    @Mock
+    private ParameterService parameterService;
+
+    @Mock
+    private Entity parameter;
+
+    @Mock
+    private ViewDefinitionState view;
+
+    @Mock
+    private ComponentState componentState;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        deliveriesMinStateService = new DeliveriesMinStateService();
+
+        ReflectionTestUtils.setField(deliveriesMinStateService, "multiTenantService", multiTenantService);
+        ReflectionTestUtils.setField(deliveriesMinStateService, "deliveriesMinStateHelper", deliveriesMinStateHelper);
+        ReflectionTestUtils.setField(deliveriesMinStateService, "minimalStateCheckService", minimalStateCheckService);
+        ReflectionTestUtils.setField(deliveriesMinStateService, "parameterService", parameterService);
+
+        willAnswer(invocation -> {
+            ((MultiTenantCallback) invocation.getArguments()[0]).invoke();
+
+            return null;
+        }).given(multiTenantService).doInMultiTenantContext(any(MultiTenantCallback.class));
+
+        given(parameterService.getParameter()).willReturn(parameter);
+        given(parameter.getBooleanField("automaticDeliveriesMinState")).willReturn(true);
+    }
+
+    @Test
+    public void shouldWaitForOtherRunsInNightlyRun() {
+        // when
+        deliveriesMinStateService.automaticDeliveriesMinStateTrigger();
+
+        // then
+        verify(deliveriesMinStateHelper).createDeliveriesFromMinimalStateExclusively();
+        verify(deliveriesMinStateHelper, never()).createDeliveriesFromMinimalState();
+    }
+
+    @Test
+    public void shouldProcessChangedMinimalStates() {
+        // when
+        deliveriesMinStateService.changedMinimalStatesTrigger();
+
+        // then
+        verify(deliveriesMinStateHelper).createDeliveriesFromChangedMinimalStates();
+        verify(minimalStateCheckService, never()).clear();
+    }
+
+    @Test
+    public void shouldClearQueuedChangesIfAutomaticDeliveriesAreDisabled() {
+        // given
+        given(parameter.getBooleanField("automaticDeliveriesMinState")).willReturn(false);
+
+        // when
+        deliveriesMinStateService.changedMinimalStatesTrigger();
+
+        // then
+        verify(deliveriesMinStateHelper, never()).createDeliveriesFromChangedMinimalStates();
+        verify(minimalStateCheckService).clear();
+    }
+
+    @Test
+    public void shouldCreateDeliveriesOnDemand() {
+        // given
+        given(deliveriesMinStateHelper.tryCreateDeliveriesFromMinimalState()).willReturn(true);
+
+        // when
+        deliveriesMinStateService.triggerDeliveriesMinState(view, componentState, new String[0]);
+
+        // then
+        verify(componentState).addMessage("deliveriesMinState.createDeliveries.info", ComponentState.MessageType.SUCCESS);
+    }
+
+    @Test
+    public void shouldNotWaitOnDemandWhileOtherRunCreatesDeliveries() {
+        // given
+        given(deliveriesMinStateHelper.tryCreateDeliveriesFromMinimalState()).willReturn(false);
+
+        // when
+        deliveriesMinStateService.triggerDeliveriesMinState(view, componentState, new String[0]);
+
+        // then
+        verify(componentState).addMessage("deliveriesMinState.createDeliveries.inProgress", ComponentState.MessageType.INFO);
+        verify(componentState, never()).addMessage("deliveriesMinState.createDeliveries.info",
+                ComponentState.MessageType.SUCCESS);
+    }
+
+}
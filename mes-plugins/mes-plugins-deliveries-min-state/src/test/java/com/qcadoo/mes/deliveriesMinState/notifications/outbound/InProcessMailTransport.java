@@ -0,0 +1,69 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveriesMinState.notifications.outbound;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Accepts mails in process instead of sending them to the provider, failing the first {@link #failures} attempts.
+ */
+class InProcessMailTransport implements MailTransport {
+
+    private final List<Map<String, String>> sentMails = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private final long sendingTime;
+
+    InProcessMailTransport(final long sendingTime) {
+        this.sendingTime = sendingTime;
+    }
+
+    void failNext(final int count) {
+        failures.set(count);
+    }
+
+    @Override
+    public void sendTemplateEmail(final String templateId, final List<String> recipients, final Map<String, String> attributes) {
+        try {
+            Thread.sleep(sendingTime);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failures.getAndDecrement() > 0) {
+            throw new IllegalStateException("Provider unavailable");
+        }
+
+        sentMails.add(attributes);
+    }
+
+    List<Map<String, String>> getSentMails() {
+        return sentMails;
+    }
+
+}
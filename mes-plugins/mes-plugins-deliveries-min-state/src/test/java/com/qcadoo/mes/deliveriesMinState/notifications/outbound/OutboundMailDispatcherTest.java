@@ -0,0 +1,236 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveriesMinState.notifications.outbound;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+public class OutboundMailDispatcherTest {
+
+    private static final int L_BATCH_SIZE = 10;
+
+    private static final int L_MAX_ATTEMPTS = 3;
+
+    private static final long L_RETRY_DELAY = 60000L;
+
+    private static final long L_MAX_RETRY_DELAY = 300000L;
+
+    private static final long L_CLAIM_TIMEOUT = 600000L;
+
+    private OutboundMailDispatcher outboundMailDispatcher;
+
+    private InProcessMailTransport mailTransport;
+
+    @Mock
+    private OutboundMailService outboundMailService;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    private boolean inMultiTenantContext;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        mailTransport = new InProcessMailTransport(20L);
+        outboundMailDispatcher = new OutboundMailDispatcher();
+
+        ReflectionTestUtils.setField(outboundMailDispatcher, "batchSize", L_BATCH_SIZE);
+        ReflectionTestUtils.setField(outboundMailDispatcher, "maxAttempts", L_MAX_ATTEMPTS);
+        ReflectionTestUtils.setField(outboundMailDispatcher, "retryDelay", L_RETRY_DELAY);
+        ReflectionTestUtils.setField(outboundMailDispatcher, "maxRetryDelay", L_MAX_RETRY_DELAY);
+        ReflectionTestUtils.setField(outboundMailDispatcher, "claimTimeout", L_CLAIM_TIMEOUT);
+        ReflectionTestUtils.setField(outboundMailDispatcher, "outboundMailService", outboundMailService);
+        ReflectionTestUtils.setField(outboundMailDispatcher, "mailTransport", mailTransport);
+        ReflectionTestUtils.setField(outboundMailDispatcher, "multiTenantService", multiTenantService);
+
+        willAnswer(invocation -> {
+            boolean outerContext = inMultiTenantContext;
+
+            inMultiTenantContext = true;
+
+            try {
+                ((MultiTenantCallback) invocation.getArguments()[0]).invoke();
+            } finally {
+                inMultiTenantContext = outerContext;
+            }
+
+            return null;
+        }).given(multiTenantService).doInMultiTenantContext(any(MultiTenantCallback.class));
+    }
+
+    @Test
+    public void shouldSendDueMails() {
+        // given
+        List<OutboundMail> mails = IntStream.rangeClosed(1, 6).mapToObj(id -> createMail((long) id, 0))
+                .collect(Collectors.toList());
+
+        given(outboundMailService.claimDueMails(L_BATCH_SIZE, L_CLAIM_TIMEOUT)).willReturn(mails);
+
+        // when
+        outboundMailDispatcher.dispatch();
+
+        // then
+        assertEquals(6, mailTransport.getSentMails().size());
+
+        mails.forEach(mail -> verify(outboundMailService).markSent(mail));
+    }
+
+    @Test
+    public void shouldDispatchInMultiTenantContext() {
+        // when
+        outboundMailDispatcher.dispatchOutboundMailsTrigger();
+
+        // then
+        verify(multiTenantService).doInMultiTenantContext(any(MultiTenantCallback.class));
+        verify(outboundMailService).claimDueMails(L_BATCH_SIZE, L_CLAIM_TIMEOUT);
+    }
+
+    @Test
+    public void shouldMarkMailsInMultiTenantContextOfSending() {
+        // given
+        OutboundMail sentMail = createMail(1L, 0);
+        OutboundMail failedMail = createMail(2L, 0);
+        OutboundMail deadMail = createMail(3L, L_MAX_ATTEMPTS - 1);
+
+        List<Boolean> markedInContext = Lists.newArrayList();
+
+        willAnswer(invocation -> markedInContext.add(inMultiTenantContext)).given(outboundMailService).markSent(sentMail);
+        willAnswer(invocation -> markedInContext.add(inMultiTenantContext)).given(outboundMailService).markFailed(
+                eq(failedMail), any(Date.class), anyString());
+        willAnswer(invocation -> markedInContext.add(inMultiTenantContext)).given(outboundMailService).markDeadLetter(
+                eq(deadMail), anyString());
+
+        mailTransport.failNext(2);
+
+        // when
+        outboundMailDispatcher.send(failedMail);
+        outboundMailDispatcher.send(deadMail);
+        outboundMailDispatcher.send(sentMail);
+
+        // then
+        assertEquals(Lists.newArrayList(true, true, true), markedInContext);
+    }
+
+    @Test
+    public void shouldPassDeliveriesToTemplate() {
+        // given
+        OutboundMail mail = createMail(1L, 0);
+
+        given(outboundMailService.claimDueMails(L_BATCH_SIZE, L_CLAIM_TIMEOUT)).willReturn(Lists.newArrayList(mail));
+
+        // when
+        outboundMailDispatcher.dispatch();
+
+        // then
+        assertEquals("<ul><li>D1</li></ul>", mailTransport.getSentMails().get(0).get(OutboundMailDispatcher.L_DELIVERIES));
+    }
+
+    @Test
+    public void shouldRescheduleFailedMail() {
+        // given
+        OutboundMail mail = createMail(1L, 1);
+
+        given(outboundMailService.claimDueMails(L_BATCH_SIZE, L_CLAIM_TIMEOUT)).willReturn(Lists.newArrayList(mail));
+
+        mailTransport.failNext(1);
+
+        long before = System.currentTimeMillis();
+
+        // when
+        outboundMailDispatcher.dispatch();
+
+        // then
+        ArgumentCaptor<Date> nextAttemptDate = ArgumentCaptor.forClass(Date.class);
+
+        verify(outboundMailService).markFailed(eq(mail), nextAttemptDate.capture(), eq("Provider unavailable"));
+        verify(outboundMailService, never()).markSent(mail);
+        verify(outboundMailService, never()).markDeadLetter(any(OutboundMail.class), anyString());
+
+        assertTrue(nextAttemptDate.getValue().getTime() >= before + 2 * L_RETRY_DELAY);
+        assertTrue(mailTransport.getSentMails().isEmpty());
+    }
+
+    @Test
+    public void shouldMarkMailAsDeadLetterAfterLastAttempt() {
+        // given
+        OutboundMail mail = createMail(1L, L_MAX_ATTEMPTS - 1);
+
+        given(outboundMailService.claimDueMails(L_BATCH_SIZE, L_CLAIM_TIMEOUT)).willReturn(Lists.newArrayList(mail));
+
+        mailTransport.failNext(1);
+
+        // when
+        outboundMailDispatcher.dispatch();
+
+        // then
+        verify(outboundMailService).markDeadLetter(mail, "Provider unavailable");
+        verify(outboundMailService, never()).markFailed(any(OutboundMail.class), any(Date.class), anyString());
+    }
+
+    @Test
+    public void shouldDoubleRetryDelayUpToMax() {
+        // when
+        long first = outboundMailDispatcher.getRetryDelay(1);
+        long second = outboundMailDispatcher.getRetryDelay(2);
+        long third = outboundMailDispatcher.getRetryDelay(3);
+        long last = outboundMailDispatcher.getRetryDelay(100);
+
+        // then
+        assertEquals(L_RETRY_DELAY, first);
+        assertEquals(2 * L_RETRY_DELAY, second);
+        assertEquals(4 * L_RETRY_DELAY, third);
+        assertEquals(L_MAX_RETRY_DELAY, last);
+    }
+
+    private OutboundMail createMail(final Long id, final int attempts) {
+        return new OutboundMail(id, "1", Lists.newArrayList("mail" + id + "@qcadoo.com"), "<ul><li>D" + id + "</li></ul>",
+                attempts);
+    }
+
+}
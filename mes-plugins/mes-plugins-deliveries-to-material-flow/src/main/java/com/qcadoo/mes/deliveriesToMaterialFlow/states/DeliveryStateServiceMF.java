@@ -25,6 +25,7 @@ package com.qcadoo.mes.deliveriesToMaterialFlow.states;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.constants.CurrencyFields;
 import com.qcadoo.mes.basic.constants.ParameterFields;
@@ -45,18 +46,23 @@ import com.qcadoo.mes.states.constants.StateChangeStatus;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.units.UnitConversionService;
 import com.qcadoo.model.api.validators.ErrorMessage;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import java.math.BigDecimal;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class DeliveryStateServiceMF {
@@ -88,11 +94,12 @@ public class DeliveryStateServiceMF {
                 stateChangeContext.setStatus(StateChangeStatus.FAILURE);
             }
         } catch (Exception ex) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+
             stateChangeContext.addValidationError("productFlowThruDivision.deliveries.warehouseIssue.issuesCreated.error");
         }
     }
 
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
     private void createDocuments(final StateChangeContext stateChangeContext, final Entity delivery) {
         Entity location = getLocation(delivery);
 
@@ -104,6 +111,13 @@ public class DeliveryStateServiceMF {
 
         List<Entity> deliveredProducts = delivery.getHasManyField(DeliveryFields.DELIVERED_PRODUCTS);
 
+        Map<Long, Entity> products = getBelongsToEntities(deliveredProducts, DeliveredProductFields.PRODUCT);
+        Map<Long, Entity> batches = getBelongsToEntities(deliveredProducts, DeliveredProductFields.BATCH);
+        Map<Long, Entity> storageLocations = getBelongsToEntities(deliveredProducts, DeliveredProductFields.STORAGE_LOCATION);
+        Map<Long, Entity> palletNumbers = getBelongsToEntities(deliveredProducts, DeliveredProductFields.PALLET_NUMBER);
+        Map<Long, Entity> additionalCodes = getBelongsToEntities(deliveredProducts, DeliveredProductFields.ADDITIONAL_CODE);
+        Map<Long, List<Entity>> attributeVals = getDeliveredProductAttributeVals(deliveredProducts);
+
         DocumentBuilder documentBuilder = documentManagementService.getDocumentBuilder();
         documentBuilder.receipt(location);
         documentBuilder.setField(DocumentFieldsDTMF.DELIVERY, delivery);
@@ -118,7 +132,7 @@ public class DeliveryStateServiceMF {
             BigDecimal positionQuantity = quantity.subtract(damagedQuantity.or(BigDecimal.ZERO), numberService.getMathContext());
 
             if (positionQuantity.compareTo(BigDecimal.ZERO) > 0) {
-                Entity product = getProduct(deliveredProduct);
+                Entity product = getBelongsToEntity(deliveredProduct, DeliveredProductFields.PRODUCT, products);
                 String additionalUnit = product.getStringField(ProductFields.ADDITIONAL_UNIT);
                 BigDecimal givenQuantity = deliveredProduct.getDecimalField(DeliveredProductFields.ADDITIONAL_QUANTITY);
                 BigDecimal conversion = deliveredProduct.getDecimalField(DeliveredProductFields.CONVERSION);
@@ -127,18 +141,23 @@ public class DeliveryStateServiceMF {
                     additionalUnit = product.getStringField(ProductFields.UNIT);
                 }
 
-                List<Entity> attributes = prepareAttributes(deliveredProduct);
+                List<Entity> attributes = prepareAttributes(
+                        attributeVals.getOrDefault(deliveredProduct.getId(), Collections.emptyList()));
 
                 documentBuilder.addPosition(product, positionQuantity,
                         numberService.setScaleWithDefaultMathContext(givenQuantity), additionalUnit, conversion,
-                        getPrice(deliveredProduct, currency), getBatch(deliveredProduct), getProductionDate(deliveredProduct),
-                        getExpirationDate(deliveredProduct), null, getStorageLocation(deliveredProduct),
-                        getPalletNumber(deliveredProduct), getTypeOfPallet(deliveredProduct), getAdditionalCode(deliveredProduct),
+                        getPrice(deliveredProduct, currency),
+                        getBelongsToEntity(deliveredProduct, DeliveredProductFields.BATCH, batches),
+                        getProductionDate(deliveredProduct), getExpirationDate(deliveredProduct), null,
+                        getBelongsToEntity(deliveredProduct, DeliveredProductFields.STORAGE_LOCATION, storageLocations),
+                        getBelongsToEntity(deliveredProduct, DeliveredProductFields.PALLET_NUMBER, palletNumbers),
+                        getTypeOfPallet(deliveredProduct),
+                        getBelongsToEntity(deliveredProduct, DeliveredProductFields.ADDITIONAL_CODE, additionalCodes),
                         isWaste(deliveredProduct), deliveredProduct.getStringField(L_QUALITY_RATING), attributes);
             }
         }
 
-        Entity createdDocument = documentBuilder.setAccepted().build();
+        Entity createdDocument = documentBuilder.setAccepted().buildReceiptInBatches();
 
         if (!createdDocument.isValid()) {
             delivery.addGlobalError("deliveriesToMaterialFlow.deliveryStateValidator.error.document", true);
@@ -151,10 +170,54 @@ public class DeliveryStateServiceMF {
         }
     }
 
-    private List<Entity> prepareAttributes(Entity deliveredProduct) {
+    private Map<Long, Entity> getBelongsToEntities(final List<Entity> deliveredProducts, final String fieldName) {
+        List<Entity> proxies = deliveredProducts.stream().map(deliveredProduct -> deliveredProduct.getBelongsToField(fieldName))
+                .filter(Objects::nonNull).collect(Collectors.toList());
+
+        if (proxies.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Set<Long> ids = proxies.stream().map(Entity::getId).collect(Collectors.toSet());
+
+        return proxies.get(0).getDataDefinition().find().add(SearchRestrictions.in("id", ids)).list().getEntities().stream()
+                .collect(Collectors.toMap(Entity::getId, Function.identity()));
+    }
+
+    private Entity getBelongsToEntity(final Entity deliveredProduct, final String fieldName, final Map<Long, Entity> entities) {
+        Entity proxy = deliveredProduct.getBelongsToField(fieldName);
+
+        if (Objects.isNull(proxy)) {
+            return null;
+        }
+
+        return entities.getOrDefault(proxy.getId(), proxy);
+    }
+
+    private Map<Long, List<Entity>> getDeliveredProductAttributeVals(final List<Entity> deliveredProducts) {
+        if (deliveredProducts.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Set<Long> deliveredProductIds = deliveredProducts.stream().map(Entity::getId).collect(Collectors.toSet());
+
+        Map<Long, List<Entity>> attributeVals = Maps.newHashMap();
+
+        dataDefinitionService
+                .get(DeliveriesConstants.PLUGIN_IDENTIFIER, DeliveriesConstants.MODEL_DELIVERED_PRODUCT_ATTRIBUTE_VAL).find()
+                .add(SearchRestrictions.in(DeliveredProductAttributeValFields.DELIVERED_PRODUCT + ".id", deliveredProductIds))
+                .list().getEntities()
+                .forEach(aVal -> attributeVals.computeIfAbsent(
+                        aVal.getBelongsToField(DeliveredProductAttributeValFields.DELIVERED_PRODUCT).getId(),
+                        deliveredProductId -> Lists.newArrayList()).add(aVal));
+
+        return attributeVals;
+    }
+
+    private List<Entity> prepareAttributes(final List<Entity> deliveredProductAttributeVals) {
         List<Entity> attributes = Lists.newArrayList();
 
-        deliveredProduct.getHasManyField(DeliveredProductFields.DELIVERED_PRODUCT_ATTRIBUTE_VALS).forEach(aVal -> {
+        deliveredProductAttributeVals.forEach(aVal -> {
             Entity deliveredProductAttributeVal = dataDefinitionService
                     .get(DeliveriesConstants.PLUGIN_IDENTIFIER, DeliveriesConstants.MODEL_DELIVERED_PRODUCT_ATTRIBUTE_VAL)
                     .create();
@@ -204,8 +267,12 @@ public class DeliveryStateServiceMF {
             List<String> missingExpirationDate = Lists.newArrayList();
             List<String> missingPrice = Lists.newArrayList();
 
+            Entity currency = getCurrency(delivery);
+            Map<Long, Entity> products = getBelongsToEntities(deliveredProducts, DeliveredProductFields.PRODUCT);
+
             for (Entity deliveredProduct : deliveredProducts) {
-                String productName = getProductName(deliveredProduct);
+                String productName = getBelongsToEntity(deliveredProduct, DeliveredProductFields.PRODUCT, products)
+                        .getStringField(ProductFields.NAME);
 
                 if (isBatchRequired && Objects.isNull(getBatch(deliveredProduct))) {
                     missingBatch.add(productName);
@@ -216,7 +283,7 @@ public class DeliveryStateServiceMF {
                 if (isExpirationDateRequired && Objects.isNull(getExpirationDate(deliveredProduct))) {
                     missingExpirationDate.add(productName);
                 }
-                if (isPriceRequired && Objects.isNull(getPrice(deliveredProduct, getCurrency(delivery)))) {
+                if (isPriceRequired && Objects.isNull(getPrice(deliveredProduct, currency))) {
                     missingPrice.add(productName);
                 }
             }
@@ -274,10 +341,6 @@ public class DeliveryStateServiceMF {
         return exRate.compareTo(BigDecimal.ZERO) > 0;
     }
 
-    private Entity getProduct(final Entity deliveredProduct) {
-        return deliveredProduct.getBelongsToField(DeliveredProductFields.PRODUCT);
-    }
-
     private Entity currencyFromParameter() {
         return parameterService.getParameter().getBelongsToField(ParameterFields.CURRENCY);
     }
@@ -294,18 +357,6 @@ public class DeliveryStateServiceMF {
         return deliveredProduct.getStringField(DeliveredProductFields.PALLET_TYPE);
     }
 
-    private Entity getAdditionalCode(final Entity deliveredProduct) {
-        return deliveredProduct.getBelongsToField(DeliveredProductFields.ADDITIONAL_CODE);
-    }
-
-    private Entity getPalletNumber(final Entity deliveredProduct) {
-        return deliveredProduct.getBelongsToField(DeliveredProductFields.PALLET_NUMBER);
-    }
-
-    private Entity getStorageLocation(final Entity deliveredProduct) {
-        return deliveredProduct.getBelongsToField(DeliveredProductFields.STORAGE_LOCATION);
-    }
-
     private boolean isWaste(final Entity deliveredProduct) {
         return deliveredProduct.getBooleanField(DeliveredProductFields.IS_WASTE);
     }
@@ -318,10 +369,6 @@ public class DeliveryStateServiceMF {
         return location.getBooleanField(fieldName);
     }
 
-    private String getProductName(final Entity deliveredProduct) {
-        return getProduct(deliveredProduct).getStringField(ProductFields.NAME);
-    }
-
     private String getLocationName(final Entity location) {
         return location.getStringField(LocationFields.NAME);
     }
@@ -15,6 +15,10 @@ public class Mailin {
 
     private final String USER_AGENT = "Mozilla/5.0";
 
+    private static final int CONNECT_TIMEOUT = 30000;
+
+    private static final int READ_TIMEOUT = 60000;
+
     final protected static char[] hexArray = "0123456789ABCDEF".toCharArray();
 
     private String base_url;
@@ -40,6 +44,8 @@ public class Mailin {
         con.setDoInput(true);
         con.setRequestMethod(method);
         con.setUseCaches(false);
+        con.setConnectTimeout(CONNECT_TIMEOUT);
+        con.setReadTimeout(READ_TIMEOUT);
 
         if (input != "" && method != "GET") {
             DataOutputStream outStream = new DataOutputStream(con.getOutputStream());
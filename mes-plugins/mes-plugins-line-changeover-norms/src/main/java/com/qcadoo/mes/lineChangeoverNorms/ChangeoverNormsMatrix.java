@@ -0,0 +1,273 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.lineChangeoverNorms;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+
+/**
+ * Holds all changeover norms in memory, indexed by pairs of technologies and pairs of technology groups, so matching norms
+ * doesn't hit the database. Picks the same norm as the criteria query of {@link ChangeoverNormsSearchServiceImpl}: norms for
+ * technologies before norms for technology groups, then norms with production line, then the newest one. The index is
+ * reloaded on the next lookup after a transaction which saved or deleted a norm commits, and after {@link #L_MAX_AGE} at the
+ * latest. Until then, that transaction itself has to query the database, see {@link #isChangedInCurrentTransaction()}.
+ */
+@Service
+public class ChangeoverNormsMatrix {
+
+    private static final long L_MAX_AGE = 60000L;
+
+    private static final String L_INVALIDATION_KEY = ChangeoverNormsMatrix.class.getName();
+
+    private static final String L_QUERY = "SELECT id, changeovertype, fromtechnology_id, totechnology_id, "
+            + "fromtechnologygroup_id, totechnologygroup_id, productionline_id FROM linechangeovernorms_linechangeovernorms";
+
+    private static final Comparator<ChangeoverNorm> L_PRIORITY = Comparator
+            .comparing(ChangeoverNorm::getChangeoverType, Comparator.nullsLast(Comparator.<String> naturalOrder()))
+            .thenComparing(ChangeoverNorm::getProductionLineId, Comparator.nullsLast(Comparator.<Long> naturalOrder()))
+            .thenComparing(ChangeoverNorm::getId, Comparator.reverseOrder());
+
+    private static final RowMapper<ChangeoverNorm> L_ROW_MAPPER = (resultSet, rowNum) -> new ChangeoverNorm(
+            resultSet.getLong("id"), resultSet.getString("changeovertype"), getLong(resultSet, "fromtechnology_id"),
+            getLong(resultSet, "totechnology_id"), getLong(resultSet, "fromtechnologygroup_id"),
+            getLong(resultSet, "totechnologygroup_id"), getLong(resultSet, "productionline_id"));
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private volatile Matrix matrix;
+
+    private volatile boolean stale = true;
+
+    /**
+     * @return id of the best matching norm or null if none matches
+     */
+    public Long findBestMatchingId(final Long fromTechnologyId, final Long fromTechnologyGroupId, final Long toTechnologyId,
+            final Long toTechnologyGroupId, final Long productionLineId) {
+        boolean matchTechnologies = fromTechnologyId != null && toTechnologyId != null;
+        boolean matchTechnologyGroups = fromTechnologyGroupId != null && toTechnologyGroupId != null;
+
+        Preconditions.checkArgument(matchTechnologies || matchTechnologyGroups,
+                "you have to provide pair of technologies or pair of technology groups.");
+
+        Matrix current = getMatrix();
+
+        Stream<ChangeoverNorm> candidates = Stream.empty();
+
+        if (matchTechnologies) {
+            candidates = current.byTechnologies.get(buildKey(fromTechnologyId, toTechnologyId)).stream();
+        }
+
+        if (matchTechnologyGroups) {
+            candidates = Stream.concat(candidates,
+                    current.byTechnologyGroups.get(buildKey(fromTechnologyGroupId, toTechnologyGroupId)).stream());
+        }
+
+        return candidates.filter(changeoverNorm -> changeoverNorm.matchesProductionLine(productionLineId)).min(L_PRIORITY)
+                .map(ChangeoverNorm::getId).orElse(null);
+    }
+
+    /**
+     * Marks the index to be reloaded once the current transaction commits.
+     */
+    public void invalidate() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            stale = true;
+
+            return;
+        }
+
+        if (TransactionSynchronizationManager.hasResource(L_INVALIDATION_KEY)) {
+            return;
+        }
+
+        TransactionSynchronizationManager.bindResource(L_INVALIDATION_KEY, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            @Override
+            public void afterCompletion(final int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(L_INVALIDATION_KEY);
+
+                if (STATUS_COMMITTED == status) {
+                    stale = true;
+                }
+            }
+        });
+    }
+
+    /**
+     * @return true if a norm was saved or deleted in the current transaction, so the index doesn't reflect it yet
+     */
+    public boolean isChangedInCurrentTransaction() {
+        return TransactionSynchronizationManager.isSynchronizationActive()
+                && TransactionSynchronizationManager.hasResource(L_INVALIDATION_KEY);
+    }
+
+    private Matrix getMatrix() {
+        Matrix current = matrix;
+
+        if (stale || current.isOutdated()) {
+            synchronized (this) {
+                current = matrix;
+
+                if (stale || current.isOutdated()) {
+                    stale = false;
+
+                    try {
+                        current = new Matrix(jdbcTemplate.query(L_QUERY, Collections.<String, Object> emptyMap(), L_ROW_MAPPER));
+                    } catch (RuntimeException e) {
+                        stale = true;
+
+                        throw e;
+                    }
+
+                    matrix = current;
+                }
+            }
+        }
+
+        return current;
+    }
+
+    private static String buildKey(final Long fromId, final Long toId) {
+        return fromId + "_" + toId;
+    }
+
+    private static Long getLong(final ResultSet resultSet, final String columnLabel) throws SQLException {
+        long value = resultSet.getLong(columnLabel);
+
+        return resultSet.wasNull() ? null : value;
+    }
+
+    private static final class Matrix {
+
+        private final ListMultimap<String, ChangeoverNorm> byTechnologies;
+
+        private final ListMultimap<String, ChangeoverNorm> byTechnologyGroups;
+
+        private final long loadTime = System.currentTimeMillis();
+
+        private Matrix(final List<ChangeoverNorm> changeoverNorms) {
+            ImmutableListMultimap.Builder<String, ChangeoverNorm> byTechnologiesBuilder = ImmutableListMultimap.builder();
+            ImmutableListMultimap.Builder<String, ChangeoverNorm> byTechnologyGroupsBuilder = ImmutableListMultimap.builder();
+
+            for (ChangeoverNorm changeoverNorm : changeoverNorms) {
+                if (changeoverNorm.fromTechnologyId != null && changeoverNorm.toTechnologyId != null) {
+                    byTechnologiesBuilder.put(buildKey(changeoverNorm.fromTechnologyId, changeoverNorm.toTechnologyId),
+                            changeoverNorm);
+                }
+
+                if (changeoverNorm.fromTechnologyGroupId != null && changeoverNorm.toTechnologyGroupId != null) {
+                    byTechnologyGroupsBuilder.put(
+                            buildKey(changeoverNorm.fromTechnologyGroupId, changeoverNorm.toTechnologyGroupId), changeoverNorm);
+                }
+            }
+
+            byTechnologies = byTechnologiesBuilder.build();
+            byTechnologyGroups = byTechnologyGroupsBuilder.build();
+        }
+
+        private boolean isOutdated() {
+            return System.currentTimeMillis() - loadTime > L_MAX_AGE;
+        }
+
+    }
+
+    static final class ChangeoverNorm {
+
+        private final Long id;
+
+        private final String changeoverType;
+
+        private final Long fromTechnologyId;
+
+        private final Long toTechnologyId;
+
+        private final Long fromTechnologyGroupId;
+
+        private final Long toTechnologyGroupId;
+
+        private final Long productionLineId;
+
+        ChangeoverNorm(final Long id, final String changeoverType, final Long fromTechnologyId, final Long toTechnologyId,
+                final Long fromTechnologyGroupId, final Long toTechnologyGroupId, final Long productionLineId) {
+            this.id = id;
+            this.changeoverType = changeoverType;
+            this.fromTechnologyId = fromTechnologyId;
+            this.toTechnologyId = toTechnologyId;
+            this.fromTechnologyGroupId = fromTechnologyGroupId;
+            this.toTechnologyGroupId = toTechnologyGroupId;
+            this.productionLineId = productionLineId;
+        }
+
+        private boolean matchesProductionLine(final Long productionLineId) {
+            return this.productionLineId == null || this.productionLineId.equals(productionLineId);
+        }
+
+        Long getId() {
+            return id;
+        }
+
+        String getChangeoverType() {
+            return changeoverType;
+        }
+
+        Long getFromTechnologyId() {
+            return fromTechnologyId;
+        }
+
+        Long getToTechnologyId() {
+            return toTechnologyId;
+        }
+
+        Long getFromTechnologyGroupId() {
+            return fromTechnologyGroupId;
+        }
+
+        Long getToTechnologyGroupId() {
+            return toTechnologyGroupId;
+        }
+
+        Long getProductionLineId() {
+            return productionLineId;
+        }
+
+    }
+
+}
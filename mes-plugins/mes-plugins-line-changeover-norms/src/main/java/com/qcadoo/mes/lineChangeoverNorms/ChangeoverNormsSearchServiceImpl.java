@@ -51,9 +51,37 @@ public class ChangeoverNormsSearchServiceImpl implements ChangeoverNormsSearchSe
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private ChangeoverNormsMatrix changeoverNormsMatrix;
+
     @Override
     public Entity findBestMatching(final Long fromTechnologyId, final Long fromTechnologyGroupId, final Long toTechnologyId,
             final Long toTechnologyGroupId, final Long productionLineId) {
+        if (changeoverNormsMatrix.isChangedInCurrentTransaction()) {
+            return findBestMatchingInDatabase(fromTechnologyId, fromTechnologyGroupId, toTechnologyId, toTechnologyGroupId,
+                    productionLineId);
+        }
+
+        Long changeoverNormId = changeoverNormsMatrix.findBestMatchingId(fromTechnologyId, fromTechnologyGroupId,
+                toTechnologyId, toTechnologyGroupId, productionLineId);
+
+        if (changeoverNormId == null) {
+            return null;
+        }
+
+        Entity changeoverNorm = getChangeoverDataDef().get(changeoverNormId);
+
+        if (changeoverNorm == null) {
+            // deleted by a transaction committed after the matrix was loaded
+            return findBestMatchingInDatabase(fromTechnologyId, fromTechnologyGroupId, toTechnologyId, toTechnologyGroupId,
+                    productionLineId);
+        }
+
+        return changeoverNorm;
+    }
+
+    Entity findBestMatchingInDatabase(final Long fromTechnologyId, final Long fromTechnologyGroupId, final Long toTechnologyId,
+            final Long toTechnologyGroupId, final Long productionLineId) {
         SearchCriteriaBuilder scb = getChangeoverDataDef().find();
 
         scb.add(getTechnologiesRestrictions(fromTechnologyId, fromTechnologyGroupId, toTechnologyId, toTechnologyGroupId));
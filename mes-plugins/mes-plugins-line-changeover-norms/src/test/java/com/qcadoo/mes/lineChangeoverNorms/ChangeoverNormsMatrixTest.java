@@ -0,0 +1,245 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.lineChangeoverNorms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.lineChangeoverNorms.ChangeoverNormsMatrix.ChangeoverNorm;
+
+public class ChangeoverNormsMatrixTest {
+
+    private static final String FOR_TECHNOLOGY = "01forTechnology";
+
+    private static final String FOR_TECHNOLOGY_GROUP = "02forTechnologyGroup";
+
+    private static final List<Long> TECHNOLOGY_IDS = Arrays.asList(null, 1L, 2L, 3L);
+
+    private static final List<Long> TECHNOLOGY_GROUP_IDS = Arrays.asList(null, 11L, 12L);
+
+    private static final List<Long> PRODUCTION_LINE_IDS = Arrays.asList(null, 21L, 22L);
+
+    private ChangeoverNormsMatrix changeoverNormsMatrix;
+
+    private Comparator<ChangeoverNorm> queryOrder;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        changeoverNormsMatrix = new ChangeoverNormsMatrix();
+        ReflectionTestUtils.setField(changeoverNormsMatrix, "jdbcTemplate", jdbcTemplate);
+
+        queryOrder = ChangeoverNormsSearchServiceImplTest.getQueryOrder();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubChangeoverNorms(final ChangeoverNorm... changeoverNorms) {
+        given(jdbcTemplate.query(anyString(), anyMap(), any(RowMapper.class))).willReturn(Lists.newArrayList(changeoverNorms));
+    }
+
+    private ChangeoverNorm forTechnologies(final long id, final Long fromTechnologyId, final Long toTechnologyId,
+            final Long productionLineId) {
+        return new ChangeoverNorm(id, FOR_TECHNOLOGY, fromTechnologyId, toTechnologyId, null, null, productionLineId);
+    }
+
+    private ChangeoverNorm forTechnologyGroups(final long id, final Long fromTechnologyGroupId, final Long toTechnologyGroupId,
+            final Long productionLineId) {
+        return new ChangeoverNorm(id, FOR_TECHNOLOGY_GROUP, null, null, fromTechnologyGroupId, toTechnologyGroupId,
+                productionLineId);
+    }
+
+    /**
+     * Mirrors restrictions of the criteria query in {@link ChangeoverNormsSearchServiceImpl} and sorts by the orders that
+     * query adds, see {@link ChangeoverNormsSearchServiceImplTest#getQueryOrder()}.
+     */
+    private Long findBestMatchingLikeQuery(final List<ChangeoverNorm> changeoverNorms, final Long fromTechnologyId,
+            final Long fromTechnologyGroupId, final Long toTechnologyId, final Long toTechnologyGroupId,
+            final Long productionLineId) {
+        return changeoverNorms
+                .stream()
+                .filter(norm -> (fromTechnologyId != null && toTechnologyId != null
+                        && fromTechnologyId.equals(norm.getFromTechnologyId()) && toTechnologyId.equals(norm.getToTechnologyId()))
+                        || (fromTechnologyGroupId != null && toTechnologyGroupId != null
+                                && fromTechnologyGroupId.equals(norm.getFromTechnologyGroupId()) && toTechnologyGroupId
+                                    .equals(norm.getToTechnologyGroupId())))
+                .filter(norm -> norm.getProductionLineId() == null || norm.getProductionLineId().equals(productionLineId))
+                .sorted(queryOrder).map(ChangeoverNorm::getId).findFirst().orElse(null);
+    }
+
+    @Test
+    public final void shouldReturnSameNormsAsQueryForAllCombinations() {
+        // given
+        List<ChangeoverNorm> changeoverNorms = Lists.newArrayList(forTechnologies(1L, 1L, 2L, null),
+                forTechnologies(2L, 1L, 2L, 21L), forTechnologies(3L, 1L, 2L, 22L), forTechnologies(4L, 2L, 1L, null),
+                forTechnologies(5L, 2L, 1L, null), forTechnologies(6L, 3L, 3L, 21L), forTechnologyGroups(7L, 11L, 12L, null),
+                forTechnologyGroups(8L, 11L, 12L, 22L), forTechnologyGroups(9L, 12L, 11L, 21L),
+                forTechnologyGroups(10L, 12L, 12L, null), forTechnologyGroups(11L, 12L, 12L, null),
+                new ChangeoverNorm(12L, FOR_TECHNOLOGY_GROUP, 3L, 1L, 11L, 11L, null));
+        stubChangeoverNorms(changeoverNorms.toArray(new ChangeoverNorm[changeoverNorms.size()]));
+
+        int checkedCombinations = 0;
+
+        // when & then
+        for (Long fromTechnologyId : TECHNOLOGY_IDS) {
+            for (Long toTechnologyId : TECHNOLOGY_IDS) {
+                for (Long fromTechnologyGroupId : TECHNOLOGY_GROUP_IDS) {
+                    for (Long toTechnologyGroupId : TECHNOLOGY_GROUP_IDS) {
+                        if ((fromTechnologyId == null || toTechnologyId == null)
+                                && (fromTechnologyGroupId == null || toTechnologyGroupId == null)) {
+                            continue;
+                        }
+
+                        for (Long productionLineId : PRODUCTION_LINE_IDS) {
+                            Long expected = findBestMatchingLikeQuery(changeoverNorms, fromTechnologyId, fromTechnologyGroupId,
+                                    toTechnologyId, toTechnologyGroupId, productionLineId);
+                            Long actual = changeoverNormsMatrix.findBestMatchingId(fromTechnologyId, fromTechnologyGroupId,
+                                    toTechnologyId, toTechnologyGroupId, productionLineId);
+
+                            assertEquals(fromTechnologyId + " " + fromTechnologyGroupId + " " + toTechnologyId + " "
+                                    + toTechnologyGroupId + " " + productionLineId, expected, actual);
+
+                            checkedCombinations++;
+                        }
+                    }
+                }
+            }
+        }
+
+        assertEquals(3 * (16 * 9 - 7 * 5), checkedCombinations);
+        verify(jdbcTemplate, times(1)).query(anyString(), anyMap(), any(RowMapper.class));
+    }
+
+    @Test
+    public final void shouldPreferNormForTechnologiesOverNormForTechnologyGroups() {
+        // given
+        stubChangeoverNorms(forTechnologyGroups(2L, 11L, 12L, 21L), forTechnologies(1L, 1L, 2L, null));
+
+        // when
+        Long changeoverNormId = changeoverNormsMatrix.findBestMatchingId(1L, 11L, 2L, 12L, 21L);
+
+        // then
+        assertEquals(Long.valueOf(1L), changeoverNormId);
+    }
+
+    @Test
+    public final void shouldPreferNormWithProductionLineAndThenNewestOne() {
+        // given
+        stubChangeoverNorms(forTechnologies(1L, 1L, 2L, null), forTechnologies(2L, 1L, 2L, 21L),
+                forTechnologies(3L, 1L, 2L, null));
+
+        // when & then
+        assertEquals(Long.valueOf(2L), changeoverNormsMatrix.findBestMatchingId(1L, null, 2L, null, 21L));
+        assertEquals(Long.valueOf(3L), changeoverNormsMatrix.findBestMatchingId(1L, null, 2L, null, 22L));
+        assertEquals(Long.valueOf(3L), changeoverNormsMatrix.findBestMatchingId(1L, null, 2L, null, null));
+    }
+
+    @Test
+    public final void shouldReturnNullIfOnlyNormsForOtherProductionLinesMatch() {
+        // given
+        stubChangeoverNorms(forTechnologies(1L, 1L, 2L, 21L), forTechnologyGroups(2L, 11L, 12L, 21L));
+
+        // when
+        Long changeoverNormId = changeoverNormsMatrix.findBestMatchingId(1L, 11L, 2L, 12L, 22L);
+
+        // then
+        assertNull(changeoverNormId);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void shouldThrowExceptionIfNeitherPairIsGiven() {
+        // given
+        stubChangeoverNorms();
+
+        // when
+        changeoverNormsMatrix.findBestMatchingId(1L, 11L, null, null, null);
+    }
+
+    @Test
+    public final void shouldReloadNormsAfterInvalidation() {
+        // given
+        stubChangeoverNorms(forTechnologies(1L, 1L, 2L, null));
+
+        assertEquals(Long.valueOf(1L), changeoverNormsMatrix.findBestMatchingId(1L, null, 2L, null, null));
+
+        stubChangeoverNorms(forTechnologies(1L, 1L, 2L, null), forTechnologies(2L, 1L, 2L, null));
+
+        // when
+        changeoverNormsMatrix.invalidate();
+
+        // then
+        assertEquals(Long.valueOf(2L), changeoverNormsMatrix.findBestMatchingId(1L, null, 2L, null, null));
+        verify(jdbcTemplate, times(2)).query(anyString(), anyMap(), any(RowMapper.class));
+    }
+
+    @Test
+    public final void shouldMarkNormsAsChangedUntilTransactionCompletes() {
+        // given
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            assertFalse(changeoverNormsMatrix.isChangedInCurrentTransaction());
+
+            // when
+            changeoverNormsMatrix.invalidate();
+
+            // then
+            assertTrue(changeoverNormsMatrix.isChangedInCurrentTransaction());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(
+                    synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+            assertFalse(changeoverNormsMatrix.isChangedInCurrentTransaction());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+}
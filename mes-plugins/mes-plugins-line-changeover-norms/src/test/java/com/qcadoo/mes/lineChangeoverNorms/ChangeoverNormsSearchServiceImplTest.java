@@ -0,0 +1,246 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.lineChangeoverNorms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ImmutableMap;
+import com.qcadoo.mes.lineChangeoverNorms.ChangeoverNormsMatrix.ChangeoverNorm;
+import com.qcadoo.mes.lineChangeoverNorms.constants.LineChangeoverNormsConstants;
+import com.qcadoo.mes.lineChangeoverNorms.constants.LineChangeoverNormsFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchOrder;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+public class ChangeoverNormsSearchServiceImplTest {
+
+    @SuppressWarnings("rawtypes")
+    private static final Map<String, Function<ChangeoverNorm, Comparable>> SORTABLE_FIELDS = ImmutableMap
+            .<String, Function<ChangeoverNorm, Comparable>> of(LineChangeoverNormsFields.CHANGEOVER_TYPE,
+                    ChangeoverNorm::getChangeoverType, LineChangeoverNormsFields.PRODUCTION_LINE,
+                    ChangeoverNorm::getProductionLineId, "id", ChangeoverNorm::getId);
+
+    private ChangeoverNormsSearchServiceImpl changeoverNormsSearchService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private ChangeoverNormsMatrix changeoverNormsMatrix;
+
+    @Mock
+    private DataDefinition changeoverNormDD;
+
+    @Mock
+    private SearchCriteriaBuilder scb;
+
+    @Mock
+    private Entity changeoverNorm;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        changeoverNormsSearchService = new ChangeoverNormsSearchServiceImpl();
+        ReflectionTestUtils.setField(changeoverNormsSearchService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(changeoverNormsSearchService, "changeoverNormsMatrix", changeoverNormsMatrix);
+
+        given(dataDefinitionService.get(LineChangeoverNormsConstants.PLUGIN_IDENTIFIER,
+                LineChangeoverNormsConstants.MODEL_LINE_CHANGEOVER_NORMS)).willReturn(changeoverNormDD);
+        stubSearchCriteriaBuilder(changeoverNormDD, scb);
+    }
+
+    private static void stubSearchCriteriaBuilder(final DataDefinition dataDefinition, final SearchCriteriaBuilder scb) {
+        given(dataDefinition.find()).willReturn(scb);
+        given(scb.add(any(SearchCriterion.class))).willReturn(scb);
+        given(scb.addOrder(any(SearchOrder.class))).willReturn(scb);
+        given(scb.setMaxResults(anyInt())).willReturn(scb);
+    }
+
+    /**
+     * Builds the order of the criteria query of {@link ChangeoverNormsSearchServiceImpl#findBestMatchingInDatabase}, sorting
+     * nulls like PostgreSQL does: last in ascending order and first in descending order.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static Comparator<ChangeoverNorm> getQueryOrder() {
+        DataDefinitionService dataDefinitionService = mock(DataDefinitionService.class);
+        DataDefinition changeoverNormDD = mock(DataDefinition.class);
+        SearchCriteriaBuilder scb = mock(SearchCriteriaBuilder.class);
+
+        given(dataDefinitionService.get(LineChangeoverNormsConstants.PLUGIN_IDENTIFIER,
+                LineChangeoverNormsConstants.MODEL_LINE_CHANGEOVER_NORMS)).willReturn(changeoverNormDD);
+        stubSearchCriteriaBuilder(changeoverNormDD, scb);
+
+        ChangeoverNormsSearchServiceImpl changeoverNormsSearchService = new ChangeoverNormsSearchServiceImpl();
+        ReflectionTestUtils.setField(changeoverNormsSearchService, "dataDefinitionService", dataDefinitionService);
+
+        changeoverNormsSearchService.findBestMatchingInDatabase(1L, null, 2L, null, null);
+
+        ArgumentCaptor<SearchOrder> searchOrderCaptor = ArgumentCaptor.forClass(SearchOrder.class);
+        verify(scb, atLeastOnce()).addOrder(searchOrderCaptor.capture());
+
+        Comparator<ChangeoverNorm> queryOrder = (left, right) -> 0;
+
+        for (SearchOrder searchOrder : searchOrderCaptor.getAllValues()) {
+            String[] order = searchOrder.getHibernateOrder().toString().split(" ");
+            Function<ChangeoverNorm, Comparable> field = SORTABLE_FIELDS.get(order[0]);
+
+            if (field == null) {
+                throw new IllegalStateException("unexpected order by " + order[0]);
+            }
+
+            Comparator<Comparable> valueOrder = "asc".equals(order[1]) ? Comparator.nullsLast(Comparator.naturalOrder())
+                    : Comparator.nullsFirst(Comparator.<Comparable> naturalOrder().reversed());
+
+            queryOrder = queryOrder.thenComparing(field, valueOrder);
+        }
+
+        return queryOrder;
+    }
+
+    @Test
+    public final void shouldOrderByChangeoverTypeThenProductionLineThenNewest() {
+        // when
+        changeoverNormsSearchService.findBestMatchingInDatabase(1L, null, 2L, null, 21L);
+
+        // then
+        ArgumentCaptor<SearchOrder> searchOrderCaptor = ArgumentCaptor.forClass(SearchOrder.class);
+        verify(scb, times(3)).addOrder(searchOrderCaptor.capture());
+        verify(scb).setMaxResults(1);
+
+        List<String> searchOrders = searchOrderCaptor.getAllValues().stream()
+                .map(searchOrder -> searchOrder.getHibernateOrder().toString()).collect(Collectors.toList());
+
+        assertEquals(3, searchOrders.size());
+        assertEquals("changeoverType asc", searchOrders.get(0));
+        assertEquals("productionLine asc", searchOrders.get(1));
+        assertEquals("id desc", searchOrders.get(2));
+    }
+
+    @Test
+    public final void shouldRestrictToGivenPairsAndProductionLine() {
+        // when
+        changeoverNormsSearchService.findBestMatchingInDatabase(1L, 11L, 2L, 12L, 21L);
+
+        // then
+        ArgumentCaptor<SearchCriterion> searchCriterionCaptor = ArgumentCaptor.forClass(SearchCriterion.class);
+        verify(scb, times(2)).add(searchCriterionCaptor.capture());
+
+        SearchCriterion matchTechnologies = SearchRestrictions.and(SearchRestrictions.eq("fromTechnology.id", 1L),
+                SearchRestrictions.eq("toTechnology.id", 2L));
+        SearchCriterion matchTechnologyGroups = SearchRestrictions.and(SearchRestrictions.eq("fromTechnologyGroup.id", 11L),
+                SearchRestrictions.eq("toTechnologyGroup.id", 12L));
+        SearchCriterion matchProductionLine = SearchRestrictions.or(SearchRestrictions.eq("productionLine.id", 21L),
+                SearchRestrictions.isNull("productionLine"));
+
+        assertEquals(SearchRestrictions.disjunction().add(matchTechnologies).add(matchTechnologyGroups).getHibernateCriterion()
+                .toString(), searchCriterionCaptor.getAllValues().get(0).getHibernateCriterion().toString());
+        assertEquals(matchProductionLine.getHibernateCriterion().toString(), searchCriterionCaptor.getAllValues().get(1)
+                .getHibernateCriterion().toString());
+    }
+
+    @Test
+    public final void shouldLoadNormChosenByMatrix() {
+        // given
+        given(changeoverNormsMatrix.findBestMatchingId(1L, null, 2L, null, 21L)).willReturn(5L);
+        given(changeoverNormDD.get(5L)).willReturn(changeoverNorm);
+
+        // when
+        Entity result = changeoverNormsSearchService.findBestMatching(1L, null, 2L, null, 21L);
+
+        // then
+        assertEquals(changeoverNorm, result);
+        verify(changeoverNormDD, never()).find();
+    }
+
+    @Test
+    public final void shouldReturnNullIfMatrixFindsNoNorm() {
+        // given
+        given(changeoverNormsMatrix.findBestMatchingId(1L, null, 2L, null, 21L)).willReturn(null);
+
+        // when
+        Entity result = changeoverNormsSearchService.findBestMatching(1L, null, 2L, null, 21L);
+
+        // then
+        assertNull(result);
+        verify(changeoverNormDD, never()).get(anyLong());
+        verify(changeoverNormDD, never()).find();
+    }
+
+    @Test
+    public final void shouldQueryDatabaseIfNormChosenByMatrixWasDeleted() {
+        // given
+        given(changeoverNormsMatrix.findBestMatchingId(1L, null, 2L, null, 21L)).willReturn(5L);
+        given(changeoverNormDD.get(5L)).willReturn(null);
+        given(scb.uniqueResult()).willReturn(changeoverNorm);
+
+        // when
+        Entity result = changeoverNormsSearchService.findBestMatching(1L, null, 2L, null, 21L);
+
+        // then
+        assertEquals(changeoverNorm, result);
+    }
+
+    @Test
+    public final void shouldQueryDatabaseIfNormsWereChangedInCurrentTransaction() {
+        // given
+        given(changeoverNormsMatrix.isChangedInCurrentTransaction()).willReturn(true);
+        given(scb.uniqueResult()).willReturn(changeoverNorm);
+
+        // when
+        Entity result = changeoverNormsSearchService.findBestMatching(1L, null, 2L, null, 21L);
+
+        // then
+        assertEquals(changeoverNorm, result);
+        verify(changeoverNormsMatrix, never()).findBestMatchingId(anyLong(), anyLong(), anyLong(), anyLong(), anyLong());
+    }
+
+}
@@ -2,6 +2,7 @@ package com.qcadoo.mes.masterOrders;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.ShiftsService;
@@ -33,7 +34,6 @@ import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
 import com.qcadoo.model.api.exception.EntityRuntimeException;
 import com.qcadoo.model.api.search.SearchOrders;
-import com.qcadoo.model.api.search.SearchQueryBuilder;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.constants.DictionaryItemFields;
 import com.qcadoo.plugin.api.PluginUtils;
@@ -46,6 +46,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
@@ -122,59 +124,40 @@ public class OrdersFromMOProductsGenerationService {
 
     public GenerationOrderResult generateOrders(List<Entity> masterOrderProducts, Date start, Date finish, boolean generatePPS) {
         GenerationOrderResult result = new GenerationOrderResult(translationService, parameterService);
-        boolean automaticPps = parameterService.getParameter().getBooleanField(PPS_IS_AUTOMATIC);
-
-        List<Entity> masterOrderProductsEntities = Lists.newArrayList();
+        Entity parameter = parameterService.getParameter();
+        boolean automaticPps = parameter.getBooleanField(PPS_IS_AUTOMATIC);
 
-        masterOrderProducts.forEach(masterOrderProduct -> {
-            Optional<Entity> dtoEntity = Optional.ofNullable(masterOrderProduct.getDataDefinition().getMasterModelEntity(
-                    masterOrderProduct.getId()));
-            if (dtoEntity.isPresent()) {
-                masterOrderProductsEntities.add(dtoEntity.get());
-            } else {
-                masterOrderProductsEntities.add(masterOrderProduct);
-            }
-        });
+        List<Entity> masterOrderProductsEntities = getMasterOrderProducts(masterOrderProducts);
+        Map<Long, BigDecimal> quantitiesRemainingToOrder = getQuantitiesRemainingToOrder(masterOrderProductsEntities);
+        LastOrdersOnLines lastOrdersOnLines = new LastOrdersOnLines(this::findPreviousOrder, getOrderDD()::get);
 
-        boolean createCollectiveOrders = parameterService.getParameter().getBooleanField(CREATE_COLLECTIVE_ORDERS);
+        boolean createCollectiveOrders = parameter.getBooleanField(CREATE_COLLECTIVE_ORDERS);
         if (createCollectiveOrders) {
             Map<ProductTechnologyKey, List<Entity>> groupedMap = groupPositions(masterOrderProductsEntities);
 
             for (Map.Entry<ProductTechnologyKey, List<Entity>> entry : groupedMap.entrySet()) {
-                String hql = "SELECT SUM(mop.quantityRemainingToOrderWithoutStock) AS quantityRemainingToOrder FROM #masterOrders_masterOrderPositionDto mop "
-                        + " WHERE mop.id IN (:ids)";
-
-                SearchQueryBuilder scb = dataDefinitionService.get(MasterOrdersConstants.PLUGIN_IDENTIFIER,
-                        MasterOrdersConstants.MODEL_MASTER_ORDER_POSITION_DTO).find(hql);
-
-                scb.setParameterList("ids", entry.getValue().stream().map(e -> e.getId()).collect(Collectors.toList()));
-
-                Entity quantityRemainingToOrderResult = scb.setMaxResults(1).uniqueResult();
-
                 MasterOrderProduct masterOrderProduct = MasterOrderProduct.newMasterOrderProduct()
                         .createCollectiveOrders(createCollectiveOrders).product(entry.getKey().getProduct())
                         .technology(entry.getKey().getTechnology()).groupedMasterOrderProduct(entry.getValue())
-                        .quantityRemainingToOrder(quantityRemainingToOrderResult.getDecimalField("quantityRemainingToOrder"))
+                        .quantityRemainingToOrder(sumQuantitiesRemainingToOrder(entry.getValue(), quantitiesRemainingToOrder))
                         .build();
-                generateOrder(generatePPS, automaticPps, result, masterOrderProduct, start, finish);
+                generateOrder(parameter, generatePPS, automaticPps, result, masterOrderProduct, start, finish, lastOrdersOnLines);
 
             }
 
         } else {
             masterOrderProductsEntities
                     .forEach(mop -> {
-                        BigDecimal quantityRemainingToOrder = dataDefinitionService
-                                .get(MasterOrdersConstants.PLUGIN_IDENTIFIER,
-                                        MasterOrdersConstants.MODEL_MASTER_ORDER_POSITION_DTO).get(mop.getId())
-                                .getDecimalField(MasterOrderPositionDtoFields.QUANTITY_REMAINING_TO_ORDER_WITHOUT_STOCK);
                         MasterOrderProduct masterOrderProduct = MasterOrderProduct.newMasterOrderProduct()
                                 .createCollectiveOrders(createCollectiveOrders)
                                 .product(mop.getBelongsToField(MasterOrderProductFields.PRODUCT))
                                 .technology(mop.getBelongsToField(MasterOrderProductFields.TECHNOLOGY))
                                 .masterOrder(mop.getBelongsToField(MasterOrderProductFields.MASTER_ORDER))
                                 .comments(mop.getStringField(MasterOrderProductFields.COMMENTS))
-                                .quantityRemainingToOrder(quantityRemainingToOrder).masterOrderProduct(mop).build();
-                        generateOrder(generatePPS, automaticPps, result, masterOrderProduct, start, finish);
+                                .quantityRemainingToOrder(quantitiesRemainingToOrder.get(mop.getId())).masterOrderProduct(mop)
+                                .build();
+                        generateOrder(parameter, generatePPS, automaticPps, result, masterOrderProduct, start, finish,
+                                lastOrdersOnLines);
 
                     });
         }
@@ -182,16 +165,66 @@ public class OrdersFromMOProductsGenerationService {
         return result;
     }
 
+    private List<Entity> getMasterOrderProducts(final List<Entity> masterOrderProducts) {
+        if (masterOrderProducts.isEmpty()) {
+            return Lists.newArrayList();
+        }
+
+        Map<Long, Entity> masterOrderProductsByIds = getMasterOrderProductDD().find()
+                .add(SearchRestrictions.in("id", getIds(masterOrderProducts))).list().getEntities().stream()
+                .collect(Collectors.toMap(Entity::getId, Function.identity()));
+
+        return masterOrderProducts.stream()
+                .map(masterOrderProduct -> masterOrderProductsByIds.getOrDefault(masterOrderProduct.getId(), masterOrderProduct))
+                .collect(Collectors.toList());
+    }
+
+    private Map<Long, BigDecimal> getQuantitiesRemainingToOrder(final List<Entity> masterOrderProducts) {
+        Map<Long, BigDecimal> quantitiesRemainingToOrder = Maps.newHashMap();
+
+        if (masterOrderProducts.isEmpty()) {
+            return quantitiesRemainingToOrder;
+        }
+
+        getMasterOrderProductDtoDD().find().add(SearchRestrictions.in("id", getIds(masterOrderProducts))).list().getEntities()
+                .forEach(masterOrderPositionDto -> quantitiesRemainingToOrder.put(masterOrderPositionDto.getId(),
+                        masterOrderPositionDto.getDecimalField(MasterOrderPositionDtoFields.QUANTITY_REMAINING_TO_ORDER_WITHOUT_STOCK)));
+
+        return quantitiesRemainingToOrder;
+    }
+
+    private BigDecimal sumQuantitiesRemainingToOrder(final List<Entity> masterOrderProducts,
+            final Map<Long, BigDecimal> quantitiesRemainingToOrder) {
+        BigDecimal sum = null;
+
+        for (Entity masterOrderProduct : masterOrderProducts) {
+            BigDecimal quantityRemainingToOrder = quantitiesRemainingToOrder.get(masterOrderProduct.getId());
+
+            if (Objects.nonNull(quantityRemainingToOrder)) {
+                sum = Objects.isNull(sum) ? quantityRemainingToOrder : sum.add(quantityRemainingToOrder,
+                        numberService.getMathContext());
+            }
+        }
+
+        return sum;
+    }
+
+    private List<Long> getIds(final List<Entity> entities) {
+        return entities.stream().map(Entity::getId).distinct().collect(Collectors.toList());
+    }
+
     private Map<ProductTechnologyKey, List<Entity>> groupPositions(List<Entity> masterOrderProductsEntities) {
-        Map<ProductTechnologyKey, List<Entity>> groupedMap = Maps.newHashMap();
+        Map<ProductTechnologyKey, List<Entity>> groupedMap = Maps.newLinkedHashMap();
+        Map<Long, Optional<Entity>> defaultTechnologies = Maps.newHashMap();
 
         masterOrderProductsEntities.forEach(mop -> {
             ProductTechnologyKey key = new ProductTechnologyKey(mop);
             if (Objects.isNull(key.getTechnology())) {
-                Entity technology = technologyServiceO.getDefaultTechnology(key.getProduct());
-                if (Objects.nonNull(technology)) {
-                    key.setTechnology(technology);
-                    key.setTechnologyId(technology.getId());
+                Optional<Entity> technology = defaultTechnologies.computeIfAbsent(key.getProductId(),
+                        productId -> Optional.ofNullable(technologyServiceO.getDefaultTechnology(key.getProduct())));
+                if (technology.isPresent()) {
+                    key.setTechnology(technology.get());
+                    key.setTechnologyId(technology.get().getId());
                 }
             }
             if (groupedMap.containsKey(key)) {
@@ -206,15 +239,13 @@ public class OrdersFromMOProductsGenerationService {
         return groupedMap;
     }
 
-    private void generateOrder(boolean generatePPS, boolean automaticPps, GenerationOrderResult result,
-            MasterOrderProduct masterOrderProduct, Date start, Date finish) {
+    private void generateOrder(Entity parameter, boolean generatePPS, boolean automaticPps, GenerationOrderResult result,
+            MasterOrderProduct masterOrderProduct, Date start, Date finish, LastOrdersOnLines lastOrdersOnLines) {
 
         if (PluginUtils.isEnabled("integrationBaseLinker")) {
             createDocuments();
         }
 
-        Entity parameter = parameterService.getParameter();
-
         boolean realizationFromStock = parameter.getBooleanField(ParameterFieldsO.REALIZATION_FROM_STOCK);
         boolean alwaysOrderItemsWithPersonalization = parameter
                 .getBooleanField(ParameterFieldsO.ALWAYS_ORDER_ITEMS_WITH_PERSONALIZATION)
@@ -250,8 +281,8 @@ public class OrdersFromMOProductsGenerationService {
             }
             result.addRealizationFromStock(masterOrderProduct.getProduct().getStringField(ProductFields.NUMBER));
         } else {
-            Entity order = createOrder(masterOrderProduct, realizationFromStock, quantityRemainingToOrder, stockQuantity, start,
-                    finish);
+            Entity order = createOrder(parameter, masterOrderProduct, realizationFromStock, quantityRemainingToOrder,
+                    stockQuantity, start, finish);
             order = getOrderDD().save(order);
             if (!order.isValid()) {
                 MasterOrderProductErrorContainer productErrorContainer = new MasterOrderProductErrorContainer();
@@ -288,13 +319,15 @@ public class OrdersFromMOProductsGenerationService {
                     && !parameter.getBooleanField(ORDERS_GENERATION_NOT_COMPLETE_DATES)) {
                 List<Entity> orders = getOrderAndSubOrders(order.getId());
                 Collections.reverse(orders);
+                orders.forEach(lastOrdersOnLines::update);
+                Set<Long> ordersWithPps = getOrdersWithPps(orders);
                 Integer lastLevel = null;
                 Date lastDate = null;
                 for (Entity ord : orders) {
 
                     Date calculatedOrderStartDate = null;
 
-                    if(parameterService.getParameter().getBooleanField(ParameterFieldsO.ADVISE_START_DATE_OF_THE_ORDER)) {
+                    if (parameter.getBooleanField(ParameterFieldsO.ADVISE_START_DATE_OF_THE_ORDER)) {
                         calculatedOrderStartDate = order.getDateField(OrderFields.START_DATE);
                     } else {
                         if (Objects.isNull(ord.getDateField(OrderFields.DATE_FROM))) {
@@ -305,7 +338,7 @@ public class OrdersFromMOProductsGenerationService {
                                 calculatedOrderStartDate = new DateTime().toDate();
                             }
                         } else {
-                            Optional<Entity> maybeOrder = findPreviousOrder(ord);
+                            Optional<Entity> maybeOrder = lastOrdersOnLines.find(ord);
                             if (maybeOrder.isPresent()) {
                                 calculatedOrderStartDate = maybeOrder.get().getDateField(OrderFields.FINISH_DATE);
 
@@ -326,7 +359,7 @@ public class OrdersFromMOProductsGenerationService {
                     }
 
                     try {
-                        Date finishDate = tryGeneratePPS(ord, calculatedOrderStartDate);
+                        Date finishDate = tryGeneratePPS(ord, calculatedOrderStartDate, ordersWithPps, lastOrdersOnLines);
                         if (Objects.nonNull(lastDate) && finishDate.after(lastDate)) {
                             lastDate = finishDate;
                         } else if (Objects.isNull(lastDate)) {
@@ -388,9 +421,13 @@ public class OrdersFromMOProductsGenerationService {
     }
 
     @Transactional(propagation = Propagation.REQUIRES_NEW)
-    private Date tryGeneratePPS(final Entity order, Date date) {
-        Date startDate = findStartDate(order, date);
-        generateEmptyPpsForOrder(order);
+    private Date tryGeneratePPS(final Entity order, Date date, final Set<Long> ordersWithPps,
+            final LastOrdersOnLines lastOrdersOnLines) {
+        Date startDate = findStartDate(order, date, lastOrdersOnLines);
+        if (!ordersWithPps.contains(order.getId())) {
+            createEmptyPpsForOrder(order);
+            ordersWithPps.add(order.getId());
+        }
         order.setField("generatePPS", true);
         order.setField(OrderFields.START_DATE, startDate);
         order.setField(OrderFields.FINISH_DATE, new DateTime(order.getDateField(OrderFields.START_DATE)).plusDays(1).toDate());
@@ -398,7 +435,20 @@ public class OrdersFromMOProductsGenerationService {
         if (!storedOrder.isValid()) {
             throw new EntityRuntimeException(storedOrder);
         }
-        return order.getDateField(OrderFields.FINISH_DATE);
+        lastOrdersOnLines.update(storedOrder);
+        return storedOrder.getDateField(OrderFields.FINISH_DATE);
+    }
+
+    private Set<Long> getOrdersWithPps(final List<Entity> orders) {
+        if (orders.isEmpty()) {
+            return Sets.newHashSet();
+        }
+
+        String hql = "SELECT pps.order.id AS orderId FROM #productionPerShift_productionPerShift pps WHERE pps.order.id IN (:ids)";
+
+        return dataDefinitionService.get("productionPerShift", "productionPerShift").find(hql)
+                .setParameterList("ids", getIds(orders)).list().getEntities().stream()
+                .map(productionPerShift -> (Long) productionPerShift.getField("orderId")).collect(Collectors.toSet());
     }
 
     private void generateEmptyPpsForOrder(Entity order) {
@@ -407,6 +457,11 @@ public class OrdersFromMOProductsGenerationService {
         if (productionPerShift != null) {
             return;
         }
+        createEmptyPpsForOrder(order);
+    }
+
+    private void createEmptyPpsForOrder(Entity order) {
+        Entity productionPerShift;
         boolean shouldBeCorrected = OrderState.of(order).compareTo(OrderState.PENDING) != 0;
         productionPerShift = dataDefinitionService.get("productionPerShift", "productionPerShift").create();
         productionPerShift.setField("order", order);
@@ -437,9 +492,9 @@ public class OrdersFromMOProductsGenerationService {
         return DateTime.now().toDate();
     }
 
-    private Date findStartDate(final Entity order, Date startDate) {
+    private Date findStartDate(final Entity order, Date startDate, final LastOrdersOnLines lastOrdersOnLines) {
 
-        Optional<Entity> previousOrder = findPreviousOrder(order);
+        Optional<Entity> previousOrder = lastOrdersOnLines.find(order);
         if (previousOrder.isPresent()) {
             Integer changeoverDurationInMillis = getChangeoverDurationInMillis(previousOrder.get(), order);
             Optional<DateTime> maybeDate = shiftsService.getNearestWorkingDate(new DateTime(startDate),
@@ -483,10 +538,9 @@ public class OrdersFromMOProductsGenerationService {
         return 0;
     }
 
-    private Entity createOrder(final MasterOrderProduct masterOrderProduct, final boolean realizationFromStock,
-            BigDecimal quantityRemainingToOrder, final BigDecimal stockQuantity, Date start, Date finish) {
-        Entity parameter = parameterService.getParameter();
-
+    private Entity createOrder(final Entity parameter, final MasterOrderProduct masterOrderProduct,
+            final boolean realizationFromStock, BigDecimal quantityRemainingToOrder, final BigDecimal stockQuantity, Date start,
+            Date finish) {
         Entity product = masterOrderProduct.getProduct();
         Entity technology = getTechnology(masterOrderProduct);
 
@@ -704,8 +758,101 @@ public class OrdersFromMOProductsGenerationService {
         return dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER);
     }
 
+    private DataDefinition getMasterOrderProductDD() {
+        return dataDefinitionService.get(MasterOrdersConstants.PLUGIN_IDENTIFIER, MasterOrdersConstants.MODEL_MASTER_ORDER_PRODUCT);
+    }
+
     private DataDefinition getMasterOrderProductDtoDD() {
         return dataDefinitionService.get(MasterOrdersConstants.PLUGIN_IDENTIFIER,
                 MasterOrdersConstants.MODEL_MASTER_ORDER_POSITION_DTO);
     }
+
+    /**
+     * Keeps the latest started order of each production line during one generation, so previous orders are queried once per
+     * line instead of once per generated order. Lines are seeded from the database on first use and follow the orders saved
+     * afterwards. Only the id and start date of the last order are kept, so changes made to order entities which were not
+     * saved do not leak into the cache.
+     */
+    static class LastOrdersOnLines {
+
+        private final Function<Entity, Optional<Entity>> previousOrderFinder;
+
+        private final Function<Long, Entity> orderLoader;
+
+        private final Map<Long, Optional<LastOrder>> lastOrders = Maps.newHashMap();
+
+        LastOrdersOnLines(final Function<Entity, Optional<Entity>> previousOrderFinder,
+                final Function<Long, Entity> orderLoader) {
+            this.previousOrderFinder = previousOrderFinder;
+            this.orderLoader = orderLoader;
+        }
+
+        Optional<Entity> find(final Entity order) {
+            Entity productionLine = order.getBelongsToField(OrderFields.PRODUCTION_LINE);
+
+            if (Objects.isNull(productionLine)) {
+                return previousOrderFinder.apply(order);
+            }
+
+            Optional<LastOrder> lastOrder = lastOrders.get(productionLine.getId());
+
+            if (Objects.isNull(lastOrder)) {
+                Optional<Entity> previousOrder = previousOrderFinder.apply(order);
+
+                lastOrders.put(productionLine.getId(), previousOrder.map(LastOrder::new));
+
+                return previousOrder;
+            }
+
+            return lastOrder.map(LastOrder::getId).map(orderLoader);
+        }
+
+        void update(final Entity order) {
+            Entity productionLine = order.getBelongsToField(OrderFields.PRODUCTION_LINE);
+
+            if (Objects.isNull(productionLine) || !lastOrders.containsKey(productionLine.getId())) {
+                return;
+            }
+
+            Date startDate = order.getDateField(OrderFields.START_DATE);
+            Optional<LastOrder> lastOrder = lastOrders.get(productionLine.getId());
+
+            if (!lastOrder.isPresent()) {
+                if (Objects.nonNull(startDate)) {
+                    lastOrders.put(productionLine.getId(), Optional.of(new LastOrder(order)));
+                }
+            } else if (lastOrder.get().getId().equals(order.getId())) {
+                if (Objects.nonNull(startDate) && !startDate.before(lastOrder.get().getStartDate())) {
+                    lastOrders.put(productionLine.getId(), Optional.of(new LastOrder(order)));
+                } else {
+                    lastOrders.remove(productionLine.getId());
+                }
+            } else if (Objects.nonNull(startDate) && startDate.after(lastOrder.get().getStartDate())) {
+                lastOrders.put(productionLine.getId(), Optional.of(new LastOrder(order)));
+            }
+        }
+
+    }
+
+    private static class LastOrder {
+
+        private final Long id;
+
+        private final Date startDate;
+
+        private LastOrder(final Entity order) {
+            this.id = order.getId();
+            this.startDate = order.getDateField(OrderFields.START_DATE);
+        }
+
+        private Long getId() {
+            return id;
+        }
+
+        private Date getStartDate() {
+            return startDate;
+        }
+
+    }
+
 }
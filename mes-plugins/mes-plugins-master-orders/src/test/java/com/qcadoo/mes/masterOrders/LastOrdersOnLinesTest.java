@@ -0,0 +1,193 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.masterOrders;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.masterOrders.OrdersFromMOProductsGenerationService.LastOrdersOnLines;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.model.api.Entity;
+
+public class LastOrdersOnLinesTest {
+
+    private static final Date L_DATE = new DateTime(2024, 3, 1, 8, 0).toDate();
+
+    private final Map<Long, Entity> orders = Maps.newHashMap();
+
+    private final Map<Long, Date> savedStartDates = Maps.newHashMap();
+
+    private Entity productionLine;
+
+    private LastOrdersOnLines lastOrdersOnLines;
+
+    @Before
+    public void init() {
+        productionLine = mock(Entity.class);
+
+        given(productionLine.getId()).willReturn(1L);
+
+        lastOrdersOnLines = new LastOrdersOnLines(this::findPreviousOrder, orders::get);
+    }
+
+    @Test
+    public final void shouldFindPreviousOrderWhenLastOrderIsMovedEarlier() {
+        // given
+        Entity firstOrder = mockSavedOrder(1L, 10);
+        Entity secondOrder = mockSavedOrder(2L, 20);
+        Entity newOrder = mockSavedOrder(3L, null);
+
+        assertEquals(secondOrder, lastOrdersOnLines.find(newOrder).get());
+
+        // when
+        save(secondOrder, 5);
+
+        // then
+        assertEquals(findPreviousOrder(newOrder), lastOrdersOnLines.find(newOrder));
+        assertEquals(firstOrder, lastOrdersOnLines.find(newOrder).get());
+    }
+
+    @Test
+    public final void shouldFindPreviousOrderWhenOtherOrderIsMovedLater() {
+        // given
+        Entity firstOrder = mockSavedOrder(1L, 10);
+        mockSavedOrder(2L, 20);
+        Entity newOrder = mockSavedOrder(3L, null);
+
+        lastOrdersOnLines.find(newOrder);
+
+        // when
+        save(firstOrder, 30);
+
+        // then
+        assertEquals(findPreviousOrder(newOrder), lastOrdersOnLines.find(newOrder));
+        assertEquals(firstOrder, lastOrdersOnLines.find(newOrder).get());
+    }
+
+    @Test
+    public final void shouldFindPreviousOrderWhenLastOrderIsMovedLater() {
+        // given
+        mockSavedOrder(1L, 10);
+        Entity secondOrder = mockSavedOrder(2L, 20);
+        Entity newOrder = mockSavedOrder(3L, null);
+
+        lastOrdersOnLines.find(newOrder);
+
+        // when
+        save(secondOrder, 40);
+
+        // then
+        assertEquals(findPreviousOrder(newOrder), lastOrdersOnLines.find(newOrder));
+        assertEquals(secondOrder, lastOrdersOnLines.find(newOrder).get());
+    }
+
+    @Test
+    public final void shouldFindPreviousOrderWhenNewOrderIsStarted() {
+        // given
+        mockSavedOrder(1L, 10);
+        Entity newOrder = mockSavedOrder(3L, null);
+        Entity nextOrder = mockSavedOrder(4L, null);
+
+        lastOrdersOnLines.find(nextOrder);
+
+        // when
+        save(newOrder, 15);
+
+        // then
+        assertEquals(findPreviousOrder(nextOrder), lastOrdersOnLines.find(nextOrder));
+        assertEquals(newOrder, lastOrdersOnLines.find(nextOrder).get());
+    }
+
+    @Test
+    public final void shouldIgnoreStartDateWhichWasNotSaved() {
+        // given
+        Entity firstOrder = mockSavedOrder(1L, 10);
+        Entity secondOrder = mockSavedOrder(2L, 20);
+        Entity newOrder = mockSavedOrder(3L, null);
+
+        lastOrdersOnLines.find(newOrder);
+
+        // when
+        secondOrder.setField(OrderFields.START_DATE, plusDays(5));
+        save(firstOrder, 15);
+
+        // then
+        assertEquals(findPreviousOrder(newOrder), lastOrdersOnLines.find(newOrder));
+        assertEquals(secondOrder, lastOrdersOnLines.find(newOrder).get());
+    }
+
+    private Optional<Entity> findPreviousOrder(final Entity order) {
+        return savedStartDates.entrySet().stream().filter(entry -> Objects.nonNull(entry.getValue()))
+                .max(Comparator.comparing(Map.Entry::getValue)).map(entry -> orders.get(entry.getKey()));
+    }
+
+    private void save(final Entity order, final Integer days) {
+        order.setField(OrderFields.START_DATE, plusDays(days));
+        savedStartDates.put(order.getId(), order.getDateField(OrderFields.START_DATE));
+
+        lastOrdersOnLines.update(order);
+    }
+
+    private Entity mockSavedOrder(final Long id, final Integer days) {
+        Entity order = mock(Entity.class);
+        Map<String, Object> fields = Maps.newHashMap();
+
+        fields.put(OrderFields.START_DATE, plusDays(days));
+
+        given(order.getId()).willReturn(id);
+        given(order.getBelongsToField(OrderFields.PRODUCTION_LINE)).willReturn(productionLine);
+        given(order.getDateField(anyString())).willAnswer(invocation -> fields.get(invocation.getArguments()[0]));
+        willAnswer(invocation -> fields.put((String) invocation.getArguments()[0], invocation.getArguments()[1])).given(order)
+                .setField(anyString(), any());
+
+        orders.put(id, order);
+        savedStartDates.put(id, plusDays(days));
+
+        return order;
+    }
+
+    private Date plusDays(final Integer days) {
+        if (Objects.isNull(days)) {
+            return null;
+        }
+
+        return new DateTime(L_DATE).plusDays(days).toDate();
+    }
+
+}
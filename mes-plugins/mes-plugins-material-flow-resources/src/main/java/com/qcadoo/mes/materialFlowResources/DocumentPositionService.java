@@ -64,6 +64,9 @@ public class DocumentPositionService {
     @Autowired
     private PluginManager pluginManager;
 
+    @Autowired
+    private DocumentPositionsGridCache documentPositionsGridCache;
+
     public GridResponse<DocumentPositionDTO> findAll(final Long documentId, final String _sidx, final String _sord, int page,
             int perPage, final DocumentPositionDTO position, final Map<String, String> attributeFilters) {
         String sidx = _sidx != null ? _sidx : "";
@@ -75,18 +78,36 @@ public class DocumentPositionService {
         List<ColumnProperties> columns = (List<ColumnProperties>) config.get("columns");
         List<String> attrCloumns = columns.stream().filter(c -> c.isChecked() && c.isForAttribute())
                 .map(ColumnProperties::getName).collect(Collectors.toList());
+
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        parameters.put(DOCUMENT_ID, documentId);
+
         StringBuilder attrQueryPart = new StringBuilder();
+        StringBuilder attrJoinPart = new StringBuilder();
+
         if (!attrCloumns.isEmpty()) {
-            attrCloumns.forEach(ac -> {
-                attrQueryPart.append(" , ");
-                attrQueryPart.append("(SELECT string_agg(positionattributevalue.value, ', ') ");
-                attrQueryPart.append("FROM materialflowresources_positionattributevalue positionattributevalue ");
-                attrQueryPart.append("LEFT JOIN basic_attribute att ON att.id = positionattributevalue.attribute_id ");
-                attrQueryPart.append("WHERE positionattributevalue.position_id = p.id AND att.number ='" + ac
-                        + "' group by att.number) as \"" + ac + "\" ");
-            });
+            attrJoinPart.append(" LEFT JOIN (SELECT positionattributevalue.position_id");
+
+            for (int i = 0; i < attrCloumns.size(); i++) {
+                String ac = attrCloumns.get(i);
 
+                attrQueryPart.append(", attrs.").append(quoteIdentifier(ac));
+                attrJoinPart.append(", string_agg(CASE WHEN att.number = :attributeNumber").append(i)
+                        .append(" THEN positionattributevalue.value END, ', ') AS ").append(quoteIdentifier(ac));
+
+                parameters.put("attributeNumber" + i, ac);
+            }
+
+            attrJoinPart.append(" FROM materialflowresources_positionattributevalue positionattributevalue ")
+                    .append("JOIN materialflowresources_position attrposition ON attrposition.id = positionattributevalue.position_id ")
+                    .append("JOIN basic_attribute att ON att.id = positionattributevalue.attribute_id ")
+                    .append("WHERE attrposition.document_id = :documentId AND att.number IN (:attributeNumbers) ")
+                    .append("GROUP BY positionattributevalue.position_id) attrs ON attrs.position_id = p.id \n");
+
+            parameters.put("attributeNumbers", attrCloumns);
         }
+
         String query = "SELECT %s FROM ( SELECT p.*, p.document_id AS document, product.number AS product, product.name AS productName, product.unit, additionalcode.code AS additionalcode, "
                 + "palletnumber.number AS palletnumber, location.number AS storagelocation, resource.number AS resource, batch.number as batch, batch.id as batchId, \n"
                 + "(coalesce(r1.resourcesCount,0) < 2 AND p.quantity >= coalesce(resource.quantity,0)) AS lastResource, p.pickingdate AS pickingDate, staff.name || ' ' || staff.surname AS pickingWorker "
@@ -97,40 +118,81 @@ public class DocumentPositionService {
                 + "	LEFT JOIN materialflowresources_resource resource ON (p.resource_id = resource.id)\n"
                 + "	LEFT JOIN advancedgenealogy_batch batch ON (p.batch_id = batch.id)\n"
                 + "	LEFT JOIN basic_staff staff ON (p.pickingworker_id = staff.id)\n"
-                + " LEFT JOIN (SELECT palletnumber_id, count(id) as resourcesCount FROM materialflowresources_resource GROUP BY palletnumber_id) r1 ON r1.palletnumber_id = resource.palletnumber_id \n"
-                + "	LEFT JOIN materialflowresources_storagelocation location ON (p.storagelocation_id = location.id) WHERE p.document_id = :documentId %s) q ";
+                + " LEFT JOIN (SELECT palletresource.palletnumber_id, count(palletresource.id) as resourcesCount FROM materialflowresources_resource palletresource "
+                + "WHERE palletresource.palletnumber_id IN (SELECT documentresource.palletnumber_id FROM materialflowresources_position documentposition "
+                + "JOIN materialflowresources_resource documentresource ON documentresource.id = documentposition.resource_id "
+                + "WHERE documentposition.document_id = :documentId) "
+                + "GROUP BY palletresource.palletnumber_id) r1 ON r1.palletnumber_id = resource.palletnumber_id \n"
+                + attrJoinPart.toString()
+                + "	LEFT JOIN materialflowresources_storagelocation location ON (p.storagelocation_id = location.id) WHERE p.document_id = :documentId) q ";
 
-        Map<String, Object> parameters = Maps.newHashMap();
+        List<String> conditions = Lists.newArrayList();
 
-        parameters.put(DOCUMENT_ID, documentId);
+        String positionWhere = lookupUtils.addQueryWhereForObject(position);
+
+        if (!positionWhere.isEmpty()) {
+            conditions.add(positionWhere.replaceFirst("^\\s*WHERE\\s+", ""));
+        }
 
-        query += lookupUtils.addQueryWhereForObject(position);
         parameters.putAll(lookupUtils.getParametersForObject(position));
 
-        if (!attributeFilters.isEmpty()) {
-            StringBuilder attributeFiltersBuilder = new StringBuilder();
-            attributeFiltersBuilder.append("WHERE ");
-            for (Map.Entry<String, String> filterElement : attributeFilters.entrySet()) {
-                attributeFiltersBuilder.append("q.\"" + filterElement.getKey() + "\" ");
-                attributeFiltersBuilder.append("ilike :" + filterElement.getKey().replaceAll("[^a-zA-Z0-9]+", "") + " ");
-                parameters.put(filterElement.getKey().replaceAll("[^a-zA-Z0-9]+", ""), "%" + filterElement.getValue() + "%");
-            }
-            query = query + attributeFiltersBuilder.toString();
+        for (Map.Entry<String, String> filterElement : attributeFilters.entrySet()) {
+            String parameterName = "attributeFilter" + filterElement.getKey().replaceAll("[^a-zA-Z0-9]+", "");
+
+            conditions.add("q." + quoteIdentifier(filterElement.getKey()) + " ilike :" + parameterName);
+            parameters.put(parameterName, "%" + filterElement.getValue() + "%");
         }
-        String queryCount = String.format(query, "COUNT(*)", "");
 
         String orderBy;
         if (sidx.startsWith("attrs.")) {
-            orderBy = "\"" + sidx.replace("attrs.", "") + "\"";
-        } else {
+            orderBy = quoteIdentifier(sidx.replace("attrs.", ""));
+        } else if (sidx.matches("[a-zA-Z0-9_]+")) {
             orderBy = sidx;
+        } else {
+            orderBy = null;
+        }
+
+        boolean descending = "desc".equals(sord);
+
+        String filterWhere = conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+
+        String queryKey = query + filterWhere + "|" + new TreeMap<>(parameters) + "|" + orderBy + "|" + sord + "|" + perPage;
+
+        DocumentPositionsGridCache.GridQueryState state = documentPositionsGridCache.getState(documentId, queryKey);
+
+        Integer countRecords = state.getCountRecords();
+
+        if (countRecords == null) {
+            countRecords = jdbcTemplate.queryForObject(String.format(query, "COUNT(*)") + filterWhere, parameters, Long.class)
+                    .intValue();
+
+            state.setCountRecords(countRecords);
+        }
+
+        Map<String, Object> recordsParameters = Maps.newHashMap(parameters);
+        List<String> recordsConditions = Lists.newArrayList(conditions);
+
+        DocumentPositionsGridCache.PageBoundary previousPageBoundary = page > 1 ? state.getPageBoundary(page - 1) : null;
+
+        String limit;
+
+        if (previousPageBoundary != null) {
+            recordsConditions.add(buildKeysetCondition(orderBy, descending, previousPageBoundary, recordsParameters));
+
+            limit = String.format(" LIMIT %d", perPage);
+        } else {
+            limit = String.format(" LIMIT %d OFFSET %d", perPage, perPage * (page - 1));
         }
 
-        String queryRecords = String.format(query, "*", "ORDER BY " + orderBy + " " + sord)
-                + String.format(" LIMIT %d OFFSET %d", perPage, perPage * (page - 1));
+        String direction = descending ? " DESC" : " ASC";
+        String orderByPart = " ORDER BY " + (orderBy != null ? orderBy + direction + ", " : "") + "id" + direction;
 
-        int countRecords = jdbcTemplate.queryForObject(queryCount, parameters, Long.class).intValue();
-        List<DocumentPositionDTO> records = jdbcTemplate.query(queryRecords, parameters, (resultSet, i) -> {
+        String queryRecords = String.format(query, "*")
+                + (recordsConditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", recordsConditions)) + orderByPart + limit;
+
+        Object[] lastSortValue = new Object[1];
+
+        List<DocumentPositionDTO> records = jdbcTemplate.query(queryRecords, recordsParameters, (resultSet, i) -> {
             DocumentPositionDTO documentPositionDTO = new DocumentPositionDTO();
             documentPositionDTO.setId(resultSet.getLong(ID));
             documentPositionDTO.setDocument(resultSet.getLong("document"));
@@ -166,13 +228,56 @@ public class DocumentPositionService {
                 documentPositionDTO.setAttrs(attrs);
 
             }
+            if (orderBy != null) {
+                lastSortValue[0] = resultSet.getObject(sidx.startsWith("attrs.") ? sidx.replace("attrs.", "") : sidx);
+            }
             return documentPositionDTO;
         });
 
+        if (!records.isEmpty()) {
+            state.putPageBoundary(page, new DocumentPositionsGridCache.PageBoundary(lastSortValue[0],
+                    records.get(records.size() - 1).getId()));
+        }
+
         return new GridResponse<>(page, Double.valueOf(Math.ceil((1.0 * countRecords) / perPage)).intValue(), countRecords,
                 records);
     }
 
+    private String buildKeysetCondition(final String orderBy, final boolean descending,
+            final DocumentPositionsGridCache.PageBoundary pageBoundary, final Map<String, Object> parameters) {
+        String idOperator = descending ? "<" : ">";
+
+        parameters.put("keysetId", pageBoundary.getId());
+
+        if (orderBy == null) {
+            return "id " + idOperator + " :keysetId";
+        }
+
+        // NULL values are sorted last in ascending order and first in descending order
+        if (pageBoundary.getSortValue() == null) {
+            if (descending) {
+                return "((" + orderBy + " IS NULL AND id < :keysetId) OR " + orderBy + " IS NOT NULL)";
+            } else {
+                return "(" + orderBy + " IS NULL AND id > :keysetId)";
+            }
+        }
+
+        parameters.put("keysetValue", pageBoundary.getSortValue());
+
+        String condition = "(" + orderBy + " " + idOperator + " :keysetValue OR (" + orderBy + " = :keysetValue AND id "
+                + idOperator + " :keysetId)";
+
+        if (descending) {
+            return condition + ")";
+        } else {
+            return condition + " OR " + orderBy + " IS NULL)";
+        }
+    }
+
+    private String quoteIdentifier(final String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
     private void delete(final Long id) {
         validator.validateBeforeDelete(id);
 
@@ -190,6 +295,8 @@ public class DocumentPositionService {
 
         reservationsService.deleteReservationFromDocumentPosition(params);
         jdbcTemplate.update("DELETE FROM materialflowresources_position WHERE id = :id ", params);
+
+        documentPositionsGridCache.invalidate(((Number) result.get("document_id")).longValue());
     }
 
     public void create(final DocumentPositionDTO documentPositionVO) {
@@ -347,6 +454,8 @@ public class DocumentPositionService {
     }
 
     private void updateDocumentPositionsNumbers(final Long documentId) {
+        documentPositionsGridCache.invalidate(documentId);
+
         String query = "SELECT p.*, p.document_id AS document, product.number AS product, product.unit, additionalcode.code AS additionalcode, palletnumber.number AS palletnumber, "
                 + "location.number AS storagelocationnumber\n" + "	FROM materialflowresources_position p\n"
                 + "	LEFT JOIN basic_product product ON (p.product_id = product.id)\n"
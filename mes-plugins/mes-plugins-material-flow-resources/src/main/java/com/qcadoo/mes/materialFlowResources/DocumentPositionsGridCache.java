@@ -0,0 +1,188 @@
+package com.qcadoo.mes.materialFlowResources;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Sets;
+
+/**
+ * Keeps, per document positions grid query, the number of matching records and the last row (sort value and id) of every
+ * page already served, so following pages can be read with keyset pagination instead of OFFSET. Only the least recently
+ * used {@link #L_MAX_QUERIES} queries are kept. State of a document is dropped when its positions or their attribute values
+ * change, see {@link #invalidate(Long)}.
+ */
+@Service
+public class DocumentPositionsGridCache {
+
+    private static final int L_MAX_QUERIES = 500;
+
+    private static final String L_INVALIDATION_KEY = DocumentPositionsGridCache.class.getName();
+
+    private static final String L_INVALIDATION_ALL_KEY = L_INVALIDATION_KEY + ".all";
+
+    private final Cache<QueryKey, GridQueryState> states = CacheBuilder.newBuilder().maximumSize(L_MAX_QUERIES).build();
+
+    public GridQueryState getState(final Long documentId, final String query) {
+        QueryKey queryKey = new QueryKey(documentId, query);
+        GridQueryState state = states.getIfPresent(queryKey);
+
+        if (state != null) {
+            return state;
+        }
+
+        GridQueryState newState = new GridQueryState();
+        GridQueryState concurrentState = states.asMap().putIfAbsent(queryKey, newState);
+
+        return concurrentState != null ? concurrentState : newState;
+    }
+
+    /**
+     * Drops state of the given document at once and again when the current transaction completes, so queries served by
+     * other transactions in the meantime aren't kept.
+     */
+    public void invalidate(final Long documentId) {
+        removeStates(documentId);
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.hasResource(L_INVALIDATION_KEY)) {
+            getInvalidatedDocumentIds().add(documentId);
+
+            return;
+        }
+
+        Set<Long> documentIds = Sets.newHashSet(documentId);
+
+        TransactionSynchronizationManager.bindResource(L_INVALIDATION_KEY, documentIds);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            @Override
+            public void afterCompletion(final int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(L_INVALIDATION_KEY);
+
+                documentIds.forEach(DocumentPositionsGridCache.this::removeStates);
+            }
+        });
+    }
+
+    public void invalidateAll() {
+        states.invalidateAll();
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.hasResource(L_INVALIDATION_ALL_KEY)) {
+            return;
+        }
+
+        TransactionSynchronizationManager.bindResource(L_INVALIDATION_ALL_KEY, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            @Override
+            public void afterCompletion(final int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(L_INVALIDATION_ALL_KEY);
+
+                states.invalidateAll();
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<Long> getInvalidatedDocumentIds() {
+        return (Set<Long>) TransactionSynchronizationManager.getResource(L_INVALIDATION_KEY);
+    }
+
+    private void removeStates(final Long documentId) {
+        states.asMap().keySet().removeIf(queryKey -> Objects.equals(queryKey.documentId, documentId));
+    }
+
+    private static final class QueryKey {
+
+        private final Long documentId;
+
+        private final String query;
+
+        private QueryKey(final Long documentId, final String query) {
+            this.documentId = documentId;
+            this.query = query;
+        }
+
+        @Override
+        public boolean equals(final Object object) {
+            if (this == object) {
+                return true;
+            }
+
+            if (!(object instanceof QueryKey)) {
+                return false;
+            }
+
+            QueryKey other = (QueryKey) object;
+
+            return Objects.equals(documentId, other.documentId) && Objects.equals(query, other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(documentId, query);
+        }
+
+    }
+
+    public static class GridQueryState {
+
+        private volatile Integer countRecords;
+
+        private final Map<Integer, PageBoundary> pageBoundaries = new ConcurrentHashMap<>();
+
+        GridQueryState() {
+        }
+
+        public Integer getCountRecords() {
+            return countRecords;
+        }
+
+        public void setCountRecords(final Integer countRecords) {
+            this.countRecords = countRecords;
+        }
+
+        public PageBoundary getPageBoundary(final int page) {
+            return pageBoundaries.get(page);
+        }
+
+        public void putPageBoundary(final int page, final PageBoundary pageBoundary) {
+            pageBoundaries.put(page, pageBoundary);
+        }
+
+    }
+
+    public static class PageBoundary {
+
+        private final Object sortValue;
+
+        private final Long id;
+
+        public PageBoundary(final Object sortValue, final Long id) {
+            this.sortValue = sortValue;
+            this.id = Objects.requireNonNull(id);
+        }
+
+        public Object getSortValue() {
+            return sortValue;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+    }
+
+}
@@ -47,6 +47,9 @@ public class PalletValidatorService {
         if (entity.getField("validatePallet") != null && !entity.getBooleanField("validatePallet")) {
             return true;
         }
+        if (palletNumber == null) {
+            return true;
+        }
         return !existsOtherResourceForPalletNumber(palletNumber, palletType, storageLocation, entity, location)
                 && !existsOtherPositionForPalletNumber(palletNumber, palletType, storageLocation, entity, location)
                 && !existsOtherDeliveredProductForPalletNumber(palletNumber, palletType, storageLocation, entity, location);
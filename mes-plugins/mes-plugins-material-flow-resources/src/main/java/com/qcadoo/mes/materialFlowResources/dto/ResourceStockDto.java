@@ -7,6 +7,8 @@ public class ResourceStockDto {
 
     private BigDecimal quantity;
 
+    private BigDecimal reservedQuantity;
+
     private BigDecimal availableQuantity;
 
     public BigDecimal getQuantity() {
@@ -17,6 +19,14 @@ public class ResourceStockDto {
         this.quantity = quantity;
     }
 
+    public BigDecimal getReservedQuantity() {
+        return reservedQuantity;
+    }
+
+    public void setReservedQuantity(BigDecimal reservedQuantity) {
+        this.reservedQuantity = reservedQuantity;
+    }
+
     public BigDecimal getAvailableQuantity() {
         return availableQuantity;
     }
@@ -35,11 +45,12 @@ public class ResourceStockDto {
         }
         ResourceStockDto that = (ResourceStockDto) o;
         return Objects.equals(quantity, that.quantity) &&
+                Objects.equals(reservedQuantity, that.reservedQuantity) &&
                 Objects.equals(availableQuantity, that.availableQuantity);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(quantity, availableQuantity);
+        return Objects.hash(quantity, reservedQuantity, availableQuantity);
     }
 }
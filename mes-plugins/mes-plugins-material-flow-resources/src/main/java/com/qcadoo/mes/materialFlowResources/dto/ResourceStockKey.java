@@ -0,0 +1,69 @@
+package com.qcadoo.mes.materialFlowResources.dto;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+public class ResourceStockKey {
+
+    private final Long productId;
+
+    private final Long locationId;
+
+    private final Long batchId;
+
+    private final BigDecimal conversion;
+
+    public ResourceStockKey(final Long productId, final Long locationId) {
+        this(productId, locationId, null, null);
+    }
+
+    public ResourceStockKey(final Long productId, final Long locationId, final Long batchId, final BigDecimal conversion) {
+        this.productId = productId;
+        this.locationId = locationId;
+        this.batchId = batchId;
+        this.conversion = Objects.isNull(conversion) ? null : conversion.stripTrailingZeros();
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public Long getLocationId() {
+        return locationId;
+    }
+
+    public Long getBatchId() {
+        return batchId;
+    }
+
+    public BigDecimal getConversion() {
+        return conversion;
+    }
+
+    public boolean isForProductAndLocation() {
+        return Objects.isNull(batchId) && Objects.isNull(conversion);
+    }
+
+    public boolean matches(final Long resourceBatchId, final BigDecimal resourceConversion) {
+        return (Objects.isNull(batchId) || batchId.equals(resourceBatchId)) && (Objects.isNull(conversion)
+                || Objects.nonNull(resourceConversion) && conversion.compareTo(resourceConversion) == 0);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ResourceStockKey that = (ResourceStockKey) o;
+        return Objects.equals(productId, that.productId) && Objects.equals(locationId, that.locationId)
+                && Objects.equals(batchId, that.batchId) && Objects.equals(conversion, that.conversion);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(productId, locationId, batchId, conversion);
+    }
+}
@@ -23,6 +23,7 @@
  */
 package com.qcadoo.mes.materialFlowResources.hooks;
 
+import com.qcadoo.mes.materialFlowResources.DocumentPositionsGridCache;
 import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
 import com.qcadoo.mes.materialFlowResources.constants.ReservationFields;
 import com.qcadoo.mes.materialFlowResources.service.ReservationsService;
@@ -41,7 +42,12 @@ public class PositionModelHooks {
     @Autowired
     private ResourceReservationsService resourceReservationsService;
 
+    @Autowired
+    private DocumentPositionsGridCache documentPositionsGridCache;
+
     public void onSave(final DataDefinition positionDD, final Entity position) {
+        invalidateDocumentPositionsGrid(position);
+
         if (position.getId() != null) {
             reservationsService.updateReservationFromDocumentPosition(position);
         }
@@ -56,9 +62,19 @@ public class PositionModelHooks {
     }
 
     public boolean onDelete(final DataDefinition positionDD, final Entity position) {
+        invalidateDocumentPositionsGrid(position);
+
         resourceReservationsService.updateResourceQuantites(position,
                 position.getDecimalField(ReservationFields.QUANTITY).negate());
         return true;
     }
 
+    private void invalidateDocumentPositionsGrid(final Entity position) {
+        Entity document = position.getBelongsToField(PositionFields.DOCUMENT);
+
+        if (document != null) {
+            documentPositionsGridCache.invalidate(document.getId());
+        }
+    }
+
 }
@@ -124,17 +124,8 @@ public class ResourceAttributeValueHooks {
     }
 
     public void onSave(final DataDefinition resourceAttributeValueDD, final Entity resourceAttributeValue) {
-        Entity attribute = resourceAttributeValue.getBelongsToField(ResourceAttributeValueFields.ATTRIBUTE);
-        if (AttributeValueType.NUMERIC.getStringValue().equals(attribute.getStringField(AttributeFields.VALUE_TYPE))) {
-            Either<Exception, Optional<BigDecimal>> eitherNumber = BigDecimalUtils.tryParseAndIgnoreSeparator(
-                    resourceAttributeValue.getStringField(ResourceAttributeValueFields.VALUE), LocaleContextHolder.getLocale());
-            if (eitherNumber.isRight() && eitherNumber.getRight().isPresent()) {
-                resourceAttributeValue.setField(
-                        ResourceAttributeValueFields.VALUE,
-                        BigDecimalUtils.toString(eitherNumber.getRight().get(),
-                                attribute.getIntegerField(AttributeFields.PRECISION)));
-            }
-        }
+        normalizeNumericValue(resourceAttributeValue);
+
         if (resourceAttributeValue.getBooleanField(ResourceAttributeValueFields.FROM_DEFINITION)) {
             if (isChanged(resourceAttributeValue)) {
                 Entity resource = resourceAttributeValue.getBelongsToField(ResourceAttributeValueFields.RESOURCE);
@@ -151,6 +142,24 @@ public class ResourceAttributeValueHooks {
         }
     }
 
+    /**
+     * Formats numeric value with precision of its attribute. Also used for values inserted without saving, see
+     * ReceiptResourcesService.
+     */
+    public void normalizeNumericValue(final Entity resourceAttributeValue) {
+        Entity attribute = resourceAttributeValue.getBelongsToField(ResourceAttributeValueFields.ATTRIBUTE);
+        if (AttributeValueType.NUMERIC.getStringValue().equals(attribute.getStringField(AttributeFields.VALUE_TYPE))) {
+            Either<Exception, Optional<BigDecimal>> eitherNumber = BigDecimalUtils.tryParseAndIgnoreSeparator(
+                    resourceAttributeValue.getStringField(ResourceAttributeValueFields.VALUE), LocaleContextHolder.getLocale());
+            if (eitherNumber.isRight() && eitherNumber.getRight().isPresent()) {
+                resourceAttributeValue.setField(
+                        ResourceAttributeValueFields.VALUE,
+                        BigDecimalUtils.toString(eitherNumber.getRight().get(),
+                                attribute.getIntegerField(AttributeFields.PRECISION)));
+            }
+        }
+    }
+
     private boolean isChanged(Entity resourceAttributeValue) {
         if (Objects.isNull(resourceAttributeValue.getId())) {
             return true;
@@ -48,15 +48,19 @@ public class DocumentBuilder {
 
     private final ReceiptDocumentForReleaseHelper receiptDocumentForReleaseHelper;
 
+    private final ReceiptResourcesService receiptResourcesService;
+
     private final Entity document;
 
     private final List<Entity> positions = Lists.newArrayList();
 
     DocumentBuilder(final DataDefinitionService dataDefinitionService, final ResourceManagementService resourceManagementService,
-            final ReceiptDocumentForReleaseHelper receiptDocumentForReleaseHelper, final Entity user) {
+            final ReceiptDocumentForReleaseHelper receiptDocumentForReleaseHelper,
+            final ReceiptResourcesService receiptResourcesService, final Entity user) {
         this.dataDefinitionService = dataDefinitionService;
         this.resourceManagementService = resourceManagementService;
         this.receiptDocumentForReleaseHelper = receiptDocumentForReleaseHelper;
+        this.receiptResourcesService = receiptResourcesService;
         this.document = createDocument(user);
     }
 
@@ -364,6 +368,46 @@ public class DocumentBuilder {
         return buildWithInvalidStrategy((buildContext) -> TransactionAspectSupport.currentTransactionStatus().setRollbackOnly());
     }
 
+    /**
+     * Save accepted receipt document in database, inserting its positions and resources in batches. Positions and resources
+     * are validated before anything is saved, so invalid document is returned not saved and the current transaction is left
+     * for the caller to handle.
+     *
+     * @return Created document entity.
+     */
+    public Entity buildReceiptInBatches() {
+        Preconditions.checkState(DocumentType.RECEIPT.equals(getDocumentType()), "Document type has to be receipt.");
+        Preconditions.checkState(DocumentState.ACCEPTED.getStringValue().equals(document.getStringField(DocumentFields.STATE)),
+                "Document has to be accepted.");
+
+        positions.forEach(p -> p.setField(PositionFields.DOCUMENT, document));
+
+        List<Entity> resources = receiptResourcesService.prepareResources(document, positions);
+
+        if (!document.isValid()) {
+            return document;
+        }
+
+        DataDefinition documentDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_DOCUMENT);
+
+        Entity savedDocument = documentDD.save(document);
+
+        if (savedDocument.isValid()) {
+            positions.forEach(p -> p.setField(PositionFields.DOCUMENT, savedDocument));
+
+            receiptResourcesService.insertPositionsAndResources(savedDocument, positions, resources);
+
+            savedDocument.setField(DocumentFields.POSITIONS, positions);
+
+            if (receiptDocumentForReleaseHelper.buildConnectedDocument(savedDocument)) {
+                receiptDocumentForReleaseHelper.tryBuildConnectedDocument(savedDocument, false);
+            }
+        }
+
+        return savedDocument;
+    }
+
     public Entity buildWithEntityRuntimeException() {
         return buildWithInvalidStrategy((buildContext) -> {
             throw new DocumentBuildException(buildContext.savedDocument, buildContext.invalidPositions);
@@ -11,6 +11,7 @@ import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.qcadoo.mes.basic.notifications.NotificationCountersService;
 import com.qcadoo.mes.materialFlow.constants.UserFieldsMF;
 import com.qcadoo.mes.materialFlow.constants.UserLocationFields;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
@@ -32,14 +33,20 @@ public class DraftDocumentsNotificationService {
 
     static final String ROLE_DOCUMENTS_NOTIFICATION = "ROLE_DOCUMENTS_NOTIFICATION";
 
+    private static final String L_DRAFT_DOCUMENTS_COUNTER = "materialFlowResources.draftDocuments";
+
     private final SecurityService securityService;
 
     private final DataDefinitionService dataDefinitionService;
 
+    private final NotificationCountersService notificationCountersService;
+
     @Autowired
-    public DraftDocumentsNotificationService(SecurityService securityService, DataDefinitionService dataDefinitionService) {
+    public DraftDocumentsNotificationService(SecurityService securityService, DataDefinitionService dataDefinitionService,
+            NotificationCountersService notificationCountersService) {
         this.securityService = securityService;
         this.dataDefinitionService = dataDefinitionService;
+        this.notificationCountersService = notificationCountersService;
     }
 
     private DataDefinition userDataDefinition() {
@@ -57,20 +64,33 @@ public class DraftDocumentsNotificationService {
                 && countDraftDocumentsForUser(currentUserId) > 0;
     }
 
+    /**
+     * Makes draft documents notifications reload their count once the current transaction commits.
+     */
+    public void invalidateDraftDocumentsCount() {
+        notificationCountersService.invalidate(L_DRAFT_DOCUMENTS_COUNTER);
+    }
+
     int countDraftDocumentsForUser(Long currentUserId) {
         EntityList userLocations = userDataDefinition().get(currentUserId).getHasManyField(UserFieldsMF.USER_LOCATIONS);
+        Set<Long> locationIds = userLocations.stream().map(ul -> ul.getBelongsToField(UserLocationFields.LOCATION))
+                .map(Entity::getId).collect(Collectors.toSet());
+
+        return (int) notificationCountersService.getCount(L_DRAFT_DOCUMENTS_COUNTER, locationIds,
+                () -> (long) countDraftDocumentsForLocations(locationIds));
+    }
+
+    private int countDraftDocumentsForLocations(Set<Long> locationIds) {
         SearchConjunction conjunction = SearchRestrictions.conjunction();
         conjunction.add(eq(DocumentFields.STATE, DocumentState.DRAFT.getStringValue()));
         conjunction.add(eq(DocumentFields.ACTIVE, Boolean.TRUE));
         conjunction.add(isNull("order.id"));
 
         SearchCriteriaBuilder criteriaBuilder = documentDataDefinition().find();
-        if (!userLocations.isEmpty()) {
+        if (!locationIds.isEmpty()) {
             criteriaBuilder.createAlias(DocumentFields.LOCATION_FROM, "locFrom", JoinType.LEFT);
             criteriaBuilder.createAlias(DocumentFields.LOCATION_TO, "locTo", JoinType.LEFT);
 
-            Set<Long> locationIds = userLocations.stream().map(ul -> ul.getBelongsToField(UserLocationFields.LOCATION))
-                    .map(Entity::getId).collect(Collectors.toSet());
             conjunction.add(or(in("locFrom.id", locationIds), in("locTo.id", locationIds)));
         }
         criteriaBuilder.add(conjunction);
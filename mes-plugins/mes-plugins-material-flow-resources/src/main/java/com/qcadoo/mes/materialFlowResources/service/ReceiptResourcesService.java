@@ -0,0 +1,488 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.materialFlowResources.DocumentPositionsGridCache;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
+import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
+import com.qcadoo.mes.materialFlowResources.constants.PositionAttributeValueFields;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceAttributeValueFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.hooks.ResourceAttributeValueHooks;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.security.constants.UserFields;
+
+/**
+ * Creates resources of accepted receipt documents. Resources and positions of a document can be validated up front and then
+ * inserted in JDBC batches, so large receipts do not save them one by one. Only validatesWith hooks of the models are run on
+ * this path, fields set by other hooks are filled here.
+ */
+@Service
+public class ReceiptResourcesService {
+
+    private static final int L_BATCH_SIZE = 1000;
+
+    private static final String L_PALLET_CONFLICT = "documentGrid.error.position.existsOtherResourceForPalletAndStorageLocation";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ResourceStockService resourceStockService;
+
+    @Autowired
+    private ResourceAttributeValueHooks resourceAttributeValueHooks;
+
+    @Autowired
+    private DocumentPositionsGridCache documentPositionsGridCache;
+
+    /**
+     * Creates not saved resource with field values taken from receipt position.
+     */
+    public Entity createResource(final Entity warehouse, final Entity position, final Object date) {
+        DataDefinition resourceDD = getResourceDD();
+
+        Entity product = position.getBelongsToField(PositionFields.PRODUCT);
+        Entity resource = resourceDD.create();
+
+        resource.setField(ResourceFields.TIME, date);
+        resource.setField(ResourceFields.LOCATION, warehouse);
+        resource.setField(ResourceFields.PRODUCT, product);
+        resource.setField(ResourceFields.QUANTITY, position.getField(PositionFields.QUANTITY));
+        resource.setField(ResourceFields.RESERVED_QUANTITY, BigDecimal.ZERO);
+        resource.setField(ResourceFields.AVAILABLE_QUANTITY, position.getDecimalField(PositionFields.QUANTITY));
+        resource.setField(ResourceFields.PRICE, position.getField(PositionFields.PRICE));
+        resource.setField(ResourceFields.BATCH, position.getField(PositionFields.BATCH));
+        resource.setField(ResourceFields.EXPIRATION_DATE, position.getField(PositionFields.EXPIRATION_DATE));
+        resource.setField(ResourceFields.PRODUCTION_DATE, position.getField(PositionFields.PRODUCTION_DATE));
+        resource.setField(ResourceFields.STORAGE_LOCATION, position.getField(PositionFields.STORAGE_LOCATION));
+        resource.setField(ResourceFields.ADDITIONAL_CODE, position.getField(PositionFields.ADDITIONAL_CODE));
+        resource.setField(ResourceFields.PALLET_NUMBER, position.getField(PositionFields.PALLET_NUMBER));
+        resource.setField(ResourceFields.TYPE_OF_PALLET, position.getField(PositionFields.TYPE_OF_PALLET));
+        resource.setField(ResourceFields.WASTE, position.getField(PositionFields.WASTE));
+        resource.setField(ResourceFields.QUALITY_RATING, position.getField(PositionFields.QUALITY_RATING));
+
+        if (StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
+            resource.setField(ResourceFields.GIVEN_UNIT, product.getField(ProductFields.UNIT));
+            resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT, position.getField(PositionFields.QUANTITY));
+            resource.setField(ResourceFields.CONVERSION, BigDecimal.ONE);
+        } else {
+            resource.setField(ResourceFields.GIVEN_UNIT, position.getField(PositionFields.GIVEN_UNIT));
+            resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT, position.getField(PositionFields.GIVEN_QUANTITY));
+            resource.setField(ResourceFields.CONVERSION, position.getField(PositionFields.CONVERSION));
+        }
+
+        return resource;
+    }
+
+    /**
+     * Fills resource fields taken from saved receipt document.
+     */
+    public void fillDocumentFields(final Entity resource, final Entity document) {
+        Entity user = document.getBelongsToField(DocumentFields.USER);
+        Entity delivery = document.getBelongsToField(ResourceFields.DELIVERY);
+
+        resource.setField(ResourceFields.USER_NAME,
+                user.getStringField(UserFields.FIRST_NAME) + " " + user.getStringField(UserFields.LAST_NAME));
+        resource.setField(ResourceFields.DOCUMENT_NUMBER, document.getStringField(DocumentFields.NUMBER));
+
+        if (delivery != null) {
+            resource.setField(ResourceFields.DELIVERY_NUMBER, delivery.getStringField("number"));
+        }
+    }
+
+    /**
+     * Creates and validates resources of not saved receipt document positions, nothing is saved. Errors of invalid positions
+     * and resources are copied to the document, which is marked as not valid then. Resources sharing a pallet number have to
+     * share storage location and pallet type too. Invalid and repeated attribute values are left out of resources, as when
+     * saving them one by one.
+     *
+     * @return resources in the order of positions
+     */
+    public List<Entity> prepareResources(final Entity document, final List<Entity> positions) {
+        DataDefinition resourceDD = getResourceDD();
+        DataDefinition positionDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_POSITION);
+
+        Entity warehouse = document.getBelongsToField(DocumentFields.LOCATION_TO);
+        Object date = document.getField(DocumentFields.TIME);
+
+        Map<Long, Entity> attributes = getAttributes(positions);
+
+        List<Entity> resources = Lists.newArrayListWithCapacity(positions.size());
+
+        for (Entity position : positions) {
+            if (!positionDD.callValidators(position)) {
+                copyErrors(position, document);
+            }
+
+            Entity resource = createResource(warehouse, position, date);
+
+            if (!resourceDD.callValidators(resource)) {
+                copyErrors(resource, document);
+            }
+
+            resource.setField(ResourceFields.RESOURCE_ATTRIBUTE_VALUES,
+                    prepareResourceAttributeValues(position, resource, attributes));
+
+            resources.add(resource);
+        }
+
+        checkPallets(document, resources);
+
+        return resources;
+    }
+
+    private Map<Long, Entity> getAttributes(final List<Entity> positions) {
+        Set<Long> attributeIds = positions.stream()
+                .flatMap(position -> position.getHasManyField(PositionFields.POSITION_ATTRIBUTE_VALUES).stream())
+                .map(attributeValue -> getId(attributeValue.getField(PositionAttributeValueFields.ATTRIBUTE)))
+                .collect(Collectors.toSet());
+
+        if (attributeIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.ATTRIBUTE).find()
+                .add(SearchRestrictions.in("id", attributeIds)).list().getEntities().stream()
+                .collect(Collectors.toMap(Entity::getId, attribute -> attribute));
+    }
+
+    private List<Entity> prepareResourceAttributeValues(final Entity position, final Entity resource,
+            final Map<Long, Entity> attributes) {
+        DataDefinition resourceAttributeValueDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_RESOURCE_ATTRIBUTE_VALUE);
+
+        resource.setField(ResourceFields.RESOURCE_ATTRIBUTE_VALUES, Lists.newArrayList());
+
+        List<Entity> resourceAttributeValues = Lists.newArrayList();
+
+        for (Entity positionAttributeValue : position.getHasManyField(PositionFields.POSITION_ATTRIBUTE_VALUES)) {
+            Entity resourceAttributeValue = resourceAttributeValueDD.create();
+
+            resourceAttributeValue.setField(ResourceAttributeValueFields.RESOURCE, resource);
+            resourceAttributeValue.setField(ResourceAttributeValueFields.ATTRIBUTE,
+                    attributes.get(getId(positionAttributeValue.getField(PositionAttributeValueFields.ATTRIBUTE))));
+            resourceAttributeValue.setField(ResourceAttributeValueFields.ATTRIBUTE_VALUE,
+                    getId(positionAttributeValue.getField(PositionAttributeValueFields.ATTRIBUTE_VALUE)));
+            resourceAttributeValue.setField(ResourceAttributeValueFields.VALUE,
+                    positionAttributeValue.getStringField(PositionAttributeValueFields.VALUE));
+
+            if (resourceAttributeValueDD.callValidators(resourceAttributeValue)
+                    && !containsAttributeValue(resourceAttributeValues, resourceAttributeValue)) {
+                resourceAttributeValueHooks.normalizeNumericValue(resourceAttributeValue);
+
+                resourceAttributeValues.add(resourceAttributeValue);
+            }
+        }
+
+        return resourceAttributeValues;
+    }
+
+    private boolean containsAttributeValue(final List<Entity> resourceAttributeValues, final Entity resourceAttributeValue) {
+        Long attributeId = getId(resourceAttributeValue.getField(ResourceAttributeValueFields.ATTRIBUTE));
+        Long attributeValueId = getId(resourceAttributeValue.getField(ResourceAttributeValueFields.ATTRIBUTE_VALUE));
+        String value = resourceAttributeValue.getStringField(ResourceAttributeValueFields.VALUE);
+
+        return resourceAttributeValues.stream().anyMatch(
+                other -> attributeId.equals(getId(other.getField(ResourceAttributeValueFields.ATTRIBUTE)))
+                        && Objects.equals(attributeValueId, getId(other.getField(ResourceAttributeValueFields.ATTRIBUTE_VALUE)))
+                        && (Objects.nonNull(attributeValueId)
+                                || Objects.equals(value, other.getStringField(ResourceAttributeValueFields.VALUE))));
+    }
+
+    /**
+     * Pallet validation of resources only sees saved resources, so resources of one receipt are checked against each other
+     * here, the same way.
+     */
+    private void checkPallets(final Entity document, final List<Entity> resources) {
+        Map<Long, Entity> firstResourcesByPalletNumber = Maps.newHashMap();
+
+        for (Entity resource : resources) {
+            Long palletNumberId = getId(resource.getField(ResourceFields.PALLET_NUMBER));
+
+            if (Objects.isNull(palletNumberId)) {
+                continue;
+            }
+
+            Entity firstResource = firstResourcesByPalletNumber.putIfAbsent(palletNumberId, resource);
+
+            if (Objects.nonNull(firstResource) && isPalletConflict(firstResource, resource)) {
+                resource.addError(getResourceDD().getField(ResourceFields.PALLET_NUMBER), L_PALLET_CONFLICT);
+
+                document.setNotValid();
+                document.addGlobalError(L_PALLET_CONFLICT);
+            }
+        }
+    }
+
+    private boolean isPalletConflict(final Entity resource, final Entity otherResource) {
+        return isDifferent(getId(resource.getField(ResourceFields.STORAGE_LOCATION)),
+                getId(otherResource.getField(ResourceFields.STORAGE_LOCATION)))
+                || isDifferent(resource.getStringField(ResourceFields.TYPE_OF_PALLET),
+                        otherResource.getStringField(ResourceFields.TYPE_OF_PALLET));
+    }
+
+    private boolean isDifferent(final Object value, final Object otherValue) {
+        return Objects.nonNull(value) && Objects.nonNull(otherValue) && !value.equals(otherValue);
+    }
+
+    /**
+     * Inserts positions of saved receipt document together with their resources, attribute values and missing resource
+     * stocks, using JDBC batches. Positions and resources are given ids, numbers are taken from the same sequences as when
+     * saving them one by one.
+     */
+    public void insertPositionsAndResources(final Entity document, final List<Entity> positions, final List<Entity> resources) {
+        if (positions.isEmpty()) {
+            return;
+        }
+
+        TransactionAspectSupport.currentTransactionStatus().flush();
+
+        Entity warehouse = document.getBelongsToField(DocumentFields.LOCATION_TO);
+        Date time = document.getDateField(DocumentFields.TIME);
+
+        List<Long> resourceIds = getNextIds("materialflowresources_resource_id_seq", resources.size());
+        List<String> resourceNumbers = jdbcTemplate.queryForList(
+                "SELECT generate_and_set_resource_number(:time) FROM generate_series(1, :count)",
+                ImmutableMap.of("time", Objects.isNull(time) ? new Date() : time, "count", resources.size()), String.class);
+        List<Long> positionIds = getNextIds("materialflowresources_position_id_seq", positions.size());
+
+        List<Map<String, Object>> resourcesParameters = Lists.newArrayList();
+        List<Map<String, Object>> positionsParameters = Lists.newArrayList();
+        List<Map<String, Object>> positionAttributeValuesParameters = Lists.newArrayList();
+        List<Map<String, Object>> resourceAttributeValuesParameters = Lists.newArrayList();
+
+        for (int i = 0; i < positions.size(); i++) {
+            Entity position = positions.get(i);
+            Entity resource = resources.get(i);
+
+            resource.setId(resourceIds.get(i));
+            resource.setField(ResourceFields.NUMBER, resourceNumbers.get(i));
+
+            fillDocumentFields(resource, document);
+
+            position.setId(positionIds.get(i));
+            position.setField(PositionFields.NUMBER, i + 1);
+            position.setField(PositionFields.RESOURCE_NUMBER, resource.getStringField(ResourceFields.NUMBER));
+            position.setField(PositionFields.RESOURCE_RECEIPT_DOCUMENT, resource.getId().toString());
+
+            resourcesParameters.add(getResourceParameters(resource));
+            positionsParameters.add(getPositionParameters(document, position));
+
+            for (Entity attributeValue : position.getHasManyField(PositionFields.POSITION_ATTRIBUTE_VALUES)) {
+                Map<String, Object> parameters = Maps.newLinkedHashMap();
+
+                parameters.put("position_id", position.getId());
+                parameters.putAll(getAttributeValueParameters(attributeValue));
+
+                positionAttributeValuesParameters.add(parameters);
+            }
+
+            for (Entity attributeValue : resource.getHasManyField(ResourceFields.RESOURCE_ATTRIBUTE_VALUES)) {
+                Map<String, Object> parameters = Maps.newLinkedHashMap();
+
+                parameters.put("resource_id", resource.getId());
+                parameters.putAll(getAttributeValueParameters(attributeValue));
+                parameters.put("fromdefinition", false);
+
+                resourceAttributeValuesParameters.add(parameters);
+            }
+        }
+
+        resourceStockService.createResourceStocks(warehouse.getId(),
+                resources.stream().map(resource -> getId(resource.getField(ResourceFields.PRODUCT)))
+                        .collect(Collectors.toSet()));
+
+        batchInsert("materialflowresources_resource", resourcesParameters);
+        batchInsert("materialflowresources_position", positionsParameters);
+        batchInsert("materialflowresources_positionattributevalue", addIds("materialflowresources_positionattributevalue_id_seq",
+                positionAttributeValuesParameters));
+        batchInsert("materialflowresources_resourceattributevalue", addIds("materialflowresources_resourceattributevalue_id_seq",
+                resourceAttributeValuesParameters));
+
+        documentPositionsGridCache.invalidate(document.getId());
+    }
+
+    private Map<String, Object> getResourceParameters(final Entity resource) {
+        Map<String, Object> parameters = Maps.newLinkedHashMap();
+
+        parameters.put("id", resource.getId());
+        parameters.put("number", resource.getStringField(ResourceFields.NUMBER));
+        parameters.put("location_id", getId(resource.getField(ResourceFields.LOCATION)));
+        parameters.put("product_id", getId(resource.getField(ResourceFields.PRODUCT)));
+        parameters.put("quantity", resource.getDecimalField(ResourceFields.QUANTITY));
+        parameters.put("price", resource.getDecimalField(ResourceFields.PRICE));
+        parameters.put("batch_id", getId(resource.getField(ResourceFields.BATCH)));
+        parameters.put("time", resource.getDateField(ResourceFields.TIME));
+        parameters.put("productiondate", resource.getDateField(ResourceFields.PRODUCTION_DATE));
+        parameters.put("expirationdate", resource.getDateField(ResourceFields.EXPIRATION_DATE));
+        parameters.put("iscorrected", resource.getBooleanField(ResourceFields.IS_CORRECTED));
+        parameters.put("storagelocation_id", getId(resource.getField(ResourceFields.STORAGE_LOCATION)));
+        parameters.put("quantityinadditionalunit", resource.getDecimalField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT));
+        parameters.put("additionalcode_id", getId(resource.getField(ResourceFields.ADDITIONAL_CODE)));
+        parameters.put("conversion", resource.getDecimalField(ResourceFields.CONVERSION));
+        parameters.put("palletnumber_id", getId(resource.getField(ResourceFields.PALLET_NUMBER)));
+        parameters.put("typeofpallet", resource.getStringField(ResourceFields.TYPE_OF_PALLET));
+        parameters.put("givenunit", resource.getStringField(ResourceFields.GIVEN_UNIT));
+        parameters.put("username", resource.getStringField(ResourceFields.USER_NAME));
+        parameters.put("waste", resource.getBooleanField(ResourceFields.WASTE));
+        parameters.put("availablequantity", resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY));
+        parameters.put("reservedquantity", resource.getDecimalField(ResourceFields.RESERVED_QUANTITY));
+        parameters.put("deliverynumber", resource.getStringField(ResourceFields.DELIVERY_NUMBER));
+        parameters.put("documentnumber", resource.getStringField(ResourceFields.DOCUMENT_NUMBER));
+        parameters.put("blockedforqualitycontrol", resource.getBooleanField(ResourceFields.BLOCKED_FOR_QUALITY_CONTROL));
+        parameters.put("qualityrating", resource.getStringField(ResourceFields.QUALITY_RATING));
+
+        return parameters;
+    }
+
+    private Map<String, Object> getPositionParameters(final Entity document, final Entity position) {
+        Map<String, Object> parameters = Maps.newLinkedHashMap();
+
+        parameters.put("id", position.getId());
+        parameters.put("document_id", document.getId());
+        parameters.put("number", position.getIntegerField(PositionFields.NUMBER));
+        parameters.put("product_id", getId(position.getField(PositionFields.PRODUCT)));
+        parameters.put("quantity", position.getDecimalField(PositionFields.QUANTITY));
+        parameters.put("givenquantity", position.getDecimalField(PositionFields.GIVEN_QUANTITY));
+        parameters.put("givenunit", position.getStringField(PositionFields.GIVEN_UNIT));
+        parameters.put("conversion", position.getDecimalField(PositionFields.CONVERSION));
+        parameters.put("price", position.getDecimalField(PositionFields.PRICE));
+        parameters.put("batch_id", getId(position.getField(PositionFields.BATCH)));
+        parameters.put("productiondate", position.getDateField(PositionFields.PRODUCTION_DATE));
+        parameters.put("expirationdate", position.getDateField(PositionFields.EXPIRATION_DATE));
+        parameters.put("storagelocation_id", getId(position.getField(PositionFields.STORAGE_LOCATION)));
+        parameters.put("additionalcode_id", getId(position.getField(PositionFields.ADDITIONAL_CODE)));
+        parameters.put("palletnumber_id", getId(position.getField(PositionFields.PALLET_NUMBER)));
+        parameters.put("typeofpallet", position.getStringField(PositionFields.TYPE_OF_PALLET));
+        parameters.put("waste", position.getBooleanField(PositionFields.WASTE));
+        parameters.put("resourcenumber", position.getStringField(PositionFields.RESOURCE_NUMBER));
+        parameters.put("resourcereceiptdocument", position.getStringField(PositionFields.RESOURCE_RECEIPT_DOCUMENT));
+        parameters.put("qualityrating", position.getStringField(PositionFields.QUALITY_RATING));
+
+        return parameters;
+    }
+
+    private Map<String, Object> getAttributeValueParameters(final Entity attributeValue) {
+        Map<String, Object> parameters = Maps.newLinkedHashMap();
+
+        parameters.put("attribute_id", getId(attributeValue.getField(PositionAttributeValueFields.ATTRIBUTE)));
+        parameters.put("attributevalue_id", getId(attributeValue.getField(PositionAttributeValueFields.ATTRIBUTE_VALUE)));
+        parameters.put("value", attributeValue.getStringField(PositionAttributeValueFields.VALUE));
+
+        return parameters;
+    }
+
+    private List<Map<String, Object>> addIds(final String sequenceName, final List<Map<String, Object>> rows) {
+        List<Long> ids = getNextIds(sequenceName, rows.size());
+
+        List<Map<String, Object>> rowsWithIds = Lists.newArrayListWithCapacity(rows.size());
+
+        for (int i = 0; i < rows.size(); i++) {
+            Map<String, Object> row = Maps.newLinkedHashMap();
+
+            row.put("id", ids.get(i));
+            row.putAll(rows.get(i));
+
+            rowsWithIds.add(row);
+        }
+
+        return rowsWithIds;
+    }
+
+    private List<Long> getNextIds(final String sequenceName, final int count) {
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+
+        return jdbcTemplate.queryForList("SELECT nextval('" + sequenceName + "') FROM generate_series(1, :count)",
+                Collections.singletonMap("count", count), Long.class);
+    }
+
+    private void batchInsert(final String tableName, final List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        Set<String> columns = rows.get(0).keySet();
+
+        String sql = "INSERT INTO " + tableName + " (" + String.join(", ", columns) + ") VALUES ("
+                + columns.stream().map(column -> ":" + column).collect(Collectors.joining(", ")) + ")";
+
+        for (List<Map<String, Object>> batch : Lists.partition(rows, L_BATCH_SIZE)) {
+            jdbcTemplate.batchUpdate(sql, batch.stream().map(MapSqlParameterSource::new).toArray(SqlParameterSource[]::new));
+        }
+    }
+
+    private void copyErrors(final Entity entity, final Entity document) {
+        document.setNotValid();
+
+        entity.getGlobalErrors().forEach(e -> document.addGlobalError(e.getMessage(), e.getAutoClose(), e.getVars()));
+        entity.getErrors().values().forEach(e -> document.addGlobalError(e.getMessage(), e.getAutoClose(), e.getVars()));
+    }
+
+    private Long getId(final Object value) {
+        if (value instanceof Entity) {
+            return ((Entity) value).getId();
+        }
+
+        return (Long) value;
+    }
+
+    private DataDefinition getResourceDD() {
+        return dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_RESOURCE);
+    }
+
+}
@@ -44,6 +44,8 @@ import com.qcadoo.mes.materialFlowResources.constants.ResourceAttributeValueFiel
 import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
 import com.qcadoo.mes.materialFlowResources.constants.StorageLocationFields;
 import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.mes.materialFlowResources.dto.ResourceStockDto;
+import com.qcadoo.mes.materialFlowResources.dto.ResourceStockKey;
 import com.qcadoo.mes.materialFlowResources.exceptions.InvalidResourceException;
 import com.qcadoo.mes.materialFlowResources.helpers.NotEnoughResourcesErrorMessageCopyToEntityHelper;
 import com.qcadoo.mes.materialFlowResources.helpers.NotEnoughResourcesErrorMessageHolder;
@@ -92,9 +94,6 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     @Autowired
     private NumberService numberService;
 
-    @Autowired
-    private PalletNumberDisposalService palletNumberDisposalService;
-
     @Autowired
     private ResourceStockService resourceStockService;
 
@@ -113,6 +112,12 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     @Autowired
     private CalculationQuantityService calculationQuantityService;
 
+    @Autowired
+    private ResourcesPoolService resourcesPoolService;
+
+    @Autowired
+    private ReceiptResourcesService receiptResourcesService;
+
     @Override
     @Transactional
     public void createResources(final Entity document) {
@@ -154,44 +159,9 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         DataDefinition resourceDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
                 MaterialFlowResourcesConstants.MODEL_RESOURCE);
 
-        Entity product = position.getBelongsToField(PositionFields.PRODUCT);
-        Entity resource = resourceDD.create();
-        Entity user = document.getBelongsToField(DocumentFields.USER);
-        Entity delivery = document.getBelongsToField(ResourceFields.DELIVERY);
-
-        resource.setField(ResourceFields.USER_NAME,
-                user.getStringField(UserFields.FIRST_NAME) + " " + user.getStringField(UserFields.LAST_NAME));
-        resource.setField(ResourceFields.TIME, date);
-        resource.setField(ResourceFields.LOCATION, warehouse);
-        resource.setField(ResourceFields.PRODUCT, position.getBelongsToField(PositionFields.PRODUCT));
-        resource.setField(ResourceFields.QUANTITY, position.getField(PositionFields.QUANTITY));
-        resource.setField(ResourceFields.RESERVED_QUANTITY, BigDecimal.ZERO);
-        resource.setField(ResourceFields.AVAILABLE_QUANTITY, position.getDecimalField(PositionFields.QUANTITY));
-        resource.setField(ResourceFields.PRICE, position.getField(PositionFields.PRICE));
-        resource.setField(ResourceFields.BATCH, position.getField(PositionFields.BATCH));
-        resource.setField(ResourceFields.EXPIRATION_DATE, position.getField(PositionFields.EXPIRATION_DATE));
-        resource.setField(ResourceFields.PRODUCTION_DATE, position.getField(PositionFields.PRODUCTION_DATE));
-        resource.setField(ResourceFields.STORAGE_LOCATION, position.getField(PositionFields.STORAGE_LOCATION));
-        resource.setField(ResourceFields.ADDITIONAL_CODE, position.getField(PositionFields.ADDITIONAL_CODE));
-        resource.setField(ResourceFields.PALLET_NUMBER, position.getField(PositionFields.PALLET_NUMBER));
-        resource.setField(ResourceFields.TYPE_OF_PALLET, position.getField(PositionFields.TYPE_OF_PALLET));
-        resource.setField(ResourceFields.WASTE, position.getField(PositionFields.WASTE));
-        resource.setField(ResourceFields.DOCUMENT_NUMBER, document.getStringField(DocumentFields.NUMBER));
-        resource.setField(ResourceFields.QUALITY_RATING, position.getField(PositionFields.QUALITY_RATING));
-
-        if (delivery != null) {
-            resource.setField(ResourceFields.DELIVERY_NUMBER, delivery.getStringField("number"));
-        }
+        Entity resource = receiptResourcesService.createResource(warehouse, position, date);
 
-        if (StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
-            resource.setField(ResourceFields.GIVEN_UNIT, product.getField(ProductFields.UNIT));
-            resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT, position.getField(PositionFields.QUANTITY));
-            resource.setField(ResourceFields.CONVERSION, BigDecimal.ONE);
-        } else {
-            resource.setField(ResourceFields.GIVEN_UNIT, position.getField(PositionFields.GIVEN_UNIT));
-            resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT, position.getField(PositionFields.GIVEN_QUANTITY));
-            resource.setField(ResourceFields.CONVERSION, position.getField(PositionFields.CONVERSION));
-        }
+        receiptResourcesService.fillDocumentFields(resource, document);
 
         resourceStockService.createResourceStock(resource);
 
@@ -307,78 +277,29 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
     public Multimap<Long, BigDecimal> getQuantitiesInWarehouse(final Entity warehouse,
             final Multimap<Entity, Entity> productsAndPositions) {
-        Multimap<Long, BigDecimal> result = ArrayListMultimap.create();
+        Multimap<Long, ResourceStockKey> productsAndKeys = ArrayListMultimap.create();
 
         for (Map.Entry<Entity, Entity> productAndPosition : productsAndPositions.entries()) {
-            Entity additionalCode = productAndPosition.getValue().getBelongsToField(PositionFields.ADDITIONAL_CODE);
-            BigDecimal conversion = productAndPosition.getValue().getDecimalField(PositionFields.CONVERSION);
-            Entity batch = productAndPosition.getValue().getBelongsToField(PositionFields.BATCH);
-
-            List<Entity> resources = Lists.newArrayList();
+            Entity product = productAndPosition.getKey();
+            Entity position = productAndPosition.getValue();
+            Entity batch = position.getBelongsToField(PositionFields.BATCH);
 
-            if (additionalCode != null) {
-                SearchCriteriaBuilder scb = getSearchCriteriaForResourceForProductAndWarehouse(productAndPosition.getKey(),
-                        warehouse);
+            BigDecimal conversion = BigDecimal.ONE;
 
-                if (!StringUtils.isEmpty(productAndPosition.getKey().getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, conversion));
-                } else {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-                }
-
-                if (Objects.nonNull(batch)) {
-                    scb.add(SearchRestrictions.belongsTo(ResourceFields.BATCH, batch));
-                }
-                resources = scb.add(SearchRestrictions.belongsTo(ResourceFields.ADDITIONAL_CODE, additionalCode)).list()
-                        .getEntities();
-
-                scb = getSearchCriteriaForResourceForProductAndWarehouse(productAndPosition.getKey(), warehouse);
-
-                if (!StringUtils.isEmpty(productAndPosition.getKey().getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, conversion));
-                } else {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-                }
-
-                if (Objects.nonNull(batch)) {
-                    scb.add(SearchRestrictions.belongsTo(ResourceFields.BATCH, batch));
-                }
-
-                resources.addAll(scb
-                        .add(SearchRestrictions.or(SearchRestrictions.isNull(ResourceFields.ADDITIONAL_CODE),
-                                SearchRestrictions.ne("additionalCode.id", additionalCode.getId()))).list().getEntities());
+            if (!StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
+                conversion = position.getDecimalField(PositionFields.CONVERSION);
             }
 
-            if (resources.isEmpty()) {
-                SearchCriteriaBuilder scb = getSearchCriteriaForResourceForProductAndWarehouse(productAndPosition.getKey(),
-                        warehouse);
-
-                if (Objects.nonNull(batch)) {
-                    scb.add(SearchRestrictions.belongsTo(ResourceFields.BATCH, batch));
-                }
-
-                if (!StringUtils.isEmpty(productAndPosition.getKey().getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, conversion));
-                } else {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-                }
+            productsAndKeys.put(product.getId(), new ResourceStockKey(product.getId(), warehouse.getId(),
+                    Objects.nonNull(batch) ? batch.getId() : null, conversion));
+        }
 
-                resources = scb.list().getEntities();
-            }
+        Map<ResourceStockKey, ResourceStockDto> resourceStocks = resourceStockService.getResourceStocks(productsAndKeys.values());
 
-            if (result.containsKey(productAndPosition.getKey().getId())) {
-                BigDecimal currentQuantity = result.get(productAndPosition.getKey().getId()).stream()
-                        .reduce(BigDecimal.ZERO, BigDecimal::add);
+        Multimap<Long, BigDecimal> result = ArrayListMultimap.create();
 
-                result.put(productAndPosition.getKey().getId(),
-                        (resources.stream().map(res -> res.getDecimalField(ResourceFields.AVAILABLE_QUANTITY)).reduce(
-                                BigDecimal.ZERO, BigDecimal::add)).add(currentQuantity));
-            } else {
-                result.put(
-                        productAndPosition.getKey().getId(),
-                        resources.stream().map(res -> res.getDecimalField(ResourceFields.AVAILABLE_QUANTITY))
-                                .reduce(BigDecimal.ZERO, BigDecimal::add));
-            }
+        for (Map.Entry<Long, ResourceStockKey> productAndKey : productsAndKeys.entries()) {
+            result.put(productAndKey.getKey(), resourceStocks.get(productAndKey.getValue()).getAvailableQuantity());
         }
 
         return result;
@@ -412,11 +333,14 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         NotEnoughResourcesErrorMessageHolder errorMessageHolder = notEnoughResourcesErrorMessageHolderFactory.create();
         boolean isFromOrder = Objects.nonNull(document.getBelongsToField(L_ORDER));
 
-        for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
+        List<Entity> positions = document.getHasManyField(DocumentFields.POSITIONS);
+
+        ResourcesPool resourcesPool = resourcesPoolService.createResourcesPool(warehouse, warehouseAlgorithm, positions);
+
+        for (Entity position : positions) {
             Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-            Either<BigDecimal, List<Entity>> eitherPositions = updateResources(warehouse, position, warehouseAlgorithm,
-                    isFromOrder);
+            Either<BigDecimal, List<Entity>> eitherPositions = updateResources(resourcesPool, warehouse, position, isFromOrder);
 
             enoughResources = enoughResources && position.isValid();
 
@@ -446,6 +370,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
             }
         }
 
+        resourcesPoolService.invalidateDocumentPositions(resourcesPool);
+
         if (!enoughResources) {
             NotEnoughResourcesErrorMessageCopyToEntityHelper.addError(document, warehouse, errorMessageHolder);
         }
@@ -489,16 +415,18 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         }
     }
 
-    private Either<BigDecimal, List<Entity>> updateResources(final Entity warehouse, final Entity position,
-            final WarehouseAlgorithm warehouseAlgorithm, boolean isFromOrder) {
+    private Either<BigDecimal, List<Entity>> updateResources(final ResourcesPool resourcesPool, final Entity warehouse,
+            final Entity position, boolean isFromOrder) {
         List<Entity> newPositions = Lists.newArrayList();
 
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouse, product, position, warehouseAlgorithm);
+        List<Entity> resources = getResourcesForPositionFromPool(resourcesPool, product, position);
 
         reservationsService.deleteReservationFromDocumentPosition(position);
 
+        resourcesPoolService.refreshReservedResource(resourcesPool, position);
+
         BigDecimal quantity = position.getDecimalField(PositionFields.QUANTITY);
         BigDecimal conversion = BigDecimalUtils.convertNullToOne(position.getDecimalField(PositionFields.CONVERSION));
         String givenUnit = position.getStringField(PositionFields.GIVEN_UNIT);
@@ -536,11 +464,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                 quantity = quantity.subtract(resourceAvailableQuantity, numberService.getMathContext());
 
                 if (resourceQuantity.compareTo(resourceAvailableQuantity) <= 0) {
-                    Entity palletNumberToDispose = resource.getBelongsToField(ResourceFields.PALLET_NUMBER);
-
-                    resource.getDataDefinition().delete(resource.getId());
-
-                    palletNumberDisposalService.tryToDispose(palletNumberToDispose);
+                    resourcesPoolService.deleteResource(resourcesPool, resource);
                 } else {
                     BigDecimal newResourceQuantity = resourceQuantity.subtract(resourceAvailableQuantity);
                     BigDecimal quantityInAdditionalUnit = calculationQuantityService.calculateAdditionalQuantity(
@@ -550,11 +474,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     resource.setField(ResourceFields.QUANTITY, newResourceQuantity);
                     resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT, quantityInAdditionalUnit);
 
-                    Entity savedResource = resource.getDataDefinition().save(resource);
-
-                    if (!savedResource.isValid()) {
-                        throw new InvalidResourceException(savedResource);
-                    }
+                    resourcesPoolService.updateResource(resourcesPool, resource);
                 }
 
                 newPosition.setField(PositionFields.QUANTITY,
@@ -579,11 +499,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                 resource.setField(ResourceFields.QUANTITY, numberService.setScaleWithDefaultMathContext(resourceQuantity));
                 resource.setField(ResourceFields.AVAILABLE_QUANTITY, resourceAvailableQuantity);
 
-                Entity savedResource = resource.getDataDefinition().save(resource);
-
-                if (!savedResource.isValid()) {
-                    throw new InvalidResourceException(savedResource);
-                }
+                resourcesPoolService.updateResource(resourcesPool, resource);
 
                 newPosition.setField(PositionFields.QUANTITY, numberService.setScaleWithDefaultMathContext(quantity));
                 newPosition.setField(PositionFields.GIVEN_QUANTITY, givenQuantity);
@@ -614,11 +530,15 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
         boolean isFromOrder = Objects.nonNull(document.getBelongsToField(L_ORDER));
 
-        for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
+        List<Entity> positions = document.getHasManyField(DocumentFields.POSITIONS);
+
+        ResourcesPool resourcesPool = resourcesPoolService.createResourcesPool(warehouseFrom, warehouseAlgorithm, positions);
+
+        for (Entity position : positions) {
             Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-            Either<BigDecimal, List<Entity>> eitherPositions = moveResources(warehouseFrom, warehouseTo, position, date,
-                    warehouseAlgorithm, isFromOrder);
+            Either<BigDecimal, List<Entity>> eitherPositions = moveResources(resourcesPool, warehouseFrom, warehouseTo, position,
+                    date, isFromOrder);
 
             enoughResources = enoughResources && position.isValid();
 
@@ -649,6 +569,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
             }
         }
 
+        resourcesPoolService.invalidateDocumentPositions(resourcesPool);
+
         if (!enoughResources) {
             NotEnoughResourcesErrorMessageCopyToEntityHelper.addError(document, warehouseFrom, errorMessageHolder);
         }
@@ -660,16 +582,18 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         }
     }
 
-    private Either<BigDecimal, List<Entity>> moveResources(final Entity warehouseFrom, final Entity warehouseTo,
-            final Entity position, final Object date, final WarehouseAlgorithm warehouseAlgorithm, boolean isFromOrder) {
+    private Either<BigDecimal, List<Entity>> moveResources(final ResourcesPool resourcesPool, final Entity warehouseFrom,
+            final Entity warehouseTo, final Entity position, final Object date, boolean isFromOrder) {
         List<Entity> newPositions = Lists.newArrayList();
 
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouseFrom, product, position, warehouseAlgorithm);
+        List<Entity> resources = getResourcesForPositionFromPool(resourcesPool, product, position);
 
         reservationsService.deleteReservationFromDocumentPosition(position);
 
+        resourcesPoolService.refreshReservedResource(resourcesPool, position);
+
         BigDecimal quantity = position.getDecimalField(PositionFields.QUANTITY);
         BigDecimal conversion = BigDecimalUtils.convertNullToOne(position.getDecimalField(PositionFields.CONVERSION));
         String givenUnit = position.getStringField(PositionFields.GIVEN_UNIT);
@@ -707,11 +631,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                 quantity = quantity.subtract(resourceAvailableQuantity, numberService.getMathContext());
 
                 if (resourceQuantity.compareTo(resourceAvailableQuantity) <= 0) {
-                    Entity palletNumberToDispose = resource.getBelongsToField(ResourceFields.PALLET_NUMBER);
-
-                    resource.getDataDefinition().delete(resource.getId());
-
-                    palletNumberDisposalService.tryToDispose(palletNumberToDispose);
+                    resourcesPoolService.deleteResource(resourcesPool, resource);
                 } else {
                     BigDecimal newResourceQuantity = resourceQuantity.subtract(resourceAvailableQuantity);
                     BigDecimal quantityInAdditionalUnit = calculationQuantityService.calculateAdditionalQuantity(
@@ -721,11 +641,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     resource.setField(ResourceFields.QUANTITY, newResourceQuantity);
                     resource.setField(ResourceFields.QUANTITY_IN_ADDITIONAL_UNIT, quantityInAdditionalUnit);
 
-                    Entity savedResource = resource.getDataDefinition().save(resource);
-
-                    if (!savedResource.isValid()) {
-                        throw new InvalidResourceException(savedResource);
-                    }
+                    resourcesPoolService.updateResource(resourcesPool, resource);
                 }
 
                 Entity newResource = createResource(position, warehouseTo, resource, resourceAvailableQuantity, date);
@@ -758,11 +674,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                 resource.setField(ResourceFields.QUANTITY, numberService.setScaleWithDefaultMathContext(resourceQuantity));
                 resource.setField(ResourceFields.AVAILABLE_QUANTITY, resourceAvailableQuantity);
 
-                Entity savedResource = resource.getDataDefinition().save(resource);
-
-                if (!savedResource.isValid()) {
-                    throw new InvalidResourceException(savedResource);
-                }
+                resourcesPoolService.updateResource(resourcesPool, resource);
 
                 Entity newResource = createResource(position, warehouseTo, resource, quantity, date);
 
@@ -808,14 +720,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         }
 
         if (resource != null) {
-            Entity reservation = reservationsService.getReservationForPosition(position);
-
-            if (reservation != null) {
-                BigDecimal reservationQuantity = reservation.getDecimalField(ReservationFields.QUANTITY);
-                BigDecimal resourceAvailableQuantity = resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY);
-
-                resource.setField(ResourceFields.AVAILABLE_QUANTITY, resourceAvailableQuantity.add(reservationQuantity));
-            }
+            addReservedQuantityToAvailableQuantity(position, resource);
 
             resources.add(resource);
         } else if (WarehouseAlgorithm.FIFO.equals(warehouseAlgorithm)) {
@@ -831,6 +736,50 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         return resources;
     }
 
+    private List<Entity> getResourcesForPositionFromPool(final ResourcesPool resourcesPool, final Entity product,
+            final Entity position) {
+        List<Entity> resources = Lists.newArrayList();
+
+        Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
+
+        if (resource != null && resource.getId() != null) {
+            resource = resourcesPool.getResource(resource.getId()).orElse(null);
+        }
+
+        if (resource != null) {
+            addReservedQuantityToAvailableQuantity(position, resource);
+
+            resources.add(resource);
+        } else {
+            resources = resourcesPool.getResources(product, position, false);
+
+            if (isFillResourceIrrespectiveOfConversion()) {
+                resources.addAll(resourcesPool.getResources(product, position, true));
+            }
+        }
+
+        return resources;
+    }
+
+    private void addReservedQuantityToAvailableQuantity(final Entity position, final Entity resource) {
+        Entity reservation = reservationsService.getReservationForPosition(position);
+
+        if (reservation != null) {
+            BigDecimal reservationQuantity = reservation.getDecimalField(ReservationFields.QUANTITY);
+            BigDecimal resourceAvailableQuantity = resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY);
+
+            resource.setField(ResourceFields.AVAILABLE_QUANTITY, resourceAvailableQuantity.add(reservationQuantity));
+        }
+    }
+
+    private boolean isFillResourceIrrespectiveOfConversion() {
+        Entity documentPositionParameters = parameterService.getParameter().getBelongsToField(
+                ParameterFieldsMFR.DOCUMENT_POSITION_PARAMETERS);
+
+        return documentPositionParameters
+                .getBooleanField(DocumentPositionParametersFields.FILL_RESOURCE_IRRESPECTIVE_OF_CONVERSION);
+    }
+
     private List<Entity> getResourcesForLocationCommonCodeConversion(final Entity warehouse, final Entity product,
             final Entity additionalCode, final Entity position, final boolean resourceIrrespectiveOfConversion,
             final SearchOrder... searchOrders) {
@@ -899,13 +848,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         List<Entity> resources = getResourcesForLocationCommonCodeConversion(warehouse, product, additionalCode, position, false,
                 searchOrders);
 
-        Entity documentPositionParameters = parameterService.getParameter().getBelongsToField(
-                ParameterFieldsMFR.DOCUMENT_POSITION_PARAMETERS);
-
-        boolean fillResourceIrrespectiveOfConversion = documentPositionParameters
-                .getBooleanField(DocumentPositionParametersFields.FILL_RESOURCE_IRRESPECTIVE_OF_CONVERSION);
-
-        if (fillResourceIrrespectiveOfConversion) {
+        if (isFillResourceIrrespectiveOfConversion()) {
             resources.addAll(getResourcesForLocationCommonCodeConversion(warehouse, product, additionalCode, position, true,
                     searchOrders));
         }
@@ -1,16 +1,36 @@
 package com.qcadoo.mes.materialFlowResources.service;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Map;
 
+import com.qcadoo.mes.materialFlowResources.dto.ResourceStockDto;
+import com.qcadoo.mes.materialFlowResources.dto.ResourceStockKey;
 import com.qcadoo.model.api.Entity;
 
 public interface ResourceStockService {
 
     void createResourceStock(final Entity resource);
 
+    /**
+     * Creates missing resource stocks of given products in given location with a single statement.
+     */
+    void createResourceStocks(final Long locationId, final Collection<Long> productIds);
+
     BigDecimal getResourceStockAvailableQuantity(final Entity product, final Entity location);
 
     BigDecimal getResourceStockQuantity(Entity product, Entity location);
 
     void checkResourcesStock(Entity document);
+
+    /**
+     * Gets quantity, reserved and available quantity for all given keys with a single query. Keys without batch and conversion
+     * are answered like resource stock (reservations are taken from reservations), the others from matching resources.
+     */
+    Map<ResourceStockKey, ResourceStockDto> getResourceStocks(Collection<ResourceStockKey> keys);
+
+    /**
+     * Gets stock of all products of document positions in document's location from.
+     */
+    Map<ResourceStockKey, ResourceStockDto> getResourceStocks(Entity document);
 }
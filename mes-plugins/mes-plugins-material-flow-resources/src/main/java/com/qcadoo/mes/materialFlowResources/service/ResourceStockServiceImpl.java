@@ -2,9 +2,11 @@ package com.qcadoo.mes.materialFlowResources.service;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,6 +24,7 @@ import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
 import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
 import com.qcadoo.mes.materialFlowResources.constants.ResourceStockFields;
 import com.qcadoo.mes.materialFlowResources.dto.ResourceStockDto;
+import com.qcadoo.mes.materialFlowResources.dto.ResourceStockKey;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -50,6 +53,27 @@ public class ResourceStockServiceImpl implements ResourceStockService {
         }
     }
 
+    @Override
+    public void createResourceStocks(final Long locationId, final Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+
+        StringBuilder query = new StringBuilder();
+        query.append("INSERT INTO materialflowresources_resourcestock (id, location_id, product_id) ");
+        query.append("SELECT nextval('materialflowresources_resourcestock_id_seq'), :locationId, product.id ");
+        query.append("FROM basic_product product ");
+        query.append("WHERE product.id IN (:productIds) AND NOT EXISTS (SELECT rs.id ");
+        query.append("FROM materialflowresources_resourcestock rs ");
+        query.append("WHERE rs.location_id = :locationId AND rs.product_id = product.id)");
+
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("locationId", locationId);
+        params.put("productIds", productIds);
+
+        jdbcTemplate.update(query.toString(), params);
+    }
+
     @Override
     public BigDecimal getResourceStockAvailableQuantity(final Entity product, final Entity location) {
         BigDecimal availableQuantity = BigDecimal.ZERO;
@@ -92,12 +116,18 @@ public class ResourceStockServiceImpl implements ResourceStockService {
     @Override
     public void checkResourcesStock(Entity document) {
         List<String> invalidProducts = new ArrayList<>();
-        List<Entity> mergedPositions = mergePositionsBeforeValidation(document.getHasManyField(DocumentFields.POSITIONS));
-        for (Entity position : mergedPositions) {
-            if ((position.getDecimalField(PositionFields.QUANTITY)
-                    .compareTo(getResourceStockAvailableQuantity(position.getBelongsToField(PositionFields.PRODUCT),
-                            document.getBelongsToField(DocumentFields.LOCATION_FROM))) > 0)) {
-                Entity product = position.getBelongsToField(PositionFields.PRODUCT);
+        Map<Long, Entity> products = Maps.newLinkedHashMap();
+        Map<Long, BigDecimal> quantities = Maps.newHashMap();
+        for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
+            Entity product = position.getBelongsToField(PositionFields.PRODUCT);
+            products.putIfAbsent(product.getId(), product);
+            quantities.merge(product.getId(), position.getDecimalField(PositionFields.QUANTITY), BigDecimal::add);
+        }
+        Map<ResourceStockKey, ResourceStockDto> resourceStocks = getResourceStocks(document);
+        Long locationId = getLocationFromId(document);
+        for (Entity product : products.values()) {
+            ResourceStockDto resourceStock = resourceStocks.get(new ResourceStockKey(product.getId(), locationId));
+            if (quantities.get(product.getId()).compareTo(resourceStock.getAvailableQuantity()) > 0) {
                 invalidProducts.add(product.getStringField(ProductFields.NUMBER));
             }
         }
@@ -106,21 +136,90 @@ public class ResourceStockServiceImpl implements ResourceStockService {
         }
     }
 
-    private List<Entity> mergePositionsBeforeValidation(final List<Entity> positions) {
-        List<Entity> mergedPositions = Lists.newArrayList();
-        for (Entity position : positions) {
-            Optional<Entity> mergedPosition = mergedPositions.stream()
-                    .filter(merged -> merged.getBelongsToField(PositionFields.PRODUCT).getId()
-                            .equals(position.getBelongsToField(PositionFields.PRODUCT).getId()))
-                    .findAny();
-            if (mergedPosition.isPresent()) {
-                mergedPosition.get().setField(PositionFields.QUANTITY, mergedPosition.get()
-                        .getDecimalField(PositionFields.QUANTITY).add(position.getDecimalField(PositionFields.QUANTITY)));
-            } else {
-                mergedPositions.add(position.copy());
+    @Override
+    public Map<ResourceStockKey, ResourceStockDto> getResourceStocks(final Entity document) {
+        Long locationId = getLocationFromId(document);
+        Set<ResourceStockKey> keys = document.getHasManyField(DocumentFields.POSITIONS).stream()
+                .map(position -> new ResourceStockKey(position.getBelongsToField(PositionFields.PRODUCT).getId(), locationId))
+                .collect(Collectors.toSet());
+        return getResourceStocks(keys);
+    }
+
+    private Long getLocationFromId(final Entity document) {
+        Entity locationFrom = document.getBelongsToField(DocumentFields.LOCATION_FROM);
+        return locationFrom == null ? null : locationFrom.getId();
+    }
+
+    @Override
+    public Map<ResourceStockKey, ResourceStockDto> getResourceStocks(final Collection<ResourceStockKey> keys) {
+        Map<ResourceStockKey, ResourceStockDto> resourceStocks = Maps.newHashMap();
+        Map<List<Long>, List<ResourceStockKey>> keysByProductAndLocation = Maps.newHashMap();
+        for (ResourceStockKey key : keys) {
+            ResourceStockDto resourceStock = new ResourceStockDto();
+            resourceStock.setQuantity(BigDecimal.ZERO);
+            resourceStock.setReservedQuantity(BigDecimal.ZERO);
+            resourceStock.setAvailableQuantity(BigDecimal.ZERO);
+            if (resourceStocks.put(key, resourceStock) == null) {
+                keysByProductAndLocation
+                        .computeIfAbsent(Lists.newArrayList(key.getProductId(), key.getLocationId()), k -> Lists.newArrayList())
+                        .add(key);
             }
         }
-        return mergedPositions;
+        if (keysByProductAndLocation.isEmpty()) {
+            return resourceStocks;
+        }
+
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT r.product_id, r.location_id, r.batch_id, r.conversion, FALSE AS reservation, ");
+        query.append("SUM(COALESCE(r.quantity, 0)) AS quantity, SUM(COALESCE(r.reservedquantity, 0)) AS reservedquantity, ");
+        query.append("SUM(COALESCE(r.availablequantity, 0)) AS availablequantity ");
+        query.append("FROM materialflowresources_resource r ");
+        query.append("WHERE r.product_id IN (:productIds) AND r.location_id IN (:locationIds) ");
+        query.append("GROUP BY r.product_id, r.location_id, r.batch_id, r.conversion ");
+        query.append("UNION ALL ");
+        query.append("SELECT rv.product_id, rv.location_id, NULL, NULL, TRUE, 0, SUM(COALESCE(rv.quantity, 0)), 0 ");
+        query.append("FROM materialflowresources_reservation rv ");
+        query.append("WHERE rv.product_id IN (:productIds) AND rv.location_id IN (:locationIds) ");
+        query.append("GROUP BY rv.product_id, rv.location_id");
+
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("productIds", keysByProductAndLocation.keySet().stream().map(k -> k.get(0)).collect(Collectors.toSet()));
+        params.put("locationIds", keysByProductAndLocation.keySet().stream().map(k -> k.get(1)).collect(Collectors.toSet()));
+
+        jdbcTemplate.query(query.toString(), params, rs -> {
+            List<ResourceStockKey> matchingKeys = keysByProductAndLocation.get(Lists.newArrayList(rs.getLong("product_id"),
+                    rs.getLong("location_id")));
+            if (matchingKeys == null) {
+                return;
+            }
+            boolean reservation = rs.getBoolean("reservation");
+            Long batchId = rs.getObject("batch_id") == null ? null : rs.getLong("batch_id");
+            BigDecimal conversion = rs.getBigDecimal("conversion");
+            for (ResourceStockKey key : matchingKeys) {
+                ResourceStockDto resourceStock = resourceStocks.get(key);
+                if (key.isForProductAndLocation()) {
+                    resourceStock.setQuantity(resourceStock.getQuantity().add(rs.getBigDecimal("quantity")));
+                    if (reservation) {
+                        resourceStock.setReservedQuantity(resourceStock.getReservedQuantity().add(
+                                rs.getBigDecimal("reservedquantity")));
+                    }
+                } else if (!reservation && key.matches(batchId, conversion)) {
+                    resourceStock.setQuantity(resourceStock.getQuantity().add(rs.getBigDecimal("quantity")));
+                    resourceStock.setReservedQuantity(resourceStock.getReservedQuantity().add(
+                            rs.getBigDecimal("reservedquantity")));
+                    resourceStock.setAvailableQuantity(resourceStock.getAvailableQuantity().add(
+                            rs.getBigDecimal("availablequantity")));
+                }
+            }
+        });
+
+        resourceStocks.forEach((key, resourceStock) -> {
+            if (key.isForProductAndLocation()) {
+                resourceStock.setAvailableQuantity(resourceStock.getQuantity().subtract(resourceStock.getReservedQuantity()));
+            }
+        });
+
+        return resourceStocks;
     }
 
     private void addDocumentErrors(Entity document, List<String> invalidProducts) {
@@ -0,0 +1,228 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.model.api.BigDecimalUtils;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * In-memory view of the resources of one warehouse, used while accepting release and transfer documents.
+ * <p>
+ * All candidate resources for the products of a document are loaded once, including the ones whose whole quantity is reserved.
+ * Changed resources are saved and deleted through {@link ResourcesPoolService}, which puts their saved state back into the
+ * pool, and resources changed outside the pool, e.g. by deleting a reservation, are refreshed. Candidate lists are built with the same
+ * restrictions and ordering as the criteria queries they replace, so they always reflect the state of the database after
+ * the previous allocations.
+ */
+public class ResourcesPool {
+
+    private final Long warehouseId;
+
+    private final WarehouseAlgorithm warehouseAlgorithm;
+
+    private final DataDefinition resourceDD;
+
+    private final Map<Long, Entity> resourcesById = Maps.newHashMap();
+
+    private final SetMultimap<Long, Long> resourceIdsByProductId = LinkedHashMultimap.create();
+
+    private final Set<Long> deletedResourceIds = Sets.newHashSet();
+
+    ResourcesPool(final Entity warehouse, final WarehouseAlgorithm warehouseAlgorithm, final DataDefinition resourceDD,
+            final List<Entity> resources) {
+        this.warehouseId = warehouse.getId();
+        this.warehouseAlgorithm = warehouseAlgorithm;
+        this.resourceDD = resourceDD;
+
+        resources.forEach(this::add);
+    }
+
+    private void add(final Entity resource) {
+        resourcesById.put(resource.getId(), resource);
+
+        Entity location = resource.getBelongsToField(ResourceFields.LOCATION);
+
+        if (Objects.nonNull(location) && warehouseId.equals(location.getId())) {
+            resourceIdsByProductId.put(resource.getBelongsToField(ResourceFields.PRODUCT).getId(), resource.getId());
+        }
+    }
+
+    /**
+     * Loads resource with given id chosen explicitly in a position. Returned entity isn't shared with candidate lists until it
+     * is saved, so changes of an allocation which didn't take place don't leak to following positions.
+     *
+     * @param resourceId
+     *            resource id
+     * @return resource or empty when it does not exist or was already used up
+     */
+    public Optional<Entity> getResource(final Long resourceId) {
+        if (deletedResourceIds.contains(resourceId)) {
+            return Optional.empty();
+        }
+
+        return Optional.ofNullable(resourceDD.get(resourceId));
+    }
+
+    /**
+     * Returns resources matching given position in order defined by warehouse algorithm. Resources with additional code of
+     * the position go first.
+     *
+     * @param product
+     *            product of position
+     * @param position
+     *            document position
+     * @param resourceIrrespectiveOfConversion
+     *            if true resources with conversion different than position conversion are returned
+     * @return ordered list of resources
+     */
+    public List<Entity> getResources(final Entity product, final Entity position, final boolean resourceIrrespectiveOfConversion) {
+        Entity batch = position.getBelongsToField(PositionFields.BATCH);
+        Entity additionalCode = position.getBelongsToField(PositionFields.ADDITIONAL_CODE);
+        BigDecimal conversion = StringUtils.isNotEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT)) ? position
+                .getDecimalField(PositionFields.CONVERSION) : BigDecimal.ONE;
+
+        List<Entity> resources = resourceIdsByProductId.get(product.getId()).stream()
+                .filter(resourceId -> !deletedResourceIds.contains(resourceId)).map(resourcesById::get)
+                .filter(resource -> BigDecimal.ZERO.compareTo(getAvailableQuantity(resource)) < 0)
+                .filter(resource -> !resource.getBooleanField(ResourceFields.BLOCKED_FOR_QUALITY_CONTROL))
+                .filter(resource -> matchesConversion(resource, conversion, resourceIrrespectiveOfConversion))
+                .filter(resource -> Objects.isNull(batch) || hasSameId(resource.getBelongsToField(ResourceFields.BATCH), batch))
+                .sorted(getComparator()).collect(Collectors.toList());
+
+        if (Objects.isNull(additionalCode)) {
+            return resources;
+        }
+
+        List<Entity> orderedResources = Lists.newArrayList();
+
+        orderedResources.addAll(resources.stream()
+                .filter(resource -> hasSameId(resource.getBelongsToField(ResourceFields.ADDITIONAL_CODE), additionalCode))
+                .collect(Collectors.toList()));
+        orderedResources.addAll(resources.stream()
+                .filter(resource -> !hasSameId(resource.getBelongsToField(ResourceFields.ADDITIONAL_CODE), additionalCode))
+                .collect(Collectors.toList()));
+
+        return orderedResources;
+    }
+
+    private boolean matchesConversion(final Entity resource, final BigDecimal conversion,
+            final boolean resourceIrrespectiveOfConversion) {
+        BigDecimal resourceConversion = resource.getDecimalField(ResourceFields.CONVERSION);
+
+        if (Objects.isNull(conversion) || Objects.isNull(resourceConversion)) {
+            return false;
+        }
+
+        return (conversion.compareTo(resourceConversion) == 0) != resourceIrrespectiveOfConversion;
+    }
+
+    private BigDecimal getAvailableQuantity(final Entity resource) {
+        return BigDecimalUtils.convertNullToZero(resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY));
+    }
+
+    private boolean hasSameId(final Entity entity, final Entity otherEntity) {
+        return Objects.nonNull(entity) && entity.getId().equals(otherEntity.getId());
+    }
+
+    private Comparator<Entity> getComparator() {
+        Comparator<Entity> byTime = Comparator.comparing(resource -> resource.getDateField(ResourceFields.TIME));
+        Comparator<Entity> byAvailableQuantity = Comparator.comparing(this::getAvailableQuantity);
+        Comparator<Entity> comparator;
+
+        if (WarehouseAlgorithm.LIFO.equals(warehouseAlgorithm)) {
+            comparator = byTime.reversed();
+        } else if (WarehouseAlgorithm.FEFO.equals(warehouseAlgorithm)) {
+            comparator = Comparator.comparing((Entity resource) -> resource.getDateField(ResourceFields.EXPIRATION_DATE),
+                    Comparator.nullsLast(Comparator.<Date> naturalOrder())).thenComparing(byAvailableQuantity);
+        } else if (WarehouseAlgorithm.LEFO.equals(warehouseAlgorithm)) {
+            comparator = Comparator.comparing((Entity resource) -> resource.getDateField(ResourceFields.EXPIRATION_DATE),
+                    Comparator.nullsFirst(Comparator.<Date> reverseOrder())).thenComparing(byAvailableQuantity);
+        } else {
+            comparator = byTime;
+        }
+
+        return comparator.thenComparing(Entity::getId);
+    }
+
+    /**
+     * Replaces resource with its saved state, so subsequent allocations see exactly what a reloaded resource would contain.
+     *
+     * @param savedResource
+     *            saved resource
+     */
+    public void update(final Entity savedResource) {
+        add(savedResource);
+    }
+
+    public void delete(final Entity resource) {
+        deletedResourceIds.add(resource.getId());
+    }
+
+    /**
+     * Reloads resource, whose quantities were changed outside the pool, e.g. when reservation of a position was deleted.
+     *
+     * @param resourceId
+     *            resource id
+     */
+    public void refresh(final Long resourceId) {
+        if (deletedResourceIds.contains(resourceId)) {
+            return;
+        }
+
+        Entity resource = resourceDD.get(resourceId);
+
+        if (Objects.isNull(resource)) {
+            deletedResourceIds.add(resourceId);
+        } else {
+            add(resource);
+        }
+    }
+
+    public boolean hasDeletedResources() {
+        return !deletedResourceIds.isEmpty();
+    }
+
+}
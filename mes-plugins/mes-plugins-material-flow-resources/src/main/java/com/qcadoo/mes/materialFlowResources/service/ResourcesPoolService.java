@@ -0,0 +1,161 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.materialFlowResources.DocumentPositionsGridCache;
+import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.mes.materialFlowResources.exceptions.InvalidResourceException;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+@Service
+public class ResourcesPoolService {
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private PalletNumberDisposalService palletNumberDisposalService;
+
+    @Autowired
+    private DocumentPositionsGridCache documentPositionsGridCache;
+
+    /**
+     * Loads in one query all resources of given warehouse for products used in given positions. Resources without available
+     * quantity are loaded too, as reservations deleted while accepting the document make their quantity available again.
+     *
+     * @param warehouse
+     *            warehouse from which resources are taken
+     * @param warehouseAlgorithm
+     *            algorithm used to order resources
+     * @param positions
+     *            document positions
+     * @return pool of resources
+     */
+    public ResourcesPool createResourcesPool(final Entity warehouse, final WarehouseAlgorithm warehouseAlgorithm,
+            final List<Entity> positions) {
+        Set<Long> productIds = positions.stream()
+                .map(position -> position.getBelongsToField(PositionFields.PRODUCT).getId()).collect(Collectors.toSet());
+
+        List<Entity> resources = Lists.newArrayList();
+
+        if (!productIds.isEmpty()) {
+            resources = getResourceDD().find().add(SearchRestrictions.belongsTo(ResourceFields.LOCATION, warehouse))
+                    .add(SearchRestrictions.in(ResourceFields.PRODUCT + ".id", productIds))
+                    .addOrder(SearchOrders.asc("id")).list().getEntities();
+        }
+
+        return new ResourcesPool(warehouse, warehouseAlgorithm, getResourceDD(), resources);
+    }
+
+    /**
+     * Saves changed resource and puts its saved state into the pool.
+     *
+     * @param resourcesPool
+     *            pool of resources
+     * @param resource
+     *            changed resource
+     * @return saved resource
+     * @throws InvalidResourceException
+     *             when resource isn't valid
+     */
+    public Entity updateResource(final ResourcesPool resourcesPool, final Entity resource) {
+        Entity savedResource = resource.getDataDefinition().save(resource);
+
+        if (!savedResource.isValid()) {
+            throw new InvalidResourceException(savedResource);
+        }
+
+        resourcesPool.update(savedResource);
+
+        return savedResource;
+    }
+
+    /**
+     * Deletes used up resource, excludes it from the pool and disposes its pallet number when no other resource uses it.
+     *
+     * @param resourcesPool
+     *            pool of resources
+     * @param resource
+     *            used up resource
+     */
+    public void deleteResource(final ResourcesPool resourcesPool, final Entity resource) {
+        Entity palletNumberToDispose = resource.getBelongsToField(ResourceFields.PALLET_NUMBER);
+
+        resource.getDataDefinition().delete(resource.getId());
+
+        resourcesPool.delete(resource);
+
+        palletNumberDisposalService.tryToDispose(palletNumberToDispose);
+    }
+
+    /**
+     * Reloads resource of given position, whose reservation was deleted.
+     *
+     * @param resourcesPool
+     *            pool of resources
+     * @param position
+     *            document position
+     */
+    public void refreshReservedResource(final ResourcesPool resourcesPool, final Entity position) {
+        Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
+
+        if (Objects.nonNull(resource) && Objects.nonNull(resource.getId())) {
+            resourcesPool.refresh(resource.getId());
+        }
+    }
+
+    /**
+     * Invalidates cached document positions once per document, if any resource of the pool was deleted.
+     *
+     * @param resourcesPool
+     *            pool of resources
+     */
+    public void invalidateDocumentPositions(final ResourcesPool resourcesPool) {
+        if (resourcesPool.hasDeletedResources()) {
+            documentPositionsGridCache.invalidateAll();
+        }
+    }
+
+    private DataDefinition getResourceDD() {
+        return dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_RESOURCE);
+    }
+
+}
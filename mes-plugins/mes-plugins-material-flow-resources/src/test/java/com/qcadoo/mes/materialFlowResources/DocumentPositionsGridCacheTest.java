@@ -0,0 +1,89 @@
+package com.qcadoo.mes.materialFlowResources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class DocumentPositionsGridCacheTest {
+
+    private static final Long DOCUMENT_ID = 1L;
+
+    private static final Long OTHER_DOCUMENT_ID = 2L;
+
+    private static final String QUERY = "query";
+
+    private DocumentPositionsGridCache documentPositionsGridCache;
+
+    @Before
+    public void init() {
+        documentPositionsGridCache = new DocumentPositionsGridCache();
+    }
+
+    @Test
+    public void shouldKeepStateUntilDocumentIsInvalidated() {
+        // given
+        DocumentPositionsGridCache.GridQueryState state = documentPositionsGridCache.getState(DOCUMENT_ID, QUERY);
+        DocumentPositionsGridCache.GridQueryState otherState = documentPositionsGridCache.getState(OTHER_DOCUMENT_ID, QUERY);
+
+        state.setCountRecords(10);
+
+        assertSame(state, documentPositionsGridCache.getState(DOCUMENT_ID, QUERY));
+
+        // when
+        documentPositionsGridCache.invalidate(DOCUMENT_ID);
+
+        // then
+        assertNull(documentPositionsGridCache.getState(DOCUMENT_ID, QUERY).getCountRecords());
+        assertSame(otherState, documentPositionsGridCache.getState(OTHER_DOCUMENT_ID, QUERY));
+    }
+
+    @Test
+    public void shouldInvalidateDocumentAgainWhenTransactionCompletes() {
+        // given
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            documentPositionsGridCache.invalidate(DOCUMENT_ID);
+            documentPositionsGridCache.invalidate(DOCUMENT_ID);
+
+            DocumentPositionsGridCache.GridQueryState stateReadBeforeCommit = documentPositionsGridCache.getState(DOCUMENT_ID,
+                    QUERY);
+            DocumentPositionsGridCache.GridQueryState otherState = documentPositionsGridCache.getState(OTHER_DOCUMENT_ID,
+                    QUERY);
+
+            // when
+            assertEquals(1, TransactionSynchronizationManager.getSynchronizations().size());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(
+                    synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+            // then
+            assertNotSame(stateReadBeforeCommit, documentPositionsGridCache.getState(DOCUMENT_ID, QUERY));
+            assertSame(otherState, documentPositionsGridCache.getState(OTHER_DOCUMENT_ID, QUERY));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedQueries() {
+        // given
+        DocumentPositionsGridCache.GridQueryState state = documentPositionsGridCache.getState(DOCUMENT_ID, QUERY);
+
+        // when
+        for (int i = 0; i < 1000; i++) {
+            documentPositionsGridCache.getState(DOCUMENT_ID, QUERY);
+            documentPositionsGridCache.getState(OTHER_DOCUMENT_ID, QUERY + i);
+        }
+
+        // then
+        assertSame(state, documentPositionsGridCache.getState(DOCUMENT_ID, QUERY));
+    }
+
+}
@@ -1,5 +1,9 @@
 package com.qcadoo.mes.materialFlowResources.service;
 
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentState;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentType;
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
@@ -18,8 +22,14 @@ import org.powermock.modules.junit4.PowerMockRunner;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
+import java.util.List;
+
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 @RunWith(PowerMockRunner.class)
@@ -49,6 +59,9 @@ public class DocumentBuilderTest {
     @Mock
     private ReceiptDocumentForReleaseHelper receiptDocumentForReleaseHelper;
 
+    @Mock
+    private ReceiptResourcesService receiptResourcesService;
+
     @Mock
     private TransactionStatus transactionStatus;
 
@@ -73,7 +86,7 @@ public class DocumentBuilderTest {
         given(currentUser.getId()).willReturn(1L);
 
         documentBuilder = new DocumentBuilder(dataDefinitionService, resourceManagementService, receiptDocumentForReleaseHelper,
-                userService.getCurrentUserEntity());
+                receiptResourcesService, userService.getCurrentUserEntity());
     }
 
     @Test
@@ -103,4 +116,42 @@ public class DocumentBuilderTest {
         // expect EntityRuntimeException
     }
 
+    @Test
+    public void shouldNotSaveInvalidReceiptWhenBuildReceiptInBatches() {
+
+        // given
+        given(entity.getStringField(DocumentFields.TYPE)).willReturn(DocumentType.RECEIPT.getStringValue());
+        given(entity.getStringField(DocumentFields.STATE)).willReturn(DocumentState.ACCEPTED.getStringValue());
+
+        // when
+        Entity result = documentBuilder.buildReceiptInBatches();
+
+        // then
+        Assert.assertFalse(result.isValid());
+        verify(dataDefinition, never()).save(any(Entity.class));
+        verify(receiptResourcesService, never()).insertPositionsAndResources(any(Entity.class), anyListOf(Entity.class),
+                anyListOf(Entity.class));
+        verify(transactionStatus, never()).setRollbackOnly();
+    }
+
+    @Test
+    public void shouldInsertPositionsAndResourcesWhenBuildReceiptInBatches() {
+
+        // given
+        List<Entity> resources = Lists.newArrayList();
+
+        given(entity.getStringField(DocumentFields.TYPE)).willReturn(DocumentType.RECEIPT.getStringValue());
+        given(entity.getStringField(DocumentFields.STATE)).willReturn(DocumentState.ACCEPTED.getStringValue());
+        given(entity.isValid()).willReturn(Boolean.TRUE);
+        given(receiptResourcesService.prepareResources(eq(entity), anyListOf(Entity.class))).willReturn(resources);
+
+        // when
+        Entity result = documentBuilder.buildReceiptInBatches();
+
+        // then
+        Assert.assertTrue(result.isValid());
+        verify(dataDefinition).save(entity);
+        verify(receiptResourcesService).insertPositionsAndResources(eq(entity), anyListOf(Entity.class), eq(resources));
+    }
+
 }
@@ -17,6 +17,7 @@ import org.mockito.MockitoAnnotations;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 
+import com.qcadoo.mes.basic.notifications.NotificationCountersService;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.security.api.SecurityService;
@@ -35,10 +36,14 @@ public class DraftDocumentsNotificationServiceTest {
     @Mock
     private SecurityService securityService;
 
+    @Mock
+    private NotificationCountersService notificationCountersService;
+
     @Before
     public void init() {
         MockitoAnnotations.initMocks(this);
-        draftDocumentsNotificationService = new DraftDocumentsNotificationService(securityService, dataDefinitionService);
+        draftDocumentsNotificationService = new DraftDocumentsNotificationService(securityService, dataDefinitionService,
+                notificationCountersService);
     }
 
     @Test
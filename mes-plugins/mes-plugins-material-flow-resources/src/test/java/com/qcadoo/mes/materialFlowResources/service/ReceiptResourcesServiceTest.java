@@ -0,0 +1,481 @@
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.materialFlowResources.DocumentPositionsGridCache;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
+import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
+import com.qcadoo.mes.materialFlowResources.constants.PositionAttributeValueFields;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceAttributeValueFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.hooks.ResourceAttributeValueHooks;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.FieldDefinition;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchResult;
+import com.qcadoo.model.api.validators.ErrorMessage;
+import com.qcadoo.security.constants.UserFields;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(TransactionAspectSupport.class)
+public class ReceiptResourcesServiceTest {
+
+    private static final long WAREHOUSE_ID = 1L;
+
+    private static final long DOCUMENT_ID = 10L;
+
+    private static final String L_PALLET_CONFLICT = "documentGrid.error.position.existsOtherResourceForPalletAndStorageLocation";
+
+    private ReceiptResourcesService receiptResourcesService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ResourceStockService resourceStockService;
+
+    @Mock
+    private ResourceAttributeValueHooks resourceAttributeValueHooks;
+
+    @Mock
+    private DocumentPositionsGridCache documentPositionsGridCache;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    @Mock
+    private DataDefinition resourceDD;
+
+    @Mock
+    private DataDefinition positionDD;
+
+    @Mock
+    private DataDefinition attributeDD;
+
+    @Mock
+    private DataDefinition resourceAttributeValueDD;
+
+    @Mock
+    private FieldDefinition palletNumberField;
+
+    @Mock
+    private SearchCriteriaBuilder searchCriteriaBuilder;
+
+    @Mock
+    private SearchResult searchResult;
+
+    @Mock
+    private Entity warehouse;
+
+    @Mock
+    private Entity user;
+
+    @Mock
+    private Entity document;
+
+    private final Date time = new Date(1000L);
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        PowerMockito.mockStatic(TransactionAspectSupport.class);
+
+        given(TransactionAspectSupport.currentTransactionStatus()).willReturn(transactionStatus);
+
+        receiptResourcesService = new ReceiptResourcesService();
+
+        ReflectionTestUtils.setField(receiptResourcesService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(receiptResourcesService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(receiptResourcesService, "resourceStockService", resourceStockService);
+        ReflectionTestUtils.setField(receiptResourcesService, "resourceAttributeValueHooks", resourceAttributeValueHooks);
+        ReflectionTestUtils.setField(receiptResourcesService, "documentPositionsGridCache", documentPositionsGridCache);
+
+        given(dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_RESOURCE)).willReturn(resourceDD);
+        given(dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_POSITION)).willReturn(positionDD);
+        given(dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_RESOURCE_ATTRIBUTE_VALUE)).willReturn(resourceAttributeValueDD);
+        given(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.ATTRIBUTE)).willReturn(attributeDD);
+
+        given(resourceDD.create()).willAnswer(invocation -> mockEntity(null));
+        given(resourceAttributeValueDD.create()).willAnswer(invocation -> mockEntity(null));
+        given(resourceDD.getField(ResourceFields.PALLET_NUMBER)).willReturn(palletNumberField);
+        given(resourceDD.callValidators(any(Entity.class))).willReturn(true);
+        given(positionDD.callValidators(any(Entity.class))).willReturn(true);
+        given(resourceAttributeValueDD.callValidators(any(Entity.class))).willReturn(true);
+
+        given(attributeDD.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+
+        given(warehouse.getId()).willReturn(WAREHOUSE_ID);
+        given(user.getStringField(UserFields.FIRST_NAME)).willReturn("Jan");
+        given(user.getStringField(UserFields.LAST_NAME)).willReturn("Kowalski");
+
+        given(document.getId()).willReturn(DOCUMENT_ID);
+        given(document.getBelongsToField(DocumentFields.LOCATION_TO)).willReturn(warehouse);
+        given(document.getBelongsToField(DocumentFields.USER)).willReturn(user);
+        given(document.getField(DocumentFields.TIME)).willReturn(time);
+        given(document.getDateField(DocumentFields.TIME)).willReturn(time);
+        given(document.getStringField(DocumentFields.NUMBER)).willReturn("PZ/1");
+    }
+
+    @Test
+    public void shouldInsertPositionsAndResourcesInBatches() {
+        // given
+        Entity firstPosition = mockPosition(mockEntity(5L));
+        Entity secondPosition = mockPosition(mockEntity(6L));
+        Entity firstResource = mockResource(5L);
+        Entity secondResource = mockResource(6L);
+
+        firstPosition.setField(PositionFields.POSITION_ATTRIBUTE_VALUES, Lists.newArrayList(mockAttributeValue(7L, "x")));
+        firstResource.setField(ResourceFields.RESOURCE_ATTRIBUTE_VALUES, Lists.newArrayList(mockAttributeValue(7L, "x")));
+
+        givenIds("materialflowresources_resource_id_seq", 101L, 102L);
+        givenIds("materialflowresources_position_id_seq", 201L, 202L);
+        givenIds("materialflowresources_positionattributevalue_id_seq", 301L);
+        givenIds("materialflowresources_resourceattributevalue_id_seq", 401L);
+        given(jdbcTemplate.queryForList(contains("generate_and_set_resource_number"), anyMap(), eq(String.class)))
+                .willReturn(Lists.newArrayList("R1", "R2"));
+
+        // when
+        receiptResourcesService.insertPositionsAndResources(document, Lists.newArrayList(firstPosition, secondPosition),
+                Lists.newArrayList(firstResource, secondResource));
+
+        // then
+        verify(transactionStatus).flush();
+        verify(jdbcTemplate).queryForList(contains("generate_and_set_resource_number"),
+                eq(ImmutableMap.of("time", time, "count", 2)), eq(String.class));
+        verifyCount("materialflowresources_resource_id_seq", 2);
+        verifyCount("materialflowresources_position_id_seq", 2);
+        verifyCount("materialflowresources_positionattributevalue_id_seq", 1);
+        verifyCount("materialflowresources_resourceattributevalue_id_seq", 1);
+        verify(resourceStockService).createResourceStocks(WAREHOUSE_ID, Sets.newHashSet(5L, 6L));
+        verify(documentPositionsGridCache).invalidate(DOCUMENT_ID);
+
+        ArgumentCaptor<String> sqlCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<SqlParameterSource[]> parametersCaptor = ArgumentCaptor.forClass(SqlParameterSource[].class);
+
+        verify(jdbcTemplate, times(4)).batchUpdate(sqlCaptor.capture(), parametersCaptor.capture());
+
+        List<String> sqls = sqlCaptor.getAllValues();
+        List<SqlParameterSource[]> parameters = parametersCaptor.getAllValues();
+
+        assertTrue(sqls.get(0).startsWith("INSERT INTO materialflowresources_resource (id, number, location_id, product_id,"));
+        assertTrue(sqls.get(0).endsWith("VALUES (:id, :number, :location_id, :product_id, :quantity, :price, :batch_id, :time, "
+                + ":productiondate, :expirationdate, :iscorrected, :storagelocation_id, :quantityinadditionalunit, "
+                + ":additionalcode_id, :conversion, :palletnumber_id, :typeofpallet, :givenunit, :username, :waste, "
+                + ":availablequantity, :reservedquantity, :deliverynumber, :documentnumber, :blockedforqualitycontrol, "
+                + ":qualityrating)"));
+        assertEquals(2, parameters.get(0).length);
+
+        Map<String, Object> resourceValues = getValues(parameters.get(0)[1]);
+
+        assertEquals(102L, resourceValues.get("id"));
+        assertEquals("R2", resourceValues.get("number"));
+        assertEquals(WAREHOUSE_ID, resourceValues.get("location_id"));
+        assertEquals(6L, resourceValues.get("product_id"));
+        assertEquals(BigDecimal.TEN, resourceValues.get("quantity"));
+        assertEquals("Jan Kowalski", resourceValues.get("username"));
+        assertEquals("PZ/1", resourceValues.get("documentnumber"));
+        assertEquals(false, resourceValues.get("iscorrected"));
+        assertEquals(false, resourceValues.get("blockedforqualitycontrol"));
+
+        assertTrue(sqls.get(1).startsWith("INSERT INTO materialflowresources_position (id, document_id, number,"));
+
+        Map<String, Object> positionValues = getValues(parameters.get(1)[1]);
+
+        assertEquals(202L, positionValues.get("id"));
+        assertEquals(DOCUMENT_ID, positionValues.get("document_id"));
+        assertEquals(2, positionValues.get("number"));
+        assertEquals(6L, positionValues.get("product_id"));
+        assertEquals("R2", positionValues.get("resourcenumber"));
+        assertEquals("102", positionValues.get("resourcereceiptdocument"));
+
+        assertEquals("INSERT INTO materialflowresources_positionattributevalue (id, position_id, attribute_id, attributevalue_id, "
+                + "value) VALUES (:id, :position_id, :attribute_id, :attributevalue_id, :value)", sqls.get(2));
+        assertEquals(1, parameters.get(2).length);
+        assertEquals(attributeValueParameters(301L, "position_id", 201L), getValues(parameters.get(2)[0]));
+
+        assertEquals("INSERT INTO materialflowresources_resourceattributevalue (id, resource_id, attribute_id, attributevalue_id, "
+                + "value, fromdefinition) VALUES (:id, :resource_id, :attribute_id, :attributevalue_id, :value, :fromdefinition)",
+                sqls.get(3));
+
+        Map<String, Object> resourceAttributeValueParameters = attributeValueParameters(401L, "resource_id", 101L);
+
+        resourceAttributeValueParameters.put("fromdefinition", false);
+
+        assertEquals(1, parameters.get(3).length);
+        assertEquals(resourceAttributeValueParameters, getValues(parameters.get(3)[0]));
+    }
+
+    @Test
+    public void shouldNotQueryForEmptyReceipt() {
+        // when
+        receiptResourcesService.insertPositionsAndResources(document, Collections.emptyList(), Collections.emptyList());
+
+        // then
+        verifyZeroInteractions(jdbcTemplate, resourceStockService);
+    }
+
+    @Test
+    public void shouldPrepareResourcesWithValidatedAttributeValues() {
+        // given
+        Entity attribute = mockEntity(7L);
+        Entity otherAttribute = mockEntity(8L);
+        Entity position = mockPosition(mockEntity(5L));
+
+        position.setField(PositionFields.POSITION_ATTRIBUTE_VALUES, Lists.newArrayList(mockAttributeValue(7L, "1"),
+                mockAttributeValue(7L, "1"), mockAttributeValue(8L, "invalid")));
+
+        given(searchResult.getEntities()).willReturn(Lists.newArrayList(attribute, otherAttribute));
+        given(resourceAttributeValueDD.callValidators(any(Entity.class))).willAnswer(invocation -> !"invalid"
+                .equals(((Entity) invocation.getArguments()[0]).getStringField(ResourceAttributeValueFields.VALUE)));
+
+        // when
+        List<Entity> resources = receiptResourcesService.prepareResources(document, Lists.newArrayList(position));
+
+        // then
+        assertEquals(1, resources.size());
+
+        Entity resource = resources.get(0);
+        List<Entity> resourceAttributeValues = resource.getHasManyField(ResourceFields.RESOURCE_ATTRIBUTE_VALUES);
+
+        assertEquals(1, Lists.newArrayList(resourceAttributeValues).size());
+
+        Entity resourceAttributeValue = resourceAttributeValues.iterator().next();
+
+        assertEquals(attribute, resourceAttributeValue.getBelongsToField(ResourceAttributeValueFields.ATTRIBUTE));
+        assertEquals(resource, resourceAttributeValue.getBelongsToField(ResourceAttributeValueFields.RESOURCE));
+        assertEquals("1", resourceAttributeValue.getStringField(ResourceAttributeValueFields.VALUE));
+        assertEquals(WAREHOUSE_ID, resource.getBelongsToField(ResourceFields.LOCATION).getId().longValue());
+        assertEquals(BigDecimal.ZERO, resource.getDecimalField(ResourceFields.RESERVED_QUANTITY));
+
+        verify(attributeDD, times(1)).find();
+        verify(resourceAttributeValueDD, times(3)).callValidators(any(Entity.class));
+        verify(resourceAttributeValueHooks).normalizeNumericValue(resourceAttributeValue);
+        verify(document, never()).setNotValid();
+    }
+
+    @Test
+    public void shouldCopyErrorsOfInvalidPositionToDocument() {
+        // given
+        Entity position = mockPosition(mockEntity(5L));
+
+        given(positionDD.callValidators(position)).willReturn(false);
+        given(position.getGlobalErrors()).willReturn(Lists.newArrayList(new ErrorMessage("position.error", false)));
+
+        // when
+        receiptResourcesService.prepareResources(document, Lists.newArrayList(position));
+
+        // then
+        verify(document).setNotValid();
+        verify(document).addGlobalError(eq("position.error"), anyBoolean(), Matchers.<String> anyVararg());
+        verifyZeroInteractions(attributeDD);
+    }
+
+    @Test
+    public void shouldRejectPalletNumberWithOtherStorageLocationInOneReceipt() {
+        // given
+        Entity palletNumber = mockEntity(50L);
+        Entity firstPosition = mockPalletPosition(palletNumber, mockEntity(60L), "01");
+        Entity secondPosition = mockPalletPosition(palletNumber, mockEntity(61L), "01");
+
+        // when
+        List<Entity> resources = receiptResourcesService.prepareResources(document,
+                Lists.newArrayList(firstPosition, secondPosition));
+
+        // then
+        verify(resources.get(0), never()).addError(palletNumberField, L_PALLET_CONFLICT);
+        verify(resources.get(1)).addError(palletNumberField, L_PALLET_CONFLICT);
+        verify(document).setNotValid();
+        verify(document).addGlobalError(L_PALLET_CONFLICT);
+    }
+
+    @Test
+    public void shouldRejectPalletNumberWithOtherTypeOfPalletInOneReceipt() {
+        // given
+        Entity palletNumber = mockEntity(50L);
+        Entity storageLocation = mockEntity(60L);
+        Entity firstPosition = mockPalletPosition(palletNumber, storageLocation, "01");
+        Entity secondPosition = mockPalletPosition(palletNumber, storageLocation, "02");
+
+        // when
+        receiptResourcesService.prepareResources(document, Lists.newArrayList(firstPosition, secondPosition));
+
+        // then
+        verify(document).setNotValid();
+        verify(document).addGlobalError(L_PALLET_CONFLICT);
+    }
+
+    @Test
+    public void shouldAcceptPalletNumberSharedWithSameStorageLocationInOneReceipt() {
+        // given
+        Entity palletNumber = mockEntity(50L);
+        Entity storageLocation = mockEntity(60L);
+        Entity firstPosition = mockPalletPosition(palletNumber, storageLocation, "01");
+        Entity secondPosition = mockPalletPosition(palletNumber, storageLocation, null);
+        Entity otherPalletPosition = mockPalletPosition(mockEntity(51L), mockEntity(61L), "02");
+
+        // when
+        receiptResourcesService.prepareResources(document,
+                Lists.newArrayList(firstPosition, secondPosition, otherPalletPosition));
+
+        // then
+        verify(document, never()).setNotValid();
+        verify(document, never()).addGlobalError(L_PALLET_CONFLICT);
+    }
+
+    private void givenIds(final String sequenceName, final Long... ids) {
+        given(jdbcTemplate.queryForList(contains("nextval('" + sequenceName + "')"), anyMap(), eq(Long.class))).willReturn(
+                Lists.newArrayList(ids));
+    }
+
+    private void verifyCount(final String sequenceName, final int count) {
+        verify(jdbcTemplate).queryForList(contains("nextval('" + sequenceName + "')"), eq(Collections.singletonMap("count", count)),
+                eq(Long.class));
+    }
+
+    private Map<String, Object> getValues(final SqlParameterSource parameterSource) {
+        return ((MapSqlParameterSource) parameterSource).getValues();
+    }
+
+    private Map<String, Object> attributeValueParameters(final Long id, final String ownerColumn, final Long ownerId) {
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        parameters.put("id", id);
+        parameters.put(ownerColumn, ownerId);
+        parameters.put("attribute_id", 7L);
+        parameters.put("attributevalue_id", null);
+        parameters.put("value", "x");
+
+        return parameters;
+    }
+
+    private Entity mockPosition(final Entity product) {
+        Entity position = mockEntity(null);
+
+        position.setField(PositionFields.PRODUCT, product);
+        position.setField(PositionFields.QUANTITY, BigDecimal.TEN);
+
+        return position;
+    }
+
+    private Entity mockPalletPosition(final Entity palletNumber, final Entity storageLocation, final String typeOfPallet) {
+        Entity position = mockPosition(mockEntity(5L));
+
+        position.setField(PositionFields.PALLET_NUMBER, palletNumber);
+        position.setField(PositionFields.STORAGE_LOCATION, storageLocation);
+        position.setField(PositionFields.TYPE_OF_PALLET, typeOfPallet);
+
+        return position;
+    }
+
+    private Entity mockResource(final Long productId) {
+        Entity resource = mockEntity(null);
+
+        resource.setField(ResourceFields.LOCATION, warehouse);
+        resource.setField(ResourceFields.PRODUCT, mockEntity(productId));
+        resource.setField(ResourceFields.QUANTITY, BigDecimal.TEN);
+
+        return resource;
+    }
+
+    private Entity mockAttributeValue(final Long attributeId, final String value) {
+        Entity attributeValue = mockEntity(null);
+
+        attributeValue.setField(PositionAttributeValueFields.ATTRIBUTE, attributeId);
+        attributeValue.setField(PositionAttributeValueFields.VALUE, value);
+
+        return attributeValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Entity mockEntity(final Long id) {
+        Entity entity = mock(Entity.class);
+        Map<String, Object> fields = Maps.newHashMap();
+        Long[] entityId = { id };
+
+        willAnswer(invocation -> fields.put((String) invocation.getArguments()[0], invocation.getArguments()[1])).given(entity)
+                .setField(anyString(), any());
+        willAnswer(invocation -> entityId[0] = (Long) invocation.getArguments()[0]).given(entity).setId(any(Long.class));
+
+        given(entity.getId()).willAnswer(invocation -> entityId[0]);
+        given(entity.getField(anyString())).willAnswer(invocation -> fields.get(invocation.getArguments()[0]));
+        given(entity.getStringField(anyString())).willAnswer(invocation -> fields.get(invocation.getArguments()[0]));
+        given(entity.getDecimalField(anyString())).willAnswer(invocation -> fields.get(invocation.getArguments()[0]));
+        given(entity.getDateField(anyString())).willAnswer(invocation -> fields.get(invocation.getArguments()[0]));
+        given(entity.getIntegerField(anyString())).willAnswer(invocation -> fields.get(invocation.getArguments()[0]));
+        given(entity.getBelongsToField(anyString())).willAnswer(invocation -> fields.get(invocation.getArguments()[0]));
+        given(entity.getBooleanField(anyString())).willAnswer(
+                invocation -> Boolean.TRUE.equals(fields.get(invocation.getArguments()[0])));
+        given(entity.getHasManyField(anyString())).willAnswer(invocation -> mockEntityList(
+                (List<Entity>) fields.getOrDefault(invocation.getArguments()[0], Collections.emptyList())));
+        given(entity.getGlobalErrors()).willReturn(Collections.emptyList());
+        given(entity.getErrors()).willReturn(Collections.emptyMap());
+
+        return entity;
+    }
+
+    private EntityList mockEntityList(final List<Entity> list) {
+        EntityList entityList = mock(EntityList.class);
+
+        given(entityList.iterator()).willAnswer(invocation -> list.iterator());
+        given(entityList.stream()).willAnswer(invocation -> list.stream());
+        given(entityList.isEmpty()).willReturn(list.isEmpty());
+
+        return entityList;
+    }
+
+}
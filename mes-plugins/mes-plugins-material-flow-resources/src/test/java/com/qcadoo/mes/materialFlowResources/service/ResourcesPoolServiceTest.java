@@ -0,0 +1,130 @@
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.mes.materialFlowResources.DocumentPositionsGridCache;
+import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+
+public class ResourcesPoolServiceTest {
+
+    private ResourcesPoolService resourcesPoolService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private PalletNumberDisposalService palletNumberDisposalService;
+
+    @Mock
+    private DocumentPositionsGridCache documentPositionsGridCache;
+
+    @Mock
+    private DataDefinition resourceDD;
+
+    @Mock
+    private Entity warehouse, firstResource, secondResource, palletNumber, position;
+
+    private ResourcesPool resourcesPool;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        resourcesPoolService = new ResourcesPoolService();
+
+        ReflectionTestUtils.setField(resourcesPoolService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(resourcesPoolService, "palletNumberDisposalService", palletNumberDisposalService);
+        ReflectionTestUtils.setField(resourcesPoolService, "documentPositionsGridCache", documentPositionsGridCache);
+
+        given(dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_RESOURCE)).willReturn(resourceDD);
+
+        given(warehouse.getId()).willReturn(1L);
+        given(firstResource.getId()).willReturn(2L);
+        given(firstResource.getDataDefinition()).willReturn(resourceDD);
+        given(firstResource.getBelongsToField(ResourceFields.PALLET_NUMBER)).willReturn(palletNumber);
+        given(secondResource.getId()).willReturn(3L);
+        given(secondResource.getDataDefinition()).willReturn(resourceDD);
+
+        resourcesPool = new ResourcesPool(warehouse, WarehouseAlgorithm.FIFO, resourceDD, Collections.<Entity> emptyList());
+    }
+
+    @Test
+    public void shouldInvalidateDocumentPositionsOncePerDocument() {
+        // when
+        resourcesPoolService.deleteResource(resourcesPool, firstResource);
+        resourcesPoolService.deleteResource(resourcesPool, secondResource);
+
+        // then
+        verify(documentPositionsGridCache, never()).invalidateAll();
+
+        resourcesPoolService.invalidateDocumentPositions(resourcesPool);
+
+        verify(resourceDD).delete(2L);
+        verify(resourceDD).delete(3L);
+        verify(palletNumberDisposalService).tryToDispose(palletNumber);
+        verify(documentPositionsGridCache, times(1)).invalidateAll();
+    }
+
+    @Test
+    public void shouldNotInvalidateDocumentPositionsWhenNoResourceWasDeleted() {
+        // when
+        resourcesPoolService.invalidateDocumentPositions(resourcesPool);
+
+        // then
+        verify(documentPositionsGridCache, never()).invalidateAll();
+    }
+
+    @Test
+    public void shouldRefreshResourceOfPositionWhoseReservationWasDeleted() {
+        // given
+        given(position.getBelongsToField(PositionFields.RESOURCE)).willReturn(firstResource);
+
+        // when
+        resourcesPoolService.refreshReservedResource(resourcesPool, position);
+
+        // then
+        verify(resourceDD).get(2L);
+    }
+
+}
@@ -0,0 +1,286 @@
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+public class ResourcesPoolTest {
+
+    private static final long WAREHOUSE_ID = 1L;
+
+    private static final long PRODUCT_ID = 2L;
+
+    @Mock
+    private DataDefinition resourceDD;
+
+    @Mock
+    private Entity warehouse;
+
+    @Mock
+    private Entity product;
+
+    @Mock
+    private Entity position;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        given(warehouse.getId()).willReturn(WAREHOUSE_ID);
+        given(product.getId()).willReturn(PRODUCT_ID);
+        given(position.getDecimalField(PositionFields.CONVERSION)).willReturn(BigDecimal.ONE);
+    }
+
+    @Test
+    public void shouldOrderResourcesByTimeForFifo() {
+        // given
+        Entity newer = mockResource(1L, new Date(2000L), null, BigDecimal.TEN);
+        Entity older = mockResource(2L, new Date(1000L), null, BigDecimal.TEN);
+
+        ResourcesPool resourcesPool = new ResourcesPool(warehouse, WarehouseAlgorithm.FIFO, resourceDD,
+                Lists.newArrayList(newer, older));
+
+        // when
+        List<Entity> resources = resourcesPool.getResources(product, position, false);
+
+        // then
+        assertEquals(Lists.newArrayList(2L, 1L), getIds(resources));
+    }
+
+    @Test
+    public void shouldOrderResourcesByTimeForLifo() {
+        // given
+        Entity newer = mockResource(1L, new Date(2000L), null, BigDecimal.TEN);
+        Entity older = mockResource(2L, new Date(1000L), null, BigDecimal.TEN);
+
+        ResourcesPool resourcesPool = new ResourcesPool(warehouse, WarehouseAlgorithm.LIFO, resourceDD,
+                Lists.newArrayList(older, newer));
+
+        // when
+        List<Entity> resources = resourcesPool.getResources(product, position, false);
+
+        // then
+        assertEquals(Lists.newArrayList(1L, 2L), getIds(resources));
+    }
+
+    @Test
+    public void shouldPutResourcesWithoutExpirationDateLastForFefo() {
+        // given
+        Entity withoutExpirationDate = mockResource(1L, new Date(1000L), null, BigDecimal.ONE);
+        Entity laterExpiring = mockResource(2L, new Date(1000L), new Date(5000L), BigDecimal.ONE);
+        Entity earlierExpiringBigger = mockResource(3L, new Date(1000L), new Date(3000L), BigDecimal.TEN);
+        Entity earlierExpiringSmaller = mockResource(4L, new Date(1000L), new Date(3000L), BigDecimal.ONE);
+
+        ResourcesPool resourcesPool = new ResourcesPool(warehouse, WarehouseAlgorithm.FEFO, resourceDD, Lists.newArrayList(
+                withoutExpirationDate, laterExpiring, earlierExpiringBigger, earlierExpiringSmaller));
+
+        // when
+        List<Entity> resources = resourcesPool.getResources(product, position, false);
+
+        // then
+        assertEquals(Lists.newArrayList(4L, 3L, 2L, 1L), getIds(resources));
+    }
+
+    @Test
+    public void shouldPutResourcesWithoutExpirationDateFirstForLefo() {
+        // given
+        Entity withoutExpirationDate = mockResource(1L, new Date(1000L), null, BigDecimal.ONE);
+        Entity laterExpiring = mockResource(2L, new Date(1000L), new Date(5000L), BigDecimal.ONE);
+        Entity earlierExpiring = mockResource(3L, new Date(1000L), new Date(3000L), BigDecimal.ONE);
+
+        ResourcesPool resourcesPool = new ResourcesPool(warehouse, WarehouseAlgorithm.LEFO, resourceDD, Lists.newArrayList(
+                earlierExpiring, laterExpiring, withoutExpirationDate));
+
+        // when
+        List<Entity> resources = resourcesPool.getResources(product, position, false);
+
+        // then
+        assertEquals(Lists.newArrayList(1L, 2L, 3L), getIds(resources));
+    }
+
+    @Test
+    public void shouldPutResourcesWithPositionAdditionalCodeFirst() {
+        // given
+        Entity additionalCode = mock(Entity.class);
+
+        given(additionalCode.getId()).willReturn(7L);
+        given(position.getBelongsToField(PositionFields.ADDITIONAL_CODE)).willReturn(additionalCode);
+
+        Entity older = mockResource(1L, new Date(1000L), null, BigDecimal.TEN);
+        Entity newerWithAdditionalCode = mockResource(2L, new Date(2000L), null, BigDecimal.TEN);
+
+        given(newerWithAdditionalCode.getBelongsToField(ResourceFields.ADDITIONAL_CODE)).willReturn(additionalCode);
+
+        ResourcesPool resourcesPool = new ResourcesPool(warehouse, WarehouseAlgorithm.FIFO, resourceDD,
+                Lists.newArrayList(older, newerWithAdditionalCode));
+
+        // when
+        List<Entity> resources = resourcesPool.getResources(product, position, false);
+
+        // then
+        assertEquals(Lists.newArrayList(2L, 1L), getIds(resources));
+    }
+
+    @Test
+    public void shouldSkipDeletedAndUnavailableResources() {
+        // given
+        Entity deleted = mockResource(1L, new Date(1000L), null, BigDecimal.TEN);
+        Entity unavailable = mockResource(2L, new Date(2000L), null, BigDecimal.ZERO);
+        Entity available = mockResource(3L, new Date(3000L), null, BigDecimal.TEN);
+
+        ResourcesPool resourcesPool = new ResourcesPool(warehouse, WarehouseAlgorithm.FIFO, resourceDD, Lists.newArrayList(
+                deleted, unavailable, available));
+
+        // when
+        resourcesPool.delete(deleted);
+
+        List<Entity> resources = resourcesPool.getResources(product, position, false);
+
+        // then
+        assertEquals(Lists.newArrayList(3L), getIds(resources));
+        assertFalse(resourcesPool.getResource(1L).isPresent());
+    }
+
+    @Test
+    public void shouldUseSavedStateOfUpdatedResource() {
+        // given
+        Entity first = mockResource(1L, new Date(1000L), null, BigDecimal.TEN);
+        Entity second = mockResource(2L, new Date(2000L), null, BigDecimal.TEN);
+        Entity savedFirst = mockResource(1L, new Date(1000L), null, BigDecimal.ZERO);
+        Entity savedSecond = mockResource(2L, new Date(2000L), null, BigDecimal.ONE);
+
+        ResourcesPool resourcesPool = new ResourcesPool(warehouse, WarehouseAlgorithm.FIFO, resourceDD,
+                Lists.newArrayList(first, second));
+
+        // when
+        resourcesPool.update(savedFirst);
+        resourcesPool.update(savedSecond);
+
+        List<Entity> resources = resourcesPool.getResources(product, position, false);
+
+        // then
+        assertEquals(1, resources.size());
+        assertSame(savedSecond, resources.get(0));
+    }
+
+    @Test
+    public void shouldLoadExplicitlyChosenResource() {
+        // given
+        Entity resource = mockResource(1L, new Date(1000L), null, BigDecimal.TEN);
+        Entity loadedResource = mockResource(1L, new Date(1000L), null, BigDecimal.TEN);
+
+        given(resourceDD.get(1L)).willReturn(loadedResource);
+
+        ResourcesPool resourcesPool = new ResourcesPool(warehouse, WarehouseAlgorithm.FIFO, resourceDD,
+                Lists.newArrayList(resource));
+
+        // when
+        Optional<Entity> chosenResource = resourcesPool.getResource(1L);
+
+        // then
+        assertSame(loadedResource, chosenResource.get());
+        assertSame(resource, resourcesPool.getResources(product, position, false).get(0));
+    }
+
+    @Test
+    public void shouldUseRefreshedStateOfResourceChangedOutsideThePool() {
+        // given
+        Entity reserved = mockResource(1L, new Date(1000L), null, BigDecimal.ZERO);
+        Entity released = mockResource(1L, new Date(1000L), null, BigDecimal.TEN);
+
+        given(resourceDD.get(1L)).willReturn(released);
+
+        ResourcesPool resourcesPool = new ResourcesPool(warehouse, WarehouseAlgorithm.FIFO, resourceDD,
+                Lists.newArrayList(reserved));
+
+        // when
+        List<Entity> resourcesBeforeRefresh = resourcesPool.getResources(product, position, false);
+
+        resourcesPool.refresh(1L);
+
+        List<Entity> resourcesAfterRefresh = resourcesPool.getResources(product, position, false);
+
+        // then
+        assertTrue(resourcesBeforeRefresh.isEmpty());
+        assertEquals(1, resourcesAfterRefresh.size());
+        assertSame(released, resourcesAfterRefresh.get(0));
+    }
+
+    @Test
+    public void shouldTreatRefreshedResourceWhichNoLongerExistsAsDeleted() {
+        // given
+        Entity resource = mockResource(1L, new Date(1000L), null, BigDecimal.TEN);
+
+        given(resourceDD.get(1L)).willReturn(null);
+
+        ResourcesPool resourcesPool = new ResourcesPool(warehouse, WarehouseAlgorithm.FIFO, resourceDD,
+                Lists.newArrayList(resource));
+
+        // when
+        resourcesPool.refresh(1L);
+
+        // then
+        assertTrue(resourcesPool.getResources(product, position, false).isEmpty());
+        assertTrue(resourcesPool.hasDeletedResources());
+    }
+
+    @Test
+    public void shouldReturnResourcesWithDifferentConversionOnlyWhenIrrespectiveOfConversion() {
+        // given
+        Entity sameConversion = mockResource(1L, new Date(1000L), null, BigDecimal.TEN);
+        Entity otherConversion = mockResource(2L, new Date(2000L), null, BigDecimal.TEN);
+
+        given(otherConversion.getDecimalField(ResourceFields.CONVERSION)).willReturn(new BigDecimal("2"));
+
+        ResourcesPool resourcesPool = new ResourcesPool(warehouse, WarehouseAlgorithm.FIFO, resourceDD,
+                Lists.newArrayList(sameConversion, otherConversion));
+
+        // when
+        List<Entity> resources = resourcesPool.getResources(product, position, false);
+        List<Entity> resourcesIrrespectiveOfConversion = resourcesPool.getResources(product, position, true);
+
+        // then
+        assertEquals(Lists.newArrayList(1L), getIds(resources));
+        assertEquals(Lists.newArrayList(2L), getIds(resourcesIrrespectiveOfConversion));
+    }
+
+    private Entity mockResource(final Long id, final Date time, final Date expirationDate, final BigDecimal availableQuantity) {
+        Entity resource = mock(Entity.class);
+
+        given(resource.getId()).willReturn(id);
+        given(resource.getBelongsToField(ResourceFields.LOCATION)).willReturn(warehouse);
+        given(resource.getBelongsToField(ResourceFields.PRODUCT)).willReturn(product);
+        given(resource.getDateField(ResourceFields.TIME)).willReturn(time);
+        given(resource.getDateField(ResourceFields.EXPIRATION_DATE)).willReturn(expirationDate);
+        given(resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY)).willReturn(availableQuantity);
+        given(resource.getDecimalField(ResourceFields.CONVERSION)).willReturn(BigDecimal.ONE);
+
+        return resource;
+    }
+
+    private List<Long> getIds(final List<Entity> resources) {
+        return resources.stream().map(Entity::getId).collect(Collectors.toList());
+    }
+
+}
@@ -35,4 +35,13 @@ public interface MaterialRequirementCoverageService {
      */
     void estimateProductCoverageInTime(final Entity materialRequirementCoverage);
 
+    /**
+     * Estimates product coverage in time for already generated coverage, rewriting only coverage products (with their
+     * loggings) which differ from the stored ones
+     * 
+     * @param materialRequirementCoverage
+     *            materialRequirementCoverage
+     */
+    void regenerateProductCoverageInTime(final Entity materialRequirementCoverage);
+
 }
@@ -26,6 +26,7 @@ package com.qcadoo.mes.orderSupplies.coverage;
 import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.deliveries.DeliveriesService;
 import com.qcadoo.mes.deliveries.constants.DeliveriesConstants;
@@ -54,8 +55,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Service
@@ -69,6 +72,10 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
 
     private static final String L_PLANNED_QUANTITY = "planedQuantity";
 
+    private static final int L_BATCH_SIZE = 1000;
+
+    private static final int L_DECIMAL_SCALE = 5;
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
@@ -90,6 +97,16 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
     @Transactional
     @Override
     public void estimateProductCoverageInTime(final Entity materialRequirementCoverage) {
+        estimateProductCoverageInTime(materialRequirementCoverage, false);
+    }
+
+    @Transactional
+    @Override
+    public void regenerateProductCoverageInTime(final Entity materialRequirementCoverage) {
+        estimateProductCoverageInTime(materialRequirementCoverage, true);
+    }
+
+    private void estimateProductCoverageInTime(final Entity materialRequirementCoverage, final boolean incremental) {
         LOG.info("Start generation material requirement - id : " + materialRequirementCoverage.getId());
 
         Date coverageToDate = materialRequirementCoverage.getDateField(MaterialRequirementCoverageFields.COVERAGE_TO_DATE);
@@ -143,7 +160,7 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
 
         materialRequirementCoverage.getDataDefinition().save(materialRequirementCoverage);
 
-        saveCoverage(materialRequirementCoverage, filterCoverageProducts(productAndCoverageProducts, coverageType));
+        saveCoverage(materialRequirementCoverage, filterCoverageProducts(productAndCoverageProducts, coverageType), incremental);
 
         LOG.info("Finish generation material requirement - id : " + materialRequirementCoverage.getId());
     }
@@ -244,36 +261,181 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         return coverageDate;
     }
 
-    private void saveCoverage(final Entity materialRequirementCoverage, final List<Entity> entities) {
+    private void saveCoverage(final Entity materialRequirementCoverage, final List<Entity> entities, final boolean incremental) {
         List<Entity> selectedOrders = materialRequirementCoverage.getHasManyField("coverageOrders");
 
+        List<Entity> coverageProducts = entities;
+
         if (!selectedOrders.isEmpty()) {
-            List<Entity> filtredEntities = entities.stream()
-                    .filter(e -> e.getBooleanField(CoverageProductFields.FROM_SELECTED_ORDER)).collect(Collectors.toList());
+            coverageProducts = entities.stream().filter(e -> e.getBooleanField(CoverageProductFields.FROM_SELECTED_ORDER))
+                    .collect(Collectors.toList());
+        }
 
-            for (Entity covProduct : filtredEntities) {
-                saveCoverageProduct(materialRequirementCoverage, covProduct);
-                for (Entity log : covProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS)) {
-                    saveCoverageProductLogging(log);
-                }
+        if (incremental) {
+            coverageProducts = removeUnchangedCoverageProducts(materialRequirementCoverage, coverageProducts);
+        }
+
+        insertCoverageProducts(materialRequirementCoverage, coverageProducts);
+    }
+
+    private List<Entity> removeUnchangedCoverageProducts(final Entity materialRequirementCoverage,
+            final List<Entity> coverageProducts) {
+        Map<String, Object> params = Collections.singletonMap("id", materialRequirementCoverage.getId());
+
+        Map<Long, Map<String, Object>> storedCoverageProducts = jdbcTemplate
+                .queryForList("SELECT * FROM ordersupplies_coverageproduct WHERE materialrequirementcoverage_id = :id", params)
+                .stream().collect(Collectors.toMap(row -> ((Number) row.get("product_id")).longValue(), row -> row));
+
+        String loggingsQuery = "SELECT logging.* FROM ordersupplies_coverageproductlogging logging "
+                + "JOIN ordersupplies_coverageproduct coverageproduct ON coverageproduct.id = logging.coverageproduct_id "
+                + "WHERE coverageproduct.materialrequirementcoverage_id = :id ORDER BY logging.id";
+
+        Map<Long, List<Map<String, Object>>> storedCoverageProductLoggings = jdbcTemplate.queryForList(loggingsQuery, params)
+                .stream().collect(Collectors.groupingBy(row -> ((Number) row.get("coverageproduct_id")).longValue()));
+
+        List<Entity> changedCoverageProducts = Lists.newArrayList();
+        Set<Long> unchangedProductIds = Sets.newHashSet();
+
+        for (Entity coverageProduct : coverageProducts) {
+            Long productId = coverageProduct.getBelongsToField(CoverageProductFields.PRODUCT).getId();
+            Map<String, Object> storedCoverageProduct = storedCoverageProducts.get(productId);
+
+            if (Objects.nonNull(storedCoverageProduct) && !isCoverageProductChanged(materialRequirementCoverage, coverageProduct,
+                    storedCoverageProduct, storedCoverageProductLoggings.getOrDefault(
+                            ((Number) storedCoverageProduct.get("id")).longValue(), Collections.emptyList()))) {
+                unchangedProductIds.add(productId);
+            } else {
+                changedCoverageProducts.add(coverageProduct);
             }
-        } else {
-            for (Entity covProduct : entities) {
-                saveCoverageProduct(materialRequirementCoverage, covProduct);
-                for (Entity log : covProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS)) {
-                    saveCoverageProductLogging(log);
-                }
+        }
+
+        List<Long> coverageProductIdsToDelete = storedCoverageProducts.entrySet().stream()
+                .filter(entry -> !unchangedProductIds.contains(entry.getKey()))
+                .map(entry -> ((Number) entry.getValue().get("id")).longValue()).collect(Collectors.toList());
+
+        deleteCoverageProducts(coverageProductIdsToDelete);
+
+        LOG.info("Incremental generation material requirement - id : " + materialRequirementCoverage.getId() + ", unchanged : "
+                + unchangedProductIds.size() + ", removed : " + coverageProductIdsToDelete.size() + ", inserted : "
+                + changedCoverageProducts.size());
+
+        return changedCoverageProducts;
+    }
+
+    private boolean isCoverageProductChanged(final Entity materialRequirementCoverage, final Entity coverageProduct,
+            final Map<String, Object> storedCoverageProduct, final List<Map<String, Object>> storedCoverageProductLoggings) {
+        Map<String, Object> parameters = getCoverageProductParameters(materialRequirementCoverage, coverageProduct);
+
+        if (isRowChanged(parameters, storedCoverageProduct)) {
+            return true;
+        }
+
+        List<Entity> coverageProductLoggings = coverageProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS);
+
+        if (coverageProductLoggings.size() != storedCoverageProductLoggings.size()) {
+            return true;
+        }
+
+        for (int i = 0; i < coverageProductLoggings.size(); i++) {
+            if (isRowChanged(getCoverageProductLoggingParameters(coverageProductLoggings.get(i)),
+                    storedCoverageProductLoggings.get(i))) {
+                return true;
             }
         }
+
+        return false;
+    }
+
+    boolean isRowChanged(final Map<String, Object> parameters, final Map<String, Object> storedRow) {
+        for (Entry<String, Object> parameter : parameters.entrySet()) {
+            String column = parameter.getKey().toLowerCase();
+
+            if (!Objects.equals(normalizeValue(parameter.getValue()), normalizeValue(storedRow.get(column)))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Decimals are compared in the scale of coverage columns and dates to the second, so values read back from the database
+     * equal the ones computed, whatever scale or precision they were computed with.
+     */
+    private Object normalizeValue(final Object value) {
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).setScale(L_DECIMAL_SCALE, RoundingMode.HALF_UP);
+        } else if (value instanceof Date) {
+            return TimeUnit.MILLISECONDS.toSeconds(((Date) value).getTime());
+        } else if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+
+        return value;
+    }
+
+    private void deleteCoverageProducts(final List<Long> coverageProductIds) {
+        for (List<Long> ids : Lists.partition(coverageProductIds, L_BATCH_SIZE)) {
+            Map<String, Object> params = Collections.singletonMap("ids", ids);
+
+            jdbcTemplate.update("DELETE FROM ordersupplies_coverageproductselected WHERE coverageproduct_id IN (:ids)", params);
+            jdbcTemplate.update("DELETE FROM ordersupplies_coverageproductlogging WHERE coverageproduct_id IN (:ids)", params);
+            jdbcTemplate.update("DELETE FROM ordersupplies_coverageproduct WHERE id IN (:ids)", params);
+        }
     }
 
-    private void saveCoverageProductLogging(final Entity log) {
-        String sqlLog = "INSERT INTO ordersupplies_coverageproductlogging(coverageproduct_id, date, "
-                + "order_id, delivery_id, operation_id, reservemissingquantity, changes, eventtype, state, warehouseNumber, deliveryNumberExternal) "
-                + "VALUES (currval('ordersupplies_coverageproduct_id_seq'), :date, :order_id, :delivery_id, :operation_id, "
-                + ":reservemissingquantity, :changes, :eventtype, :state, :warehouseNumber, :deliveryNumberExternal);";
+    void insertCoverageProducts(final Entity materialRequirementCoverage, final List<Entity> coverageProducts) {
+        if (coverageProducts.isEmpty()) {
+            return;
+        }
+
+        List<Long> coverageProductIds = jdbcTemplate.queryForList(
+                "SELECT nextval('ordersupplies_coverageproduct_id_seq') FROM generate_series(1, :count)",
+                Collections.singletonMap("count", coverageProducts.size()), Long.class);
+
+        List<Map<String, Object>> coverageProductsParameters = Lists.newArrayList();
+        List<Map<String, Object>> coverageProductLoggingsParameters = Lists.newArrayList();
+
+        for (int i = 0; i < coverageProducts.size(); i++) {
+            Entity coverageProduct = coverageProducts.get(i);
+            Long coverageProductId = coverageProductIds.get(i);
+
+            Map<String, Object> parameters = getCoverageProductParameters(materialRequirementCoverage, coverageProduct);
 
-        Map<String, Object> parametersLogg = Maps.newHashMap();
+            parameters.put("id", coverageProductId);
+
+            coverageProductsParameters.add(parameters);
+
+            for (Entity log : coverageProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS)) {
+                Map<String, Object> parametersLogg = getCoverageProductLoggingParameters(log);
+
+                parametersLogg.put("coverageproduct_id", coverageProductId);
+
+                coverageProductLoggingsParameters.add(parametersLogg);
+            }
+        }
+
+        batchInsert("ordersupplies_coverageproduct", coverageProductsParameters);
+        batchInsert("ordersupplies_coverageproductlogging", coverageProductLoggingsParameters);
+    }
+
+    void batchInsert(final String tableName, final List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        Set<String> columns = rows.get(0).keySet();
+
+        String sql = "INSERT INTO " + tableName + " (" + String.join(", ", columns) + ") VALUES ("
+                + columns.stream().map(column -> ":" + column).collect(Collectors.joining(", ")) + ")";
+
+        for (List<Map<String, Object>> batch : Lists.partition(rows, L_BATCH_SIZE)) {
+            jdbcTemplate.batchUpdate(sql, batch.stream().map(MapSqlParameterSource::new).toArray(SqlParameterSource[]::new));
+        }
+    }
+
+    private Map<String, Object> getCoverageProductLoggingParameters(final Entity log) {
+        Map<String, Object> parametersLogg = Maps.newLinkedHashMap();
 
         parametersLogg.put("date", log.getDateField(CoverageProductLoggingFields.DATE));
 
@@ -303,24 +465,21 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         parametersLogg.put("warehouseNumber", log.getStringField(CoverageProductLoggingFields.WAREHOUSE_NUMBER));
         parametersLogg.put("deliveryNumberExternal", log.getStringField("deliveryNumberExternal"));
 
-        SqlParameterSource nParameters = new MapSqlParameterSource(parametersLogg);
-
-        jdbcTemplate.update(sqlLog, nParameters);
+        return parametersLogg;
     }
 
-    private void saveCoverageProduct(final Entity materialRequirementCoverage, final Entity coverageProduct) {
-        String sql = "INSERT INTO ordersupplies_coverageproduct "
-                + "(materialrequirementcoverage_id, product_id, lackfromdate, demandquantity, coveredquantity, "
-                + "reservemissingquantity, deliveredquantity, locationsquantity, state, productnumber, productname, "
-                + "productunit, produceQuantity, fromSelectedOrder, allProductsType, company_id) "
-                + "VALUES (:materialrequirementcoverage_id, :product_id, :lackfromdate, :demandquantity, :coveredquantity, "
-                + ":reservemissingquantity, :deliveredquantity, :locationsquantity, :state, :productnumber, :productname, "
-                + ":productunit, :produceQuantity, :fromSelectedOrder, :allProductsType, :company_id)";
+    // Do not remove, around by aspect
+    public Map<String, Object> getCoverageProductParameters(final Entity materialRequirementCoverage,
+            final Entity coverageProduct) {
+        Map<String, Object> parameters = Maps.newLinkedHashMap();
 
-        Map<String, Object> parameters = Maps.newHashMap();
+        Entity product = coverageProduct.getBelongsToField(CoverageProductFields.PRODUCT);
 
         parameters.put("materialrequirementcoverage_id", materialRequirementCoverage.getId());
-        parameters.put("product_id", coverageProduct.getBelongsToField(CoverageProductFields.PRODUCT).getId());
+        parameters.put("product_id", product.getId());
+        parameters.put("productnumber", product.getStringField(ProductFields.NUMBER));
+        parameters.put("productname", product.getStringField(ProductFields.NAME));
+        parameters.put("productunit", product.getStringField(ProductFields.UNIT));
 
         Entity company = coverageProduct.getBelongsToField(CoverageProductFields.COMPANY);
 
@@ -338,18 +497,10 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         parameters.put("locationsquantity", coverageProduct.getDecimalField(CoverageProductFields.LOCATIONS_QUANTITY));
         parameters.put("produceQuantity", coverageProduct.getDecimalField(CoverageProductFields.PRODUCE_QUANTITY));
         parameters.put("state", coverageProduct.getStringField(CoverageProductFields.STATE));
-        parameters.put("productnumber",
-                coverageProduct.getBelongsToField(CoverageProductFields.PRODUCT).getStringField(ProductFields.NUMBER));
-        parameters.put("productname",
-                coverageProduct.getBelongsToField(CoverageProductFields.PRODUCT).getStringField(ProductFields.NAME));
-        parameters.put("productunit",
-                coverageProduct.getBelongsToField(CoverageProductFields.PRODUCT).getStringField(ProductFields.UNIT));
         parameters.put("fromSelectedOrder", coverageProduct.getBooleanField(CoverageProductFields.FROM_SELECTED_ORDER));
         parameters.put("allProductsType", coverageProduct.getStringField(CoverageProductFields.ALL_PRODUCTS_TYPE));
 
-        SqlParameterSource namedParameters = new MapSqlParameterSource(parameters);
-
-        jdbcTemplate.update(sql, namedParameters);
+        return parameters;
     }
 
     // Do not remove, around by aspect
@@ -146,18 +146,26 @@ public class GenerateMaterialRequirementCoverageListeners {
         Long materialRequirementCoverageId = materialRequirementCoverageForm.getEntityId();
 
         if (materialRequirementCoverageId != null) {
-
-            orderSuppliesService.clearMaterialRequirementCoverage(materialRequirementCoverageId);
             Entity materialRequirementCoverage = orderSuppliesService
                     .getMaterialRequirementCoverage(materialRequirementCoverageId);
 
+            boolean generated = materialRequirementCoverage.getBooleanField(MaterialRequirementCoverageFields.GENERATED);
+
+            if (!generated) {
+                orderSuppliesService.clearMaterialRequirementCoverage(materialRequirementCoverageId);
+            }
+
             materialRequirementCoverage.setField(MaterialRequirementCoverageFields.GENERATED, true);
             materialRequirementCoverage.setField(MaterialRequirementCoverageFields.GENERATED_DATE, new SimpleDateFormat(
                     DateUtils.L_DATE_TIME_FORMAT, LocaleContextHolder.getLocale()).format(new Date()));
             materialRequirementCoverage.setField(MaterialRequirementCoverageFields.GENERATED_BY,
                     securityService.getCurrentUserName());
 
-            materialRequirementCoverageService.estimateProductCoverageInTime(materialRequirementCoverage);
+            if (generated) {
+                materialRequirementCoverageService.regenerateProductCoverageInTime(materialRequirementCoverage);
+            } else {
+                materialRequirementCoverageService.estimateProductCoverageInTime(materialRequirementCoverage);
+            }
 
             state.performEvent(view, "reset", new String[0]);
 
@@ -50,6 +50,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import com.qcadoo.mes.orderSupplies.constants.OrderSuppliesConstants;
 import com.qcadoo.mes.orderSupplies.register.RegisterEvents;
+import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
 import com.qcadoo.mes.productionCounting.newstates.ProductionTrackingStateServiceMarker;
 import com.qcadoo.mes.productionCounting.states.constants.ProductionTrackingStateChangeDescriber;
 import com.qcadoo.mes.productionCounting.states.constants.ProductionTrackingStateStringValues;
@@ -73,6 +74,11 @@ public class ProductionTrackingStateServiceOS extends BasicStateService implemen
         return productionTrackingStateChangeDescriber;
     }
 
+    @Override
+    public Object getBulkChangeKey(Entity entity) {
+        return entity.getBelongsToField(ProductionTrackingFields.ORDER).getId();
+    }
+
     @Override
     public Entity onAfterSave(Entity entity, String sourceState, String targetState, Entity stateChangeEntity, StateChangeEntityDescriber describer) {
         switch (targetState) {
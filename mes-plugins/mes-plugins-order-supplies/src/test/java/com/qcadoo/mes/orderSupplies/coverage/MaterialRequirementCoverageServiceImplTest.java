@@ -0,0 +1,252 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orderSupplies.coverage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.orderSupplies.constants.CoverageProductFields;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+
+public class MaterialRequirementCoverageServiceImplTest {
+
+    private static final String L_INSERT_COVERAGE_PRODUCT_LOGGING = "INSERT INTO ordersupplies_coverageproductlogging";
+
+    private MaterialRequirementCoverageServiceImpl materialRequirementCoverageService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private Entity materialRequirementCoverage, product, coverageProduct, coverageProductLogging;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        materialRequirementCoverageService = new MaterialRequirementCoverageServiceImpl();
+
+        ReflectionTestUtils.setField(materialRequirementCoverageService, "jdbcTemplate", jdbcTemplate);
+
+        given(materialRequirementCoverage.getId()).willReturn(1L);
+        given(product.getId()).willReturn(2L);
+        given(coverageProduct.getBelongsToField(CoverageProductFields.PRODUCT)).willReturn(product);
+    }
+
+    @Test
+    public void shouldNotDetectChangeOfDecimalScale() {
+        // given
+        Map<String, Object> parameters = ImmutableMap.of("demandQuantity", new BigDecimal("1.5"), "coveredQuantity",
+                new BigDecimal("2.1234567"));
+        Map<String, Object> storedRow = ImmutableMap.of("demandquantity", new BigDecimal("1.50000"), "coveredquantity",
+                new BigDecimal("2.12346"));
+
+        // when
+        boolean changed = materialRequirementCoverageService.isRowChanged(parameters, storedRow);
+
+        // then
+        assertFalse(changed);
+    }
+
+    @Test
+    public void shouldDetectChangeOfDecimalValue() {
+        // given
+        Map<String, Object> parameters = ImmutableMap.of("demandQuantity", new BigDecimal("1.50001"));
+        Map<String, Object> storedRow = ImmutableMap.of("demandquantity", new BigDecimal("1.50000"));
+
+        // when
+        boolean changed = materialRequirementCoverageService.isRowChanged(parameters, storedRow);
+
+        // then
+        assertTrue(changed);
+    }
+
+    @Test
+    public void shouldNotDetectChangeOfTimestampPrecision() {
+        // given
+        Map<String, Object> parameters = ImmutableMap.of("lackFromDate", new Date(1500000000123L));
+        Map<String, Object> storedRow = ImmutableMap.of("lackfromdate", new Timestamp(1500000000000L));
+
+        // when
+        boolean changed = materialRequirementCoverageService.isRowChanged(parameters, storedRow);
+
+        // then
+        assertFalse(changed);
+    }
+
+    @Test
+    public void shouldDetectChangeOfDate() {
+        // given
+        Map<String, Object> parameters = ImmutableMap.of("lackFromDate", new Date(1500000001000L));
+        Map<String, Object> storedRow = ImmutableMap.of("lackfromdate", new Timestamp(1500000000000L));
+
+        // when
+        boolean changed = materialRequirementCoverageService.isRowChanged(parameters, storedRow);
+
+        // then
+        assertTrue(changed);
+    }
+
+    @Test
+    public void shouldCompareIdsOfDifferentTypesAndNulls() {
+        // given
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        parameters.put("product_id", 2L);
+        parameters.put("company_id", null);
+        parameters.put("state", "01covered");
+
+        Map<String, Object> storedRow = Maps.newHashMap();
+
+        storedRow.put("product_id", 2);
+        storedRow.put("company_id", null);
+        storedRow.put("state", "01covered");
+
+        // when
+        boolean changed = materialRequirementCoverageService.isRowChanged(parameters, storedRow);
+
+        // then
+        assertFalse(changed);
+
+        // when
+        storedRow.put("company_id", 3L);
+
+        // then
+        assertTrue(materialRequirementCoverageService.isRowChanged(parameters, storedRow));
+    }
+
+    @Test
+    public void shouldInsertRowsInBatches() {
+        // given
+        List<Map<String, Object>> rows = IntStream.range(0, 2500)
+                .mapToObj(i -> Maps.<String, Object> newLinkedHashMap(ImmutableMap.of("id", i, "name", "row" + i)))
+                .collect(Collectors.toList());
+
+        // when
+        materialRequirementCoverageService.batchInsert("ordersupplies_coverageproduct", rows);
+
+        // then
+        ArgumentCaptor<SqlParameterSource[]> batches = ArgumentCaptor.forClass(SqlParameterSource[].class);
+
+        verify(jdbcTemplate, times(3)).batchUpdate(eq("INSERT INTO ordersupplies_coverageproduct (id, name) VALUES (:id, :name)"),
+                batches.capture());
+
+        assertArrayEquals(new int[] { 1000, 1000, 500 }, batches.getAllValues().stream().mapToInt(batch -> batch.length)
+                .toArray());
+        assertEquals(2499, batches.getAllValues().get(2)[499].getValue("id"));
+    }
+
+    @Test
+    public void shouldNotInsertEmptyRows() {
+        // when
+        materialRequirementCoverageService.batchInsert("ordersupplies_coverageproduct", Lists.newArrayList());
+
+        // then
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), any(SqlParameterSource[].class));
+    }
+
+    @Test
+    public void shouldInsertCoverageProductsWithLoggingsUnderSequenceIds() {
+        // given
+        EntityList coverageProductLoggings = mockEntityList(Lists.newArrayList(coverageProductLogging));
+
+        given(coverageProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS)).willReturn(
+                coverageProductLoggings);
+        given(jdbcTemplate.queryForList(anyString(), anyMapOf(String.class, Object.class), eq(Long.class))).willReturn(
+                Lists.newArrayList(11L));
+
+        // when
+        materialRequirementCoverageService.insertCoverageProducts(materialRequirementCoverage,
+                Lists.newArrayList(coverageProduct));
+
+        // then
+        ArgumentCaptor<String> sqls = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<SqlParameterSource[]> batches = ArgumentCaptor.forClass(SqlParameterSource[].class);
+
+        verify(jdbcTemplate, times(2)).batchUpdate(sqls.capture(), batches.capture());
+
+        assertTrue(sqls.getAllValues().get(0).startsWith("INSERT INTO ordersupplies_coverageproduct ("));
+        assertTrue(sqls.getAllValues().get(1).startsWith(L_INSERT_COVERAGE_PRODUCT_LOGGING));
+
+        SqlParameterSource coverageProductParameters = batches.getAllValues().get(0)[0];
+        SqlParameterSource coverageProductLoggingParameters = batches.getAllValues().get(1)[0];
+
+        assertEquals(11L, coverageProductParameters.getValue("id"));
+        assertEquals(1L, coverageProductParameters.getValue("materialrequirementcoverage_id"));
+        assertEquals(2L, coverageProductParameters.getValue("product_id"));
+        assertEquals(11L, coverageProductLoggingParameters.getValue("coverageproduct_id"));
+    }
+
+    @Test
+    public void shouldNotInsertNoCoverageProducts() {
+        // when
+        materialRequirementCoverageService.insertCoverageProducts(materialRequirementCoverage, Lists.newArrayList());
+
+        // then
+        verify(jdbcTemplate, never()).queryForList(anyString(), anyMapOf(String.class, Object.class), eq(Long.class));
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), any(SqlParameterSource[].class));
+    }
+
+    private EntityList mockEntityList(final List<Entity> entities) {
+        EntityList entityList = mock(EntityList.class);
+
+        given(entityList.iterator()).willAnswer(invocation -> entities.iterator());
+        given(entityList.size()).willReturn(entities.size());
+
+        return entityList;
+    }
+
+}
@@ -4,6 +4,8 @@ import com.google.common.collect.Lists;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.orders.constants.OrdersConstants;
 import com.qcadoo.mes.orders.controllers.dataProvider.DashboardKanbanDataProvider;
+import com.qcadoo.mes.orders.controllers.dataProvider.DashboardKanbanSnapshotService;
+import com.qcadoo.mes.orders.controllers.dataProvider.DashboardKanbanSnapshotService.KanbanColumnSnapshot;
 import com.qcadoo.mes.orders.controllers.dto.OperationalTaskHolder;
 import com.qcadoo.mes.orders.controllers.dto.OrderHolder;
 import com.qcadoo.mes.orders.controllers.responses.OrderResponse;
@@ -26,6 +28,9 @@ import org.springframework.web.bind.annotation.ResponseBody;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 import static com.qcadoo.mes.orders.constants.OrderFields.STATE;
 import static com.qcadoo.mes.orders.states.constants.OrderState.IN_PROGRESS;
 import static com.qcadoo.mes.states.messages.util.MessagesUtil.getArgs;
@@ -35,9 +40,18 @@ import static com.qcadoo.mes.states.messages.util.MessagesUtil.getKey;
 @RequestMapping("/dashboardKanban")
 public class DashboardKanbanController {
 
+    private static final String L_ETAG = "ETag";
+
+    private static final String L_IF_NONE_MATCH = "If-None-Match";
+
+    private static final String L_CACHE_CONTROL = "Cache-Control";
+
     @Autowired
     private DashboardKanbanDataProvider dashboardKanbanDataProvider;
 
+    @Autowired
+    private DashboardKanbanSnapshotService dashboardKanbanSnapshotService;
+
     @Autowired
     private OrderStateChangeAspect orderStateChangeAspect;
 
@@ -52,38 +66,38 @@ public class DashboardKanbanController {
 
     @ResponseBody
     @RequestMapping(value = "/ordersPending", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public List<OrderHolder> getOrdersPending() {
-        return dashboardKanbanDataProvider.getOrdersPending();
+    public List<OrderHolder> getOrdersPending(final HttpServletRequest request, final HttpServletResponse response) {
+        return getRows(dashboardKanbanSnapshotService.getOrdersPending(), request, response);
     }
 
     @ResponseBody
     @RequestMapping(value = "/ordersInProgress", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public List<OrderHolder> getOrdersInProgress() {
-        return dashboardKanbanDataProvider.getOrdersInProgress();
+    public List<OrderHolder> getOrdersInProgress(final HttpServletRequest request, final HttpServletResponse response) {
+        return getRows(dashboardKanbanSnapshotService.getOrdersInProgress(), request, response);
     }
 
     @ResponseBody
     @RequestMapping(value = "/ordersCompleted", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public List<OrderHolder> getOrdersCompleted() {
-        return dashboardKanbanDataProvider.getOrdersCompleted();
+    public List<OrderHolder> getOrdersCompleted(final HttpServletRequest request, final HttpServletResponse response) {
+        return getRows(dashboardKanbanSnapshotService.getOrdersCompleted(), request, response);
     }
 
     @ResponseBody
     @RequestMapping(value = "/operationalTasksPending", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public List<OperationalTaskHolder> getOperationalTasksPending() {
-        return dashboardKanbanDataProvider.getOperationalTasksPending();
+    public List<OperationalTaskHolder> getOperationalTasksPending(final HttpServletRequest request, final HttpServletResponse response) {
+        return getRows(dashboardKanbanSnapshotService.getOperationalTasksPending(), request, response);
     }
 
     @ResponseBody
     @RequestMapping(value = "/operationalTasksInProgress", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public List<OperationalTaskHolder> getOperationalTasksInProgress() {
-        return dashboardKanbanDataProvider.getOperationalTasksInProgress();
+    public List<OperationalTaskHolder> getOperationalTasksInProgress(final HttpServletRequest request, final HttpServletResponse response) {
+        return getRows(dashboardKanbanSnapshotService.getOperationalTasksInProgress(), request, response);
     }
 
     @ResponseBody
     @RequestMapping(value = "/operationalTasksCompleted", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    public List<OperationalTaskHolder> getOperationalTasksCompleted() {
-        return dashboardKanbanDataProvider.getOperationalTasksCompleted();
+    public List<OperationalTaskHolder> getOperationalTasksCompleted(final HttpServletRequest request, final HttpServletResponse response) {
+        return getRows(dashboardKanbanSnapshotService.getOperationalTasksCompleted(), request, response);
     }
 
     @ResponseBody
@@ -116,4 +130,18 @@ public class DashboardKanbanController {
         return orderResponse;
     }
 
+    private <T> List<T> getRows(final KanbanColumnSnapshot<T> snapshot, final HttpServletRequest request,
+            final HttpServletResponse response) {
+        response.setHeader(L_ETAG, snapshot.getETag());
+        response.setHeader(L_CACHE_CONTROL, "no-cache");
+
+        if (snapshot.getETag().equals(request.getHeader(L_IF_NONE_MATCH))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+
+            return null;
+        }
+
+        return snapshot.getRows();
+    }
+
 }
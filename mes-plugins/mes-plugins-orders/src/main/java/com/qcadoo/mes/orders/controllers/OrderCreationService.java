@@ -1,6 +1,10 @@
 package com.qcadoo.mes.orders.controllers;
 
+import static com.qcadoo.mes.states.messages.util.MessagesUtil.getArgs;
+import static com.qcadoo.mes.states.messages.util.MessagesUtil.getKey;
+
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.qcadoo.commons.functional.Either;
 import com.qcadoo.localization.api.TranslationService;
@@ -41,31 +45,44 @@ import com.qcadoo.mes.technologies.controller.dataProvider.MaterialDto;
 import com.qcadoo.mes.technologies.states.aop.TechnologyStateChangeAspect;
 import com.qcadoo.mes.technologies.states.constants.TechnologyState;
 import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
 import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.model.api.validators.ErrorMessage;
 import com.qcadoo.model.api.validators.GlobalMessage;
 import com.qcadoo.view.api.utils.NumberGeneratorService;
 
 import java.math.BigDecimal;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 @Service
 public class OrderCreationService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(OrderCreationService.class);
+
     private static final String IS_SUBCONTRACTED = "isSubcontracted";
 
     private static final String IGNORE_MISSING_COMPONENTS = "ignoreMissingComponents";
@@ -161,16 +178,63 @@ public class OrderCreationService {
     private NumberService numberService;
 
     public OrderCreationResponse createOrder(OrderCreationRequest orderCreationRequest) {
+        return createOrderOrReportError(orderCreationRequest, createContext(Lists.newArrayList(orderCreationRequest)), true);
+    }
+
+    /**
+     * Creates orders one by one, each in its own transaction, resolving products, production lines, technologies, operations
+     * and workstations of all requests up front. Requests generating identical technologies share the first one generated.
+     *
+     * @return responses in the order of requests
+     */
+    public List<OrderCreationResponse> createOrders(List<OrderCreationRequest> orderCreationRequests) {
+        OrderCreationContext context = createContext(orderCreationRequests);
+        List<OrderCreationResponse> responses = Lists.newArrayListWithCapacity(orderCreationRequests.size());
+        for (OrderCreationRequest orderCreationRequest : orderCreationRequests) {
+            responses.add(createOrderOrReportError(orderCreationRequest, context, false));
+        }
+        return responses;
+    }
+
+    private OrderCreationResponse createOrderOrReportError(OrderCreationRequest orderCreationRequest,
+            OrderCreationContext context, boolean withDashboardData) {
+        try {
+            OrderCreationResponse response = createOrderInTransaction(orderCreationRequest, context, withDashboardData);
+            if (OrderCreationResponse.StatusCode.OK.equals(response.getCode())) {
+                context.acceptCreatedEntities();
+            } else {
+                context.discardCreatedEntities();
+            }
+            return response;
+        } catch (RuntimeException e) {
+            context.discardCreatedEntities();
+            LOG.error("Error while creating order for product : " + orderCreationRequest.getProductId(), e);
+            return new OrderCreationResponse(translationService.translate("orders.orderCreationService.error",
+                    LocaleContextHolder.getLocale(), ExceptionUtils.getRootCauseMessage(e)));
+        }
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    private OrderCreationResponse createOrderInTransaction(OrderCreationRequest orderCreationRequest,
+            OrderCreationContext context, boolean withDashboardData) {
+        OrderCreationResponse response = createOrder(orderCreationRequest, context, withDashboardData);
+        if (OrderCreationResponse.StatusCode.ERROR.equals(response.getCode())) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        }
+        return response;
+    }
 
-        Entity parameter = parameterService.getParameter();
+    private OrderCreationResponse createOrder(OrderCreationRequest orderCreationRequest, OrderCreationContext context,
+            boolean withDashboardData) {
+        Entity parameter = context.getParameter();
         boolean createOperationalTasks = !orderCreationRequest.getTechnologyOperations().isEmpty();
         if (!isParameterSet(parameter, createOperationalTasks)) {
             return new OrderCreationResponse(translationService.translate(
                     "basic.dashboard.orderDefinitionWizard.createOrder.parameterNotSet", LocaleContextHolder.getLocale()));
         }
-        Entity product = getProduct(orderCreationRequest.getProductId());
-        Entity productionLine = getProductionLine(orderCreationRequest.getProductionLineId());
-        Either<String, Entity> isTechnology = getOrCreateTechnology(orderCreationRequest);
+        Entity product = context.getProduct(orderCreationRequest.getProductId());
+        Entity productionLine = getProductionLine(orderCreationRequest.getProductionLineId(), context);
+        Either<String, Entity> isTechnology = getOrCreateTechnology(orderCreationRequest, context);
         if (isTechnology.isLeft()) {
             return new OrderCreationResponse(isTechnology.getLeft());
         }
@@ -217,28 +281,32 @@ public class OrderCreationService {
             orderStateChangeAspect.changeState(orderStateChangeContext);
             order = order.getDataDefinition().get(order.getId());
             if (!order.getStringField(OrderFields.STATE).equals(OrderStateStringValues.ACCEPTED)) {
-                return new OrderCreationResponse(translationService.translate(
-                        "basic.dashboard.orderDefinitionWizard.createOrder.acceptError", LocaleContextHolder.getLocale(),
+                return new OrderCreationResponse(translateError("basic.dashboard.orderDefinitionWizard.createOrder.acceptError",
+                        "orders.orderCreationService.orderAcceptError", translateMessages(orderStateChangeContext),
                         order.getStringField(OrderFields.NUMBER)));
             }
         } else {
-            return new OrderCreationResponse(translationService.translate(
-                    "basic.dashboard.orderDefinitionWizard.createOrder.validationError", LocaleContextHolder.getLocale()));
+            return new OrderCreationResponse(translateError(
+                    "basic.dashboard.orderDefinitionWizard.createOrder.validationError",
+                    "orders.orderCreationService.orderValidationError", translateErrors(order)));
         }
 
         if (createOperationalTasks) {
             createOperationalTasks(order, orderCreationRequest);
-            modifyProductionCountingQuantityForEach(order, orderCreationRequest.getTechnologyOperations());
+            modifyProductionCountingQuantityForEach(order, orderCreationRequest.getTechnologyOperations(), parameter);
         } else {
-            modifyProductionCountingQuantity(order, orderCreationRequest.getMaterials());
+            modifyProductionCountingQuantity(order, orderCreationRequest.getMaterials(), parameter);
         }
 
+        response.setNumber(order.getStringField(OrderFields.NUMBER));
         response.setMessage(translationService.translate("orders.orderCreationService.created", LocaleContextHolder.getLocale(),
                 order.getStringField(OrderFields.NUMBER)));
-        if (createOperationalTasks) {
-            response.setOperationalTasks(dashboardKanbanDataProvider.getOperationalTasksPendingForOrder(order.getId()));
-        } else {
-            response.setOrder(dashboardKanbanDataProvider.getOrder(order.getId()));
+        if (withDashboardData) {
+            if (createOperationalTasks) {
+                response.setOperationalTasks(dashboardKanbanDataProvider.getOperationalTasksPendingForOrder(order.getId()));
+            } else {
+                response.setOrder(dashboardKanbanDataProvider.getOrder(order.getId()));
+            }
         }
         return response;
     }
@@ -260,67 +328,76 @@ public class OrderCreationService {
         }
     }
 
-    private void modifyProductionCountingQuantityForEach(Entity order, List<TechnologyOperationDto> technologyOperations) {
-        Entity parameter = parameterService.getParameter();
+    private void modifyProductionCountingQuantityForEach(Entity order, List<TechnologyOperationDto> technologyOperations,
+            Entity parameter) {
+        Map<Long, List<Entity>> materialsFromOrderPCQByToc = getMaterialsFromOrder(order, null).stream()
+                .filter(pcq -> Objects.nonNull(pcq.getBelongsToField(L_TECHNOLOGY_OPERATION_COMPONENT)))
+                .collect(Collectors.groupingBy(pcq -> pcq.getBelongsToField(L_TECHNOLOGY_OPERATION_COMPONENT).getId()));
+        List<Long> pcqIdsToDelete = Lists.newArrayList();
 
         for (TechnologyOperationDto technologyOperation : technologyOperations) {
-            Entity toc = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
-                    TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT).get(technologyOperation.getId());
-            List<Entity> materialsFromOrderPCQ = getMaterialsFromOrder(order, toc);
-            List<MaterialDto> materials = technologyOperation.getMaterials();
-            List<MaterialDto> addedMaterials = materials.stream().filter(m -> Objects.isNull(m.getProductInId()))
-                    .collect(Collectors.toList());
-            List<Long> technologyMaterials = materials.stream().filter(m -> Objects.nonNull(m.getProductInId()))
-                    .map(m -> m.getProductId()).collect(Collectors.toList());
-            Map<Long, Entity> pacqByProductId = materialsFromOrderPCQ.stream().collect(
-                    Collectors.toMap(pcq -> pcq.getBelongsToField(L_PRODUCT).getId(), pcq -> pcq));
-            for (Map.Entry<Long, Entity> entry : pacqByProductId.entrySet()) {
-                if (!technologyMaterials.contains(entry.getKey())) {
-                    Entity pcq = entry.getValue();
-                    pcq.getDataDefinition().delete(pcq.getId());
-                }
-            }
-            Entity dashboardComponentsLocation = parameter.getBelongsToField(L_DASHBOARD_COMPONENTS_LOCATION);
-            Entity dashboardProductsInputLocation = parameter.getBelongsToField(L_DASHBOARD_PRODUCTS_INPUT_LOCATION);
+            List<Entity> materialsFromOrderPCQ = materialsFromOrderPCQByToc.getOrDefault(technologyOperation.getId(),
+                    Collections.emptyList());
+            pcqIdsToDelete.addAll(getPCQIdsToDelete(materialsFromOrderPCQ, technologyOperation.getMaterials()));
+        }
+        deleteProductionCountingQuantities(pcqIdsToDelete);
+
+        Entity dashboardComponentsLocation = parameter.getBelongsToField(L_DASHBOARD_COMPONENTS_LOCATION);
+        Entity dashboardProductsInputLocation = parameter.getBelongsToField(L_DASHBOARD_PRODUCTS_INPUT_LOCATION);
+        for (TechnologyOperationDto technologyOperation : technologyOperations) {
+            List<MaterialDto> addedMaterials = technologyOperation.getMaterials().stream()
+                    .filter(m -> Objects.isNull(m.getProductInId())).collect(Collectors.toList());
             for (MaterialDto material : addedMaterials) {
-                createProductionCoutingQuantity(order, dashboardComponentsLocation, dashboardProductsInputLocation, material, toc);
+                createProductionCoutingQuantity(order, dashboardComponentsLocation, dashboardProductsInputLocation, material,
+                        technologyOperation.getId());
             }
         }
 
     }
 
-    private void modifyProductionCountingQuantity(Entity order, List<MaterialDto> materials) {
-        Entity parameter = parameterService.getParameter();
+    private void modifyProductionCountingQuantity(Entity order, List<MaterialDto> materials, Entity parameter) {
         List<MaterialDto> addedMaterials = materials.stream().filter(m -> Objects.isNull(m.getProductInId()))
                 .collect(Collectors.toList());
-        List<Long> technologyMaterials = materials.stream().filter(m -> Objects.nonNull(m.getProductInId()))
-                .map(m -> m.getProductId()).collect(Collectors.toList());
         List<Entity> materialsFromOrderPCQ = getMaterialsFromOrder(order, null);
 
-        Map<Long, Entity> pacqByProductId = materialsFromOrderPCQ.stream().collect(
-                Collectors.toMap(pcq -> pcq.getBelongsToField(L_PRODUCT).getId(), pcq -> pcq));
+        deleteProductionCountingQuantities(getPCQIdsToDelete(materialsFromOrderPCQ, materials));
 
-        for (Map.Entry<Long, Entity> entry : pacqByProductId.entrySet()) {
-            if (!technologyMaterials.contains(entry.getKey())) {
-                Entity pcq = entry.getValue();
-                pcq.getDataDefinition().delete(pcq.getId());
-            }
+        if (addedMaterials.isEmpty()) {
+            return;
         }
         Entity dashboardComponentsLocation = parameter.getBelongsToField(L_DASHBOARD_COMPONENTS_LOCATION);
         Entity dashboardProductsInputLocation = parameter.getBelongsToField(L_DASHBOARD_PRODUCTS_INPUT_LOCATION);
+        Entity toc = order.getBelongsToField(OrderFields.TECHNOLOGY).getTreeField(TechnologyFields.OPERATION_COMPONENTS)
+                .getRoot();
         for (MaterialDto material : addedMaterials) {
-            Entity toc = order.getBelongsToField(OrderFields.TECHNOLOGY).getTreeField(TechnologyFields.OPERATION_COMPONENTS)
-                    .getRoot();
-            createProductionCoutingQuantity(order, dashboardComponentsLocation, dashboardProductsInputLocation, material, toc);
+            createProductionCoutingQuantity(order, dashboardComponentsLocation, dashboardProductsInputLocation, material,
+                    toc.getId());
+        }
+    }
+
+    private List<Long> getPCQIdsToDelete(List<Entity> materialsFromOrderPCQ, List<MaterialDto> materials) {
+        List<Long> technologyMaterials = materials.stream().filter(m -> Objects.nonNull(m.getProductInId()))
+                .map(m -> m.getProductId()).collect(Collectors.toList());
+        Map<Long, Entity> pacqByProductId = materialsFromOrderPCQ.stream().collect(
+                Collectors.toMap(pcq -> pcq.getBelongsToField(L_PRODUCT).getId(), pcq -> pcq));
+
+        return pacqByProductId.entrySet().stream().filter(entry -> !technologyMaterials.contains(entry.getKey()))
+                .map(entry -> entry.getValue().getId()).collect(Collectors.toList());
+    }
+
+    private void deleteProductionCountingQuantities(List<Long> pcqIds) {
+        if (!pcqIds.isEmpty()) {
+            dataDefinitionService.get(L_BASIC_PRODUCTION_COUNTING, L_PRODUCTION_COUNTING_QUANTITY).delete(
+                    pcqIds.toArray(new Long[pcqIds.size()]));
         }
     }
 
     private void createProductionCoutingQuantity(Entity order, Entity dashboardComponentsLocation,
-            Entity dashboardProductsInputLocation, MaterialDto material, Entity toc) {
+            Entity dashboardProductsInputLocation, MaterialDto material, Long tocId) {
         Entity productionCountingQuantity = dataDefinitionService
                 .get(L_BASIC_PRODUCTION_COUNTING, L_PRODUCTION_COUNTING_QUANTITY).create();
         productionCountingQuantity.setField(L_ORDER, order.getId());
-        productionCountingQuantity.setField(L_TECHNOLOGY_OPERATION_COMPONENT, toc.getId());
+        productionCountingQuantity.setField(L_TECHNOLOGY_OPERATION_COMPONENT, tocId);
 
         BigDecimal q = order.getDecimalField(OrderFields.PLANNED_QUANTITY).multiply(material.getQuantityPerUnit(),
                 numberService.getMathContext());
@@ -382,27 +459,68 @@ public class OrderCreationService {
         return descriptionBuilder.toString();
     }
 
-    private Either<String, Entity> getOrCreateTechnology(OrderCreationRequest orderCreationRequest) {
+    private Either<String, Entity> getOrCreateTechnology(OrderCreationRequest orderCreationRequest,
+            OrderCreationContext context) {
         if (Objects.isNull(orderCreationRequest.getTechnologyId())) {
+            orderCreationRequest.getTechnologyOperations().sort(Comparator.comparing(TechnologyOperationDto::getNode));
+            String generatedTechnologyKey = buildGeneratedTechnologyKey(orderCreationRequest);
+            GeneratedTechnology generatedTechnology = context.getGeneratedTechnology(generatedTechnologyKey);
+            if (Objects.nonNull(generatedTechnology)) {
+                for (int i = 0; i < orderCreationRequest.getTechnologyOperations().size(); i++) {
+                    orderCreationRequest.getTechnologyOperations().get(i)
+                            .setId(generatedTechnology.getTechnologyOperationComponentIds().get(i));
+                }
+                return Either.right(generatedTechnology.getTechnology());
+            }
+            Either<String, Entity> isTechnology;
             if (orderCreationRequest.getTechnologyOperations().isEmpty()) {
-                return createTechnology(orderCreationRequest);
+                isTechnology = createTechnology(orderCreationRequest, context);
             } else {
-                return createTechnologyForEachOperation(orderCreationRequest);
+                isTechnology = createTechnologyForEachOperation(orderCreationRequest, context);
+            }
+            if (isTechnology.isRight()) {
+                context.putGeneratedTechnology(generatedTechnologyKey, new GeneratedTechnology(isTechnology.getRight(),
+                        orderCreationRequest.getTechnologyOperations().stream().map(TechnologyOperationDto::getId)
+                                .collect(Collectors.toList())));
             }
+            return isTechnology;
+        } else {
+            return Either.right(context.getTechnology(orderCreationRequest.getTechnologyId()));
+        }
+    }
+
+    private String buildGeneratedTechnologyKey(OrderCreationRequest orderCreationRequest) {
+        StringBuilder key = new StringBuilder();
+        key.append(orderCreationRequest.getProductId());
+        if (orderCreationRequest.getTechnologyOperations().isEmpty()) {
+            appendMaterialsKey(key, orderCreationRequest.getMaterials());
         } else {
-            return Either.right(dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
-                    TechnologiesConstants.MODEL_TECHNOLOGY).get(orderCreationRequest.getTechnologyId()));
+            key.append('|').append(orderCreationRequest.getTypeOfProductionRecording());
+            for (TechnologyOperationDto technologyOperation : orderCreationRequest.getTechnologyOperations()) {
+                key.append('|').append(technologyOperation.getNode()).append(',').append(technologyOperation.getOperationId())
+                        .append(',').append(technologyOperation.getWorkstationId());
+                appendMaterialsKey(key, technologyOperation.getMaterials());
+            }
+        }
+        return key.toString();
+    }
+
+    private void appendMaterialsKey(StringBuilder key, List<MaterialDto> materials) {
+        for (MaterialDto material : materials) {
+            key.append(';').append(material.getProductId()).append(':');
+            if (Objects.nonNull(material.getQuantityPerUnit())) {
+                key.append(material.getQuantityPerUnit().stripTrailingZeros().toPlainString());
+            }
         }
     }
 
-    private Either<String, Entity> createTechnologyForEachOperation(OrderCreationRequest orderCreationRequest) {
-        Entity product = getProduct(orderCreationRequest.getProductId());
-        Entity parameter = parameterService.getParameter();
+    private Either<String, Entity> createTechnologyForEachOperation(OrderCreationRequest orderCreationRequest,
+            OrderCreationContext context) {
+        Entity product = context.getProduct(orderCreationRequest.getProductId());
+        Entity parameter = context.getParameter();
         Entity dashboardComponentsLocation = parameter.getBelongsToField(OrderCreationService.L_DASHBOARD_COMPONENTS_LOCATION);
         Entity dashboardProductsInputLocation = parameter
                 .getBelongsToField(OrderCreationService.L_DASHBOARD_PRODUCTS_INPUT_LOCATION);
-        orderCreationRequest.getTechnologyOperations().sort(Comparator.comparing(TechnologyOperationDto::getNode));
-
         String range = parameter.getStringField(L_RANGE);
         Entity technology = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
                 TechnologiesConstants.MODEL_TECHNOLOGY).create();
@@ -416,14 +534,12 @@ public class OrderCreationService {
         technology.setField("typeOfProductionRecording", orderCreationRequest.getTypeOfProductionRecording());
         technology = technology.getDataDefinition().save(technology);
         if (!technology.isValid()) {
-            return Either.left(translationService.translate(
-                    "basic.dashboard.orderDefinitionWizard.createTechnology.validationError", LocaleContextHolder.getLocale()));
+            return Either.left(translateTechnologyValidationError(technology));
         }
 
         Entity parent = null;
         for (TechnologyOperationDto technologyOperation : orderCreationRequest.getTechnologyOperations()) {
-            Entity operation = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
-                    TechnologiesConstants.MODEL_OPERATION).get(technologyOperation.getOperationId());
+            Entity operation = context.getOperation(technologyOperation.getOperationId());
 
             Entity toc = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
                     TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT).create();
@@ -454,7 +570,7 @@ public class OrderCreationService {
 
             List<Entity> topics = Lists.newArrayList();
             for (MaterialDto material : technologyOperation.getMaterials()) {
-                Entity inProduct = getProduct(material.getProductId());
+                Entity inProduct = context.getProduct(material.getProductId());
 
                 Entity topic = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
                         TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT).create();
@@ -471,7 +587,7 @@ public class OrderCreationService {
             if(Objects.nonNull(technologyOperation.getWorkstationId())) {
                 List<Entity> workstations = Lists.newArrayList(toc.getHasManyField(TechnologyOperationComponentFields.WORKSTATIONS));
 
-                Entity workstation = dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_WORKSTATION).get(technologyOperation.getWorkstationId());
+                Entity workstation = context.getWorkstation(technologyOperation.getWorkstationId());
                 workstations.add(workstation);
                 toc.setField(TechnologyOperationComponentFields.WORKSTATIONS, workstations);
             }
@@ -481,7 +597,7 @@ public class OrderCreationService {
                 Entity topoc = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
                         TechnologiesConstants.MODEL_OPERATION_PRODUCT_OUT_COMPONENT).create();
                 topoc.setField(OperationProductOutComponentFields.QUANTITY, BigDecimal.ONE);
-                topoc.setField(OperationProductOutComponentFields.PRODUCT, getOrCreateProduct(operation));
+                topoc.setField(OperationProductOutComponentFields.PRODUCT, getOrCreateProduct(operation, context));
                 topoc.setField(OperationProductOutComponentFields.OPERATION_COMPONENT, toc);
                 topoc.getDataDefinition().save(topoc);
             }
@@ -496,21 +612,21 @@ public class OrderCreationService {
             technologyStateChangeAspect.changeState(technologyStateChangeContext);
             technology = technology.getDataDefinition().get(technology.getId());
             if (!technology.getStringField(TechnologyFields.STATE).equals(TechnologyStateStringValues.ACCEPTED)) {
-                return Either.left(translationService.translate(
-                        "basic.dashboard.orderDefinitionWizard.createTechnology.acceptError", LocaleContextHolder.getLocale()));
+                return Either.left(translateError("basic.dashboard.orderDefinitionWizard.createTechnology.acceptError",
+                        "orders.orderCreationService.technologyAcceptError", translateMessages(technologyStateChangeContext),
+                        technology.getStringField(TechnologyFields.NUMBER)));
             }
             technology.setField(TechnologyFields.MASTER, Boolean.TRUE);
             technology.getDataDefinition().save(technology);
         } else {
-            return Either.left(translationService.translate(
-                    "basic.dashboard.orderDefinitionWizard.createTechnology.validationError", LocaleContextHolder.getLocale()));
+            return Either.left(translateTechnologyValidationError(technology));
         }
         return Either.right(technology);
     }
 
-    private Either<String, Entity> createTechnology(OrderCreationRequest orderCreationRequest) {
-        Entity product = getProduct(orderCreationRequest.getProductId());
-        Entity parameter = parameterService.getParameter();
+    private Either<String, Entity> createTechnology(OrderCreationRequest orderCreationRequest, OrderCreationContext context) {
+        Entity product = context.getProduct(orderCreationRequest.getProductId());
+        Entity parameter = context.getParameter();
         Entity operation = parameter.getBelongsToField(L_DASHBOARD_OPERATION);
         Entity dashboardComponentsLocation = parameter.getBelongsToField(OrderCreationService.L_DASHBOARD_COMPONENTS_LOCATION);
         Entity dashboardProductsInputLocation = parameter
@@ -542,7 +658,7 @@ public class OrderCreationService {
 
         List<Entity> topics = Lists.newArrayList();
         for (MaterialDto material : orderCreationRequest.getMaterials()) {
-            Entity inProduct = getProduct(material.getProductId());
+            Entity inProduct = context.getProduct(material.getProductId());
 
             Entity topic = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
                     TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT).create();
@@ -572,32 +688,71 @@ public class OrderCreationService {
             technologyStateChangeAspect.changeState(technologyStateChangeContext);
             technology = technology.getDataDefinition().get(technology.getId());
             if (!technology.getStringField(TechnologyFields.STATE).equals(TechnologyStateStringValues.ACCEPTED)) {
-                return Either.left(translationService.translate(
-                        "basic.dashboard.orderDefinitionWizard.createTechnology.acceptError", LocaleContextHolder.getLocale()));
+                return Either.left(translateError("basic.dashboard.orderDefinitionWizard.createTechnology.acceptError",
+                        "orders.orderCreationService.technologyAcceptError", translateMessages(technologyStateChangeContext),
+                        technology.getStringField(TechnologyFields.NUMBER)));
             }
             technology.setField(TechnologyFields.MASTER, Boolean.TRUE);
             technology.getDataDefinition().save(technology);
         } else {
-            return Either.left(translationService.translate(
-                    "basic.dashboard.orderDefinitionWizard.createTechnology.validationError", LocaleContextHolder.getLocale()));
+            return Either.left(translateTechnologyValidationError(technology));
         }
         return Either.right(technology);
     }
 
-    private Entity getProductionLine(Long productionLineId) {
+    private String translateTechnologyValidationError(Entity technology) {
+        return translateError("basic.dashboard.orderDefinitionWizard.createTechnology.validationError",
+                "orders.orderCreationService.technologyValidationError", translateErrors(technology));
+    }
+
+    private String translateError(String messageKey, String detailedMessageKey, String details, String... args) {
+        if (StringUtils.isBlank(details)) {
+            return translationService.translate(messageKey, LocaleContextHolder.getLocale(), args);
+        }
+        return translationService.translate(detailedMessageKey, LocaleContextHolder.getLocale(), ArrayUtils.add(args, details));
+    }
+
+    private String translateErrors(Entity entity) {
+        Locale locale = LocaleContextHolder.getLocale();
+        DataDefinition dataDefinition = entity.getDataDefinition();
+        List<String> errors = Lists.newArrayList();
+        for (ErrorMessage error : entity.getGlobalErrors()) {
+            errors.add(translationService.translate(error.getMessage(), locale, error.getVars()));
+        }
+        for (Map.Entry<String, ErrorMessage> error : entity.getErrors().entrySet()) {
+            String fieldLabel = translationService.translate(dataDefinition.getPluginIdentifier() + "."
+                    + dataDefinition.getName() + "." + error.getKey() + ".label", locale);
+            errors.add(fieldLabel + " - "
+                    + translationService.translate(error.getValue().getMessage(), locale, error.getValue().getVars()));
+        }
+        return String.join(", ", errors);
+    }
+
+    private String translateMessages(StateChangeContext stateChangeContext) {
+        return stateChangeContext.getAllMessages().stream()
+                .map(message -> translationService.translate(getKey(message), LocaleContextHolder.getLocale(), getArgs(message)))
+                .collect(Collectors.joining(", "));
+    }
+
+    private Entity getProductionLine(Long productionLineId, OrderCreationContext context) {
         if (Objects.nonNull(productionLineId)) {
-            return dataDefinitionService.get(ProductionLinesConstants.PLUGIN_IDENTIFIER,
-                    ProductionLinesConstants.MODEL_PRODUCTION_LINE).get(productionLineId);
+            return context.getProductionLine(productionLineId);
         } else {
-            return parameterService.getParameter().getBelongsToField(ParameterFieldsPL.DEFAULT_PRODUCTION_LINE);
+            return context.getParameter().getBelongsToField(ParameterFieldsPL.DEFAULT_PRODUCTION_LINE);
         }
     }
 
-    private Entity getProduct(Long productId) {
-        return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT).get(productId);
+    private Entity getOrCreateProduct(Entity operation, OrderCreationContext context) {
+        String number = operation.getStringField(OperationFields.NUMBER);
+        Entity product = context.getOperationProduct(number);
+        if (Objects.isNull(product)) {
+            product = getOrCreateProduct(operation, context.getParameter());
+            context.putOperationProduct(number, product);
+        }
+        return product;
     }
 
-    private Entity getOrCreateProduct(Entity operation) {
+    private Entity getOrCreateProduct(Entity operation, Entity parameter) {
         Entity product = dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT).find()
                 .add(SearchRestrictions.eq(ProductFields.NUMBER, operation.getStringField(OperationFields.NUMBER)))
                 .setMaxResults(1).uniqueResult();
@@ -610,8 +765,158 @@ public class OrderCreationService {
             newProduct.setField(ProductFields.NAME, operation.getStringField(OperationFields.NAME));
             newProduct.setField(ProductFields.GLOBAL_TYPE_OF_MATERIAL, GlobalTypeOfMaterial.INTERMEDIATE.getStringValue());
             newProduct.setField(ProductFields.ENTITY_TYPE, ProductFamilyElementType.PARTICULAR_PRODUCT.getStringValue());
-            newProduct.setField(ProductFields.UNIT, parameterService.getParameter().getStringField(ParameterFields.UNIT));
+            newProduct.setField(ProductFields.UNIT, parameter.getStringField(ParameterFields.UNIT));
             return newProduct.getDataDefinition().save(newProduct);
         }
     }
+
+    private OrderCreationContext createContext(List<OrderCreationRequest> orderCreationRequests) {
+        Set<Long> productIds = Sets.newHashSet();
+        Set<Long> productionLineIds = Sets.newHashSet();
+        Set<Long> technologyIds = Sets.newHashSet();
+        Set<Long> operationIds = Sets.newHashSet();
+        Set<Long> workstationIds = Sets.newHashSet();
+        for (OrderCreationRequest orderCreationRequest : orderCreationRequests) {
+            productIds.add(orderCreationRequest.getProductId());
+            productionLineIds.add(orderCreationRequest.getProductionLineId());
+            technologyIds.add(orderCreationRequest.getTechnologyId());
+            orderCreationRequest.getMaterials().forEach(material -> productIds.add(material.getProductId()));
+            for (TechnologyOperationDto technologyOperation : orderCreationRequest.getTechnologyOperations()) {
+                operationIds.add(technologyOperation.getOperationId());
+                workstationIds.add(technologyOperation.getWorkstationId());
+                technologyOperation.getMaterials().forEach(material -> productIds.add(material.getProductId()));
+            }
+        }
+
+        return new OrderCreationContext(parameterService.getParameter(),
+                findByIds(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT, productIds),
+                findByIds(ProductionLinesConstants.PLUGIN_IDENTIFIER, ProductionLinesConstants.MODEL_PRODUCTION_LINE,
+                        productionLineIds),
+                findByIds(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY, technologyIds),
+                findByIds(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_OPERATION, operationIds),
+                findByIds(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_WORKSTATION, workstationIds));
+    }
+
+    private Map<Long, Entity> findByIds(String pluginIdentifier, String modelName, Set<Long> ids) {
+        ids.remove(null);
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return dataDefinitionService.get(pluginIdentifier, modelName).find().add(SearchRestrictions.in("id", ids)).list()
+                .getEntities().stream().collect(Collectors.toMap(Entity::getId, entity -> entity));
+    }
+
+    private static class OrderCreationContext {
+
+        private final Entity parameter;
+
+        private final Map<Long, Entity> products;
+
+        private final Map<Long, Entity> productionLines;
+
+        private final Map<Long, Entity> technologies;
+
+        private final Map<Long, Entity> operations;
+
+        private final Map<Long, Entity> workstations;
+
+        private final Map<String, Entity> operationProducts = Maps.newHashMap();
+
+        private final Map<String, GeneratedTechnology> generatedTechnologies = Maps.newHashMap();
+
+        private final Map<String, Entity> createdOperationProducts = Maps.newHashMap();
+
+        private final Map<String, GeneratedTechnology> createdTechnologies = Maps.newHashMap();
+
+        private OrderCreationContext(Entity parameter, Map<Long, Entity> products, Map<Long, Entity> productionLines,
+                Map<Long, Entity> technologies, Map<Long, Entity> operations, Map<Long, Entity> workstations) {
+            this.parameter = parameter;
+            this.products = products;
+            this.productionLines = productionLines;
+            this.technologies = technologies;
+            this.operations = operations;
+            this.workstations = workstations;
+        }
+
+        private Entity getParameter() {
+            return parameter;
+        }
+
+        private Entity getProduct(Long productId) {
+            return products.get(productId);
+        }
+
+        private Entity getProductionLine(Long productionLineId) {
+            return productionLines.get(productionLineId);
+        }
+
+        private Entity getTechnology(Long technologyId) {
+            return technologies.get(technologyId);
+        }
+
+        private Entity getOperation(Long operationId) {
+            return operations.get(operationId);
+        }
+
+        private Entity getWorkstation(Long workstationId) {
+            return workstations.get(workstationId);
+        }
+
+        private Entity getOperationProduct(String operationNumber) {
+            return operationProducts.getOrDefault(operationNumber, createdOperationProducts.get(operationNumber));
+        }
+
+        private void putOperationProduct(String operationNumber, Entity product) {
+            createdOperationProducts.put(operationNumber, product);
+        }
+
+        private GeneratedTechnology getGeneratedTechnology(String key) {
+            return generatedTechnologies.getOrDefault(key, createdTechnologies.get(key));
+        }
+
+        private void putGeneratedTechnology(String key, GeneratedTechnology generatedTechnology) {
+            createdTechnologies.put(key, generatedTechnology);
+        }
+
+        /**
+         * Shares products and technologies created for the current order with following orders, once its transaction is
+         * committed.
+         */
+        private void acceptCreatedEntities() {
+            operationProducts.putAll(createdOperationProducts);
+            generatedTechnologies.putAll(createdTechnologies);
+            discardCreatedEntities();
+        }
+
+        /**
+         * Forgets products and technologies created for the current order, as its transaction is rolled back.
+         */
+        private void discardCreatedEntities() {
+            createdOperationProducts.clear();
+            createdTechnologies.clear();
+        }
+
+    }
+
+    private static class GeneratedTechnology {
+
+        private final Entity technology;
+
+        private final List<Long> technologyOperationComponentIds;
+
+        private GeneratedTechnology(Entity technology, List<Long> technologyOperationComponentIds) {
+            this.technology = technology;
+            this.technologyOperationComponentIds = technologyOperationComponentIds;
+        }
+
+        private Entity getTechnology() {
+            return technology;
+        }
+
+        private List<Long> getTechnologyOperationComponentIds() {
+            return technologyOperationComponentIds;
+        }
+
+    }
+
 }
@@ -3,6 +3,8 @@ package com.qcadoo.mes.orders.controllers;
 import com.qcadoo.mes.orders.controllers.requests.OrderCreationRequest;
 import com.qcadoo.mes.orders.controllers.responses.OrderCreationResponse;
 
+import java.util.List;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
@@ -29,4 +31,10 @@ public class OrdersApiController {
         return orderCreationService.createOrder(orderCreationRequest);
 
     }
+
+    @ResponseBody
+    @RequestMapping(value = "/orders", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<OrderCreationResponse> saveOrders(@RequestBody List<OrderCreationRequest> orderCreationRequests) {
+        return orderCreationService.createOrders(orderCreationRequests);
+    }
 }
@@ -12,6 +12,7 @@ import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
@@ -24,6 +25,11 @@ public class DashboardKanbanDataProvider {
 
     public static final String L_ORDER_ID = "orderId";
 
+    private static final RowMapper<OrderHolder> ORDER_ROW_MAPPER = BeanPropertyRowMapper.newInstance(OrderHolder.class);
+
+    private static final RowMapper<OperationalTaskHolder> OPERATIONAL_TASK_ROW_MAPPER = BeanPropertyRowMapper
+            .newInstance(OperationalTaskHolder.class);
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
@@ -32,7 +38,7 @@ public class DashboardKanbanDataProvider {
 
         params.put(L_STATES, Sets.newHashSet(OrderStateStringValues.ACCEPTED, OrderStateStringValues.INTERRUPTED));
 
-        return jdbcTemplate.query(getOrdersQuery(), params, new BeanPropertyRowMapper(OrderHolder.class));
+        return jdbcTemplate.query(getOrdersQuery(), params, ORDER_ROW_MAPPER);
     }
 
     public List<OrderHolder> getOrdersInProgress() {
@@ -40,7 +46,7 @@ public class DashboardKanbanDataProvider {
 
         params.put(L_STATES, Sets.newHashSet(OrderStateStringValues.IN_PROGRESS));
 
-        return jdbcTemplate.query(getOrdersQuery(), params, new BeanPropertyRowMapper(OrderHolder.class));
+        return jdbcTemplate.query(getOrdersQuery(), params, ORDER_ROW_MAPPER);
     }
 
     public List<OrderHolder> getOrdersCompleted() {
@@ -48,7 +54,7 @@ public class DashboardKanbanDataProvider {
 
         params.put(L_STATES, Sets.newHashSet(OrderStateStringValues.COMPLETED));
 
-        return jdbcTemplate.query(getOrdersQuery(), params, new BeanPropertyRowMapper(OrderHolder.class));
+        return jdbcTemplate.query(getOrdersQuery(), params, ORDER_ROW_MAPPER);
     }
 
     public OrderHolder getOrder(Long orderId) {
@@ -56,7 +62,7 @@ public class DashboardKanbanDataProvider {
 
         params.put(L_ID, orderId);
 
-        return (OrderHolder) jdbcTemplate.queryForObject(getOrderQuery(), params, new BeanPropertyRowMapper(OrderHolder.class));
+        return jdbcTemplate.queryForObject(getOrderQuery(), params, ORDER_ROW_MAPPER);
     }
 
     private String getOrderQueryProjections() {
@@ -95,7 +101,7 @@ public class DashboardKanbanDataProvider {
                 Sets.newHashSet(OperationalTaskStateStringValues.FINISHED));
         params.put(L_ORDER_ID, orderId);
 
-        return jdbcTemplate.query(getOperationalTasksQuery(additionalRestrictions, false), params, new BeanPropertyRowMapper(OperationalTaskHolder.class));
+        return jdbcTemplate.query(getOperationalTasksQuery(additionalRestrictions, false), params, OPERATIONAL_TASK_ROW_MAPPER);
     }
 
     public List<OperationalTaskHolder> getOperationalTasksPending() {
@@ -106,7 +112,7 @@ public class DashboardKanbanDataProvider {
         params.put(L_STATES,
                 Sets.newHashSet(OperationalTaskStateStringValues.PENDING, OperationalTaskStateStringValues.STARTED));
 
-        return jdbcTemplate.query(getOperationalTasksQuery(additionalRestrictions, true), params, new BeanPropertyRowMapper(OperationalTaskHolder.class));
+        return jdbcTemplate.query(getOperationalTasksQuery(additionalRestrictions, true), params, OPERATIONAL_TASK_ROW_MAPPER);
     }
 
     public List<OperationalTaskHolder> getOperationalTasksInProgress() {
@@ -117,7 +123,7 @@ public class DashboardKanbanDataProvider {
         params.put(L_STATES,
                 Sets.newHashSet(OperationalTaskStateStringValues.STARTED));
 
-        return jdbcTemplate.query(getOperationalTasksQuery(additionalRestrictions, true), params, new BeanPropertyRowMapper(OperationalTaskHolder.class));
+        return jdbcTemplate.query(getOperationalTasksQuery(additionalRestrictions, true), params, OPERATIONAL_TASK_ROW_MAPPER);
     }
 
     public List<OperationalTaskHolder> getOperationalTasksCompleted() {
@@ -128,7 +134,7 @@ public class DashboardKanbanDataProvider {
         params.put(L_STATES,
                 Sets.newHashSet(OperationalTaskStateStringValues.STARTED, OperationalTaskStateStringValues.FINISHED));
 
-        return jdbcTemplate.query(getOperationalTasksQuery(additionalRestrictions, true), params, new BeanPropertyRowMapper(OperationalTaskHolder.class));
+        return jdbcTemplate.query(getOperationalTasksQuery(additionalRestrictions, true), params, OPERATIONAL_TASK_ROW_MAPPER);
     }
 
     private String getOperationalTaskQueryProjections() {
@@ -0,0 +1,219 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orders.controllers.dataProvider;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.google.common.collect.ImmutableList;
+import com.qcadoo.mes.orders.controllers.dto.OperationalTaskHolder;
+import com.qcadoo.mes.orders.controllers.dto.OrderHolder;
+
+/**
+ * Holds dashboard kanban columns in memory, so screens polling the dashboard share one query per column. Columns are reloaded
+ * on the next request after orders or operational tasks are saved, on a new day, and after {@link #L_MAX_AGE} at the latest.
+ */
+@Service
+public class DashboardKanbanSnapshotService {
+
+    private static final long L_MAX_AGE = 60000L;
+
+    private static final String L_ORDERS_INVALIDATION_KEY = DashboardKanbanSnapshotService.class.getName() + ".orders";
+
+    private static final String L_OPERATIONAL_TASKS_INVALIDATION_KEY = DashboardKanbanSnapshotService.class.getName()
+            + ".operationalTasks";
+
+    @Autowired
+    private DashboardKanbanDataProvider dashboardKanbanDataProvider;
+
+    private final KanbanColumn<OrderHolder> ordersPending = new KanbanColumn<>(
+            () -> dashboardKanbanDataProvider.getOrdersPending());
+
+    private final KanbanColumn<OrderHolder> ordersInProgress = new KanbanColumn<>(
+            () -> dashboardKanbanDataProvider.getOrdersInProgress());
+
+    private final KanbanColumn<OrderHolder> ordersCompleted = new KanbanColumn<>(
+            () -> dashboardKanbanDataProvider.getOrdersCompleted());
+
+    private final KanbanColumn<OperationalTaskHolder> operationalTasksPending = new KanbanColumn<>(
+            () -> dashboardKanbanDataProvider.getOperationalTasksPending());
+
+    private final KanbanColumn<OperationalTaskHolder> operationalTasksInProgress = new KanbanColumn<>(
+            () -> dashboardKanbanDataProvider.getOperationalTasksInProgress());
+
+    private final KanbanColumn<OperationalTaskHolder> operationalTasksCompleted = new KanbanColumn<>(
+            () -> dashboardKanbanDataProvider.getOperationalTasksCompleted());
+
+    private final List<KanbanColumn<?>> ordersColumns = ImmutableList.of(ordersPending, ordersInProgress, ordersCompleted);
+
+    private final List<KanbanColumn<?>> operationalTasksColumns = ImmutableList.of(operationalTasksPending,
+            operationalTasksInProgress, operationalTasksCompleted);
+
+    public KanbanColumnSnapshot<OrderHolder> getOrdersPending() {
+        return ordersPending.get();
+    }
+
+    public KanbanColumnSnapshot<OrderHolder> getOrdersInProgress() {
+        return ordersInProgress.get();
+    }
+
+    public KanbanColumnSnapshot<OrderHolder> getOrdersCompleted() {
+        return ordersCompleted.get();
+    }
+
+    public KanbanColumnSnapshot<OperationalTaskHolder> getOperationalTasksPending() {
+        return operationalTasksPending.get();
+    }
+
+    public KanbanColumnSnapshot<OperationalTaskHolder> getOperationalTasksInProgress() {
+        return operationalTasksInProgress.get();
+    }
+
+    public KanbanColumnSnapshot<OperationalTaskHolder> getOperationalTasksCompleted() {
+        return operationalTasksCompleted.get();
+    }
+
+    /**
+     * Marks order columns to be reloaded once the current transaction commits.
+     */
+    public void invalidateOrders() {
+        invalidateAfterCommit(L_ORDERS_INVALIDATION_KEY, ordersColumns);
+    }
+
+    /**
+     * Marks operational task columns to be reloaded once the current transaction commits.
+     */
+    public void invalidateOperationalTasks() {
+        invalidateAfterCommit(L_OPERATIONAL_TASKS_INVALIDATION_KEY, operationalTasksColumns);
+    }
+
+    private void invalidateAfterCommit(final String invalidationKey, final List<KanbanColumn<?>> columns) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            columns.forEach(KanbanColumn::invalidate);
+
+            return;
+        }
+
+        if (TransactionSynchronizationManager.hasResource(invalidationKey)) {
+            return;
+        }
+
+        TransactionSynchronizationManager.bindResource(invalidationKey, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            @Override
+            public void afterCompletion(final int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(invalidationKey);
+
+                if (STATUS_COMMITTED == status) {
+                    columns.forEach(KanbanColumn::invalidate);
+                }
+            }
+        });
+    }
+
+    private static final class KanbanColumn<T> {
+
+        private final Supplier<List<T>> loader;
+
+        private volatile KanbanColumnSnapshot<T> snapshot;
+
+        private volatile boolean stale = true;
+
+        private KanbanColumn(final Supplier<List<T>> loader) {
+            this.loader = loader;
+        }
+
+        private KanbanColumnSnapshot<T> get() {
+            KanbanColumnSnapshot<T> current = snapshot;
+
+            if (stale || current.isOutdated()) {
+                synchronized (this) {
+                    current = snapshot;
+
+                    if (stale || current.isOutdated()) {
+                        stale = false;
+
+                        try {
+                            current = new KanbanColumnSnapshot<>(loader.get());
+                        } catch (RuntimeException e) {
+                            stale = true;
+
+                            throw e;
+                        }
+
+                        snapshot = current;
+                    }
+                }
+            }
+
+            return current;
+        }
+
+        private void invalidate() {
+            stale = true;
+        }
+
+    }
+
+    public static final class KanbanColumnSnapshot<T> {
+
+        private final List<T> rows;
+
+        private final String eTag;
+
+        private final LocalDate loadDate = LocalDate.now();
+
+        private final long loadTime = System.currentTimeMillis();
+
+        private KanbanColumnSnapshot(final List<T> rows) {
+            this.rows = Collections.unmodifiableList(rows);
+            this.eTag = "\"" + Integer.toHexString(rows.hashCode()) + "\"";
+        }
+
+        private boolean isOutdated() {
+            return !loadDate.equals(LocalDate.now()) || System.currentTimeMillis() - loadTime > L_MAX_AGE;
+        }
+
+        public List<T> getRows() {
+            return rows;
+        }
+
+        /**
+         * @return entity tag derived from the rows, so it only changes when the column content does
+         */
+        public String getETag() {
+            return eTag;
+        }
+
+    }
+
+}
@@ -29,7 +29,7 @@ public class OrderCreationResponse {
     }
 
     public OrderCreationResponse(String message) {
-        this.code = code;
+        this.code = StatusCode.ERROR;
         this.message = message;
     }
 
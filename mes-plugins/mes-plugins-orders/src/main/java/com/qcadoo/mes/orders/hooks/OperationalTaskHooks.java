@@ -7,6 +7,7 @@ import com.qcadoo.mes.newstates.StateExecutorService;
 import com.qcadoo.mes.orders.OperationalTasksService;
 import com.qcadoo.mes.orders.constants.OperationalTaskFields;
 import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.controllers.dataProvider.DashboardKanbanSnapshotService;
 import com.qcadoo.mes.orders.states.OperationalTasksServiceMarker;
 import com.qcadoo.mes.orders.states.constants.OperationalTaskStateStringValues;
 import com.qcadoo.mes.technologies.constants.OperationFields;
@@ -23,6 +24,9 @@ public class OperationalTaskHooks {
     @Autowired
     private OperationalTasksService operationalTasksService;
 
+    @Autowired
+    private DashboardKanbanSnapshotService dashboardKanbanSnapshotService;
+
     public void onCopy(final DataDefinition operationalTaskDD, final Entity operationalTask) {
         setInitialState(operationalTask);
     }
@@ -34,6 +38,8 @@ public class OperationalTaskHooks {
     public void onSave(final DataDefinition operationalTaskDD, final Entity operationalTask) {
         fillNameAndDescription(operationalTask);
         fillProductionLine(operationalTask);
+
+        dashboardKanbanSnapshotService.invalidateOperationalTasks();
     }
 
     private void fillNameAndDescription(final Entity operationalTask) {
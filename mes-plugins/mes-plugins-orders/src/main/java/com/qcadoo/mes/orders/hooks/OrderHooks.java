@@ -39,6 +39,7 @@ import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.orders.constants.OrderStartDateBasedOn;
 import com.qcadoo.mes.orders.constants.OrdersConstants;
 import com.qcadoo.mes.orders.constants.ParameterFieldsO;
+import com.qcadoo.mes.orders.controllers.dataProvider.DashboardKanbanSnapshotService;
 import com.qcadoo.mes.orders.states.constants.OrderState;
 import com.qcadoo.mes.orders.states.constants.OrderStateChangeDescriber;
 import com.qcadoo.mes.orders.states.constants.OrderStateChangeFields;
@@ -116,6 +117,9 @@ public class OrderHooks {
     @Autowired
     private ShiftsService shiftsService;
 
+    @Autowired
+    private DashboardKanbanSnapshotService dashboardKanbanSnapshotService;
+
     public boolean validatesWith(final DataDefinition orderDD, final Entity order) {
         Entity parameter = parameterService.getParameter();
 
@@ -181,6 +185,8 @@ public class OrderHooks {
         setRemainingQuantity(order);
         setAdditionalFields(order);
         changedProductionLineInOperationalTasksWhenChanged(orderDD, order);
+
+        dashboardKanbanSnapshotService.invalidateOrders();
     }
 
     private void changedProductionLineInOperationalTasksWhenChanged(final DataDefinition orderDD, final Entity order) {
@@ -1,8 +1,13 @@
 package com.qcadoo.mes.orders.hooks;
 
+import java.util.Objects;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.qcadoo.mes.orders.criteriaModifiers.ScheduleOrderCriteriaModifier;
+import com.qcadoo.mes.orders.schedule.ScheduleAssignmentJobService;
+import com.qcadoo.view.api.ComponentState.MessageType;
 import com.qcadoo.view.api.ViewDefinitionState;
 import com.qcadoo.view.api.components.FormComponent;
 import com.qcadoo.view.api.components.LookupComponent;
@@ -12,12 +17,32 @@ import com.qcadoo.view.constants.QcadooViewConstants;
 @Service
 public class ScheduleDetailsHooks {
 
-
-
     private static final String L_ORDERS_LOOKUP = "ordersLookup";
 
+    @Autowired
+    private ScheduleAssignmentJobService scheduleAssignmentJobService;
+
     public void onBeforeRender(final ViewDefinitionState view) {
         setOrderLookupCriteriaModifier(view);
+        showAssignmentProgress(view);
+    }
+
+    private void showAssignmentProgress(final ViewDefinitionState view) {
+        FormComponent scheduleForm = (FormComponent) view.getComponentByReference(QcadooViewConstants.L_FORM);
+
+        Long scheduleId = scheduleForm.getEntityId();
+
+        if (Objects.nonNull(scheduleId)) {
+            scheduleAssignmentJobService.getProgress(scheduleId).ifPresent(progress -> {
+                if (progress.isFailed()) {
+                    scheduleForm.addMessage("orders.schedule.assignment.failed", MessageType.FAILURE, false,
+                            progress.getFailureMessage());
+                } else {
+                    scheduleForm.addMessage("orders.schedule.assignment.inProgress", MessageType.INFO, false,
+                            String.valueOf(progress.getProcessed()), String.valueOf(progress.getTotal()));
+                }
+            });
+        }
     }
 
     private void setOrderLookupCriteriaModifier(final ViewDefinitionState view) {
@@ -0,0 +1,154 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orders.schedule;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Runs schedule assignments asynchronously on the application task executor, so the generating request returns immediately.
+ * Jobs are submitted after the calling transaction commits, as they read the positions it saved. At most one job per schedule
+ * runs at a time. A failed job keeps its progress with the failure message until the next assignment of the schedule is
+ * submitted.
+ */
+@Service
+public class ScheduleAssignmentJobService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScheduleAssignmentJobService.class);
+
+    @Autowired
+    private ScheduleAssignmentService scheduleAssignmentService;
+
+    private final Map<Long, ScheduleAssignmentProgress> progresses = new ConcurrentHashMap<>();
+
+    /**
+     * @return false if an assignment of given schedule is already queued or running
+     */
+    public boolean submit(final Long scheduleId, final boolean assignWorkstations, final boolean assignWorkers) {
+        ScheduleAssignmentProgress progress = new ScheduleAssignmentProgress();
+
+        if (progresses.merge(scheduleId, progress, (previous, next) -> previous.isFailed() ? next : previous) != progress) {
+            return false;
+        }
+
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        Locale locale = LocaleContextHolder.getLocale();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(int status) {
+                    super.afterCompletion(status);
+
+                    if (STATUS_COMMITTED == status) {
+                        assign(scheduleId, assignWorkstations, assignWorkers, progress, securityContext, locale);
+                    } else {
+                        progresses.remove(scheduleId, progress);
+                    }
+                }
+            });
+        } else {
+            assign(scheduleId, assignWorkstations, assignWorkers, progress, securityContext, locale);
+        }
+
+        return true;
+    }
+
+    @Async
+    public void assign(final Long scheduleId, final boolean assignWorkstations, final boolean assignWorkers,
+            final ScheduleAssignmentProgress progress, final SecurityContext securityContext, final Locale locale) {
+        SecurityContextHolder.setContext(securityContext);
+        LocaleContextHolder.setLocale(locale);
+
+        try {
+            int positions = scheduleAssignmentService.countPositions(scheduleId);
+
+            progress.total.set(assignWorkstations && assignWorkers ? positions * 2 : positions);
+
+            if (assignWorkstations && assignWorkers) {
+                scheduleAssignmentService.assignWorkstationsAndWorkers(scheduleId, progress.processed::set);
+            } else if (assignWorkstations) {
+                scheduleAssignmentService.assignOperationsToWorkstations(scheduleId, progress.processed::set);
+            } else {
+                scheduleAssignmentService.assignWorkersToOperations(scheduleId, progress.processed::set);
+            }
+
+            progresses.remove(scheduleId, progress);
+        } catch (Exception e) {
+            LOG.error("Schedule assignment failed. Schedule id : " + scheduleId, e);
+
+            progress.failureMessage = Optional.ofNullable(e.getMessage()).orElse(e.getClass().getSimpleName());
+        } finally {
+            SecurityContextHolder.clearContext();
+            LocaleContextHolder.resetLocaleContext();
+        }
+    }
+
+    public Optional<ScheduleAssignmentProgress> getProgress(final Long scheduleId) {
+        return Optional.ofNullable(progresses.get(scheduleId));
+    }
+
+    public static class ScheduleAssignmentProgress {
+
+        private final AtomicInteger processed = new AtomicInteger();
+
+        private final AtomicInteger total = new AtomicInteger();
+
+        private volatile String failureMessage;
+
+        public int getProcessed() {
+            return processed.get();
+        }
+
+        public int getTotal() {
+            return total.get();
+        }
+
+        public boolean isFailed() {
+            return Objects.nonNull(failureMessage);
+        }
+
+        public String getFailureMessage() {
+            return failureMessage;
+        }
+
+    }
+
+}
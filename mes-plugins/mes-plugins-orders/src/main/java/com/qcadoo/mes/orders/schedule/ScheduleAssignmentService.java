@@ -0,0 +1,755 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orders.schedule;
+
+import static java.util.Map.Entry.comparingByValue;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+import org.joda.time.DateTime;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.orders.constants.ScheduleFields;
+import com.qcadoo.mes.orders.constants.ScheduleSortOrder;
+import com.qcadoo.mes.orders.constants.ScheduleWorkerAssignCriterion;
+import com.qcadoo.mes.orders.constants.ScheduleWorkstationAssignCriterion;
+import com.qcadoo.mes.productionLines.constants.ProductionLinesConstants;
+import com.qcadoo.mes.technologies.constants.AssignedToOperation;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Assigns workstations and workers to schedule positions. Positions, candidate workstations, staff skills and horizons of
+ * existing operational tasks are loaded with a few queries up front, the assignment itself runs in memory and positions are
+ * written back with one batch update per step. Results are the same as of assigning position by position.
+ */
+@Service
+public class ScheduleAssignmentService {
+
+    private static final String L_SCHEDULE_ID = "scheduleId";
+
+    private static final String L_IDS = "ids";
+
+    private static final String L_START_TIME = "startTime";
+
+    private static final String L_REJECTED = "04rejected";
+
+    private static final String L_POSITIONS_QUERY = "SELECT sp.id, sp.order_id AS orderId, "
+            + "sp.technologyoperationcomponent_id AS tocId, toc.parent_id AS parentTocId, toc.operation_id AS operationId, "
+            + "toc.assignedtooperation AS assignedToOperation, toc.workstationtype_id AS workstationTypeId, "
+            + "sp.machineworktime AS machineWorkTime, sp.additionaltime AS additionalTime, sp.starttime AS startTime, "
+            + "sp.endtime AS endTime, sp.workstation_id AS workstationId "
+            + "FROM orders_scheduleposition sp JOIN technologies_technologyoperationcomponent toc "
+            + "ON sp.technologyoperationcomponent_id = toc.id WHERE sp.schedule_id = :scheduleId ";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private ShiftsService shiftsService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Assigns workstations and then workers to positions of given schedule in one transaction.
+     *
+     * @param progressListener
+     *            notified with the number of positions processed so far
+     */
+    @Transactional
+    public void assignWorkstationsAndWorkers(final Long scheduleId, final IntConsumer progressListener) {
+        assignOperationsToWorkstations(scheduleId, progressListener);
+
+        int workstationPositions = countPositions(scheduleId);
+
+        assignWorkersToOperations(scheduleId, processed -> progressListener.accept(workstationPositions + processed));
+    }
+
+    public int countPositions(final Long scheduleId) {
+        Integer count = jdbcTemplate.queryForObject("SELECT count(*) FROM orders_scheduleposition WHERE schedule_id = :scheduleId",
+                Collections.singletonMap(L_SCHEDULE_ID, scheduleId), Integer.class);
+
+        return Objects.isNull(count) ? 0 : count;
+    }
+
+    @Transactional
+    public void assignOperationsToWorkstations(final Long scheduleId, final IntConsumer progressListener) {
+        Entity schedule = dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_SCHEDULE)
+                .get(scheduleId);
+        Date scheduleStartTime = schedule.getDateField(ScheduleFields.START_TIME);
+        boolean shortestTime = ScheduleWorkstationAssignCriterion.SHORTEST_TIME.getStringValue()
+                .equals(schedule.getStringField(ScheduleFields.WORKSTATION_ASSIGN_CRITERION));
+
+        List<PlanPosition> positions = getPositionsForWorkstations(schedule);
+
+        ListMultimap<Long, PlanWorkstation> workstationsByTocs = getWorkstationsByTocs(positions);
+        ListMultimap<Long, PlanWorkstation> workstationsByTypes = getWorkstationsByTypes(positions);
+        ListMultimap<ChildrenKey, PlanPosition> children = ArrayListMultimap.create();
+
+        Set<Long> workstationIds = Sets.newHashSet();
+
+        workstationsByTocs.values().forEach(workstation -> workstationIds.add(workstation.id));
+        workstationsByTypes.values().forEach(workstation -> workstationIds.add(workstation.id));
+
+        for (PlanPosition position : positions) {
+            if (Objects.nonNull(position.parentTocId)) {
+                children.put(new ChildrenKey(position.orderId, position.parentTocId), position);
+            }
+        }
+
+        Map<Long, Date> workstationsHorizons = getWorkstationsHorizons(workstationIds, scheduleStartTime);
+        ProductionLinesCalendar calendar = new ProductionLinesCalendar();
+
+        Map<Long, Date> workstationsFinishDates = Maps.newHashMap();
+        Set<Long> ordersToAvoid = Sets.newHashSet();
+        List<PlanPosition> assignedPositions = Lists.newArrayList();
+
+        int processed = 0;
+
+        for (PlanPosition position : positions) {
+            progressListener.accept(processed++);
+
+            if (ordersToAvoid.contains(position.orderId)) {
+                continue;
+            }
+
+            List<PlanWorkstation> workstations = getWorkstationsFromTOC(position, workstationsByTocs, workstationsByTypes);
+
+            if (workstations.isEmpty() || position.machineWorkTime == 0) {
+                ordersToAvoid.add(position.orderId);
+
+                continue;
+            }
+
+            Map<Long, Date> operationWorkstationsFinishDates = Maps.newHashMap();
+            Map<Long, Date> operationWorkstationsStartDates = Maps.newHashMap();
+
+            Date childrenFinishDate = getChildrenFinishDate(children.get(new ChildrenKey(position.orderId, position.tocId)));
+
+            for (PlanWorkstation workstation : workstations) {
+                Date finishDate = workstationsFinishDates.get(workstation.id);
+
+                if (Objects.isNull(finishDate)) {
+                    finishDate = workstationsHorizons.get(workstation.id);
+
+                    if (Objects.nonNull(finishDate)) {
+                        workstationsFinishDates.put(workstation.id, finishDate);
+                    }
+                }
+                if (Objects.isNull(finishDate)) {
+                    finishDate = scheduleStartTime;
+                }
+                if (Objects.nonNull(childrenFinishDate) && childrenFinishDate.after(finishDate)) {
+                    finishDate = childrenFinishDate;
+                }
+
+                Date newStartDate = calendar.getNearestWorkingDate(finishDate, workstation.productionLineId);
+                Date newFinishDate = calendar.findDateTo(newStartDate, position.machineWorkTime, workstation.productionLineId);
+
+                operationWorkstationsStartDates.put(workstation.id, newStartDate);
+                operationWorkstationsFinishDates.put(workstation.id, newFinishDate);
+            }
+
+            Entry<Long, Date> chosenEntry;
+
+            if (shortestTime) {
+                chosenEntry = operationWorkstationsFinishDates.entrySet().stream().min(comparingByValue()).get();
+            } else if (workstationsFinishDates.isEmpty()) {
+                chosenEntry = operationWorkstationsFinishDates.entrySet().iterator().next();
+            } else {
+                chosenEntry = operationWorkstationsFinishDates.entrySet().stream()
+                        .filter(entry -> workstationsFinishDates.containsKey(entry.getKey())).findFirst()
+                        .orElse(operationWorkstationsFinishDates.entrySet().iterator().next());
+            }
+
+            workstationsFinishDates.put(chosenEntry.getKey(), chosenEntry.getValue());
+
+            position.workstationId = chosenEntry.getKey();
+            position.startTime = operationWorkstationsStartDates.get(chosenEntry.getKey());
+            position.endTime = chosenEntry.getValue();
+
+            assignedPositions.add(position);
+        }
+
+        progressListener.accept(processed);
+
+        updatePositionsWorkstations(assignedPositions);
+    }
+
+    @Transactional
+    public void assignWorkersToOperations(final Long scheduleId, final IntConsumer progressListener) {
+        Entity schedule = dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_SCHEDULE)
+                .get(scheduleId);
+        Date scheduleStartTime = schedule.getDateField(ScheduleFields.START_TIME);
+        String scheduleWorkerAssignCriterion = schedule.getStringField(ScheduleFields.WORKER_ASSIGN_CRITERION);
+        boolean defaultOperator = ScheduleWorkerAssignCriterion.WORKSTATION_DEFAULT_OPERATOR.getStringValue()
+                .equals(scheduleWorkerAssignCriterion);
+        boolean latestFinished = ScheduleWorkerAssignCriterion.WORKSTATION_LAST_OPERATOR_LATEST_FINISHED.getStringValue()
+                .equals(scheduleWorkerAssignCriterion);
+
+        List<PlanPosition> positions = jdbcTemplate.query(L_POSITIONS_QUERY + "ORDER BY sp.starttime ASC",
+                Collections.singletonMap(L_SCHEDULE_ID, scheduleId), this::mapPosition);
+
+        Set<Long> workstationIds = Sets.newHashSet();
+
+        positions.stream().map(position -> position.workstationId).filter(Objects::nonNull).forEach(workstationIds::add);
+
+        Map<Long, Long> workstationsDefaultWorkers = Maps.newHashMap();
+        Map<Long, Long> workstationsLastWorkersFromTasks = Maps.newHashMap();
+        Map<Long, List<Long>> operationsWorkers = Maps.newHashMap();
+        Map<Long, Date> workersHorizons = Maps.newHashMap();
+
+        if (defaultOperator) {
+            workstationsDefaultWorkers = getWorkstationsDefaultWorkers(workstationIds);
+        } else {
+            workstationsLastWorkersFromTasks = getWorkstationsLastWorkers(workstationIds);
+            operationsWorkers = getOperationsWorkers(positions);
+
+            Set<Long> workerIds = Sets.newHashSet();
+
+            operationsWorkers.values().forEach(workerIds::addAll);
+
+            workersHorizons = getWorkersHorizons(workerIds);
+        }
+
+        Map<Long, Date> workersFinishDates = Maps.newHashMap();
+        Map<Long, Long> workstationLastWorkers = Maps.newHashMap();
+        List<PlanPosition> processedPositions = Lists.newArrayList();
+
+        int processed = 0;
+
+        for (PlanPosition position : positions) {
+            progressListener.accept(processed++);
+
+            Long workstationId = position.workstationId;
+
+            if (position.machineWorkTime == 0 || Objects.isNull(workstationId)) {
+                continue;
+            }
+
+            if (defaultOperator) {
+                position.staffId = workstationsDefaultWorkers.get(workstationId);
+            } else {
+                Map<Long, Date> operationWorkersFinishDates = Maps.newHashMap();
+
+                for (Long workerId : operationsWorkers.getOrDefault(position.operationId, Collections.emptyList())) {
+                    Date finishDate = workersFinishDates.get(workerId);
+
+                    if (Objects.isNull(finishDate)) {
+                        finishDate = workersHorizons.get(workerId);
+
+                        if (Objects.nonNull(finishDate)) {
+                            workersFinishDates.put(workerId, finishDate);
+                        }
+                    }
+                    if (Objects.isNull(finishDate)) {
+                        finishDate = scheduleStartTime;
+                    }
+                    if (finishDate.compareTo(position.startTime) <= 0) {
+                        operationWorkersFinishDates.put(workerId, finishDate);
+                    }
+                }
+
+                if (Objects.isNull(workstationLastWorkers.get(workstationId))) {
+                    workstationLastWorkers.put(workstationId, workstationsLastWorkersFromTasks.get(workstationId));
+                }
+
+                Long workstationLastWorkerId = workstationLastWorkers.get(workstationId);
+
+                Optional<Entry<Long, Date>> chosenEntry = operationWorkersFinishDates.entrySet().stream()
+                        .filter(entry -> entry.getKey().equals(workstationLastWorkerId)).findFirst();
+
+                if (!chosenEntry.isPresent()) {
+                    if (latestFinished) {
+                        chosenEntry = operationWorkersFinishDates.entrySet().stream().max(comparingByValue());
+                    } else {
+                        chosenEntry = operationWorkersFinishDates.entrySet().stream().min(comparingByValue());
+                    }
+                }
+
+                position.staffId = null;
+
+                if (chosenEntry.isPresent()) {
+                    Long workerId = chosenEntry.get().getKey();
+
+                    workersFinishDates.put(workerId, position.endTime);
+                    workstationLastWorkers.put(workstationId, workerId);
+
+                    position.staffId = workerId;
+                }
+            }
+
+            processedPositions.add(position);
+        }
+
+        progressListener.accept(processed);
+
+        updatePositionsWorkers(processedPositions);
+    }
+
+    private List<PlanPosition> getPositionsForWorkstations(final Entity schedule) {
+        StringBuilder query = new StringBuilder(L_POSITIONS_QUERY);
+
+        query.append("ORDER BY ");
+        query.append("string_to_array(regexp_replace(rtrim(toc.nodenumber, '.'), '[^0-9.]', '0', 'g'), '.')::int[] desc, ");
+
+        if (ScheduleSortOrder.DESCENDING.getStringValue().equals(schedule.getStringField(ScheduleFields.SORT_ORDER))) {
+            query.append("sp.machineworktime desc");
+        } else {
+            query.append("sp.machineworktime asc");
+        }
+
+        return jdbcTemplate.query(query.toString(), Collections.singletonMap(L_SCHEDULE_ID, schedule.getId()),
+                this::mapPosition);
+    }
+
+    private PlanPosition mapPosition(final ResultSet rs, final int rowNum) throws SQLException {
+        PlanPosition position = new PlanPosition();
+
+        position.id = rs.getLong("id");
+        position.orderId = rs.getLong("orderId");
+        position.tocId = rs.getLong("tocId");
+        position.parentTocId = getLong(rs, "parentTocId");
+        position.operationId = getLong(rs, "operationId");
+        position.assignedToWorkstations = AssignedToOperation.WORKSTATIONS.getStringValue()
+                .equals(rs.getString("assignedToOperation"));
+        position.workstationTypeId = getLong(rs, "workstationTypeId");
+        position.machineWorkTime = rs.getInt("machineWorkTime");
+        position.additionalTime = rs.getInt("additionalTime");
+        position.startTime = rs.getTimestamp(L_START_TIME);
+        position.endTime = rs.getTimestamp("endTime");
+        position.workstationId = getLong(rs, "workstationId");
+
+        return position;
+    }
+
+    private Long getLong(final ResultSet rs, final String column) throws SQLException {
+        long value = rs.getLong(column);
+
+        return rs.wasNull() ? null : value;
+    }
+
+    private List<PlanWorkstation> getWorkstationsFromTOC(final PlanPosition position,
+            final ListMultimap<Long, PlanWorkstation> workstationsByTocs,
+            final ListMultimap<Long, PlanWorkstation> workstationsByTypes) {
+        if (position.assignedToWorkstations) {
+            return workstationsByTocs.get(position.tocId);
+        } else if (Objects.isNull(position.workstationTypeId)) {
+            return Collections.emptyList();
+        } else {
+            return workstationsByTypes.get(position.workstationTypeId);
+        }
+    }
+
+    private Date getChildrenFinishDate(final List<PlanPosition> children) {
+        Date childrenFinishDate = null;
+
+        for (PlanPosition child : children) {
+            if (Objects.nonNull(child.endTime)) {
+                Date childEndTimeWithAdditionalTime = Date.from(child.endTime.toInstant().plusSeconds(child.additionalTime));
+
+                if (Objects.isNull(childrenFinishDate) || childEndTimeWithAdditionalTime.after(childrenFinishDate)) {
+                    childrenFinishDate = childEndTimeWithAdditionalTime;
+                }
+            }
+        }
+
+        return childrenFinishDate;
+    }
+
+    private ListMultimap<Long, PlanWorkstation> getWorkstationsByTocs(final List<PlanPosition> positions) {
+        ListMultimap<Long, PlanWorkstation> workstationsByTocs = ArrayListMultimap.create();
+
+        Set<Long> tocIds = Sets.newHashSet();
+
+        positions.stream().filter(position -> position.assignedToWorkstations).forEach(position -> tocIds.add(position.tocId));
+
+        if (tocIds.isEmpty()) {
+            return workstationsByTocs;
+        }
+
+        String query = "SELECT jtw.technologyoperationcomponent_id AS groupId, w.id, w.productionline_id AS productionLineId "
+                + "FROM jointable_technologyoperationcomponent_workstation jtw "
+                + "JOIN basic_workstation w ON w.id = jtw.workstation_id "
+                + "WHERE jtw.technologyoperationcomponent_id IN (:ids) ORDER BY w.id";
+
+        jdbcTemplate.query(query, Collections.singletonMap(L_IDS, tocIds),
+                rs -> {
+                    workstationsByTocs.put(rs.getLong("groupId"), mapWorkstation(rs));
+                });
+
+        return workstationsByTocs;
+    }
+
+    private ListMultimap<Long, PlanWorkstation> getWorkstationsByTypes(final List<PlanPosition> positions) {
+        ListMultimap<Long, PlanWorkstation> workstationsByTypes = ArrayListMultimap.create();
+
+        Set<Long> workstationTypeIds = Sets.newHashSet();
+
+        positions.stream().filter(position -> !position.assignedToWorkstations)
+                .map(position -> position.workstationTypeId).filter(Objects::nonNull).forEach(workstationTypeIds::add);
+
+        if (workstationTypeIds.isEmpty()) {
+            return workstationsByTypes;
+        }
+
+        String query = "SELECT w.workstationtype_id AS groupId, w.id, w.productionline_id AS productionLineId "
+                + "FROM basic_workstation w WHERE w.workstationtype_id IN (:ids) ORDER BY w.id";
+
+        jdbcTemplate.query(query, Collections.singletonMap(L_IDS, workstationTypeIds),
+                rs -> {
+                    workstationsByTypes.put(rs.getLong("groupId"), mapWorkstation(rs));
+                });
+
+        return workstationsByTypes;
+    }
+
+    private PlanWorkstation mapWorkstation(final ResultSet rs) throws SQLException {
+        PlanWorkstation workstation = new PlanWorkstation();
+
+        workstation.id = rs.getLong("id");
+        workstation.productionLineId = getLong(rs, "productionLineId");
+
+        return workstation;
+    }
+
+    private Map<Long, Date> getWorkstationsHorizons(final Set<Long> workstationIds, final Date scheduleStartTime) {
+        Map<Long, Date> horizons = Maps.newHashMap();
+
+        if (workstationIds.isEmpty()) {
+            return horizons;
+        }
+
+        String query = "SELECT ot.workstation_id AS id, max(ot.finishdate) AS finishDate FROM orders_operationaltask ot "
+                + "WHERE ot.workstation_id IN (:ids) AND ot.state <> :rejected AND ot.finishdate > :startTime "
+                + "GROUP BY ot.workstation_id";
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource(L_IDS, workstationIds).addValue("rejected", L_REJECTED)
+                .addValue(L_START_TIME, scheduleStartTime);
+
+        jdbcTemplate.query(query, parameters, rs -> {
+            horizons.put(rs.getLong("id"), rs.getTimestamp("finishDate"));
+        });
+
+        return horizons;
+    }
+
+    private Map<Long, Date> getWorkersHorizons(final Set<Long> workerIds) {
+        Map<Long, Date> horizons = Maps.newHashMap();
+
+        if (workerIds.isEmpty()) {
+            return horizons;
+        }
+
+        String query = "SELECT ot.staff_id AS id, max(ot.finishdate) AS finishDate FROM orders_operationaltask ot "
+                + "WHERE ot.staff_id IN (:ids) AND ot.state <> :rejected GROUP BY ot.staff_id";
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource(L_IDS, workerIds).addValue("rejected", L_REJECTED);
+
+        jdbcTemplate.query(query, parameters, rs -> {
+            Date finishDate = rs.getTimestamp("finishDate");
+
+            if (Objects.nonNull(finishDate)) {
+                horizons.put(rs.getLong("id"), finishDate);
+            }
+        });
+
+        return horizons;
+    }
+
+    private Map<Long, Long> getWorkstationsDefaultWorkers(final Set<Long> workstationIds) {
+        Map<Long, Long> defaultWorkers = Maps.newHashMap();
+
+        if (workstationIds.isEmpty()) {
+            return defaultWorkers;
+        }
+
+        jdbcTemplate.query("SELECT w.id, w.staff_id AS staffId FROM basic_workstation w WHERE w.id IN (:ids)",
+                Collections.singletonMap(L_IDS, workstationIds), rs -> {
+                    defaultWorkers.put(rs.getLong("id"), getLong(rs, "staffId"));
+                });
+
+        return defaultWorkers;
+    }
+
+    private Map<Long, Long> getWorkstationsLastWorkers(final Set<Long> workstationIds) {
+        Map<Long, Long> lastWorkers = Maps.newHashMap();
+
+        if (workstationIds.isEmpty()) {
+            return lastWorkers;
+        }
+
+        String query = "SELECT DISTINCT ON (ot.workstation_id) ot.workstation_id AS id, ot.staff_id AS staffId "
+                + "FROM orders_operationaltask ot WHERE ot.workstation_id IN (:ids) AND ot.staff_id IS NOT NULL "
+                + "AND ot.state <> :rejected ORDER BY ot.workstation_id, ot.finishdate DESC";
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource(L_IDS, workstationIds).addValue("rejected", L_REJECTED);
+
+        jdbcTemplate.query(query, parameters, rs -> {
+            lastWorkers.put(rs.getLong("id"), rs.getLong("staffId"));
+        });
+
+        return lastWorkers;
+    }
+
+    private Map<Long, List<Long>> getOperationsWorkers(final List<PlanPosition> positions) {
+        Set<Long> operationIds = Sets.newHashSet();
+
+        positions.stream().filter(position -> Objects.nonNull(position.workstationId) && position.machineWorkTime != 0)
+                .map(position -> position.operationId).filter(Objects::nonNull).forEach(operationIds::add);
+
+        Map<Long, List<Long>> operationsWorkers = Maps.newHashMap();
+
+        if (operationIds.isEmpty()) {
+            return operationsWorkers;
+        }
+
+        ListMultimap<Long, RequiredSkill> operationsSkills = ArrayListMultimap.create();
+
+        jdbcTemplate.query(
+                "SELECT os.operation_id AS operationId, os.skill_id AS skillId, os.requiredlevel AS level "
+                        + "FROM technologies_operationskill os WHERE os.operation_id IN (:ids)",
+                Collections.singletonMap(L_IDS, operationIds), rs -> {
+                    operationsSkills.put(rs.getLong("operationId"), new RequiredSkill(rs.getLong("skillId"), rs.getInt("level")));
+                });
+
+        List<Long> workerIds = jdbcTemplate.queryForList("SELECT id FROM basic_staff ORDER BY id", Collections.emptyMap(),
+                Long.class);
+
+        Map<Long, Map<Long, Integer>> skillsWorkersLevels = getSkillsWorkersLevels(operationsSkills.values());
+
+        for (Long operationId : operationIds) {
+            List<RequiredSkill> requiredSkills = operationsSkills.get(operationId);
+            List<Long> operationWorkers = Lists.newArrayList();
+
+            for (Long workerId : workerIds) {
+                if (requiredSkills.stream().allMatch(requiredSkill -> requiredSkill.isMetBy(
+                        skillsWorkersLevels.getOrDefault(requiredSkill.skillId, Collections.emptyMap()).get(workerId)))) {
+                    operationWorkers.add(workerId);
+                }
+            }
+
+            operationsWorkers.put(operationId, operationWorkers);
+        }
+
+        return operationsWorkers;
+    }
+
+    private Map<Long, Map<Long, Integer>> getSkillsWorkersLevels(final Collection<RequiredSkill> requiredSkills) {
+        Map<Long, Map<Long, Integer>> skillsWorkersLevels = Maps.newHashMap();
+
+        Set<Long> skillIds = Sets.newHashSet();
+
+        requiredSkills.forEach(requiredSkill -> skillIds.add(requiredSkill.skillId));
+
+        if (skillIds.isEmpty()) {
+            return skillsWorkersLevels;
+        }
+
+        jdbcTemplate.query(
+                "SELECT ss.skill_id AS skillId, ss.staff_id AS staffId, max(ss.level) AS level FROM basic_staffskill ss "
+                        + "WHERE ss.skill_id IN (:ids) GROUP BY ss.skill_id, ss.staff_id",
+                Collections.singletonMap(L_IDS, skillIds), rs -> {
+                    skillsWorkersLevels.computeIfAbsent(rs.getLong("skillId"), skillId -> Maps.newHashMap())
+                            .put(rs.getLong("staffId"), rs.getInt("level"));
+                });
+
+        return skillsWorkersLevels;
+    }
+
+    private void updatePositionsWorkstations(final List<PlanPosition> positions) {
+        if (positions.isEmpty()) {
+            return;
+        }
+
+        SqlParameterSource[] batchParameters = positions.stream()
+                .map(position -> new MapSqlParameterSource("id", position.id).addValue("workstationId", position.workstationId)
+                        .addValue(L_START_TIME, position.startTime).addValue("endTime", position.endTime))
+                .toArray(SqlParameterSource[]::new);
+
+        jdbcTemplate.batchUpdate("UPDATE orders_scheduleposition SET workstation_id = :workstationId, starttime = :startTime, "
+                + "endtime = :endTime, staff_id = NULL WHERE id = :id", batchParameters);
+    }
+
+    private void updatePositionsWorkers(final List<PlanPosition> positions) {
+        if (positions.isEmpty()) {
+            return;
+        }
+
+        SqlParameterSource[] batchParameters = positions.stream()
+                .map(position -> new MapSqlParameterSource("id", position.id).addValue("staffId", position.staffId))
+                .toArray(SqlParameterSource[]::new);
+
+        jdbcTemplate.batchUpdate("UPDATE orders_scheduleposition SET staff_id = :staffId WHERE id = :id", batchParameters);
+    }
+
+    private static class PlanPosition {
+
+        private Long id;
+
+        private Long orderId;
+
+        private Long tocId;
+
+        private Long parentTocId;
+
+        private Long operationId;
+
+        private boolean assignedToWorkstations;
+
+        private Long workstationTypeId;
+
+        private int machineWorkTime;
+
+        private int additionalTime;
+
+        private Date startTime;
+
+        private Date endTime;
+
+        private Long workstationId;
+
+        private Long staffId;
+
+    }
+
+    private static class PlanWorkstation {
+
+        private Long id;
+
+        private Long productionLineId;
+
+    }
+
+    private static class RequiredSkill {
+
+        private final Long skillId;
+
+        private final int requiredLevel;
+
+        RequiredSkill(final Long skillId, final int requiredLevel) {
+            this.skillId = skillId;
+            this.requiredLevel = requiredLevel;
+        }
+
+        boolean isMetBy(final Integer level) {
+            return Objects.nonNull(level) && level >= requiredLevel;
+        }
+
+    }
+
+    private static class ChildrenKey {
+
+        private final Long orderId;
+
+        private final Long parentTocId;
+
+        ChildrenKey(final Long orderId, final Long parentTocId) {
+            this.orderId = orderId;
+            this.parentTocId = parentTocId;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ChildrenKey)) {
+                return false;
+            }
+
+            ChildrenKey other = (ChildrenKey) obj;
+
+            return orderId.equals(other.orderId) && parentTocId.equals(other.parentTocId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(orderId, parentTocId);
+        }
+
+    }
+
+    /**
+     * Production line lookups of one assignment run. Nearest working dates are memoized, as the same workstation horizons are
+     * looked up for many positions.
+     */
+    private class ProductionLinesCalendar {
+
+        private final Map<Long, Entity> productionLines = Maps.newHashMap();
+
+        private final Map<Long, Map<Date, Date>> nearestWorkingDates = Maps.newHashMap();
+
+        Date getNearestWorkingDate(final Date date, final Long productionLineId) {
+            return nearestWorkingDates.computeIfAbsent(productionLineId, key -> Maps.newHashMap()).computeIfAbsent(date,
+                    key -> {
+                        DateTime dateTime = new DateTime(date);
+
+                        return shiftsService.getNearestWorkingDate(dateTime, getProductionLine(productionLineId))
+                                .orElse(dateTime).toDate();
+                    });
+        }
+
+        Date findDateTo(final Date dateFrom, final int seconds, final Long productionLineId) {
+            return shiftsService.findDateToForProductionLine(dateFrom, seconds, getProductionLine(productionLineId));
+        }
+
+        private Entity getProductionLine(final Long productionLineId) {
+            if (Objects.isNull(productionLineId)) {
+                return null;
+            }
+
+            return productionLines.computeIfAbsent(productionLineId,
+                    id -> dataDefinitionService
+                            .get(ProductionLinesConstants.PLUGIN_IDENTIFIER, ProductionLinesConstants.MODEL_PRODUCTION_LINE)
+                            .get(id));
+        }
+
+    }
+
+}
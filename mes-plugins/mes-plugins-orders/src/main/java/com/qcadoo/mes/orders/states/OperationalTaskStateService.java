@@ -5,6 +5,7 @@ import org.springframework.stereotype.Service;
 
 import com.qcadoo.mes.newstates.BasicStateService;
 import com.qcadoo.mes.states.StateChangeEntityDescriber;
+import com.qcadoo.model.api.Entity;
 
 @Service
 public class OperationalTaskStateService extends BasicStateService implements OperationalTasksServiceMarker {
@@ -16,4 +17,9 @@ public class OperationalTaskStateService extends BasicStateService implements Op
     public StateChangeEntityDescriber getChangeEntityDescriber() {
         return operationalTaskStateChangeDescriber;
     }
+
+    @Override
+    public Object getBulkChangeKey(Entity entity) {
+        return entity.getId();
+    }
 }
@@ -0,0 +1,309 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orders.controllers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.orders.OrderService;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.orders.constants.OrdersConstants;
+import com.qcadoo.mes.orders.controllers.requests.OrderCreationRequest;
+import com.qcadoo.mes.orders.controllers.responses.OrderCreationResponse;
+import com.qcadoo.mes.orders.states.aop.OrderStateChangeAspect;
+import com.qcadoo.mes.orders.states.constants.OrderStateStringValues;
+import com.qcadoo.mes.states.StateChangeContext;
+import com.qcadoo.mes.states.service.StateChangeContextBuilder;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchResult;
+import com.qcadoo.model.api.validators.ErrorMessage;
+import com.qcadoo.view.api.utils.NumberGeneratorService;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(TransactionAspectSupport.class)
+public class OrderCreationServiceTest {
+
+    private static final Long PRODUCT_ID = 2L;
+
+    private static final Long TECHNOLOGY_ID = 3L;
+
+    private static final Long ORDER_ID = 4L;
+
+    private static final String ORDER_NUMBER = "000004";
+
+    private OrderCreationService orderCreationService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private OrderService orderService;
+
+    @Mock
+    private ParameterService parameterService;
+
+    @Mock
+    private NumberGeneratorService numberGeneratorService;
+
+    @Mock
+    private OrderStateChangeAspect orderStateChangeAspect;
+
+    @Mock
+    private StateChangeContextBuilder stateChangeContextBuilder;
+
+    @Mock
+    private TranslationService translationService;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    @Mock
+    private DataDefinition orderDD, productDD, technologyDD;
+
+    @Mock
+    private Entity parameter, location, product, technology, order, savedOrder, acceptedOrder;
+
+    @Mock
+    private StateChangeContext stateChangeContext;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        PowerMockito.mockStatic(TransactionAspectSupport.class);
+
+        given(TransactionAspectSupport.currentTransactionStatus()).willReturn(transactionStatus);
+
+        orderCreationService = new OrderCreationService();
+
+        ReflectionTestUtils.setField(orderCreationService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(orderCreationService, "orderService", orderService);
+        ReflectionTestUtils.setField(orderCreationService, "parameterService", parameterService);
+        ReflectionTestUtils.setField(orderCreationService, "numberGeneratorService", numberGeneratorService);
+        ReflectionTestUtils.setField(orderCreationService, "orderStateChangeAspect", orderStateChangeAspect);
+        ReflectionTestUtils.setField(orderCreationService, "stateChangeContextBuilder", stateChangeContextBuilder);
+        ReflectionTestUtils.setField(orderCreationService, "translationService", translationService);
+
+        given(translationService.translate(anyString(), any(Locale.class), (String[]) anyVararg())).willAnswer(invocation -> {
+            Object[] arguments = invocation.getArguments();
+
+            return arguments[0] + Arrays.toString(Arrays.copyOfRange(arguments, 2, arguments.length));
+        });
+
+        given(parameterService.getParameter()).willReturn(parameter);
+        given(parameter.getBelongsToField(anyString())).willReturn(location);
+        given(parameter.getBooleanField(anyString())).willReturn(true);
+
+        given(dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER)).willReturn(orderDD);
+        given(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT)).willReturn(productDD);
+        given(dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY))
+                .willReturn(technologyDD);
+
+        mockFind(productDD, product);
+        mockFind(technologyDD, technology);
+
+        given(product.getId()).willReturn(PRODUCT_ID);
+        given(technology.getId()).willReturn(TECHNOLOGY_ID);
+
+        given(orderDD.create()).willReturn(order);
+        given(order.getDataDefinition()).willReturn(orderDD);
+        given(savedOrder.getDataDefinition()).willReturn(orderDD);
+        given(savedOrder.getId()).willReturn(ORDER_ID);
+        given(savedOrder.isValid()).willReturn(true);
+        given(orderDD.get(ORDER_ID)).willReturn(acceptedOrder);
+        given(orderDD.getPluginIdentifier()).willReturn(OrdersConstants.PLUGIN_IDENTIFIER);
+        given(orderDD.getName()).willReturn(OrdersConstants.MODEL_ORDER);
+
+        given(acceptedOrder.getId()).willReturn(ORDER_ID);
+        given(acceptedOrder.getStringField(OrderFields.STATE)).willReturn(OrderStateStringValues.ACCEPTED);
+        given(acceptedOrder.getStringField(OrderFields.NUMBER)).willReturn(ORDER_NUMBER);
+
+        EntityList productionCountingQuantities = mock(EntityList.class);
+
+        given(acceptedOrder.getHasManyField("productionCountingQuantities")).willReturn(productionCountingQuantities);
+        given(productionCountingQuantities.find()).willReturn(mockSearchCriteriaBuilder());
+
+        given(stateChangeContextBuilder.build(any(), any(Entity.class), anyString())).willReturn(stateChangeContext);
+        given(numberGeneratorService.generateNumber(anyString(), anyString(), anyInt())).willReturn(ORDER_NUMBER);
+    }
+
+    private void mockFind(final DataDefinition dataDefinition, final Entity... entities) {
+        SearchCriteriaBuilder searchCriteriaBuilder = mockSearchCriteriaBuilder(entities);
+
+        given(dataDefinition.find()).willReturn(searchCriteriaBuilder);
+    }
+
+    private SearchCriteriaBuilder mockSearchCriteriaBuilder(final Entity... entities) {
+        SearchCriteriaBuilder searchCriteriaBuilder = mock(SearchCriteriaBuilder.class);
+        SearchResult searchResult = mock(SearchResult.class);
+
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+        given(searchResult.getEntities()).willReturn(Lists.newArrayList(entities));
+
+        return searchCriteriaBuilder;
+    }
+
+    private OrderCreationRequest createRequest() {
+        OrderCreationRequest orderCreationRequest = new OrderCreationRequest();
+
+        orderCreationRequest.setProductId(PRODUCT_ID);
+        orderCreationRequest.setTechnologyId(TECHNOLOGY_ID);
+        orderCreationRequest.setQuantity(BigDecimal.TEN);
+        orderCreationRequest.setDescription("");
+
+        return orderCreationRequest;
+    }
+
+    @Test
+    public void shouldCreateOrders() {
+        // given
+        given(orderDD.save(order)).willReturn(savedOrder);
+
+        // when
+        List<OrderCreationResponse> responses = orderCreationService.createOrders(Lists.newArrayList(createRequest(),
+                createRequest()));
+
+        // then
+        assertEquals(2, responses.size());
+
+        for (OrderCreationResponse response : responses) {
+            assertEquals(OrderCreationResponse.StatusCode.OK, response.getCode());
+            assertEquals(ORDER_NUMBER, response.getNumber());
+        }
+
+        verify(orderStateChangeAspect, times(2)).changeState(stateChangeContext);
+        verify(transactionStatus, never()).setRollbackOnly();
+    }
+
+    @Test
+    public void shouldReportValidationErrorsAndRollbackOnlyInvalidOrder() {
+        // given
+        Entity invalidOrder = mock(Entity.class);
+
+        given(invalidOrder.getDataDefinition()).willReturn(orderDD);
+        given(invalidOrder.isValid()).willReturn(false);
+        given(invalidOrder.getGlobalErrors()).willReturn(
+                Lists.newArrayList(new ErrorMessage("orders.order.error.productionLineDoesNotMatch", "L1")));
+        given(invalidOrder.getErrors()).willReturn(
+                ImmutableMap.of(OrderFields.DATE_FROM, new ErrorMessage("orders.validate.global.error.dateFromIsNull")));
+        given(orderDD.save(order)).willReturn(invalidOrder, savedOrder);
+
+        // when
+        List<OrderCreationResponse> responses = orderCreationService.createOrders(Lists.newArrayList(createRequest(),
+                createRequest()));
+
+        // then
+        OrderCreationResponse invalidResponse = responses.get(0);
+
+        assertEquals(OrderCreationResponse.StatusCode.ERROR, invalidResponse.getCode());
+        assertTrue(invalidResponse.getMessage().startsWith("orders.orderCreationService.orderValidationError"));
+        assertTrue(invalidResponse.getMessage().contains("orders.order.error.productionLineDoesNotMatch[L1]"));
+        assertTrue(invalidResponse.getMessage().contains(
+                "orders.order.dateFrom.label[] - orders.validate.global.error.dateFromIsNull[]"));
+
+        assertEquals(OrderCreationResponse.StatusCode.OK, responses.get(1).getCode());
+
+        verify(transactionStatus, times(1)).setRollbackOnly();
+    }
+
+    @Test
+    public void shouldReportCauseOfExceptionAndCreateRemainingOrders() {
+        // given
+        given(orderDD.save(order)).willThrow(
+                new IllegalStateException("wrapper", new IllegalArgumentException("missing unit conversion"))).willReturn(
+                savedOrder);
+
+        // when
+        List<OrderCreationResponse> responses = orderCreationService.createOrders(Lists.newArrayList(createRequest(),
+                createRequest()));
+
+        // then
+        assertEquals(OrderCreationResponse.StatusCode.ERROR, responses.get(0).getCode());
+        assertEquals("orders.orderCreationService.error[IllegalArgumentException: missing unit conversion]", responses.get(0)
+                .getMessage());
+
+        assertEquals(OrderCreationResponse.StatusCode.OK, responses.get(1).getCode());
+        assertEquals(ORDER_NUMBER, responses.get(1).getNumber());
+    }
+
+    @Test
+    public void shouldReportStateChangeMessagesIfOrderIsNotAccepted() {
+        // given
+        Entity message = mock(Entity.class);
+
+        given(message.getStringField("translationKey")).willReturn("orders.order.orderStates.error");
+        given(message.getStringField("translationArgs")).willReturn(null);
+        given(stateChangeContext.getAllMessages()).willReturn(Collections.singletonList(message));
+        given(acceptedOrder.getStringField(OrderFields.STATE)).willReturn(OrderStateStringValues.PENDING);
+        given(orderDD.save(order)).willReturn(savedOrder);
+
+        // when
+        OrderCreationResponse response = orderCreationService.createOrder(createRequest());
+
+        // then
+        assertEquals(OrderCreationResponse.StatusCode.ERROR, response.getCode());
+        assertEquals("orders.orderCreationService.orderAcceptError[" + ORDER_NUMBER + ", orders.order.orderStates.error[]]",
+                response.getMessage());
+        verify(transactionStatus).setRollbackOnly();
+    }
+
+}
@@ -0,0 +1,138 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orders.schedule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.function.IntConsumer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.mes.orders.schedule.ScheduleAssignmentJobService.ScheduleAssignmentProgress;
+
+public class ScheduleAssignmentJobServiceTest {
+
+    private static final Long L_SCHEDULE_ID = 1L;
+
+    private ScheduleAssignmentJobService scheduleAssignmentJobService;
+
+    @Mock
+    private ScheduleAssignmentService scheduleAssignmentService;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        scheduleAssignmentJobService = new ScheduleAssignmentJobService();
+
+        ReflectionTestUtils.setField(scheduleAssignmentJobService, "scheduleAssignmentService", scheduleAssignmentService);
+
+        given(scheduleAssignmentService.countPositions(L_SCHEDULE_ID)).willReturn(3);
+    }
+
+    @Test
+    public void shouldForgetProgressOfFinishedAssignment() {
+        // when
+        boolean submitted = scheduleAssignmentJobService.submit(L_SCHEDULE_ID, true, true);
+
+        // then
+        assertTrue(submitted);
+        assertFalse(scheduleAssignmentJobService.getProgress(L_SCHEDULE_ID).isPresent());
+
+        verify(scheduleAssignmentService).assignWorkstationsAndWorkers(eq(L_SCHEDULE_ID), any(IntConsumer.class));
+    }
+
+    @Test
+    public void shouldNotSubmitAssignmentOfScheduleInProgress() {
+        // given
+        boolean[] submittedInProgress = new boolean[1];
+
+        willAnswer(invocation -> {
+            ((IntConsumer) invocation.getArguments()[1]).accept(2);
+
+            ScheduleAssignmentProgress progress = scheduleAssignmentJobService.getProgress(L_SCHEDULE_ID).get();
+
+            assertEquals(2, progress.getProcessed());
+            assertEquals(3, progress.getTotal());
+
+            submittedInProgress[0] = scheduleAssignmentJobService.submit(L_SCHEDULE_ID, true, false);
+
+            return null;
+        }).given(scheduleAssignmentService).assignWorkersToOperations(eq(L_SCHEDULE_ID), any(IntConsumer.class));
+
+        // when
+        scheduleAssignmentJobService.submit(L_SCHEDULE_ID, false, true);
+
+        // then
+        assertFalse(submittedInProgress[0]);
+
+        verify(scheduleAssignmentService, never()).assignOperationsToWorkstations(eq(L_SCHEDULE_ID), any(IntConsumer.class));
+    }
+
+    @Test
+    public void shouldKeepFailedAssignmentWithMessage() {
+        // given
+        willThrow(new IllegalStateException("No workstations")).given(scheduleAssignmentService).assignOperationsToWorkstations(
+                eq(L_SCHEDULE_ID), any(IntConsumer.class));
+
+        // when
+        scheduleAssignmentJobService.submit(L_SCHEDULE_ID, true, false);
+
+        // then
+        ScheduleAssignmentProgress progress = scheduleAssignmentJobService.getProgress(L_SCHEDULE_ID).get();
+
+        assertTrue(progress.isFailed());
+        assertEquals("No workstations", progress.getFailureMessage());
+    }
+
+    @Test
+    public void shouldSubmitAssignmentAgainAfterFailure() {
+        // given
+        willThrow(new IllegalStateException("No workstations")).willAnswer(invocation -> null)
+                .given(scheduleAssignmentService).assignOperationsToWorkstations(eq(L_SCHEDULE_ID), any(IntConsumer.class));
+
+        scheduleAssignmentJobService.submit(L_SCHEDULE_ID, true, false);
+
+        // when
+        boolean submitted = scheduleAssignmentJobService.submit(L_SCHEDULE_ID, true, false);
+
+        // then
+        assertTrue(submitted);
+        assertFalse(scheduleAssignmentJobService.getProgress(L_SCHEDULE_ID).isPresent());
+    }
+
+}
@@ -54,6 +54,15 @@ public class ProductionTrackingStateServicePFTD extends BasicStateService implem
         return productionTrackingStateChangeDescriber;
     }
 
+    /**
+     * Accepting a production tracking creates and accepts warehouse documents, which take resources from locations shared
+     * between orders, so bulk changes of production trackings run serially while this plugin is enabled.
+     */
+    @Override
+    public Object getBulkChangeKey(Entity entity) {
+        return null;
+    }
+
     @Override
     public Entity onBeforeSave(Entity entity, String sourceState, String targetState, Entity stateChangeEntity, StateChangeEntityDescriber describer) {
         switch (targetState) {
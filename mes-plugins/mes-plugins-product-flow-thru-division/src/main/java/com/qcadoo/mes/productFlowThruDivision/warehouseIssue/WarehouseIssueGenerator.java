@@ -3,8 +3,13 @@ package com.qcadoo.mes.productFlowThruDivision.warehouseIssue;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
@@ -13,8 +18,6 @@ import org.springframework.stereotype.Service;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.ParameterService;
-import com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingConstants;
-import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityFields;
 import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityRole;
 import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityTypeOfMaterial;
 import com.qcadoo.mes.orders.constants.OrderFields;
@@ -28,17 +31,11 @@ import com.qcadoo.mes.productFlowThruDivision.warehouseIssue.constans.Collection
 import com.qcadoo.mes.productFlowThruDivision.warehouseIssue.constans.WarehouseIssueFields;
 import com.qcadoo.mes.productFlowThruDivision.warehouseIssue.states.constants.WarehouseIssueState;
 import com.qcadoo.mes.productionLines.constants.ProductionLineFields;
-import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
-import com.qcadoo.mes.technologies.constants.TechnologyFields;
 import com.qcadoo.mes.technologies.states.constants.TechnologyState;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.search.SearchCriteriaBuilder;
-import com.qcadoo.model.api.search.SearchProjections;
-import com.qcadoo.model.api.search.SearchQueryBuilder;
 import com.qcadoo.model.api.search.SearchRestrictions;
-import com.qcadoo.model.api.search.SearchResult;
 import com.qcadoo.tenant.api.MultiTenantService;
 
 @Service
@@ -77,94 +74,82 @@ public class WarehouseIssueGenerator {
 
             Entity issueLocation = parameter.getBelongsToField(ParameterFieldsPFTD.ISSUE_LOCATION);
 
-            List<Entity> orderDtos = getOrderDtos(daysBeforeOrderStart);
+            Date startDate = Date.from(LocalDate.now().atStartOfDay().atZone(ZoneId.systemDefault()).toInstant());
+            Date endDate = Date.from(LocalDate.now().plusDays(daysBeforeOrderStart + 1).atStartOfDay().minusSeconds(1)
+                    .atZone(ZoneId.systemDefault()).toInstant());
 
-            for (Entity orderDto : orderDtos) {
-                if (checkIfCanGenerateIssue(orderDto)) {
-                    Entity newWarehouseIssue = createNewWarehouseIssue(orderDto, issueLocation);
+            List<Entity> orders = getOrders(getOrderIdsToGenerateIssues(startDate, endDate));
 
-                    newWarehouseIssue = getWarehouseIssueDD().save(newWarehouseIssue);
+            Iterator<String> numbers = getNumbersFromSequence(orders.size()).iterator();
 
-                    warehouseIssueService.fillProductsToIssue(newWarehouseIssue.getId(), CollectionProducts.ON_ORDER, orderDto,
-                            issueLocation);
-                    newWarehouseIssue = getWarehouseIssueDD().get(newWarehouseIssue.getId());
+            for (Entity order : orders) {
+                Entity newWarehouseIssue = createNewWarehouseIssue(order, issueLocation, numbers.next());
 
-                    if (newWarehouseIssue.getHasManyField(WarehouseIssueFields.PRODUCTS_TO_ISSUES).isEmpty()) {
-                        getWarehouseIssueDD().delete(newWarehouseIssue.getId());
-                    }
+                newWarehouseIssue = getWarehouseIssueDD().save(newWarehouseIssue);
+
+                warehouseIssueService.fillProductsToIssue(newWarehouseIssue.getId(), CollectionProducts.ON_ORDER, order,
+                        issueLocation);
+                newWarehouseIssue = getWarehouseIssueDD().get(newWarehouseIssue.getId());
+
+                if (newWarehouseIssue.getHasManyField(WarehouseIssueFields.PRODUCTS_TO_ISSUES).isEmpty()) {
+                    getWarehouseIssueDD().delete(newWarehouseIssue.getId());
                 }
             }
         }
     }
 
-    private boolean checkIfCanGenerateIssue(final Entity orderDto) {
-        Entity order = getOrderDD().get(orderDto.getId());
+    private List<Long> getOrderIdsToGenerateIssues(final Date startDate, final Date endDate) {
+        StringBuilder query = new StringBuilder();
+
+        query.append("SELECT o.id FROM orders_order o ");
+        query.append("WHERE o.state IN (:states) AND o.startdate BETWEEN :startDate AND :endDate ");
+        query.append("AND NOT EXISTS (SELECT 1 FROM productflowthrudivision_warehouseissue wi WHERE wi.order_id = o.id) ");
 
-        List<Entity> coverageProducts = getProductionCountingQuantityDD().find()
-                .add(SearchRestrictions.belongsTo(ProductionCountingQuantityFields.ORDER, order))
-                .add(SearchRestrictions.eq(ProductionCountingQuantityFields.ROLE,
-                        ProductionCountingQuantityRole.USED.getStringValue()))
-                .add(SearchRestrictions.eq(ProductionCountingQuantityFields.TYPE_OF_MATERIAL,
-                        ProductionCountingQuantityTypeOfMaterial.COMPONENT.getStringValue()))
-                .list().getEntities();
+        Map<String, Object> params = Maps.newHashMap();
 
-        List<Entity> filteredCoverageProducts = Lists.newArrayList();
+        params.put("states", Arrays.asList(OrderState.ACCEPTED.getStringValue(), OrderState.IN_PROGRESS.getStringValue()));
+        params.put("startDate", startDate);
+        params.put("endDate", endDate);
+
+        query.append("AND EXISTS (SELECT 1 FROM basicproductioncounting_productioncountingquantity pcq ");
+        query.append("WHERE pcq.order_id = o.id AND pcq.role = :role AND pcq.typeofmaterial = :typeOfMaterial ");
 
         if (warehouseIssueParameterService.getProductsToIssue().getStrValue()
                 .equals(ProductsToIssue.ONLY_MATERIALS.getStrValue())) {
-            for (Entity cProduct : coverageProducts) {
-                SearchCriteriaBuilder scb = getTechnologyDD().find().setProjection(SearchProjections.id())
-                        .add(SearchRestrictions.belongsTo(TechnologyFields.PRODUCT,
-                                cProduct.getBelongsToField(ProductionCountingQuantityFields.PRODUCT)))
-                        .add(SearchRestrictions.isNull(TechnologyFields.TECHNOLOGY_TYPE))
-                        .add(SearchRestrictions.eq(TechnologyFields.STATE, TechnologyState.ACCEPTED.getStringValue()))
-                        .add(SearchRestrictions.eq(TechnologyFields.MASTER, true));
-
-                if (scb.setMaxResults(1).uniqueResult() == null) {
-                    filteredCoverageProducts.add(cProduct);
-                }
-            }
+            query.append("AND NOT EXISTS (SELECT 1 FROM technologies_technology t WHERE t.product_id = pcq.product_id ");
+            query.append("AND t.technologytype IS NULL AND t.state = :technologyState AND t.master = true)");
 
-            coverageProducts = filteredCoverageProducts;
+            params.put("technologyState", TechnologyState.ACCEPTED.getStringValue());
         }
 
-        if (coverageProducts == null || coverageProducts.isEmpty()) {
-            return false;
-        }
-
-        return true;
-    }
+        query.append(") ORDER BY o.startdate, o.id");
 
-    private List<Entity> getOrderDtos(final int daysBeforeOrderStart) {
-        String query = "SELECT order FROM #orders_order order  "
-                + "WHERE order.state IN (:states) AND startDate BETWEEN :startDate AND :endDate AND order.warehouseIssues IS EMPTY";
+        params.put("role", ProductionCountingQuantityRole.USED.getStringValue());
+        params.put("typeOfMaterial", ProductionCountingQuantityTypeOfMaterial.COMPONENT.getStringValue());
 
-        SearchQueryBuilder searchQueryBuilder = getOrderDtoDD().find(query);
+        return jdbcTemplate.queryForList(query.toString(), params, Long.class);
+    }
 
-        Date startDate = Date.from(LocalDate.now().atStartOfDay().atZone(ZoneId.systemDefault()).toInstant());
-        Date endDate = Date.from(LocalDate.now().plusDays(daysBeforeOrderStart + 1).atStartOfDay().minusSeconds(1)
-                .atZone(ZoneId.systemDefault()).toInstant());
+    private List<Entity> getOrders(final List<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return Lists.newArrayList();
+        }
 
-        searchQueryBuilder.setParameter("startDate", startDate);
-        searchQueryBuilder.setParameter("endDate", endDate);
-        searchQueryBuilder.setParameterList("states",
-                Arrays.asList(OrderState.ACCEPTED.getStringValue(), OrderState.IN_PROGRESS.getStringValue()));
-        SearchResult orders = searchQueryBuilder.list();
+        Map<Long, Entity> ordersById = getOrderDD().find().add(SearchRestrictions.in("id", orderIds)).list().getEntities()
+                .stream().collect(Collectors.toMap(Entity::getId, order -> order));
 
-        return orders.getEntities();
+        return orderIds.stream().map(ordersById::get).filter(Objects::nonNull).collect(Collectors.toList());
     }
 
-    private Entity createNewWarehouseIssue(final Entity orderDto, final Entity placeOfIssue) {
-        Entity order = getOrderDD().get(orderDto.getId());
-
+    private Entity createNewWarehouseIssue(final Entity order, final Entity placeOfIssue, final String number) {
         String productionLineNumber = order.getBelongsToField(OrderFields.PRODUCTION_LINE)
                 .getStringField(ProductionLineFields.NUMBER);
 
         Entity warehouseIssue = getWarehouseIssueDD().create();
 
         warehouseIssue.setField(WarehouseIssueFields.COLLECTION_PRODUCTS, CollectionProducts.ON_ORDER.getStringValue());
-        warehouseIssue.setField(WarehouseIssueFields.NUMBER, setNumberFromSequence());
-        warehouseIssue.setField(WarehouseIssueFields.ORDER, orderDto);
+        warehouseIssue.setField(WarehouseIssueFields.NUMBER, number);
+        warehouseIssue.setField(WarehouseIssueFields.ORDER, order);
         warehouseIssue.setField(WarehouseIssueFields.PLACE_OF_ISSUE, placeOfIssue);
         warehouseIssue.setField(WarehouseIssueFields.STATE, WarehouseIssueState.DRAFT.getStringValue());
         warehouseIssue.setField(WarehouseIssueFields.ORDER_START_DATE, order.getDateField(OrderFields.START_DATE));
@@ -175,30 +160,26 @@ public class WarehouseIssueGenerator {
         return warehouseIssue;
     }
 
-    public String setNumberFromSequence() {
-        return jdbcTemplate.queryForObject("SELECT generate_warehouseissue_number()", Maps.newHashMap(), String.class);
+    private List<String> getNumbersFromSequence(final int count) {
+        if (count == 0) {
+            return Lists.newArrayList();
+        }
+
+        return jdbcTemplate.queryForList("SELECT generate_warehouseissue_number() FROM generate_series(1, :count)",
+                Collections.singletonMap("count", count), String.class);
     }
 
-    private DataDefinition getTechnologyDD() {
-        return dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY);
+    public String setNumberFromSequence() {
+        return jdbcTemplate.queryForObject("SELECT generate_warehouseissue_number()", Maps.newHashMap(), String.class);
     }
 
     private DataDefinition getOrderDD() {
         return dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER);
     }
 
-    private DataDefinition getOrderDtoDD() {
-        return dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_ORDER_DTO);
-    }
-
     private DataDefinition getWarehouseIssueDD() {
         return dataDefinitionService.get(ProductFlowThruDivisionConstants.PLUGIN_IDENTIFIER,
                 ProductFlowThruDivisionConstants.MODEL_WAREHOUSE_ISSUE);
     }
 
-    private DataDefinition getProductionCountingQuantityDD() {
-        return dataDefinitionService.get(BasicProductionCountingConstants.PLUGIN_IDENTIFIER,
-                BasicProductionCountingConstants.MODEL_PRODUCTION_COUNTING_QUANTITY);
-    }
-
 }
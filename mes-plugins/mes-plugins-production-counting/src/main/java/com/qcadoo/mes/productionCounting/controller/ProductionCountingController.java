@@ -25,15 +25,27 @@ package com.qcadoo.mes.productionCounting.controller;
 
 import com.google.common.collect.ImmutableMap;
 import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.print.xlsx.XlsxDocumentService;
+import com.qcadoo.mes.productionCounting.ProductionCountingService;
+import com.qcadoo.mes.productionCounting.constants.ProductionBalanceFields;
 import com.qcadoo.mes.productionCounting.constants.ProductionCountingConstants;
+import com.qcadoo.model.api.Entity;
 import com.qcadoo.view.api.crud.CrudService;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.ModelAndView;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Locale;
 import java.util.Map;
 
@@ -46,6 +58,9 @@ public class ProductionCountingController {
     @Autowired
     private ParameterService parameterService;
 
+    @Autowired
+    private ProductionCountingService productionCountingService;
+
     @RequestMapping(value = "productionCountingParameters", method = RequestMethod.GET)
     public ModelAndView getProductionCountingParametersPageView(final Locale locale) {
         JSONObject json = new JSONObject(ImmutableMap.of("form.id", parameterService.getParameterId().toString()));
@@ -66,4 +81,34 @@ public class ProductionCountingController {
                 locale);
     }
 
+    @RequestMapping(value = "/productionCounting/productionBalance.xlsx", method = RequestMethod.GET)
+    public void getProductionBalanceReport(@RequestParam("id") final Long productionBalanceId,
+            final HttpServletResponse response) throws IOException {
+        Entity productionBalance = productionCountingService.getProductionBalance(productionBalanceId);
+
+        if (productionBalance == null
+                || StringUtils.isEmpty(productionBalance.getStringField(ProductionBalanceFields.FILE_NAME))) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+
+            return;
+        }
+
+        File file = new File(XlsxDocumentService.getFilePath(productionBalance));
+
+        if (!file.exists()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+
+            return;
+        }
+
+        response.setContentType(XlsxDocumentService.XLSX_CONTENT_TYPE);
+        response.setHeader("Content-disposition", "attachment; filename=" + file.getName());
+
+        try (InputStream inputStream = new FileInputStream(file)) {
+            IOUtils.copy(inputStream, response.getOutputStream());
+        }
+
+        response.flushBuffer();
+    }
+
 }
@@ -50,6 +50,11 @@ public class ProductionTrackingStateService extends BasicStateService implements
         return productionTrackingStateChangeDescriber;
     }
 
+    @Override
+    public Object getBulkChangeKey(Entity entity) {
+        return entity.getBelongsToField(ProductionTrackingFields.ORDER).getId();
+    }
+
     @Override
     public Entity onValidate(Entity entity, String sourceState, String targetState, Entity stateChangeEntity,
             StateChangeEntityDescriber describer) {
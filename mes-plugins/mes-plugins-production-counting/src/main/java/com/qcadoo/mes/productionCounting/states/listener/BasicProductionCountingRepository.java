@@ -0,0 +1,164 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p/>
+ * This file is part of Qcadoo.
+ * <p/>
+ * Qcadoo is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option) any
+ * later version.
+ * <p/>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ * <p/>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting.states.listener;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingConstants;
+import com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingFields;
+import com.qcadoo.model.api.BigDecimalUtils;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+@Repository
+class BasicProductionCountingRepository {
+
+    private static final String L_ID = "id";
+
+    private static final String L_IN_COMPONENTS_TABLE = "productioncounting_trackingoperationproductincomponent";
+
+    private static final String L_OUT_COMPONENTS_TABLE = "productioncounting_trackingoperationproductoutcomponent";
+
+    /**
+     * Sums used quantities of tracking's components from the given table per product, each product is matched with the first
+     * basic production counting of the product in the order.
+     */
+    private static final String L_DELTAS_QUERY = "WITH deltas AS ("
+            + "SELECT component.product_id, SUM(COALESCE(component.usedquantity, 0)) AS quantity "
+            + "FROM %1$s component WHERE component.productiontracking_id = :productionTrackingId "
+            + "GROUP BY component.product_id"
+            + "), countings AS ("
+            + "SELECT DISTINCT ON (bpc.product_id) bpc.id, bpc.product_id "
+            + "FROM basicproductioncounting_basicproductioncounting bpc "
+            + "WHERE bpc.order_id = :orderId ORDER BY bpc.product_id, bpc.id"
+            + ") "
+            + "SELECT countings.id, deltas.quantity FROM countings "
+            + "JOIN deltas ON deltas.product_id = countings.product_id";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private NumberService numberService;
+
+    /**
+     * Adds (sign 1) or subtracts (sign -1) used quantities of in components of given production tracking to used quantities of
+     * basic production countings of the order.
+     *
+     * @return numbers of products, whose used quantity would be lower than zero and was not updated
+     */
+    List<String> updateUsedQuantities(final Long orderId, final Long productionTrackingId, final int sign) {
+        return updateQuantities(L_IN_COMPONENTS_TABLE, BasicProductionCountingFields.USED_QUANTITY, orderId,
+                productionTrackingId, sign);
+    }
+
+    /**
+     * Adds (sign 1) or subtracts (sign -1) used quantities of out components of given production tracking to produced
+     * quantities of basic production countings of the order.
+     *
+     * @return numbers of products, whose produced quantity would be lower than zero and was not updated
+     */
+    List<String> updateProducedQuantities(final Long orderId, final Long productionTrackingId, final int sign) {
+        return updateQuantities(L_OUT_COMPONENTS_TABLE, BasicProductionCountingFields.PRODUCED_QUANTITY, orderId,
+                productionTrackingId, sign);
+    }
+
+    /**
+     * Quantities of tracking's components are summed up per product with one query, after changes made in the session are
+     * flushed. Affected basic production countings are loaded with one query and saved through their data definition, so
+     * validators and hooks still run and countings already loaded to the session stay up to date. As the entity validator would
+     * reject them, countings whose quantity would become negative are left untouched.
+     */
+    private List<String> updateQuantities(final String table, final String field, final Long orderId,
+            final Long productionTrackingId, final int sign) {
+        TransactionAspectSupport.currentTransactionStatus().flush();
+
+        Map<Long, BigDecimal> quantities = getQuantities(table, orderId, productionTrackingId);
+
+        if (quantities.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<String> productNumbersBelowZero = Lists.newArrayList();
+        BigDecimal signum = BigDecimal.valueOf(sign);
+
+        for (Entity basicProductionCounting : getBasicProductionCountingDD().find()
+                .add(SearchRestrictions.in(L_ID, quantities.keySet())).list().getEntities()) {
+            BigDecimal quantity = BigDecimalUtils.convertNullToZero(basicProductionCounting.getDecimalField(field)).add(
+                    signum.multiply(quantities.get(basicProductionCounting.getId()), numberService.getMathContext()),
+                    numberService.getMathContext());
+
+            if (quantity.compareTo(BigDecimal.ZERO) < 0) {
+                productNumbersBelowZero.add(basicProductionCounting.getBelongsToField(BasicProductionCountingFields.PRODUCT)
+                        .getStringField(ProductFields.NUMBER));
+
+                continue;
+            }
+
+            basicProductionCounting.setField(field, quantity);
+            basicProductionCounting.getDataDefinition().save(basicProductionCounting);
+        }
+
+        Collections.sort(productNumbersBelowZero);
+
+        return productNumbersBelowZero;
+    }
+
+    private Map<Long, BigDecimal> getQuantities(final String table, final Long orderId, final Long productionTrackingId) {
+        Map<Long, BigDecimal> quantities = Maps.newHashMap();
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("orderId", orderId);
+        params.put("productionTrackingId", productionTrackingId);
+
+        jdbcTemplate.query(String.format(L_DELTAS_QUERY, table), params,
+                (RowCallbackHandler) resultSet -> quantities.put(resultSet.getLong(L_ID), resultSet.getBigDecimal("quantity")));
+
+        return quantities;
+    }
+
+    private DataDefinition getBasicProductionCountingDD() {
+        return dataDefinitionService.get(BasicProductionCountingConstants.PLUGIN_IDENTIFIER,
+                BasicProductionCountingConstants.MODEL_BASIC_PRODUCTION_COUNTING);
+    }
+
+}
@@ -29,8 +29,6 @@ import com.qcadoo.mes.advancedGenealogy.constants.ProductFieldsAG;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
-import com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingFields;
-import com.qcadoo.mes.basicProductionCounting.constants.OrderFieldsBPC;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.orders.states.aop.OrderStateChangeAspect;
 import com.qcadoo.mes.orders.states.constants.OrderState;
@@ -73,8 +71,6 @@ import static com.qcadoo.model.api.search.SearchOrders.asc;
 @Service
 public final class ProductionTrackingListenerService {
 
-    private static final String L_PRODUCT = "product";
-
     private static final String L_COUNT = "count";
 
     @Autowired
@@ -101,6 +97,9 @@ public final class ProductionTrackingListenerService {
     @Autowired
     private ParameterService parameterService;
 
+    @Autowired
+    private BasicProductionCountingRepository basicProductionCountingRepository;
+
     public void onChangeFromDraftToAny(final Entity productionTracking) {
         productionTracking.setField(ProductionTrackingFields.LAST_STATE_CHANGE_FAILS, false);
         productionTracking.setField(ProductionTrackingFields.LAST_STATE_CHANGE_FAIL_CAUSE, null);
@@ -307,43 +306,19 @@ public final class ProductionTrackingListenerService {
     private void updateBasicProductionCounting(final Entity productionTracking, final Operation operation) {
         final Entity order = productionTracking.getBelongsToField(ProductionTrackingFields.ORDER);
 
-        final List<Entity> trackingOperationProductInComponents = productionTracking
-                .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_IN_COMPONENTS);
-        final List<Entity> trackingOperationProductOutComponents = productionTracking
-                .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_OUT_COMPONENTS);
-
-        trackingOperationProductInComponents.forEach(trackingOperationProductInComponent -> {
-            Entity basicProductionCounting = getBasicProductionCounting(trackingOperationProductInComponent, order);
-
-            if (basicProductionCounting == null) {
-                return;
-            }
-
-            final BigDecimal usedQuantity = basicProductionCounting.getDecimalField(BasicProductionCountingFields.USED_QUANTITY);
-            final BigDecimal productQuantity = trackingOperationProductInComponent
-                    .getDecimalField(TrackingOperationProductInComponentFields.USED_QUANTITY);
-            final BigDecimal result = operation.perform(usedQuantity, productQuantity);
-
-            basicProductionCounting.setField(BasicProductionCountingFields.USED_QUANTITY, result);
-            basicProductionCounting.getDataDefinition().save(basicProductionCounting);
-        });
-
-        trackingOperationProductOutComponents.forEach(trackingOperationProductOutComponent -> {
-            Entity basicProductionCounting = getBasicProductionCounting(trackingOperationProductOutComponent, order);
-
-            if (basicProductionCounting == null) {
-                return;
-            }
-
-            final BigDecimal usedQuantity = basicProductionCounting
-                    .getDecimalField(BasicProductionCountingFields.PRODUCED_QUANTITY);
-            final BigDecimal productQuantity = trackingOperationProductOutComponent
-                    .getDecimalField(TrackingOperationProductOutComponentFields.USED_QUANTITY);
-            final BigDecimal result = operation.perform(usedQuantity, productQuantity);
+        List<String> usedQuantityProducts = basicProductionCountingRepository.updateUsedQuantities(order.getId(),
+                productionTracking.getId(), operation.getSign());
+        List<String> producedQuantityProducts = basicProductionCountingRepository.updateProducedQuantities(order.getId(),
+                productionTracking.getId(), operation.getSign());
 
-            basicProductionCounting.setField(BasicProductionCountingFields.PRODUCED_QUANTITY, result);
-            basicProductionCounting.getDataDefinition().save(basicProductionCounting);
-        });
+        if (!usedQuantityProducts.isEmpty()) {
+            productionTracking.addGlobalMessage("productionCounting.productionTracking.message.usedQuantityLowerThanZero",
+                    String.join(", ", usedQuantityProducts));
+        }
+        if (!producedQuantityProducts.isEmpty()) {
+            productionTracking.addGlobalMessage("productionCounting.productionTracking.message.producedQuantityLowerThanZero",
+                    String.join(", ", producedQuantityProducts));
+        }
     }
 
     private void checkIfTimesIsSet(final Entity productionTracking) {
@@ -388,14 +363,6 @@ public final class ProductionTrackingListenerService {
         }
     }
 
-    private Entity getBasicProductionCounting(final Entity trackingOperationProductComponent, final Entity order) {
-        Entity product = trackingOperationProductComponent.getBelongsToField(L_PRODUCT);
-
-        return order.getHasManyField(OrderFieldsBPC.BASIC_PRODUCTION_COUNTINGS).find()
-                .add(SearchRestrictions.belongsTo(BasicProductionCountingFields.PRODUCT, product)).setMaxResults(1)
-                .uniqueResult();
-    }
-
     public void onCorrected(final Entity productionTracking) {
         updateBasicProductionCounting(productionTracking, new Substraction());
         setOrderDoneAndWastesQuantity(productionTracking, new Substraction());
@@ -404,6 +371,8 @@ public final class ProductionTrackingListenerService {
     private interface Operation {
 
         BigDecimal perform(BigDecimal argument1, BigDecimal argument2);
+
+        int getSign();
     }
 
     private class Addition implements Operation {
@@ -427,6 +396,11 @@ public final class ProductionTrackingListenerService {
             return value.add(add, numberService.getMathContext());
         }
 
+        @Override
+        public int getSign() {
+            return 1;
+        }
+
     }
 
     private class Substraction implements Operation {
@@ -451,6 +425,11 @@ public final class ProductionTrackingListenerService {
             return value.subtract(sub, numberService.getMathContext());
         }
 
+        @Override
+        public int getSign() {
+            return -1;
+        }
+
     }
 
 }
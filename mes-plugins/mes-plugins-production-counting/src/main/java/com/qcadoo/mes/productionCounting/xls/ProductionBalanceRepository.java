@@ -1,5 +1,6 @@
 package com.qcadoo.mes.productionCounting.xls;
 
+import com.qcadoo.mes.basic.util.StreamingJdbcTemplateFactory;
 import com.qcadoo.mes.costCalculation.constants.CalculateMaterialCostsMode;
 import com.qcadoo.mes.costCalculation.constants.SourceOfMaterialCosts;
 import com.qcadoo.mes.costCalculation.constants.SourceOfOperationCosts;
@@ -7,21 +8,63 @@ import com.qcadoo.mes.productionCounting.constants.ProductionBalanceFields;
 import com.qcadoo.mes.productionCounting.xls.dto.*;
 import com.qcadoo.model.api.Entity;
 
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
 class ProductionBalanceRepository {
 
+    private static final int L_FETCH_SIZE = 1000;
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
-    List<ProducedQuantity> getProducedQuantities(final List<Long> ordersIds) {
+    @Autowired
+    private StreamingJdbcTemplateFactory streamingJdbcTemplateFactory;
+
+    private NamedParameterJdbcTemplate streamingJdbcTemplate;
+
+    @PostConstruct
+    public void init() {
+        streamingJdbcTemplate = streamingJdbcTemplateFactory.create(L_FETCH_SIZE);
+    }
+
+    /**
+     * Passes rows of the query to the consumer one by one, as they are fetched, so the whole result is never held in memory.
+     * The PostgreSQL driver fetches rows in chunks only inside a transaction, so callers are read only transactional.
+     */
+    private <T> void query(final String query, final List<Long> ordersIds, final Class<T> rowClass, final Consumer<T> consumer) {
+        RowMapper<T> rowMapper = BeanPropertyRowMapper.newInstance(rowClass);
+
+        streamingJdbcTemplate.query(query, new MapSqlParameterSource("ordersIds", ordersIds), new RowCallbackHandler() {
+
+            private int rowNum = 0;
+
+            @Override
+            public void processRow(final ResultSet resultSet) throws SQLException {
+                consumer.accept(rowMapper.mapRow(resultSet, rowNum++));
+            }
+        });
+    }
+
+    @Transactional(readOnly = true)
+    void getProducedQuantities(final List<Long> ordersIds, final Consumer<ProducedQuantity> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("SELECT ");
         query.append("o.number AS orderNumber, ");
@@ -50,8 +93,7 @@ class ProductionBalanceRepository {
         query.append("GROUP BY orderNumber, productNumber, productName, productUnit, prodWaste.producedWastes ");
         query.append("ORDER BY orderNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(ProducedQuantity.class));
+        query(query.toString(), ordersIds, ProducedQuantity.class, consumer);
     }
 
     private void appendProducedQuantity(StringBuilder query) {
@@ -62,7 +104,8 @@ class ProductionBalanceRepository {
         query.append("WHERE o.id IN (:ordersIds) ");
     }
 
-    List<MaterialCost> getMaterialCosts(Entity entity, List<Long> ordersIds) {
+    @Transactional(readOnly = true)
+    void getMaterialCosts(Entity entity, List<Long> ordersIds, Consumer<MaterialCost> consumer) {
         StringBuilder query = new StringBuilder();
         appendCumulatedPlannedQuantities(query);
         appendMaterialCostsSelectionClause(query, entity);
@@ -85,8 +128,7 @@ class ProductionBalanceRepository {
         query.append("GROUP BY o.id, o.number, op.number, p.number, p.name, p.unit, topic.wasteunit, q.replacementTo) ");
         query.append("ORDER BY orderNumber, operationNumber, productNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(MaterialCost.class));
+        query(query.toString(), ordersIds, MaterialCost.class, consumer);
     }
 
     private void appendForEachPlannedQuantities(StringBuilder query) {
@@ -242,7 +284,8 @@ class ProductionBalanceRepository {
         query.append("(COALESCE(SUM(topic.usedquantity), 0) - MIN(q.childsQuantity)) ");
     }
 
-    List<PieceworkDetails> getPieceworkDetails(List<Long> ordersIds) {
+    @Transactional(readOnly = true)
+    void getPieceworkDetails(List<Long> ordersIds, Consumer<PieceworkDetails> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("SELECT ");
         query.append("o.number AS orderNumber, ");
@@ -257,11 +300,11 @@ class ProductionBalanceRepository {
         query.append("GROUP BY orderNumber, operationNumber ");
         query.append("ORDER BY orderNumber, operationNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(PieceworkDetails.class));
+        query(query.toString(), ordersIds, PieceworkDetails.class, consumer);
     }
 
-    List<LaborTime> getLaborTime(List<Long> ordersIds) {
+    @Transactional(readOnly = true)
+    void getLaborTime(List<Long> ordersIds, Consumer<LaborTime> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("SELECT ");
         query.append("o.number AS orderNumber, ");
@@ -283,11 +326,11 @@ class ProductionBalanceRepository {
         query.append("GROUP BY orderNumber, operationNumber, staffNumber, staffName, staffSurname, staffLaborHourlyCost, wageGroupName ");
         query.append("ORDER BY orderNumber, operationNumber, staffNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(LaborTime.class));
+        query(query.toString(), ordersIds, LaborTime.class, consumer);
     }
 
-    List<LaborTimeDetails> getLaborTimeDetails(Entity entity, List<Long> ordersIds) {
+    @Transactional(readOnly = true)
+    void getLaborTimeDetails(Entity entity, List<Long> ordersIds, Consumer<LaborTimeDetails> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("(WITH planned_time (order_id, staff_time, machine_time) AS (SELECT o.id AS orderId, ");
         appendPlannedStaffTime(entity, query);
@@ -394,11 +437,11 @@ class ProductionBalanceRepository {
         query.append("AND o.typeofproductionrecording = '03forEach') ");
         query.append("ORDER BY orderNumber, operationNumber, staffNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(LaborTimeDetails.class));
+        query(query.toString(), ordersIds, LaborTimeDetails.class, consumer);
     }
 
-    List<ProductionCost> getProductionCosts(Entity entity, List<Long> ordersIds) {
+    @Transactional(readOnly = true)
+    void getProductionCosts(Entity entity, List<Long> ordersIds, Consumer<ProductionCost> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("(WITH planned_time (order_id, staff_time, machine_time) AS (SELECT o.id AS orderId, ");
         appendPlannedStaffTime(entity, query);
@@ -534,8 +577,7 @@ class ProductionBalanceRepository {
         query.append("GROUP BY orderId, orderNumber, toc.id, operationNumber) ");
         query.append("ORDER BY orderNumber, operationNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(ProductionCost.class));
+        query(query.toString(), ordersIds, ProductionCost.class, consumer);
     }
 
     private void appendRealStaffCosts(Entity entity, StringBuilder query, String typeOfProductionRecording) {
@@ -680,8 +722,8 @@ class ProductionBalanceRepository {
         }
     }
 
-    List<OrderBalance> getOrdersBalance(Entity entity, List<Long> ordersIds, List<MaterialCost> materialCosts,
-            List<ProductionCost> productionCosts) {
+    List<OrderBalance> getOrdersBalance(Entity entity, List<Long> ordersIds, Map<Long, BigDecimal> materialCosts,
+            Map<Long, BigDecimal> productionCosts) {
         StringBuilder query = new StringBuilder();
         appendOrdersBalanceWithQueries(materialCosts, productionCosts, query);
         appendOrdersBalanceSelectionClause(entity, query);
@@ -720,34 +762,27 @@ class ProductionBalanceRepository {
                 BeanPropertyRowMapper.newInstance(OrderBalance.class));
     }
 
-    private void appendOrdersBalanceWithQueries(List<MaterialCost> materialCosts, List<ProductionCost> productionCosts,
+    private void appendOrdersBalanceWithQueries(Map<Long, BigDecimal> materialCosts, Map<Long, BigDecimal> productionCosts,
             StringBuilder query) {
         query.append("WITH real_material_cost (order_id, cost) AS (VALUES ");
         if (materialCosts.isEmpty()) {
             query.append("(NULL::numeric, NULL::numeric) ");
         } else {
-            for (int i = 0; i < materialCosts.size(); i++) {
-                MaterialCost materialCost = materialCosts.get(i);
-                query.append("(" + materialCost.getOrderId() + ", " + materialCost.getRealCost() + ") ");
-                if (i != materialCosts.size() - 1) {
-                    query.append(", ");
-                }
-            }
+            appendCosts(materialCosts, query);
         }
         query.append("), ");
         query.append("grouped_material_cost AS (SELECT order_id, SUM(cost) AS cost FROM real_material_cost GROUP BY order_id), ");
         query.append("real_production_cost (order_id, cost) AS (VALUES ");
-        for (int i = 0; i < productionCosts.size(); i++) {
-            ProductionCost productionCost = productionCosts.get(i);
-            query.append("(" + productionCost.getOrderId() + ", " + productionCost.getRealCostsSum() + ") ");
-            if (i != productionCosts.size() - 1) {
-                query.append(", ");
-            }
-        }
+        appendCosts(productionCosts, query);
         query.append("), ");
         query.append("grouped_production_cost AS (SELECT order_id, SUM(cost) AS cost FROM real_production_cost GROUP BY order_id) ");
     }
 
+    private void appendCosts(Map<Long, BigDecimal> costs, StringBuilder query) {
+        query.append(costs.entrySet().stream().map(cost -> "(" + cost.getKey() + ", " + cost.getValue() + ") ")
+                .collect(Collectors.joining(", ")));
+    }
+
     private void appendOrdersBalanceSelectionClause(Entity entity, StringBuilder query) {
         query.append("SELECT ");
         query.append("o.id AS orderId, ");
@@ -1079,7 +1114,8 @@ class ProductionBalanceRepository {
         query.append("FROM component_balance GROUP BY product_id) ");
     }
 
-    List<Stoppage> getStoppages(List<Long> ordersIds) {
+    @Transactional(readOnly = true)
+    void getStoppages(List<Long> ordersIds, Consumer<Stoppage> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("SELECT ");
         query.append("o.number AS orderNumber, ");
@@ -1106,7 +1142,6 @@ class ProductionBalanceRepository {
         appendWhereClause(query);
         query.append("ORDER BY orderNumber, productionTrackingNumber, dateFrom ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(Stoppage.class));
+        query(query.toString(), ordersIds, Stoppage.class, consumer);
     }
 }
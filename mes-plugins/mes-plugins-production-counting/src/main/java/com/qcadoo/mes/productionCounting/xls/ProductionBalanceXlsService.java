@@ -1,33 +1,26 @@
 package com.qcadoo.mes.productionCounting.xls;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.basic.print.xlsx.XlsxDocumentService;
+import com.qcadoo.mes.basic.print.xlsx.XlsxSheetWriter;
+import com.qcadoo.mes.basic.print.xlsx.XlsxStylesContainer;
 import com.qcadoo.mes.productionCounting.constants.ProductionBalanceFields;
 import com.qcadoo.mes.productionCounting.xls.dto.*;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
-import com.qcadoo.report.api.xls.XlsDocumentService;
-
 import java.math.BigDecimal;
-import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.stream.Collectors;
-
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFCellStyle;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.ss.usermodel.CellStyle;
-import org.apache.poi.ss.usermodel.Font;
-import org.apache.poi.ss.usermodel.IndexedColors;
-import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 @Service
-public class ProductionBalanceXlsService extends XlsDocumentService {
+public class ProductionBalanceXlsService extends XlsxDocumentService {
 
     @Autowired
     private TranslationService translationService;
@@ -38,73 +31,90 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
     @Autowired
     private ProductionBalanceRepository productionBalanceRepository;
 
+    private static final String L_SHEET = "productionCounting.productionBalance.report.xls.sheet.";
+
     private static final List<String> PRODUCTION_QUANTITIES_HEADERS = Lists.newArrayList("orderNumber", "productNumber",
             "productName", "plannedQuantity", "producedQuantity", "wastesQuantity", "producedWastes", "deviation", "productUnit");
 
-    @Override
-    protected void addHeader(HSSFSheet sheet, Locale locale, Entity entity) {
-
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        HSSFRow headerRow = sheet.createRow(0);
-        int columnIndex = 0;
-        for (String key : PRODUCTION_QUANTITIES_HEADERS) {
-            createHeaderCell(stylesContainer, headerRow,
-                    translationService.translate("productionCounting.productionBalance.report.xls.header." + key, locale),
-                    columnIndex, HSSFCellStyle.ALIGN_LEFT);
-            columnIndex++;
-        }
-    }
+    private static final List<String> MATERIAL_COSTS_HEADERS = Lists.newArrayList("orderNumber", "operationNumber",
+            "productNumber", "productName", "replacementTo", "plannedQuantity", "usedQuantity", "quantitativeDeviation", "unit",
+            "plannedCost", "realCost", "valueDeviation", "usedWasteQuantity", "unit");
 
-    @Override
-    protected void addSeries(HSSFSheet sheet, Entity entity) {
-        List<Long> ordersIds = getOrdersIds(entity);
+    private static final List<String> LABOR_TIME_HEADERS = Lists.newArrayList(LaborTimeSheetConstants.ORDER_NUMBER,
+            LaborTimeSheetConstants.OPERATION_NUMBER, LaborTimeSheetConstants.STAFF_NUMBER, LaborTimeSheetConstants.STAFF_NAME,
+            LaborTimeSheetConstants.STAFF_SURNAME, LaborTimeSheetConstants.WAGE_GROUP_NAME,
+            LaborTimeSheetConstants.STAFF_LABOR_HOURLY_COST, LaborTimeSheetConstants.LABOR_TIME);
+
+    private static final List<String> LABOR_TIME_DETAILS_HEADERS = Lists.newArrayList("divisionNumber", "productionLineNumber",
+            "orderNumber", "orderState", "plannedDateFrom", "effectiveDateFrom", "plannedDateTo", "effectiveDateTo",
+            "productNumber", "orderName", "plannedQuantity", "amountOfProductProduced", "staffNumber", "staffName",
+            "staffSurname", "operationNumber", "timeRangeFrom", "timeRangeTo", "shiftName", "createDate", "laborTime",
+            "plannedLaborTime", "laborTimeDeviation", "machineTime", "plannedMachineTime", "machineTimeDeviation");
+
+    private static final List<String> PIECEWORK_HEADERS = Lists.newArrayList(PieceworkSheetConstants.ORDER_NUMBER,
+            PieceworkSheetConstants.OPERATION_NUMBER, PieceworkSheetConstants.TOTAL_EXECUTED_OPERATION_CYCLES);
 
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        createProducedQuantitiesSheet(sheet, ordersIds, stylesContainer);
+    private static final List<String> STOPPAGES_HEADERS = Lists.newArrayList("orderNumber", "productionTrackingNumber",
+            "productionTrackingState", "duration", "dateFrom", "dateTo", "reason", "description", "division", "productionLine",
+            "workstation", "worker");
+
+    private static final List<String> PRODUCTION_COSTS_HEADERS = Lists.newArrayList("orderNumber", "operationNumber",
+            "plannedCostsSum", "realCostsSum", "sumCostsDeviation", "plannedStaffTime", "realStaffTime", "plannedMachineTime",
+            "realMachineTime", "plannedStaffCosts", "realStaffCosts", "staffCostsDeviation", "plannedMachineCosts",
+            "realMachineCosts", "machineCostsDeviation", "plannedPieceworkCosts", "realPieceworkCosts");
+
+    private static final List<String> PRODUCTS_BALANCE_HEADERS = Lists.newArrayList("productNumber", "productName",
+            "producedQuantity", "materialCosts", "productionCosts", "technicalProductionCosts", "materialCostMargin",
+            "materialCostMarginValue", "productionCostMargin", "productionCostMarginValue", "additionalOverhead",
+            "directAdditionalCost", "totalCosts", "registrationPrice", "registrationPriceOverhead",
+            "registrationPriceOverheadValue", "realProductionCosts", "profit", "profitValue", "sellPrice");
+
+    private static final List<String> ORDERS_BALANCE_HEADERS = Lists.newArrayList("orderNumber");
+
+    static {
+        ORDERS_BALANCE_HEADERS.addAll(PRODUCTS_BALANCE_HEADERS);
     }
 
-    @Override
     public String getReportTitle(Locale locale) {
-        return translationService.translate("productionCounting.productionBalance.report.xls.sheet.producedQuantities", locale);
+        return translationService.translate(L_SHEET + "producedQuantities", locale);
     }
 
     @Override
-    protected void addExtraSheets(final HSSFWorkbook workbook, Entity entity, Locale locale) {
+    protected void addSheets(final SXSSFWorkbook workbook, final XlsxStylesContainer stylesContainer, final Entity entity,
+            final Locale locale) {
         List<Long> ordersIds = getOrdersIds(entity);
-        List<MaterialCost> materialCosts = productionBalanceRepository.getMaterialCosts(entity, ordersIds);
-        createMaterialCostsSheet(materialCosts, createSheet(workbook,
-                translationService.translate("productionCounting.productionBalance.report.xls.sheet.materialCosts", locale)),
-                locale);
-        createLaborTimeSheet(createSheet(workbook, translationService.translate(LaborTimeSheetConstants.SHEET_TITLE, locale)),
+
+        createProducedQuantitiesSheet(createSheet(workbook, stylesContainer, getReportTitle(locale)), ordersIds, locale);
+
+        Map<Long, BigDecimal> materialCosts = createMaterialCostsSheet(
+                createSheet(workbook, stylesContainer, translationService.translate(L_SHEET + "materialCosts", locale)),
+                entity, ordersIds, locale);
+        createLaborTimeSheet(
+                createSheet(workbook, stylesContainer, translationService.translate(LaborTimeSheetConstants.SHEET_TITLE, locale)),
                 ordersIds, locale);
-        List<LaborTimeDetails> laborTimeDetailsList = productionBalanceRepository.getLaborTimeDetails(entity, ordersIds);
-        createLaborTimeDetailsSheet(laborTimeDetailsList, createSheet(workbook,
-                translationService.translate("productionCounting.productionBalance.report.xls.sheet.laborTimeDetails", locale)),
-                locale);
-        createPieceworkSheet(createSheet(workbook, translationService.translate(PieceworkSheetConstants.SHEET_TITLE, locale)),
+        createLaborTimeDetailsSheet(
+                createSheet(workbook, stylesContainer, translationService.translate(L_SHEET + "laborTimeDetails", locale)),
+                entity, ordersIds, locale);
+        createPieceworkSheet(
+                createSheet(workbook, stylesContainer, translationService.translate(PieceworkSheetConstants.SHEET_TITLE, locale)),
                 ordersIds, locale);
         createStoppagesSheet(
-                createSheet(workbook,
-                        translationService.translate("productionCounting.productionBalance.report.xls.sheet.stoppages", locale)),
-                ordersIds, locale);
-        List<ProductionCost> productionCosts = productionBalanceRepository.getProductionCosts(entity, ordersIds);
-        createProductionCostsSheet(productionCosts, createSheet(workbook,
-                translationService.translate("productionCounting.productionBalance.report.xls.sheet.productionCosts", locale)),
+                createSheet(workbook, stylesContainer, translationService.translate(L_SHEET + "stoppages", locale)), ordersIds,
                 locale);
+        Map<Long, BigDecimal> productionCosts = createProductionCostsSheet(
+                createSheet(workbook, stylesContainer, translationService.translate(L_SHEET + "productionCosts", locale)),
+                entity, ordersIds, locale);
         List<OrderBalance> ordersBalance = productionBalanceRepository.getOrdersBalance(entity, ordersIds, materialCosts,
                 productionCosts);
-        createOrdersBalanceSheet(ordersBalance, createSheet(workbook,
-                translationService.translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance", locale)),
-                locale);
+        createOrdersBalanceSheet(ordersBalance,
+                createSheet(workbook, stylesContainer, translationService.translate(L_SHEET + "ordersBalance", locale)), locale);
         List<OrderBalance> componentsBalance = productionBalanceRepository.getComponentsBalance(entity, ordersIds, ordersBalance);
-        createOrdersBalanceSheet(componentsBalance, createSheet(workbook,
-                translationService.translate("productionCounting.productionBalance.report.xls.sheet.componentsBalance", locale)),
+        createOrdersBalanceSheet(componentsBalance,
+                createSheet(workbook, stylesContainer, translationService.translate(L_SHEET + "componentsBalance", locale)),
                 locale);
         List<OrderBalance> productsBalance = productionBalanceRepository.getProductsBalance(entity, ordersIds, componentsBalance);
-        createProductsBalanceSheet(productsBalance, createSheet(workbook,
-                translationService.translate("productionCounting.productionBalance.report.xls.sheet.productsBalance", locale)),
+        createProductsBalanceSheet(productsBalance,
+                createSheet(workbook, stylesContainer, translationService.translate(L_SHEET + "productsBalance", locale)),
                 locale);
     }
 
@@ -114,861 +124,244 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
         return orders.stream().map(Entity::getId).collect(Collectors.toList());
     }
 
-    private void createProducedQuantitiesSheet(HSSFSheet sheet, List<Long> ordersIds, StylesContainer stylesContainer) {
-        List<ProducedQuantity> producedQuantities = productionBalanceRepository.getProducedQuantities(ordersIds);
-        int rowIndex = 1;
-        for (ProducedQuantity producedQuantity : producedQuantities) {
-            HSSFRow row = sheet.createRow(rowIndex);
-            createRegularCell(stylesContainer, row, 0, producedQuantity.getOrderNumber());
-            createRegularCell(stylesContainer, row, 1, producedQuantity.getProductNumber());
-            createRegularCell(stylesContainer, row, 2, producedQuantity.getProductName());
-            createNumericCell(stylesContainer, row, 3, producedQuantity.getPlannedQuantity(), false);
-            createNumericCell(stylesContainer, row, 4, producedQuantity.getProducedQuantity(), true);
-            createNumericCell(stylesContainer, row, 5, producedQuantity.getWastesQuantity(), false);
-            createNumericCell(stylesContainer, row, 6, producedQuantity.getProducedWastes(), false);
-            createNumericCell(stylesContainer, row, 7, producedQuantity.getDeviation(), false);
-            createRegularCell(stylesContainer, row, 8, producedQuantity.getProductUnit());
-            rowIndex++;
-        }
-
-        for (int i = 0; i < PRODUCTION_QUANTITIES_HEADERS.size(); i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+    private void createProducedQuantitiesSheet(XlsxSheetWriter sheet, List<Long> ordersIds, Locale locale) {
+        addHeaderRow(sheet, "productionCounting.productionBalance.report.xls.header.", PRODUCTION_QUANTITIES_HEADERS, locale);
+
+        productionBalanceRepository.getProducedQuantities(ordersIds, producedQuantity -> {
+            sheet.nextRow();
+            sheet.addRegularCell(0, producedQuantity.getOrderNumber());
+            sheet.addRegularCell(1, producedQuantity.getProductNumber());
+            sheet.addRegularCell(2, producedQuantity.getProductName());
+            addNumericCell(sheet, 3, producedQuantity.getPlannedQuantity(), false);
+            addNumericCell(sheet, 4, producedQuantity.getProducedQuantity(), true);
+            addNumericCell(sheet, 5, producedQuantity.getWastesQuantity(), false);
+            addNumericCell(sheet, 6, producedQuantity.getProducedWastes(), false);
+            addNumericCell(sheet, 7, producedQuantity.getDeviation(), false);
+            sheet.addRegularCell(8, producedQuantity.getProductUnit());
+        });
+
+        sheet.autoSizeColumns();
     }
 
-    private void createMaterialCostsSheet(List<MaterialCost> materialCosts, HSSFSheet sheet, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.orderNumber", locale),
-                0, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.operationNumber", locale),
-                1, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.productNumber", locale),
-                2, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.productName", locale),
-                3, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.replacementTo", locale),
-                4, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.plannedQuantity", locale),
-                5, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.usedQuantity", locale),
-                6, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.materialCosts.quantitativeDeviation", locale),
-                7, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.unit", locale),
-                8, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.plannedCost", locale),
-                9, CellStyle.ALIGN_LEFT);
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.realCost", locale),
-                10, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.valueDeviation", locale),
-                11, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.materialCosts.usedWasteQuantity", locale),
-                12, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.unit", locale),
-                13, CellStyle.ALIGN_LEFT);
-
-        int rowCounter = 0;
-        for (MaterialCost materialCost : materialCosts) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, materialCost.getOrderNumber());
-            createRegularCell(stylesContainer, row, 1, materialCost.getOperationNumber());
-            createRegularCell(stylesContainer, row, 2, materialCost.getProductNumber());
-            createRegularCell(stylesContainer, row, 3, materialCost.getProductName());
-            createRegularCell(stylesContainer, row, 4, materialCost.getReplacementTo());
-            createNumericCell(stylesContainer, row, 5, materialCost.getPlannedQuantity(), false);
-            createNumericCell(stylesContainer, row, 6, materialCost.getUsedQuantity(), true);
-            createNumericCell(stylesContainer, row, 7, materialCost.getQuantitativeDeviation(), false);
-            createRegularCell(stylesContainer, row, 8, materialCost.getProductUnit());
-            createNumericCell(stylesContainer, row, 9, materialCost.getPlannedCost(), false);
-            createNumericCell(stylesContainer, row, 10, materialCost.getRealCost(), true);
-            createNumericCell(stylesContainer, row, 11, materialCost.getValueDeviation(), false);
-            createNumericCell(stylesContainer, row, 12, materialCost.getUsedWasteQuantity(), false);
-            createRegularCell(stylesContainer, row, 13, materialCost.getUsedWasteUnit());
-            rowCounter++;
-        }
-        for (int i = 0; i <= 13; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+    private Map<Long, BigDecimal> createMaterialCostsSheet(XlsxSheetWriter sheet, Entity entity, List<Long> ordersIds,
+            Locale locale) {
+        Map<Long, BigDecimal> realCosts = Maps.newLinkedHashMap();
+
+        addHeaderRow(sheet, L_SHEET + "materialCosts.", MATERIAL_COSTS_HEADERS, locale);
+
+        productionBalanceRepository.getMaterialCosts(entity, ordersIds, materialCost -> {
+            sheet.nextRow();
+            sheet.addRegularCell(0, materialCost.getOrderNumber());
+            sheet.addRegularCell(1, materialCost.getOperationNumber());
+            sheet.addRegularCell(2, materialCost.getProductNumber());
+            sheet.addRegularCell(3, materialCost.getProductName());
+            sheet.addRegularCell(4, materialCost.getReplacementTo());
+            addNumericCell(sheet, 5, materialCost.getPlannedQuantity(), false);
+            addNumericCell(sheet, 6, materialCost.getUsedQuantity(), true);
+            addNumericCell(sheet, 7, materialCost.getQuantitativeDeviation(), false);
+            sheet.addRegularCell(8, materialCost.getProductUnit());
+            addNumericCell(sheet, 9, materialCost.getPlannedCost(), false);
+            addNumericCell(sheet, 10, materialCost.getRealCost(), true);
+            addNumericCell(sheet, 11, materialCost.getValueDeviation(), false);
+            addNumericCell(sheet, 12, materialCost.getUsedWasteQuantity(), false);
+            sheet.addRegularCell(13, materialCost.getUsedWasteUnit());
+
+            addCost(realCosts, materialCost.getOrderId(), materialCost.getRealCost());
+        });
+
+        sheet.autoSizeColumns();
+
+        return realCosts;
     }
 
-    private void createPieceworkSheet(HSSFSheet sheet, List<Long> ordersIds, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
-        createHeaderCell(stylesContainer, row, translationService.translate(PieceworkSheetConstants.ORDER_NUMBER, locale), 0,
-                CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row, translationService.translate(PieceworkSheetConstants.OPERATION_NUMBER, locale), 1,
-                CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(PieceworkSheetConstants.TOTAL_EXECUTED_OPERATION_CYCLES, locale), 2,
-                CellStyle.ALIGN_LEFT);
-
-        List<PieceworkDetails> pieceworkDetailsList = productionBalanceRepository.getPieceworkDetails(ordersIds);
-        int rowCounter = 0;
-        for (PieceworkDetails pieceworkDetails : pieceworkDetailsList) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, pieceworkDetails.getOrderNumber());
-            createRegularCell(stylesContainer, row, 1, pieceworkDetails.getOperationNumber());
-            createNumericCell(stylesContainer, row, 2, pieceworkDetails.getTotalExecutedOperationCycles(), false);
-            rowCounter++;
-        }
-        for (int i = 0; i <= 2; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+    private void createPieceworkSheet(XlsxSheetWriter sheet, List<Long> ordersIds, Locale locale) {
+        addHeaderRow(sheet, "", PIECEWORK_HEADERS, locale);
+
+        productionBalanceRepository.getPieceworkDetails(ordersIds, pieceworkDetails -> {
+            sheet.nextRow();
+            sheet.addRegularCell(0, pieceworkDetails.getOrderNumber());
+            sheet.addRegularCell(1, pieceworkDetails.getOperationNumber());
+            addNumericCell(sheet, 2, pieceworkDetails.getTotalExecutedOperationCycles(), false);
+        });
+
+        sheet.autoSizeColumns();
     }
 
-    private void createStoppagesSheet(HSSFSheet sheet, List<Long> ordersIds, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.stoppages.orderNumber", locale),
-                0, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.stoppages.productionTrackingNumber", locale),
-                1, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.stoppages.productionTrackingState", locale),
-                2, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate("productionCounting.productionBalance.report.xls.sheet.stoppages.duration", locale),
-                3, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate("productionCounting.productionBalance.report.xls.sheet.stoppages.dateFrom", locale),
-                4, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate("productionCounting.productionBalance.report.xls.sheet.stoppages.dateTo", locale), 5,
-                CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate("productionCounting.productionBalance.report.xls.sheet.stoppages.reason", locale), 6,
-                CellStyle.ALIGN_LEFT);
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.stoppages.description", locale),
-                7, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate("productionCounting.productionBalance.report.xls.sheet.stoppages.division", locale),
-                8, CellStyle.ALIGN_LEFT);
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.stoppages.productionLine", locale),
-                9, CellStyle.ALIGN_LEFT);
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.stoppages.workstation", locale),
-                10, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate("productionCounting.productionBalance.report.xls.sheet.stoppages.worker", locale),
-                11, CellStyle.ALIGN_LEFT);
-
-        List<Stoppage> stoppages = productionBalanceRepository.getStoppages(ordersIds);
-        int rowCounter = 0;
-        for (Stoppage stoppage : stoppages) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, stoppage.getOrderNumber());
-            createRegularCell(stylesContainer, row, 1, stoppage.getProductionTrackingNumber());
-            createRegularCell(stylesContainer, row, 2,
+    private void createStoppagesSheet(XlsxSheetWriter sheet, List<Long> ordersIds, Locale locale) {
+        addHeaderRow(sheet, L_SHEET + "stoppages.", STOPPAGES_HEADERS, locale);
+
+        productionBalanceRepository.getStoppages(ordersIds, stoppage -> {
+            sheet.nextRow();
+            sheet.addRegularCell(0, stoppage.getOrderNumber());
+            sheet.addRegularCell(1, stoppage.getProductionTrackingNumber());
+            sheet.addRegularCell(2,
                     stoppage.getProductionTrackingState() != null ? translationService.translate(
                             "productionCounting.productionTracking.state.value." + stoppage.getProductionTrackingState(), locale)
                             : null);
-            createTimeCell(stylesContainer, row, 3, stoppage.getDuration(), false);
-            createDateTimeCell(stylesContainer, row, 4, stoppage.getDateFrom());
-            createDateTimeCell(stylesContainer, row, 5, stoppage.getDateTo());
-            createRegularCell(stylesContainer, row, 6, stoppage.getReason());
-            createRegularCell(stylesContainer, row, 7, stoppage.getDescription());
-            createRegularCell(stylesContainer, row, 8, stoppage.getDivision());
-            createRegularCell(stylesContainer, row, 9, stoppage.getProductionLine());
-            createRegularCell(stylesContainer, row, 10, stoppage.getWorkstation());
-            createRegularCell(stylesContainer, row, 11, stoppage.getWorker());
-            rowCounter++;
-        }
-        for (int i = 0; i <= 11; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+            sheet.addTimeCell(3, stoppage.getDuration(), false);
+            sheet.addDateTimeCell(4, stoppage.getDateFrom());
+            sheet.addDateTimeCell(5, stoppage.getDateTo());
+            sheet.addRegularCell(6, stoppage.getReason());
+            sheet.addRegularCell(7, stoppage.getDescription());
+            sheet.addRegularCell(8, stoppage.getDivision());
+            sheet.addRegularCell(9, stoppage.getProductionLine());
+            sheet.addRegularCell(10, stoppage.getWorkstation());
+            sheet.addRegularCell(11, stoppage.getWorker());
+        });
+
+        sheet.autoSizeColumns();
     }
 
-    private void createLaborTimeSheet(HSSFSheet sheet, List<Long> ordersIds, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
-        createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.ORDER_NUMBER, locale), 0,
-                CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.OPERATION_NUMBER, locale), 1,
-                CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.STAFF_NUMBER, locale), 2,
-                CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.STAFF_NAME, locale), 3,
-                CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.STAFF_SURNAME, locale), 4,
-                CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.WAGE_GROUP_NAME, locale), 5,
-                CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.STAFF_LABOR_HOURLY_COST, locale), 6,
-                CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.LABOR_TIME, locale), 7,
-                CellStyle.ALIGN_LEFT);
-
-        List<LaborTime> laborTimeList = productionBalanceRepository.getLaborTime(ordersIds);
-        int rowCounter = 0;
-        for (LaborTime laborTime : laborTimeList) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, laborTime.getOrderNumber());
-            createRegularCell(stylesContainer, row, 1, laborTime.getOperationNumber());
-            createRegularCell(stylesContainer, row, 2, laborTime.getStaffNumber());
-            createRegularCell(stylesContainer, row, 3, laborTime.getStaffName());
-            createRegularCell(stylesContainer, row, 4, laborTime.getStaffSurname());
-            createRegularCell(stylesContainer, row, 5, laborTime.getWageGroupName());
-            createNumericCell(stylesContainer, row, 6, laborTime.getStaffLaborHourlyCost(), false);
-            createTimeCell(stylesContainer, row, 7, laborTime.getLaborTime(), false);
-            rowCounter++;
-        }
-        for (int i = 0; i <= 7; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+    private void createLaborTimeSheet(XlsxSheetWriter sheet, List<Long> ordersIds, Locale locale) {
+        addHeaderRow(sheet, "", LABOR_TIME_HEADERS, locale);
+
+        productionBalanceRepository.getLaborTime(ordersIds, laborTime -> {
+            sheet.nextRow();
+            sheet.addRegularCell(0, laborTime.getOrderNumber());
+            sheet.addRegularCell(1, laborTime.getOperationNumber());
+            sheet.addRegularCell(2, laborTime.getStaffNumber());
+            sheet.addRegularCell(3, laborTime.getStaffName());
+            sheet.addRegularCell(4, laborTime.getStaffSurname());
+            sheet.addRegularCell(5, laborTime.getWageGroupName());
+            addNumericCell(sheet, 6, laborTime.getStaffLaborHourlyCost(), false);
+            sheet.addTimeCell(7, laborTime.getLaborTime(), false);
+        });
+
+        sheet.autoSizeColumns();
     }
 
-    private void createLaborTimeDetailsSheet(List<LaborTimeDetails> laborTimeDetailsList, HSSFSheet sheet, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.divisionNumber", locale),
-                0, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.productionLineNumber", locale),
-                1, CellStyle.ALIGN_LEFT);
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.orderNumber", locale),
-                2, CellStyle.ALIGN_LEFT);
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.orderState", locale),
-                3, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.plannedDateFrom", locale),
-                4, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.effectiveDateFrom", locale),
-                5, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.plannedDateTo", locale),
-                6, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.effectiveDateTo", locale),
-                7, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.productNumber", locale),
-                8, CellStyle.ALIGN_LEFT);
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.orderName", locale),
-                9, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.plannedQuantity", locale),
-                10, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.amountOfProductProduced", locale),
-                11, CellStyle.ALIGN_LEFT);
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.staffNumber", locale),
-                12, CellStyle.ALIGN_LEFT);
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.staffName", locale),
-                13, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.staffSurname", locale),
-                14, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.operationNumber", locale),
-                15, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.timeRangeFrom", locale),
-                16, CellStyle.ALIGN_LEFT);
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.timeRangeTo", locale),
-                17, CellStyle.ALIGN_LEFT);
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.shiftName", locale),
-                18, CellStyle.ALIGN_LEFT);
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.createDate", locale),
-                19, CellStyle.ALIGN_LEFT);
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.laborTime", locale),
-                20, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.plannedLaborTime", locale),
-                21, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.laborTimeDeviation", locale),
-                22, CellStyle.ALIGN_LEFT);
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.machineTime", locale),
-                23, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.plannedMachineTime", locale),
-                24, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.machineTimeDeviation", locale),
-                25, CellStyle.ALIGN_LEFT);
-
-        int rowCounter = 0;
-        for (LaborTimeDetails laborTimeDetails : laborTimeDetailsList) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, laborTimeDetails.getDivisionNumber());
-            createRegularCell(stylesContainer, row, 1, laborTimeDetails.getProductionLineNumber());
-            createRegularCell(stylesContainer, row, 2, laborTimeDetails.getOrderNumber());
-            createRegularCell(stylesContainer, row, 3, translationService.translate(
-                    "orders.order.state.value." + laborTimeDetails.getOrderState(), locale));
-            createDateTimeCell(stylesContainer, row, 4, laborTimeDetails.getPlannedDateFrom());
-            createDateTimeCell(stylesContainer, row, 5, laborTimeDetails.getEffectiveDateFrom());
-            createDateTimeCell(stylesContainer, row, 6, laborTimeDetails.getPlannedDateTo());
-            createDateTimeCell(stylesContainer, row, 7, laborTimeDetails.getEffectiveDateTo());
-            createRegularCell(stylesContainer, row, 8, laborTimeDetails.getProductNumber());
-            createRegularCell(stylesContainer, row, 9, laborTimeDetails.getOrderName());
-            createNumericCell(stylesContainer, row, 10, laborTimeDetails.getPlannedQuantity(), false);
-            createNumericCell(stylesContainer, row, 11, laborTimeDetails.getAmountOfProductProduced(), false);
-            createRegularCell(stylesContainer, row, 12, laborTimeDetails.getStaffNumber());
-            createRegularCell(stylesContainer, row, 13, laborTimeDetails.getStaffName());
-            createRegularCell(stylesContainer, row, 14, laborTimeDetails.getStaffSurname());
-            createRegularCell(stylesContainer, row, 15, laborTimeDetails.getOperationNumber());
-            createDateTimeCell(stylesContainer, row, 16, laborTimeDetails.getTimeRangeFrom());
-            createDateTimeCell(stylesContainer, row, 17, laborTimeDetails.getTimeRangeTo());
-            createRegularCell(stylesContainer, row, 18, laborTimeDetails.getShiftName());
-            createDateTimeCell(stylesContainer, row, 19, laborTimeDetails.getCreateDate());
-            createTimeCell(stylesContainer, row, 20, laborTimeDetails.getLaborTime(), false);
-            createTimeCell(stylesContainer, row, 21, laborTimeDetails.getPlannedLaborTime(), false);
-            createTimeCell(stylesContainer, row, 22, laborTimeDetails.getLaborTimeDeviation(), false);
-            createTimeCell(stylesContainer, row, 23, laborTimeDetails.getMachineTime(), false);
-            createTimeCell(stylesContainer, row, 24, laborTimeDetails.getPlannedMachineTime(), false);
-            createTimeCell(stylesContainer, row, 25, laborTimeDetails.getMachineTimeDeviation(), false);
-            rowCounter++;
-        }
-        for (int i = 0; i <= 25; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+    private void createLaborTimeDetailsSheet(XlsxSheetWriter sheet, Entity entity, List<Long> ordersIds, Locale locale) {
+        addHeaderRow(sheet, L_SHEET + "laborTimeDetails.", LABOR_TIME_DETAILS_HEADERS, locale);
+
+        productionBalanceRepository.getLaborTimeDetails(entity, ordersIds, laborTimeDetails -> {
+            sheet.nextRow();
+            sheet.addRegularCell(0, laborTimeDetails.getDivisionNumber());
+            sheet.addRegularCell(1, laborTimeDetails.getProductionLineNumber());
+            sheet.addRegularCell(2, laborTimeDetails.getOrderNumber());
+            sheet.addRegularCell(3,
+                    translationService.translate("orders.order.state.value." + laborTimeDetails.getOrderState(), locale));
+            sheet.addDateTimeCell(4, laborTimeDetails.getPlannedDateFrom());
+            sheet.addDateTimeCell(5, laborTimeDetails.getEffectiveDateFrom());
+            sheet.addDateTimeCell(6, laborTimeDetails.getPlannedDateTo());
+            sheet.addDateTimeCell(7, laborTimeDetails.getEffectiveDateTo());
+            sheet.addRegularCell(8, laborTimeDetails.getProductNumber());
+            sheet.addRegularCell(9, laborTimeDetails.getOrderName());
+            addNumericCell(sheet, 10, laborTimeDetails.getPlannedQuantity(), false);
+            addNumericCell(sheet, 11, laborTimeDetails.getAmountOfProductProduced(), false);
+            sheet.addRegularCell(12, laborTimeDetails.getStaffNumber());
+            sheet.addRegularCell(13, laborTimeDetails.getStaffName());
+            sheet.addRegularCell(14, laborTimeDetails.getStaffSurname());
+            sheet.addRegularCell(15, laborTimeDetails.getOperationNumber());
+            sheet.addDateTimeCell(16, laborTimeDetails.getTimeRangeFrom());
+            sheet.addDateTimeCell(17, laborTimeDetails.getTimeRangeTo());
+            sheet.addRegularCell(18, laborTimeDetails.getShiftName());
+            sheet.addDateTimeCell(19, laborTimeDetails.getCreateDate());
+            sheet.addTimeCell(20, laborTimeDetails.getLaborTime(), false);
+            sheet.addTimeCell(21, laborTimeDetails.getPlannedLaborTime(), false);
+            sheet.addTimeCell(22, laborTimeDetails.getLaborTimeDeviation(), false);
+            sheet.addTimeCell(23, laborTimeDetails.getMachineTime(), false);
+            sheet.addTimeCell(24, laborTimeDetails.getPlannedMachineTime(), false);
+            sheet.addTimeCell(25, laborTimeDetails.getMachineTimeDeviation(), false);
+        });
+
+        sheet.autoSizeColumns();
     }
 
-    private void createProductionCostsSheet(List<ProductionCost> productionCosts, HSSFSheet sheet, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.productionCosts.orderNumber", locale),
-                0, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.operationNumber", locale),
-                1, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.plannedCostsSum", locale),
-                2, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.productionCosts.realCostsSum", locale),
-                3, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.sumCostsDeviation", locale),
-                4, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.plannedStaffTime", locale),
-                5, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.productionCosts.realStaffTime", locale),
-                6, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.plannedMachineTime", locale),
-                7, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.realMachineTime", locale),
-                8, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.plannedStaffCosts", locale),
-                9, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.realStaffCosts", locale),
-                10, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.staffCostsDeviation", locale),
-                11, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.plannedMachineCosts", locale),
-                12, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.realMachineCosts", locale),
-                13, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.machineCostsDeviation", locale),
-                14, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.plannedPieceworkCosts", locale),
-                15, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.productionCosts.realPieceworkCosts", locale),
-                16, CellStyle.ALIGN_LEFT);
-
-        int rowCounter = 0;
-        for (ProductionCost productionCost : productionCosts) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, productionCost.getOrderNumber());
-            createRegularCell(stylesContainer, row, 1, productionCost.getOperationNumber());
-            createNumericCell(stylesContainer, row, 2, productionCost.getPlannedCostsSum(), false);
-            createNumericCell(stylesContainer, row, 3, productionCost.getRealCostsSum(), false);
-            createNumericCell(stylesContainer, row, 4, productionCost.getSumCostsDeviation(), false);
-            createTimeCell(stylesContainer, row, 5, productionCost.getPlannedStaffTime(), false);
-            createTimeCell(stylesContainer, row, 6, productionCost.getRealStaffTime(), true);
-            createTimeCell(stylesContainer, row, 7, productionCost.getPlannedMachineTime(), false);
-            createTimeCell(stylesContainer, row, 8, productionCost.getRealMachineTime(), true);
-            createNumericCell(stylesContainer, row, 9, productionCost.getPlannedStaffCosts(), false);
-            createNumericCell(stylesContainer, row, 10, productionCost.getRealStaffCosts(), false);
-            createNumericCell(stylesContainer, row, 11, productionCost.getStaffCostsDeviation(), false);
-            createNumericCell(stylesContainer, row, 12, productionCost.getPlannedMachineCosts(), false);
-            createNumericCell(stylesContainer, row, 13, productionCost.getRealMachineCosts(), false);
-            createNumericCell(stylesContainer, row, 14, productionCost.getMachineCostsDeviation(), false);
-            createNumericCell(stylesContainer, row, 15, productionCost.getPlannedPieceworkCosts(), false);
-            createNumericCell(stylesContainer, row, 16, productionCost.getRealPieceworkCosts(), false);
-            rowCounter++;
-        }
-        for (int i = 0; i <= 16; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+    private Map<Long, BigDecimal> createProductionCostsSheet(XlsxSheetWriter sheet, Entity entity, List<Long> ordersIds,
+            Locale locale) {
+        Map<Long, BigDecimal> realCostsSums = Maps.newLinkedHashMap();
+
+        addHeaderRow(sheet, L_SHEET + "productionCosts.", PRODUCTION_COSTS_HEADERS, locale);
+
+        productionBalanceRepository.getProductionCosts(entity, ordersIds, productionCost -> {
+            sheet.nextRow();
+            sheet.addRegularCell(0, productionCost.getOrderNumber());
+            sheet.addRegularCell(1, productionCost.getOperationNumber());
+            addNumericCell(sheet, 2, productionCost.getPlannedCostsSum(), false);
+            addNumericCell(sheet, 3, productionCost.getRealCostsSum(), false);
+            addNumericCell(sheet, 4, productionCost.getSumCostsDeviation(), false);
+            sheet.addTimeCell(5, productionCost.getPlannedStaffTime(), false);
+            sheet.addTimeCell(6, productionCost.getRealStaffTime(), true);
+            sheet.addTimeCell(7, productionCost.getPlannedMachineTime(), false);
+            sheet.addTimeCell(8, productionCost.getRealMachineTime(), true);
+            addNumericCell(sheet, 9, productionCost.getPlannedStaffCosts(), false);
+            addNumericCell(sheet, 10, productionCost.getRealStaffCosts(), false);
+            addNumericCell(sheet, 11, productionCost.getStaffCostsDeviation(), false);
+            addNumericCell(sheet, 12, productionCost.getPlannedMachineCosts(), false);
+            addNumericCell(sheet, 13, productionCost.getRealMachineCosts(), false);
+            addNumericCell(sheet, 14, productionCost.getMachineCostsDeviation(), false);
+            addNumericCell(sheet, 15, productionCost.getPlannedPieceworkCosts(), false);
+            addNumericCell(sheet, 16, productionCost.getRealPieceworkCosts(), false);
+
+            addCost(realCostsSums, productionCost.getOrderId(), productionCost.getRealCostsSum());
+        });
+
+        sheet.autoSizeColumns();
+
+        return realCostsSums;
     }
 
-    private void createOrdersBalanceSheet(List<OrderBalance> ordersBalance, HSSFSheet sheet, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.orderNumber", locale),
-                0, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.productNumber", locale),
-                1, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.productName", locale),
-                2, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.producedQuantity", locale),
-                3, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.materialCosts", locale),
-                4, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.productionCosts", locale),
-                5, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.technicalProductionCosts", locale),
-                6, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.materialCostMargin", locale),
-                7, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.materialCostMarginValue", locale),
-                8, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.productionCostMargin", locale),
-                9, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.productionCostMarginValue", locale),
-                10, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.additionalOverhead", locale),
-                11, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.directAdditionalCost", locale),
-                12, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.totalCosts", locale),
-                13, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.registrationPrice", locale),
-                14, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.registrationPriceOverhead", locale),
-                15, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.registrationPriceOverheadValue",
-                        locale),
-                16, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.realProductionCosts", locale),
-                17, CellStyle.ALIGN_LEFT);
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.profit", locale),
-                18, CellStyle.ALIGN_LEFT);
-
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.profitValue", locale),
-                19, CellStyle.ALIGN_LEFT);
-
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.sellPrice", locale),
-                20, CellStyle.ALIGN_LEFT);
-
-        int rowCounter = 0;
+    private void createOrdersBalanceSheet(List<OrderBalance> ordersBalance, XlsxSheetWriter sheet, Locale locale) {
+        addHeaderRow(sheet, L_SHEET + "ordersBalance.", ORDERS_BALANCE_HEADERS, locale);
+
         for (OrderBalance orderBalance : ordersBalance) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, orderBalance.getOrderNumber());
-            createRegularCell(stylesContainer, row, 1, orderBalance.getProductNumber());
-            createRegularCell(stylesContainer, row, 2, orderBalance.getProductName());
-            createNumericCell(stylesContainer, row, 3, orderBalance.getProducedQuantity(), true);
-            createNumericCell(stylesContainer, row, 4, orderBalance.getMaterialCosts(), false);
-            createNumericCell(stylesContainer, row, 5, orderBalance.getProductionCosts(), false);
-            createNumericCell(stylesContainer, row, 6, orderBalance.getTechnicalProductionCosts(), true);
-            createNumericCell(stylesContainer, row, 7, orderBalance.getMaterialCostMargin(), false);
-            createNumericCell(stylesContainer, row, 8, orderBalance.getMaterialCostMarginValue(), false);
-            createNumericCell(stylesContainer, row, 9, orderBalance.getProductionCostMargin(), false);
-            createNumericCell(stylesContainer, row, 10, orderBalance.getProductionCostMarginValue(), false);
-            createNumericCell(stylesContainer, row, 11, orderBalance.getAdditionalOverhead(), false);
-            createNumericCell(stylesContainer, row, 12, orderBalance.getDirectAdditionalCost(), false);
-            createNumericCell(stylesContainer, row, 13, orderBalance.getTotalCosts(), true);
-            createNumericCell(stylesContainer, row, 14, orderBalance.getRegistrationPrice(), false);
-            createNumericCell(stylesContainer, row, 15, orderBalance.getRegistrationPriceOverhead(), false);
-            createNumericCell(stylesContainer, row, 16, orderBalance.getRegistrationPriceOverheadValue(), false);
-            createNumericCell(stylesContainer, row, 17, orderBalance.getRealProductionCosts(), false);
-            createNumericCell(stylesContainer, row, 18, orderBalance.getProfit(), false);
-            createNumericCell(stylesContainer, row, 19, orderBalance.getProfitValue(), false);
-            createNumericCell(stylesContainer, row, 20, orderBalance.getSellPrice(), false);
-            rowCounter++;
-        }
-        for (int i = 0; i <= 20; i++) {
-            sheet.autoSizeColumn(i, false);
+            sheet.nextRow();
+            sheet.addRegularCell(0, orderBalance.getOrderNumber());
+            addBalanceCells(sheet, 1, orderBalance);
         }
-    }
 
-    private void createProductsBalanceSheet(List<OrderBalance> productsBalance, HSSFSheet sheet, Locale locale) {
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.productNumber", locale),
-                0, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.productName", locale),
-                1, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.producedQuantity", locale),
-                2, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.materialCosts", locale),
-                3, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.productionCosts", locale),
-                4, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.technicalProductionCosts", locale),
-                5, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.materialCostMargin", locale),
-                6, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.materialCostMarginValue", locale),
-                7, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.productionCostMargin", locale),
-                8, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.productionCostMarginValue", locale),
-                9, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.additionalOverhead", locale),
-                10, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.directAdditionalCost", locale),
-                11, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.totalCosts", locale),
-                12, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.registrationPrice", locale),
-                13, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.registrationPriceOverhead", locale),
-                14, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.registrationPriceOverheadValue",
-                        locale),
-                15, CellStyle.ALIGN_LEFT);
-        createHeaderCell(stylesContainer, row,
-                translationService.translate(
-                        "productionCounting.productionBalance.report.xls.sheet.ordersBalance.realProductionCosts", locale),
-                16, CellStyle.ALIGN_LEFT);
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.profit", locale),
-                17, CellStyle.ALIGN_LEFT);
-
-        createHeaderCell(stylesContainer,
-                row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.profitValue", locale),
-                18, CellStyle.ALIGN_LEFT);
-
-        createHeaderCell(
-                stylesContainer, row, translationService
-                        .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.sellPrice", locale),
-                19, CellStyle.ALIGN_LEFT);
-
-        int rowCounter = 0;
-        for (OrderBalance orderBalance : productsBalance) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, orderBalance.getProductNumber());
-            createRegularCell(stylesContainer, row, 1, orderBalance.getProductName());
-            createNumericCell(stylesContainer, row, 2, orderBalance.getProducedQuantity(), true);
-            createNumericCell(stylesContainer, row, 3, orderBalance.getMaterialCosts(), false);
-            createNumericCell(stylesContainer, row, 4, orderBalance.getProductionCosts(), false);
-            createNumericCell(stylesContainer, row, 5, orderBalance.getTechnicalProductionCosts(), true);
-            createNumericCell(stylesContainer, row, 6, orderBalance.getMaterialCostMargin(), false);
-            createNumericCell(stylesContainer, row, 7, orderBalance.getMaterialCostMarginValue(), false);
-            createNumericCell(stylesContainer, row, 8, orderBalance.getProductionCostMargin(), false);
-            createNumericCell(stylesContainer, row, 9, orderBalance.getProductionCostMarginValue(), false);
-            createNumericCell(stylesContainer, row, 10, orderBalance.getAdditionalOverhead(), false);
-            createNumericCell(stylesContainer, row, 11, orderBalance.getDirectAdditionalCost(), false);
-            createNumericCell(stylesContainer, row, 12, orderBalance.getTotalCosts(), true);
-            createNumericCell(stylesContainer, row, 13, orderBalance.getRegistrationPrice(), false);
-            createNumericCell(stylesContainer, row, 14, orderBalance.getRegistrationPriceOverhead(), false);
-            createNumericCell(stylesContainer, row, 15, orderBalance.getRegistrationPriceOverheadValue(), false);
-            createNumericCell(stylesContainer, row, 16, orderBalance.getRealProductionCosts(), false);
-            createNumericCell(stylesContainer, row, 17, orderBalance.getProfit(), false);
-            createNumericCell(stylesContainer, row, 18, orderBalance.getProfitValue(), false);
-            createNumericCell(stylesContainer, row, 19, orderBalance.getSellPrice(), false);
-            rowCounter++;
-        }
-        for (int i = 0; i <= 19; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+        sheet.autoSizeColumns();
     }
 
-    private HSSFCell createRegularCell(StylesContainer stylesContainer, HSSFRow row, int column, String content) {
-        HSSFCell cell = row.createCell(column);
-        cell.setCellValue(content);
-        cell.setCellStyle(StylesContainer.aligned(stylesContainer.regularStyle, HSSFCellStyle.ALIGN_LEFT));
-        return cell;
-    }
+    private void createProductsBalanceSheet(List<OrderBalance> productsBalance, XlsxSheetWriter sheet, Locale locale) {
+        addHeaderRow(sheet, L_SHEET + "ordersBalance.", PRODUCTS_BALANCE_HEADERS, locale);
 
-    private HSSFCell createNumericCell(StylesContainer stylesContainer, HSSFRow row, int column, BigDecimal value, boolean bold) {
-        HSSFCell cell = row.createCell(column, HSSFCell.CELL_TYPE_NUMERIC);
-        cell.setCellValue(numberService.setScaleWithDefaultMathContext(value, 2).doubleValue());
-        if (bold) {
-            cell.setCellStyle(StylesContainer.aligned(stylesContainer.numberBoldStyle, HSSFCellStyle.ALIGN_RIGHT));
-        } else {
-            cell.setCellStyle(StylesContainer.aligned(stylesContainer.numberStyle, HSSFCellStyle.ALIGN_RIGHT));
+        for (OrderBalance orderBalance : productsBalance) {
+            sheet.nextRow();
+            addBalanceCells(sheet, 0, orderBalance);
         }
-        return cell;
-    }
 
-    private HSSFCell createTimeCell(StylesContainer stylesContainer, HSSFRow row, int column, Integer value, boolean bold) {
-        HSSFCell cell = row.createCell(column, HSSFCell.CELL_TYPE_NUMERIC);
-        if (value == null) {
-            value = 0;
-        }
-        cell.setCellValue(Math.abs(value) / 86400d);
-        if (value >= 0) {
-            if (bold) {
-                cell.setCellStyle(StylesContainer.aligned(stylesContainer.timeBoldStyle, HSSFCellStyle.ALIGN_RIGHT));
-            } else {
-                cell.setCellStyle(StylesContainer.aligned(stylesContainer.timeStyle, HSSFCellStyle.ALIGN_RIGHT));
-            }
-        } else {
-            cell.setCellStyle(StylesContainer.aligned(stylesContainer.negativeTimeStyle, HSSFCellStyle.ALIGN_RIGHT));
-        }
-        return cell;
+        sheet.autoSizeColumns();
     }
 
-    private HSSFCell createDateTimeCell(StylesContainer stylesContainer, HSSFRow row, int column, Date value) {
-        HSSFCell cell = row.createCell(column);
-        if (value != null) {
-            cell.setCellValue(value);
-            cell.setCellStyle(StylesContainer.aligned(stylesContainer.dateTimeStyle, HSSFCellStyle.ALIGN_RIGHT));
-        }
-        return cell;
+    private void addBalanceCells(XlsxSheetWriter sheet, int offset, OrderBalance orderBalance) {
+        sheet.addRegularCell(offset, orderBalance.getProductNumber());
+        sheet.addRegularCell(offset + 1, orderBalance.getProductName());
+        addNumericCell(sheet, offset + 2, orderBalance.getProducedQuantity(), true);
+        addNumericCell(sheet, offset + 3, orderBalance.getMaterialCosts(), false);
+        addNumericCell(sheet, offset + 4, orderBalance.getProductionCosts(), false);
+        addNumericCell(sheet, offset + 5, orderBalance.getTechnicalProductionCosts(), true);
+        addNumericCell(sheet, offset + 6, orderBalance.getMaterialCostMargin(), false);
+        addNumericCell(sheet, offset + 7, orderBalance.getMaterialCostMarginValue(), false);
+        addNumericCell(sheet, offset + 8, orderBalance.getProductionCostMargin(), false);
+        addNumericCell(sheet, offset + 9, orderBalance.getProductionCostMarginValue(), false);
+        addNumericCell(sheet, offset + 10, orderBalance.getAdditionalOverhead(), false);
+        addNumericCell(sheet, offset + 11, orderBalance.getDirectAdditionalCost(), false);
+        addNumericCell(sheet, offset + 12, orderBalance.getTotalCosts(), true);
+        addNumericCell(sheet, offset + 13, orderBalance.getRegistrationPrice(), false);
+        addNumericCell(sheet, offset + 14, orderBalance.getRegistrationPriceOverhead(), false);
+        addNumericCell(sheet, offset + 15, orderBalance.getRegistrationPriceOverheadValue(), false);
+        addNumericCell(sheet, offset + 16, orderBalance.getRealProductionCosts(), false);
+        addNumericCell(sheet, offset + 17, orderBalance.getProfit(), false);
+        addNumericCell(sheet, offset + 18, orderBalance.getProfitValue(), false);
+        addNumericCell(sheet, offset + 19, orderBalance.getSellPrice(), false);
     }
 
-    private HSSFCell createHeaderCell(StylesContainer stylesContainer, HSSFRow row, String content, int column, short align) {
-        HSSFCell cell = row.createCell(column);
-        cell.setCellValue(content);
-        cell.setCellStyle(StylesContainer.aligned(stylesContainer.headerStyle, align));
-        return cell;
+    private void addHeaderRow(XlsxSheetWriter sheet, String prefix, List<String> headers, Locale locale) {
+        sheet.addHeaderRow(headers.stream().map(header -> translationService.translate(prefix + header, locale))
+                .collect(Collectors.toList()));
     }
 
-    private static class StylesContainer {
-
-        private final HSSFCellStyle regularStyle;
-
-        private final HSSFCellStyle headerStyle;
-
-        private final HSSFCellStyle timeStyle;
-
-        private final HSSFCellStyle timeBoldStyle;
-
-        private final HSSFCellStyle negativeTimeStyle;
-
-        private final HSSFCellStyle numberStyle;
-
-        private final HSSFCellStyle numberBoldStyle;
-
-        private final HSSFCellStyle dateTimeStyle;
-
-        StylesContainer(HSSFWorkbook workbook, FontsContainer fontsContainer) {
-            regularStyle = workbook.createCellStyle();
-            regularStyle.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
-
-            headerStyle = workbook.createCellStyle();
-            headerStyle.setFont(fontsContainer.boldFont);
-            headerStyle.setFillPattern(XSSFCellStyle.SOLID_FOREGROUND);
-            headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
-            headerStyle.setBorderBottom(XSSFCellStyle.BORDER_MEDIUM);
-            headerStyle.setWrapText(true);
-
-            timeStyle = workbook.createCellStyle();
-            timeStyle.setDataFormat(workbook.createDataFormat().getFormat("[HH]:MM:SS"));
-
-            timeBoldStyle = workbook.createCellStyle();
-            timeBoldStyle.setDataFormat(workbook.createDataFormat().getFormat("[HH]:MM:SS"));
-            timeBoldStyle.setFont(fontsContainer.boldFont);
-
-            negativeTimeStyle = workbook.createCellStyle();
-            negativeTimeStyle.setDataFormat(workbook.createDataFormat().getFormat("-[HH]:MM:SS"));
-
-            numberStyle = workbook.createCellStyle();
-            numberStyle.setDataFormat(workbook.createDataFormat().getFormat("0.00###"));
-
-            numberBoldStyle = workbook.createCellStyle();
-            numberBoldStyle.setDataFormat(workbook.createDataFormat().getFormat("0.00###"));
-            numberBoldStyle.setFont(fontsContainer.boldFont);
-
-            dateTimeStyle = workbook.createCellStyle();
-            dateTimeStyle.setDataFormat(workbook.createDataFormat().getFormat("yyyy-mm-dd hh:mm"));
-        }
-
-        private static HSSFCellStyle aligned(HSSFCellStyle style, short align) {
-            style.setAlignment(align);
-            return style;
-        }
-
+    private void addNumericCell(XlsxSheetWriter sheet, int column, BigDecimal value, boolean bold) {
+        sheet.addNumericCell(column, numberService.setScaleWithDefaultMathContext(value, 2), bold);
     }
 
-    private static class FontsContainer {
-
-        private final Font boldFont;
-
-        FontsContainer(HSSFWorkbook workbook) {
-            boldFont = workbook.createFont();
-            boldFont.setBoldweight(Font.BOLDWEIGHT_BOLD);
+    private void addCost(Map<Long, BigDecimal> costs, Long orderId, BigDecimal cost) {
+        if (cost == null) {
+            costs.putIfAbsent(orderId, null);
+        } else {
+            costs.merge(orderId, cost, BigDecimal::add);
         }
     }
+
 }
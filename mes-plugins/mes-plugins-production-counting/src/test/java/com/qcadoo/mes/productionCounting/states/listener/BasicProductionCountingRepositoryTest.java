@@ -0,0 +1,245 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting.states.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchResult;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(TransactionAspectSupport.class)
+public class BasicProductionCountingRepositoryTest {
+
+    private static final Long L_ORDER_ID = 1L;
+
+    private static final Long L_PRODUCTION_TRACKING_ID = 2L;
+
+    private BasicProductionCountingRepository basicProductionCountingRepository;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private NumberService numberService;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    @Mock
+    private DataDefinition basicProductionCountingDD;
+
+    @Mock
+    private SearchCriteriaBuilder searchCriteriaBuilder;
+
+    @Mock
+    private SearchResult searchResult;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        PowerMockito.mockStatic(TransactionAspectSupport.class);
+
+        given(TransactionAspectSupport.currentTransactionStatus()).willReturn(transactionStatus);
+
+        basicProductionCountingRepository = new BasicProductionCountingRepository();
+
+        ReflectionTestUtils.setField(basicProductionCountingRepository, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(basicProductionCountingRepository, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(basicProductionCountingRepository, "numberService", numberService);
+
+        given(numberService.getMathContext()).willReturn(MathContext.DECIMAL64);
+        given(dataDefinitionService.get(BasicProductionCountingConstants.PLUGIN_IDENTIFIER,
+                BasicProductionCountingConstants.MODEL_BASIC_PRODUCTION_COUNTING)).willReturn(basicProductionCountingDD);
+        given(basicProductionCountingDD.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.add(any(SearchCriterion.class))).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+    }
+
+    private void stubQuantities(final Map<Long, BigDecimal> quantities) throws Exception {
+        List<ResultSet> resultSets = Lists.newArrayList();
+
+        for (Map.Entry<Long, BigDecimal> quantity : quantities.entrySet()) {
+            ResultSet resultSet = mock(ResultSet.class);
+            given(resultSet.getLong("id")).willReturn(quantity.getKey());
+            given(resultSet.getBigDecimal("quantity")).willReturn(quantity.getValue());
+            resultSets.add(resultSet);
+        }
+
+        willAnswer(invocation -> {
+            RowCallbackHandler rowCallbackHandler = (RowCallbackHandler) invocation.getArguments()[2];
+
+            for (ResultSet resultSet : resultSets) {
+                rowCallbackHandler.processRow(resultSet);
+            }
+
+            return null;
+        }).given(jdbcTemplate).query(anyString(), anyMapOf(String.class, Object.class), any(RowCallbackHandler.class));
+    }
+
+    private Entity mockBasicProductionCounting(final Long id, final String field, final BigDecimal quantity,
+            final String productNumber) {
+        Entity basicProductionCounting = mock(Entity.class);
+        Entity product = mock(Entity.class);
+
+        given(basicProductionCounting.getId()).willReturn(id);
+        given(basicProductionCounting.getDecimalField(field)).willReturn(quantity);
+        given(basicProductionCounting.getBelongsToField("product")).willReturn(product);
+        given(basicProductionCounting.getDataDefinition()).willReturn(basicProductionCountingDD);
+        given(product.getStringField("number")).willReturn(productNumber);
+
+        return basicProductionCounting;
+    }
+
+    private String verifyQuery() {
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        Map<String, Object> params = ImmutableMap.<String, Object> of("orderId", L_ORDER_ID, "productionTrackingId",
+                L_PRODUCTION_TRACKING_ID);
+
+        InOrder inOrder = inOrder(transactionStatus, jdbcTemplate);
+
+        inOrder.verify(transactionStatus).flush();
+        inOrder.verify(jdbcTemplate).query(queryCaptor.capture(), eq(params), any(RowCallbackHandler.class));
+
+        String query = queryCaptor.getValue();
+
+        assertTrue(query.contains("bpc.order_id = :orderId"));
+        assertTrue(query.contains("component.productiontracking_id = :productionTrackingId"));
+        assertTrue(query.endsWith("SELECT countings.id, deltas.quantity FROM countings "
+                + "JOIN deltas ON deltas.product_id = countings.product_id"));
+
+        return query;
+    }
+
+    @Test
+    public void shouldAddUsedQuantitiesOfInComponents() throws Exception {
+        // given
+        stubQuantities(ImmutableMap.of(11L, new BigDecimal("2"), 12L, new BigDecimal("1.5")));
+
+        Entity firstBasicProductionCounting = mockBasicProductionCounting(11L, "usedQuantity", new BigDecimal("5"), "P-1");
+        Entity secondBasicProductionCounting = mockBasicProductionCounting(12L, "usedQuantity", null, "P-2");
+
+        given(searchResult.getEntities()).willReturn(
+                Lists.newArrayList(firstBasicProductionCounting, secondBasicProductionCounting));
+
+        // when
+        List<String> productNumbers = basicProductionCountingRepository.updateUsedQuantities(L_ORDER_ID,
+                L_PRODUCTION_TRACKING_ID, 1);
+
+        // then
+        assertTrue(productNumbers.isEmpty());
+        assertTrue(verifyQuery().contains("FROM productioncounting_trackingoperationproductincomponent component"));
+
+        verify(firstBasicProductionCounting).setField("usedQuantity", new BigDecimal("7"));
+        verify(secondBasicProductionCounting).setField("usedQuantity", new BigDecimal("1.5"));
+        verify(basicProductionCountingDD).save(firstBasicProductionCounting);
+        verify(basicProductionCountingDD).save(secondBasicProductionCounting);
+    }
+
+    @Test
+    public void shouldSubtractProducedQuantitiesOfOutComponentsAndSkipCountingsBelowZero() throws Exception {
+        // given
+        stubQuantities(ImmutableMap.of(13L, new BigDecimal("3"), 14L, new BigDecimal("3")));
+
+        Entity firstBasicProductionCounting = mockBasicProductionCounting(13L, "producedQuantity", new BigDecimal("1"), "P-3");
+        Entity secondBasicProductionCounting = mockBasicProductionCounting(14L, "producedQuantity", new BigDecimal("5"), "P-4");
+
+        given(searchResult.getEntities()).willReturn(
+                Lists.newArrayList(firstBasicProductionCounting, secondBasicProductionCounting));
+
+        // when
+        List<String> productNumbers = basicProductionCountingRepository.updateProducedQuantities(L_ORDER_ID,
+                L_PRODUCTION_TRACKING_ID, -1);
+
+        // then
+        assertEquals(Lists.newArrayList("P-3"), productNumbers);
+        assertTrue(verifyQuery().contains("FROM productioncounting_trackingoperationproductoutcomponent component"));
+
+        verify(firstBasicProductionCounting, never()).setField(anyString(), any());
+        verify(basicProductionCountingDD, never()).save(firstBasicProductionCounting);
+        verify(secondBasicProductionCounting).setField("producedQuantity", new BigDecimal("2"));
+        verify(basicProductionCountingDD).save(secondBasicProductionCounting);
+    }
+
+    @Test
+    public void shouldNotLoadCountingsIfTrackingHasNoComponents() throws Exception {
+        // given
+        stubQuantities(ImmutableMap.<Long, BigDecimal> of());
+
+        // when
+        List<String> productNumbers = basicProductionCountingRepository.updateUsedQuantities(L_ORDER_ID,
+                L_PRODUCTION_TRACKING_ID, 1);
+
+        // then
+        assertTrue(productNumbers.isEmpty());
+        verifyQuery();
+        verifyZeroInteractions(dataDefinitionService);
+    }
+
+}
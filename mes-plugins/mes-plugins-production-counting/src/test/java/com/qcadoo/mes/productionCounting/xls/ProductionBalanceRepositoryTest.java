@@ -0,0 +1,177 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionCounting.xls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.util.StreamingJdbcTemplateFactory;
+import com.qcadoo.mes.productionCounting.xls.dto.ProducedQuantity;
+import com.qcadoo.model.api.Entity;
+
+public class ProductionBalanceRepositoryTest {
+
+    private static final List<Long> L_ORDERS_IDS = Lists.newArrayList(1L, 2L);
+
+    private ProductionBalanceRepository productionBalanceRepository;
+
+    @Mock
+    private StreamingJdbcTemplateFactory streamingJdbcTemplateFactory;
+
+    @Mock
+    private NamedParameterJdbcTemplate streamingJdbcTemplate;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productionBalanceRepository = new ProductionBalanceRepository();
+
+        ReflectionTestUtils.setField(productionBalanceRepository, "streamingJdbcTemplateFactory", streamingJdbcTemplateFactory);
+
+        given(streamingJdbcTemplateFactory.create(anyInt())).willReturn(streamingJdbcTemplate);
+
+        productionBalanceRepository.init();
+    }
+
+    @Test
+    public void shouldPassRowsToConsumerOneByOneAsTheyAreFetched() throws SQLException {
+        // given
+        ResultSet resultSet = mockResultSet("orderNumber", "producedQuantity");
+
+        given(resultSet.getString(1)).willReturn("O1", "O2");
+        given(resultSet.getBigDecimal(2)).willReturn(BigDecimal.ONE, BigDecimal.TEN);
+
+        List<Integer> fetchedRowsOnConsume = Lists.newArrayList();
+        int[] fetchedRows = new int[1];
+
+        willAnswer(invocation -> {
+            RowCallbackHandler rowCallbackHandler = (RowCallbackHandler) invocation.getArguments()[2];
+
+            for (int i = 0; i < 2; i++) {
+                fetchedRows[0]++;
+
+                rowCallbackHandler.processRow(resultSet);
+            }
+
+            return null;
+        }).given(streamingJdbcTemplate).query(anyString(), any(SqlParameterSource.class), any(RowCallbackHandler.class));
+
+        List<ProducedQuantity> producedQuantities = Lists.newArrayList();
+
+        // when
+        productionBalanceRepository.getProducedQuantities(L_ORDERS_IDS, producedQuantity -> {
+            fetchedRowsOnConsume.add(fetchedRows[0]);
+            producedQuantities.add(producedQuantity);
+        });
+
+        // then
+        assertEquals(Lists.newArrayList(1, 2), fetchedRowsOnConsume);
+        assertEquals("O1", producedQuantities.get(0).getOrderNumber());
+        assertEquals(BigDecimal.ONE, producedQuantities.get(0).getProducedQuantity());
+        assertEquals("O2", producedQuantities.get(1).getOrderNumber());
+        assertEquals(BigDecimal.TEN, producedQuantities.get(1).getProducedQuantity());
+    }
+
+    @Test
+    public void shouldQueryStreamingTemplateWithOrdersIds() {
+        // when
+        productionBalanceRepository.getStoppages(L_ORDERS_IDS, stoppage -> {
+        });
+
+        // then
+        ArgumentCaptor<SqlParameterSource> parameters = ArgumentCaptor.forClass(SqlParameterSource.class);
+
+        verify(streamingJdbcTemplateFactory).create(anyInt());
+        verify(streamingJdbcTemplate).query(anyString(), parameters.capture(), any(RowCallbackHandler.class));
+
+        assertEquals(L_ORDERS_IDS, parameters.getValue().getValue("ordersIds"));
+    }
+
+    @Test
+    public void shouldStreamRowsInReadOnlyTransactions() throws NoSuchMethodException {
+        Class<?> clazz = ProductionBalanceRepository.class;
+
+        List<Method> streamingMethods = Lists.newArrayList(
+                clazz.getDeclaredMethod("getProducedQuantities", List.class, Consumer.class),
+                clazz.getDeclaredMethod("getMaterialCosts", Entity.class, List.class, Consumer.class),
+                clazz.getDeclaredMethod("getPieceworkDetails", List.class, Consumer.class),
+                clazz.getDeclaredMethod("getLaborTime", List.class, Consumer.class),
+                clazz.getDeclaredMethod("getLaborTimeDetails", Entity.class, List.class, Consumer.class),
+                clazz.getDeclaredMethod("getProductionCosts", Entity.class, List.class, Consumer.class),
+                clazz.getDeclaredMethod("getStoppages", List.class, Consumer.class));
+
+        for (Method streamingMethod : streamingMethods) {
+            Transactional transactional = streamingMethod.getAnnotation(Transactional.class);
+
+            assertNotNull(streamingMethod.getName() + " should be annotated with @Transactional!", transactional);
+            assertTrue(streamingMethod.getName() + " should be read only!", transactional.readOnly());
+        }
+    }
+
+    private ResultSet mockResultSet(final String... columns) throws SQLException {
+        ResultSet resultSet = mock(ResultSet.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+
+        given(resultSet.getMetaData()).willReturn(metaData);
+        given(metaData.getColumnCount()).willReturn(columns.length);
+
+        for (int i = 0; i < columns.length; i++) {
+            given(metaData.getColumnLabel(eq(i + 1))).willReturn(columns[i]);
+            given(metaData.getColumnName(eq(i + 1))).willReturn(columns[i]);
+        }
+
+        return resultSet;
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.qcadoo.mes.productionPerShift.domain;
+
+import org.joda.time.LocalDate;
+
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * Workers on line of one shift, per factory and start date of its assignments to shift. For given day each factory counts
+ * workers from its latest assignment started on or before that day.
+ */
+public class WorkersOnLineCalendar {
+
+    private final Map<Long, NavigableMap<LocalDate, Integer>> workersOnLinePerFactory;
+
+    public WorkersOnLineCalendar(final Map<Long, NavigableMap<LocalDate, Integer>> workersOnLinePerFactory) {
+        this.workersOnLinePerFactory = workersOnLinePerFactory;
+    }
+
+    public int getWorkersOnLine(final LocalDate day) {
+        int workersOnLine = 0;
+
+        for (NavigableMap<LocalDate, Integer> workersOnLinePerStartDate : workersOnLinePerFactory.values()) {
+            Map.Entry<LocalDate, Integer> latestAssignment = workersOnLinePerStartDate.floorEntry(day);
+
+            if (latestAssignment != null) {
+                workersOnLine += latestAssignment.getValue();
+            }
+        }
+
+        return workersOnLine;
+    }
+
+}
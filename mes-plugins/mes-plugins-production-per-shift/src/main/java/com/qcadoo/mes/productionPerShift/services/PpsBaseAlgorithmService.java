@@ -51,6 +51,9 @@ public abstract class PpsBaseAlgorithmService {
     @Autowired
     private ParameterService parameterService;
 
+    @Autowired
+    private WorkersOnLineService workersOnLineService;
+
     private Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords;
 
     public void generateProgressForDays(ProgressForDaysContainer progressForDaysContainer, Entity productionPerShift) {
@@ -81,6 +84,7 @@ public abstract class PpsBaseAlgorithmService {
             throw new IllegalStateException("No shifts assigned to production line");
         }
 
+        ProductionLineCalendar productionLineCalendar = createProductionLineCalendar(productionLine);
         boolean allowIncompleteUnits = parameterService.getParameter().getBooleanField(ParameterFieldsPPS.ALLOW_INCOMPLITE_UNITS);
 
         BigDecimal plannedQuantity = order.getDecimalField(OrderFields.PLANNED_QUANTITY);
@@ -101,8 +105,8 @@ public abstract class PpsBaseAlgorithmService {
                 || progressForDaysContainer.getAlreadyRegisteredQuantity().compareTo(BigDecimal.ZERO) > 0) {
 
             DailyProgressContainer dailyProgressContainer = fillDailyProgressWithShifts(progressForDaysContainer,
-                    productionPerShift, order, shifts, currentDate, orderStartDate, shouldBeCorrected, progressForDays.size(),
-                    alreadyPlannedQuantity, allowIncompleteUnits);
+                    productionPerShift, order, shifts, productionLineCalendar, currentDate, orderStartDate, shouldBeCorrected,
+                    progressForDays.size(), alreadyPlannedQuantity, allowIncompleteUnits);
             if (dailyProgressContainer.isCalculationError()) {
                 progressForDaysContainer.setCalculationError(true);
                 return;
@@ -121,8 +125,8 @@ public abstract class PpsBaseAlgorithmService {
     }
 
     private DailyProgressContainer fillDailyProgressWithShifts(ProgressForDaysContainer progressForDaysContainer,
-            Entity productionPerShift, Entity order, List<Shift> shifts, DateTime dateOfDay, Date orderStartDate,
-            boolean shouldBeCorrected, int progressForDayQuantity, BigDecimal alreadyPlannedQuantity,
+            Entity productionPerShift, Entity order, List<Shift> shifts, ProductionLineCalendar productionLineCalendar,
+            DateTime dateOfDay, Date orderStartDate, boolean shouldBeCorrected, int progressForDayQuantity, BigDecimal alreadyPlannedQuantity,
             boolean allowIncompleteUnits) {
         DailyProgressContainer dailyProgressContainer = new DailyProgressContainer();
         List<Entity> dailyProgressWithShifts = Lists.newLinkedList();
@@ -152,15 +156,14 @@ public abstract class PpsBaseAlgorithmService {
                 DateTime orderStartDateDT = new DateTime(orderStartDate, DateTimeZone.getDefault());
                 BigDecimal shiftEfficiency = BigDecimal.ZERO;
                 int time = 0;
-                for (DateTimeRange range : shiftExceptionService
-                        .getShiftWorkDateTimes(order.getBelongsToField(OrderFields.PRODUCTION_LINE), shift, dateOfDay, true)) {
+                for (DateTimeRange range : productionLineCalendar.getShiftWorkDateTimes(shift, dateOfDay)) {
                     if (orderStartDate.after(dateOfDay.toDate())) {
                         range = range.trimBefore(orderStartDateDT);
                     }
                     if (range != null) {
                         ShiftEfficiencyCalculationHolder calculationHolder = calculateShiftEfficiency(progressForDaysContainer,
-                                productionPerShift, shift, order, range, shiftEfficiency, progressForDayQuantity,
-                                allowIncompleteUnits);
+                                productionPerShift, shift, order, productionLineCalendar, range, shiftEfficiency,
+                                progressForDayQuantity, allowIncompleteUnits);
                         shiftEfficiency = calculationHolder.getShiftEfficiency();
                         time = time + calculationHolder.getEfficiencyTime();
                     }
@@ -190,6 +193,10 @@ public abstract class PpsBaseAlgorithmService {
         return dailyProgressContainer;
     }
 
+    protected ProductionLineCalendar createProductionLineCalendar(final Entity productionLine) {
+        return new ProductionLineCalendar(productionLine, shiftExceptionService, workersOnLineService);
+    }
+
     private Entity createComponent(final int dayNumber, Date realizationDate, final List<Entity> dailyProgress,
             boolean shouldBeCorrected) {
         Entity progressForDay = dataDefinitionService
@@ -224,5 +231,6 @@ public abstract class PpsBaseAlgorithmService {
 
     protected abstract ShiftEfficiencyCalculationHolder calculateShiftEfficiency(
             ProgressForDaysContainer progressForDaysContainer, Entity productionPerShift, Shift shift, Entity order,
-            DateTimeRange range, BigDecimal shiftEfficiency, int progressForDayQuantity, boolean allowIncompleteUnits);
+            ProductionLineCalendar productionLineCalendar, DateTimeRange range, BigDecimal shiftEfficiency,
+            int progressForDayQuantity, boolean allowIncompleteUnits);
 }
@@ -22,8 +22,8 @@ public class PpsTechNormAlgorithmService extends PpsBaseAlgorithmService {
 
     @Override
     protected ShiftEfficiencyCalculationHolder calculateShiftEfficiency(ProgressForDaysContainer progressForDaysContainer,
-            Entity productionPerShift, Shift shift, Entity order, DateTimeRange range, BigDecimal shiftEfficiency,
-            int progressForDayQuantity, boolean allowIncompleteUnits) {
+            Entity productionPerShift, Shift shift, Entity order, ProductionLineCalendar productionLineCalendar,
+            DateTimeRange range, BigDecimal shiftEfficiency, int progressForDayQuantity, boolean allowIncompleteUnits) {
         ShiftEfficiencyCalculationHolder calculationHolder = new ShiftEfficiencyCalculationHolder();
         BigDecimal scaledNorm = getStandardPerformanceNorm(progressForDaysContainer, order);
         Long minuets = range.durationInMins();
@@ -21,16 +21,12 @@ public class PpsTechNormAndWorkersAlgorithmService extends PpsBaseAlgorithmServi
     @Autowired
     private NumberService numberService;
 
-    @Autowired
-    private WorkersOnLineService workersOnLineService;
-
     @Override
     protected ShiftEfficiencyCalculationHolder calculateShiftEfficiency(ProgressForDaysContainer progressForDaysContainer,
-            Entity productionPerShift, Shift shift, Entity order, DateTimeRange range, BigDecimal shiftEfficiency,
-            int progressForDayQuantity, boolean allowIncompleteUnits) {
+            Entity productionPerShift, Shift shift, Entity order, ProductionLineCalendar productionLineCalendar,
+            DateTimeRange range, BigDecimal shiftEfficiency, int progressForDayQuantity, boolean allowIncompleteUnits) {
         ShiftEfficiencyCalculationHolder calculationHolder = new ShiftEfficiencyCalculationHolder();
-        int workersOnLine = workersOnLineService.getWorkersOnLine(order.getBelongsToField(OrderFields.PRODUCTION_LINE),
-                shift.getEntity(), range.getFrom());
+        int workersOnLine = productionLineCalendar.getWorkersOnLine(shift, range.getFrom());
         if (workersOnLine == 0) {
             progressForDaysContainer.addError(new ErrorMessage("productionPerShift.automaticAlgorithm.noAssignmentForShift",
                     false, order.getBelongsToField(OrderFields.PRODUCTION_LINE).getStringField(ProductionLineFields.NUMBER)));
@@ -0,0 +1,64 @@
+package com.qcadoo.mes.productionPerShift.services;
+
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.ShiftExceptionService;
+import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+import com.qcadoo.mes.productionPerShift.domain.WorkersOnLineCalendar;
+import com.qcadoo.model.api.Entity;
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shift work times and workers on one production line, loaded once per shift and period and then answered from memory.
+ * Lives for a single progress generation, so it does not see timetables or assignments saved meanwhile.
+ */
+public class ProductionLineCalendar {
+
+    private static final int L_DAYS_PER_LOAD = 31;
+
+    private final Entity productionLine;
+
+    private final ShiftExceptionService shiftExceptionService;
+
+    private final WorkersOnLineService workersOnLineService;
+
+    private final Map<Long, Map<LocalDate, List<DateTimeRange>>> shiftWorkDateTimesPerShift = Maps.newHashMap();
+
+    private final Map<Long, WorkersOnLineCalendar> workersOnLinePerShift = Maps.newHashMap();
+
+    public ProductionLineCalendar(final Entity productionLine, final ShiftExceptionService shiftExceptionService,
+            final WorkersOnLineService workersOnLineService) {
+        this.productionLine = productionLine;
+        this.shiftExceptionService = shiftExceptionService;
+        this.workersOnLineService = workersOnLineService;
+    }
+
+    public Entity getProductionLine() {
+        return productionLine;
+    }
+
+    public List<DateTimeRange> getShiftWorkDateTimes(final Shift shift, final DateTime dateOfDay) {
+        LocalDate day = dateOfDay.toLocalDate();
+        Map<LocalDate, List<DateTimeRange>> shiftWorkDateTimes = shiftWorkDateTimesPerShift.computeIfAbsent(shift.getId(),
+                shiftId -> Maps.newHashMap());
+
+        if (!shiftWorkDateTimes.containsKey(day)) {
+            shiftWorkDateTimes.putAll(shiftExceptionService.getShiftWorkDateTimes(productionLine, shift, day,
+                    day.plusDays(L_DAYS_PER_LOAD - 1), true));
+        }
+
+        return shiftWorkDateTimes.get(day);
+    }
+
+    public int getWorkersOnLine(final Shift shift, final DateTime date) {
+        return workersOnLinePerShift
+                .computeIfAbsent(shift.getId(),
+                        shiftId -> workersOnLineService.getWorkersOnLineCalendar(productionLine, shift.getEntity()))
+                .getWorkersOnLine(date.toLocalDate());
+    }
+
+}
@@ -1,18 +1,23 @@
 package com.qcadoo.mes.productionPerShift.services;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftConstants;
 import com.qcadoo.mes.assignmentToShift.constants.StaffAssignmentToShiftState;
 import com.qcadoo.mes.assignmentToShift.states.constants.AssignmentToShiftStateStringValues;
 import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.productionPerShift.domain.WorkersOnLineCalendar;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.text.SimpleDateFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 
 @Service
 public class WorkersOnLineService {
@@ -22,6 +27,23 @@ public class WorkersOnLineService {
     private static final String L_staffAssignmentToShiftState = "staffAssignmentToShiftState";
 
     private static final String L_assignmentToShiftState = "assignmentToShiftState";
+
+    private static final String L_FACTORY_ID = "factoryId";
+
+    private static final String L_DATE = "date";
+
+    private static final String L_ASSIGNMENTS_QUERY = "SELECT DISTINCT assignmentToShift.factory.id AS factoryId, "
+            + "assignmentToShift.startDate AS date FROM #assignmentToShift_assignmentToShift assignmentToShift "
+            + "WHERE assignmentToShift.state IN ('02accepted', '04corrected') AND assignmentToShift.shift.id = :shiftId";
+
+    private static final String L_STAFF_ASSIGNMENTS_QUERY = "SELECT staffAssignmentToShift.id AS staffId, "
+            + "assignmentToShift.factory.id AS factoryId, assignmentToShift.startDate AS date, "
+            + "staffAssignmentToShift.state AS staffAssignmentToShiftState, assignmentToShift.state AS assignmentToShiftState "
+            + "FROM #assignmentToShift_staffAssignmentToShift staffAssignmentToShift "
+            + "LEFT JOIN staffAssignmentToShift.assignmentToShift AS assignmentToShift "
+            + "WHERE assignmentToShift.state IN ('02accepted', '04corrected') AND assignmentToShift.shift.id = :shiftId "
+            + "AND staffAssignmentToShift.productionLine.id = :productionLineId";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -45,6 +67,49 @@ public class WorkersOnLineService {
         return workersOnLine;
     }
 
+    /**
+     * Loads assignments of the shift once and answers the same as {@link #getWorkersOnLine(Entity, Entity, DateTime)} for
+     * any date, so callers asking for many days do not query per day and factory.
+     */
+    public WorkersOnLineCalendar getWorkersOnLineCalendar(final Entity productionLine, final Entity shift) {
+        Map<Long, NavigableMap<LocalDate, Integer>> workersOnLinePerFactory = Maps.newHashMap();
+
+        if (productionLine == null || shift == null) {
+            return new WorkersOnLineCalendar(workersOnLinePerFactory);
+        }
+
+        List<Entity> assignments = dataDefinitionService
+                .get(AssignmentToShiftConstants.PLUGIN_IDENTIFIER, AssignmentToShiftConstants.MODEL_ASSIGNMENT_TO_SHIFT)
+                .find(L_ASSIGNMENTS_QUERY).setParameter("shiftId", shift.getId()).list().getEntities();
+
+        for (Entity assignment : assignments) {
+            getWorkersOnLinePerStartDate(workersOnLinePerFactory, assignment).put(getStartDate(assignment), 0);
+        }
+
+        List<Entity> staffAssignments = dataDefinitionService
+                .get(AssignmentToShiftConstants.PLUGIN_IDENTIFIER, AssignmentToShiftConstants.MODEL_STAFF_ASSIGNMENT_TO_SHIFT)
+                .find(L_STAFF_ASSIGNMENTS_QUERY).setParameter("shiftId", shift.getId())
+                .setParameter("productionLineId", productionLine.getId()).list().getEntities();
+        List<Entity> staffAssignmentsInCorrectState = Lists.newArrayList();
+        filterForCorrectState(staffAssignments, staffAssignmentsInCorrectState);
+
+        for (Entity staffAssignment : staffAssignmentsInCorrectState) {
+            getWorkersOnLinePerStartDate(workersOnLinePerFactory, staffAssignment).merge(getStartDate(staffAssignment), 1,
+                    Integer::sum);
+        }
+
+        return new WorkersOnLineCalendar(workersOnLinePerFactory);
+    }
+
+    private NavigableMap<LocalDate, Integer> getWorkersOnLinePerStartDate(
+            final Map<Long, NavigableMap<LocalDate, Integer>> workersOnLinePerFactory, final Entity assignment) {
+        return workersOnLinePerFactory.computeIfAbsent((Long) assignment.getField(L_FACTORY_ID), factoryId -> Maps.newTreeMap());
+    }
+
+    private LocalDate getStartDate(final Entity assignment) {
+        return new LocalDate(assignment.getDateField(L_DATE));
+    }
+
     private Integer getWorkersOnLineForFactory(Entity factory, Entity productionLine, Entity shift, DateTime date) {
         String query = buildQuery();
         SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
@@ -0,0 +1,516 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
+import org.joda.time.LocalDate;
+import org.joda.time.LocalTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.util.ReflectionUtils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.commons.dateTime.TimeRange;
+import com.qcadoo.mes.assignmentToShift.constants.AssignmentToShiftConstants;
+import com.qcadoo.mes.assignmentToShift.constants.StaffAssignmentToShiftState;
+import com.qcadoo.mes.assignmentToShift.states.constants.AssignmentToShiftStateStringValues;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.ShiftExceptionService;
+import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.productionPerShift.constants.DailyProgressFields;
+import com.qcadoo.mes.productionPerShift.constants.ParameterFieldsPPS;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftConstants;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftFields;
+import com.qcadoo.mes.productionPerShift.constants.ProgressForDayFields;
+import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchQueryBuilder;
+import com.qcadoo.model.api.search.SearchResult;
+
+public class PpsTechNormAndWorkersAlgorithmServiceTest {
+
+    private static final Long L_PRODUCTION_LINE_ID = 1L;
+
+    private static final Long L_OTHER_PRODUCTION_LINE_ID = 2L;
+
+    private static final Long L_FIRST_SHIFT_ID = 11L;
+
+    private static final Long L_SECOND_SHIFT_ID = 12L;
+
+    private static final Long L_FIRST_FACTORY_ID = 101L;
+
+    private static final Long L_SECOND_FACTORY_ID = 102L;
+
+    private static final LocalDate L_WORKING_SATURDAY = new LocalDate(2020, 3, 21);
+
+    private static final LocalDate L_FREE_DAY = new LocalDate(2020, 3, 18);
+
+    @Mock
+    private BasicProductionCountingService basicProductionCountingService;
+
+    @Mock
+    private DailyProgressService dailyProgressService;
+
+    @Mock
+    private NumberService numberService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private ShiftsService shiftsService;
+
+    @Mock
+    private ShiftExceptionService shiftExceptionService;
+
+    @Mock
+    private ParameterService parameterService;
+
+    @Mock
+    private DataDefinition dailyProgressDD, progressForDayDD, factoryDD, assignmentToShiftDD, staffAssignmentToShiftDD,
+            technologyDD;
+
+    @Mock
+    private Entity productionLine, productionPerShift, order, technology, parameter;
+
+    private final List<Assignment> assignments = Lists.newArrayList();
+
+    private final List<StaffAssignment> staffAssignments = Lists.newArrayList();
+
+    private List<Shift> shifts;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        given(productionLine.getId()).willReturn(L_PRODUCTION_LINE_ID);
+
+        shifts = Lists.newArrayList(mockShift(L_FIRST_SHIFT_ID), mockShift(L_SECOND_SHIFT_ID));
+
+        given(shiftsService.findAll(productionLine)).willReturn(shifts);
+
+        given(order.getDateField(OrderFields.START_DATE)).willReturn(new DateTime(2020, 3, 9, 10, 0).toDate());
+        given(order.getBelongsToField(OrderFields.PRODUCTION_LINE)).willReturn(productionLine);
+        given(order.getBelongsToField(OrderFields.TECHNOLOGY)).willReturn(technology);
+        given(order.getDecimalField(OrderFields.PLANNED_QUANTITY)).willReturn(new BigDecimal(60000));
+        given(productionPerShift.getBelongsToField(ProductionPerShiftFields.ORDER)).willReturn(order);
+        given(technology.getId()).willReturn(1L);
+        given(technology.getDataDefinition()).willReturn(technologyDD);
+        given(technologyDD.get(1L)).willReturn(technology);
+        given(technology.getDecimalField("standardPerformanceTechnology")).willReturn(new BigDecimal("0.5"));
+
+        given(parameterService.getParameter()).willReturn(parameter);
+        given(parameter.getBooleanField(ParameterFieldsPPS.ALLOW_INCOMPLITE_UNITS)).willReturn(false);
+        given(dailyProgressService.getDailyProgressesWithTrackingRecords(productionPerShift)).willReturn(Maps.newHashMap());
+
+        given(numberService.getMathContext()).willReturn(MathContext.DECIMAL64);
+        given(numberService.setScaleWithDefaultMathContext(any(BigDecimal.class))).willAnswer(
+                invocation -> ((BigDecimal) invocation.getArguments()[0]).setScale(5, RoundingMode.HALF_EVEN));
+
+        given(dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
+                ProductionPerShiftConstants.MODEL_DAILY_PROGRESS)).willReturn(dailyProgressDD);
+        given(dataDefinitionService.get(ProductionPerShiftConstants.PLUGIN_IDENTIFIER,
+                ProductionPerShiftConstants.MODEL_PROGRESS_FOR_DAY)).willReturn(progressForDayDD);
+        given(dailyProgressDD.create()).willAnswer(invocation -> mockEntity(Maps.newHashMap()));
+        given(progressForDayDD.create()).willAnswer(invocation -> mockEntity(Maps.newHashMap()));
+
+        given(shiftExceptionService.getShiftWorkDateTimes(eq(productionLine), any(Shift.class), any(DateTime.class), eq(true)))
+                .willAnswer(invocation -> getShiftWorkDateTimes((Shift) invocation.getArguments()[1],
+                        ((DateTime) invocation.getArguments()[2]).toLocalDate()));
+        given(shiftExceptionService.getShiftWorkDateTimes(eq(productionLine), any(Shift.class), any(LocalDate.class),
+                any(LocalDate.class), eq(true))).willAnswer(invocation -> getShiftWorkDateTimes(
+                        (Shift) invocation.getArguments()[1], (LocalDate) invocation.getArguments()[2],
+                        (LocalDate) invocation.getArguments()[3]));
+
+        mockAssignmentQueries();
+
+        Assignment firstShiftAssignment = assignment(L_FIRST_SHIFT_ID, L_FIRST_FACTORY_ID, new LocalDate(2020, 3, 1),
+                AssignmentToShiftStateStringValues.ACCEPTED);
+        staffAssignment(firstShiftAssignment, L_PRODUCTION_LINE_ID, StaffAssignmentToShiftState.ACCEPTED, 2);
+        staffAssignment(firstShiftAssignment, L_PRODUCTION_LINE_ID, StaffAssignmentToShiftState.SIMPLE, 1);
+
+        Assignment correctedFirstShiftAssignment = assignment(L_FIRST_SHIFT_ID, L_FIRST_FACTORY_ID, new LocalDate(2020, 3, 16),
+                AssignmentToShiftStateStringValues.CORRECTED);
+        staffAssignment(correctedFirstShiftAssignment, L_PRODUCTION_LINE_ID, StaffAssignmentToShiftState.CORRECTED, 3);
+        staffAssignment(correctedFirstShiftAssignment, L_PRODUCTION_LINE_ID, StaffAssignmentToShiftState.ACCEPTED, 1);
+
+        Assignment otherFactoryAssignment = assignment(L_FIRST_SHIFT_ID, L_SECOND_FACTORY_ID, new LocalDate(2020, 3, 10),
+                AssignmentToShiftStateStringValues.ACCEPTED);
+        staffAssignment(otherFactoryAssignment, L_PRODUCTION_LINE_ID, StaffAssignmentToShiftState.ACCEPTED, 1);
+        staffAssignment(otherFactoryAssignment, L_OTHER_PRODUCTION_LINE_ID, StaffAssignmentToShiftState.ACCEPTED, 4);
+
+        Assignment draftAssignment = assignment(L_FIRST_SHIFT_ID, L_SECOND_FACTORY_ID, new LocalDate(2020, 3, 20),
+                AssignmentToShiftStateStringValues.DRAFT);
+        staffAssignment(draftAssignment, L_PRODUCTION_LINE_ID, StaffAssignmentToShiftState.SIMPLE, 5);
+
+        Assignment secondShiftAssignment = assignment(L_SECOND_SHIFT_ID, L_FIRST_FACTORY_ID, new LocalDate(2020, 2, 20),
+                AssignmentToShiftStateStringValues.CORRECTED);
+        staffAssignment(secondShiftAssignment, L_PRODUCTION_LINE_ID, StaffAssignmentToShiftState.CORRECTED, 2);
+
+        Assignment otherLineAssignment = assignment(L_SECOND_SHIFT_ID, L_SECOND_FACTORY_ID, new LocalDate(2020, 3, 25),
+                AssignmentToShiftStateStringValues.ACCEPTED);
+        staffAssignment(otherLineAssignment, L_OTHER_PRODUCTION_LINE_ID, StaffAssignmentToShiftState.ACCEPTED, 2);
+
+        Assignment laterSecondShiftAssignment = assignment(L_SECOND_SHIFT_ID, L_FIRST_FACTORY_ID, new LocalDate(2020, 4, 6),
+                AssignmentToShiftStateStringValues.CORRECTED);
+        staffAssignment(laterSecondShiftAssignment, L_PRODUCTION_LINE_ID, StaffAssignmentToShiftState.CORRECTED, 3);
+    }
+
+    @Test
+    public void shouldGenerateSameProgressForDaysAsPerDayLookups() {
+        // given
+        PpsTechNormAndWorkersAlgorithmService perDayAlgorithmService = new PpsTechNormAndWorkersAlgorithmService() {
+
+            @Override
+            protected ProductionLineCalendar createProductionLineCalendar(final Entity productionLine) {
+                return new PerDayProductionLineCalendar(productionLine, shiftExceptionService, createWorkersOnLineService());
+            }
+        };
+        PpsTechNormAndWorkersAlgorithmService algorithmService = new PpsTechNormAndWorkersAlgorithmService();
+
+        // when
+        List<String> expectedProgressForDays = generateProgressForDays(perDayAlgorithmService);
+        List<String> progressForDays = generateProgressForDays(algorithmService);
+
+        // then
+        assertTrue(expectedProgressForDays.size() > 31);
+        assertFalse(expectedProgressForDays.stream().filter(progressForDay -> progressForDay.contains(L_FREE_DAY.toString()))
+                .anyMatch(progressForDay -> progressForDay.contains(" " + L_SECOND_SHIFT_ID + "=")));
+        assertEquals(expectedProgressForDays, progressForDays);
+    }
+
+    private List<String> generateProgressForDays(final PpsTechNormAndWorkersAlgorithmService algorithmService) {
+        setField(PpsBaseAlgorithmService.class, algorithmService, "basicProductionCountingService",
+                basicProductionCountingService);
+        setField(PpsBaseAlgorithmService.class, algorithmService, "dailyProgressService", dailyProgressService);
+        setField(PpsBaseAlgorithmService.class, algorithmService, "numberService", numberService);
+        setField(PpsBaseAlgorithmService.class, algorithmService, "dataDefinitionService", dataDefinitionService);
+        setField(PpsBaseAlgorithmService.class, algorithmService, "shiftsService", shiftsService);
+        setField(PpsBaseAlgorithmService.class, algorithmService, "shiftExceptionService", shiftExceptionService);
+        setField(PpsBaseAlgorithmService.class, algorithmService, "parameterService", parameterService);
+        setField(PpsBaseAlgorithmService.class, algorithmService, "workersOnLineService", createWorkersOnLineService());
+        setField(PpsTechNormAndWorkersAlgorithmService.class, algorithmService, "numberService", numberService);
+
+        ProgressForDaysContainer progressForDaysContainer = new ProgressForDaysContainer();
+
+        algorithmService.generateProgressForDays(progressForDaysContainer, productionPerShift);
+
+        assertFalse(progressForDaysContainer.isCalculationError());
+
+        return progressForDaysContainer.getProgressForDays().stream().map(this::describeProgressForDay)
+                .collect(Collectors.toList());
+    }
+
+    private String describeProgressForDay(final Entity progressForDay) {
+        StringBuilder description = new StringBuilder();
+
+        description.append(progressForDay.getField(ProgressForDayFields.DAY)).append(' ')
+                .append(progressForDay.getField(ProgressForDayFields.DATE_OF_DAY)).append(' ')
+                .append(progressForDay.getField(ProgressForDayFields.ACTUAL_DATE_OF_DAY)).append(':');
+
+        for (Object dailyProgressObject : (List<?>) progressForDay.getField(ProgressForDayFields.DAILY_PROGRESS)) {
+            Entity dailyProgress = (Entity) dailyProgressObject;
+
+            description.append(' ').append(((Entity) dailyProgress.getField(DailyProgressFields.SHIFT)).getId()).append('=')
+                    .append(dailyProgress.getField(DailyProgressFields.QUANTITY)).append('/')
+                    .append(dailyProgress.getField(DailyProgressFields.EFFICIENCY_TIME));
+        }
+
+        return description.toString();
+    }
+
+    private WorkersOnLineService createWorkersOnLineService() {
+        WorkersOnLineService workersOnLineService = new WorkersOnLineService();
+
+        setField(WorkersOnLineService.class, workersOnLineService, "dataDefinitionService", dataDefinitionService);
+
+        return workersOnLineService;
+    }
+
+    private void setField(final Class<?> declaringClass, final Object target, final String name, final Object value) {
+        Field field = ReflectionUtils.findField(declaringClass, name);
+
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+
+    private Shift mockShift(final Long id) {
+        Shift shift = mock(Shift.class);
+        Entity shiftEntity = mock(Entity.class);
+
+        given(shiftEntity.getId()).willReturn(id);
+        given(shift.getId()).willReturn(id);
+        given(shift.getEntity()).willReturn(shiftEntity);
+
+        return shift;
+    }
+
+    private Map<LocalDate, List<DateTimeRange>> getShiftWorkDateTimes(final Shift shift, final LocalDate fromDay,
+            final LocalDate toDay) {
+        Map<LocalDate, List<DateTimeRange>> shiftWorkDateTimes = Maps.newHashMap();
+
+        for (LocalDate day = fromDay; !day.isAfter(toDay); day = day.plusDays(1)) {
+            shiftWorkDateTimes.put(day, getShiftWorkDateTimes(shift, day));
+        }
+
+        return shiftWorkDateTimes;
+    }
+
+    private List<DateTimeRange> getShiftWorkDateTimes(final Shift shift, final LocalDate day) {
+        DateTime dateOfDay = day.toDateTimeAtStartOfDay();
+
+        if (L_FIRST_SHIFT_ID.equals(shift.getId())) {
+            if (day.getDayOfWeek() <= DateTimeConstants.FRIDAY) {
+                return Lists.newArrayList(range(dateOfDay, 6, 0, 14, 0));
+            } else if (L_WORKING_SATURDAY.equals(day)) {
+                return Lists.newArrayList(range(dateOfDay, 8, 0, 12, 0));
+            }
+        } else if (day.getDayOfWeek() <= DateTimeConstants.SATURDAY && !L_FREE_DAY.equals(day)) {
+            return Lists.newArrayList(range(dateOfDay, 14, 0, 18, 0), range(dateOfDay, 18, 30, 22, 0));
+        }
+
+        return Lists.newArrayList();
+    }
+
+    private DateTimeRange range(final DateTime dateOfDay, final int fromHour, final int fromMinute, final int toHour,
+            final int toMinute) {
+        return new DateTimeRange(dateOfDay,
+                new TimeRange(new LocalTime(fromHour, fromMinute), new LocalTime(toHour, toMinute)));
+    }
+
+    private Assignment assignment(final Long shiftId, final Long factoryId, final LocalDate startDate, final String state) {
+        Assignment assignment = new Assignment(shiftId, factoryId, startDate, state);
+
+        assignments.add(assignment);
+
+        return assignment;
+    }
+
+    private void staffAssignment(final Assignment assignment, final Long productionLineId,
+            final StaffAssignmentToShiftState state, final int workers) {
+        for (int i = 0; i < workers; i++) {
+            staffAssignments.add(new StaffAssignment(assignment, productionLineId, state.getStringValue()));
+        }
+    }
+
+    private void mockAssignmentQueries() {
+        given(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_FACTORY)).willReturn(factoryDD);
+        given(dataDefinitionService.get(AssignmentToShiftConstants.PLUGIN_IDENTIFIER,
+                AssignmentToShiftConstants.MODEL_ASSIGNMENT_TO_SHIFT)).willReturn(assignmentToShiftDD);
+        given(dataDefinitionService.get(AssignmentToShiftConstants.PLUGIN_IDENTIFIER,
+                AssignmentToShiftConstants.MODEL_STAFF_ASSIGNMENT_TO_SHIFT)).willReturn(staffAssignmentToShiftDD);
+
+        List<Entity> factories = Lists.newArrayList(mockEntity(ImmutableMap.of("id", L_FIRST_FACTORY_ID)),
+                mockEntity(ImmutableMap.of("id", L_SECOND_FACTORY_ID)));
+
+        given(factoryDD.find()).willAnswer(invocation -> mock(SearchCriteriaBuilder.class,
+                builderInvocation -> "list".equals(builderInvocation.getMethod().getName()) ? mockSearchResult(factories)
+                        : builderInvocation.getMock()));
+        given(assignmentToShiftDD.find(anyString())).willAnswer(invocation -> mockQuery(this::findAssignmentStartDates));
+        given(staffAssignmentToShiftDD.find(anyString())).willAnswer(invocation -> {
+            if (((String) invocation.getArguments()[0]).contains("max(startDate)")) {
+                return mockQuery(this::findStaffAssignmentsForDate);
+            } else {
+                return mockQuery(this::findStaffAssignments);
+            }
+        });
+    }
+
+    private SearchQueryBuilder mockQuery(final Function<Map<String, Object>, List<Entity>> query) {
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        return mock(SearchQueryBuilder.class, invocation -> {
+            String methodName = invocation.getMethod().getName();
+
+            if ("list".equals(methodName)) {
+                return mockSearchResult(query.apply(parameters));
+            } else if (methodName.startsWith("set") && invocation.getArguments().length == 2) {
+                parameters.put((String) invocation.getArguments()[0], invocation.getArguments()[1]);
+            }
+
+            return SearchQueryBuilder.class.equals(invocation.getMethod().getReturnType()) ? invocation.getMock() : null;
+        });
+    }
+
+    private SearchResult mockSearchResult(final List<Entity> entities) {
+        return mock(SearchResult.class, invocation -> "getEntities".equals(invocation.getMethod().getName()) ? entities : null);
+    }
+
+    private List<Entity> findAssignmentStartDates(final Map<String, Object> parameters) {
+        return assignments.stream().filter(assignment -> assignment.isActive(parameters.get("shiftId")))
+                .map(assignment -> mockEntity(ImmutableMap.of("factoryId", assignment.factoryId, "date",
+                        assignment.startDate.toDate())))
+                .collect(Collectors.toList());
+    }
+
+    private List<Entity> findStaffAssignments(final Map<String, Object> parameters) {
+        return staffAssignments.stream()
+                .filter(staffAssignment -> staffAssignment.assignment.isActive(parameters.get("shiftId"))
+                        && staffAssignment.productionLineId.equals(parameters.get("productionLineId")))
+                .map(StaffAssignment::toRow).collect(Collectors.toList());
+    }
+
+    private List<Entity> findStaffAssignmentsForDate(final Map<String, Object> parameters) {
+        LocalDate day = new LocalDate((Date) parameters.get("date"));
+        Object factoryId = parameters.get("factoryId");
+
+        LocalDate latestStartDate = assignments.stream()
+                .filter(assignment -> assignment.isActive(parameters.get("shiftId")) && assignment.factoryId.equals(factoryId)
+                        && !assignment.startDate.isAfter(day))
+                .map(assignment -> assignment.startDate).max(LocalDate::compareTo).orElse(null);
+
+        return staffAssignments.stream()
+                .filter(staffAssignment -> staffAssignment.assignment.isActive(parameters.get("shiftId"))
+                        && staffAssignment.assignment.factoryId.equals(factoryId)
+                        && staffAssignment.assignment.startDate.equals(latestStartDate)
+                        && staffAssignment.productionLineId.equals(parameters.get("productionLineId")))
+                .map(StaffAssignment::toRow).collect(Collectors.toList());
+    }
+
+    private Entity mockEntity(final Map<String, Object> initialFields) {
+        Map<String, Object> fields = Maps.newHashMap(initialFields);
+        Entity entity = mock(Entity.class);
+
+        willAnswer(invocation -> fields.put((String) invocation.getArguments()[0], invocation.getArguments()[1])).given(entity)
+                .setField(anyString(), any());
+        given(entity.getId()).willAnswer(invocation -> fields.get("id"));
+        given(entity.getField(anyString())).willAnswer(invocation -> fields.get(invocation.getArguments()[0]));
+        given(entity.getStringField(anyString())).willAnswer(invocation -> fields.get(invocation.getArguments()[0]));
+        given(entity.getDateField(anyString())).willAnswer(invocation -> fields.get(invocation.getArguments()[0]));
+
+        return entity;
+    }
+
+    private static final class Assignment {
+
+        private final Long shiftId;
+
+        private final Long factoryId;
+
+        private final LocalDate startDate;
+
+        private final String state;
+
+        private Assignment(final Long shiftId, final Long factoryId, final LocalDate startDate, final String state) {
+            this.shiftId = shiftId;
+            this.factoryId = factoryId;
+            this.startDate = startDate;
+            this.state = state;
+        }
+
+        private boolean isActive(final Object shiftId) {
+            return this.shiftId.equals(shiftId) && (AssignmentToShiftStateStringValues.ACCEPTED.equals(state)
+                    || AssignmentToShiftStateStringValues.CORRECTED.equals(state));
+        }
+
+    }
+
+    private final class StaffAssignment {
+
+        private final Assignment assignment;
+
+        private final Long productionLineId;
+
+        private final String state;
+
+        private StaffAssignment(final Assignment assignment, final Long productionLineId, final String state) {
+            this.assignment = assignment;
+            this.productionLineId = productionLineId;
+            this.state = state;
+        }
+
+        private Entity toRow() {
+            Map<String, Object> fields = Maps.newHashMap();
+
+            fields.put("factoryId", assignment.factoryId);
+            fields.put("date", assignment.startDate.toDate());
+            fields.put("staffAssignmentToShiftState", state);
+            fields.put("assignmentToShiftState", assignment.state);
+
+            return mockEntity(fields);
+        }
+
+    }
+
+    private static final class PerDayProductionLineCalendar extends ProductionLineCalendar {
+
+        private final ShiftExceptionService shiftExceptionService;
+
+        private final WorkersOnLineService workersOnLineService;
+
+        private PerDayProductionLineCalendar(final Entity productionLine, final ShiftExceptionService shiftExceptionService,
+                final WorkersOnLineService workersOnLineService) {
+            super(productionLine, shiftExceptionService, workersOnLineService);
+
+            this.shiftExceptionService = shiftExceptionService;
+            this.workersOnLineService = workersOnLineService;
+        }
+
+        @Override
+        public List<DateTimeRange> getShiftWorkDateTimes(final Shift shift, final DateTime dateOfDay) {
+            return shiftExceptionService.getShiftWorkDateTimes(getProductionLine(), shift, dateOfDay, true);
+        }
+
+        @Override
+        public int getWorkersOnLine(final Shift shift, final DateTime date) {
+            return workersOnLineService.getWorkersOnLine(getProductionLine(), shift.getEntity(), date);
+        }
+
+    }
+
+}
@@ -67,8 +67,7 @@ public class ScheduleDetailsListenersPS {
     @Transactional
     public void generatePlan(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         getOperations(view, state, args);
-        scheduleDetailsListeners.assignOperationsToWorkstations(view, state, args);
-        scheduleDetailsListeners.assignWorkersToOperations(view, state, args);
+        scheduleDetailsListeners.assignWorkstationsAndWorkers(view, state, args);
     }
 
     @Transactional
@@ -22,4 +22,10 @@ public abstract class BasicStateService implements StateService {
         return entity;
     }
 
+    // unknown side effects, so bulk changes run serially unless a service declares what its change touches
+    @Override
+    public Object getBulkChangeKey(Entity entity) {
+        return null;
+    }
+
 }
@@ -0,0 +1,68 @@
+package com.qcadoo.mes.newstates;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Bulk state change running in background. Results are filled from the executor threads, so the caller can wait for them as
+ * long as it wants and read the ones finished so far.
+ */
+public class BulkStateChange {
+
+    private final List<Long> entityIds;
+
+    private final Map<Long, StateChangeResult> results = new ConcurrentHashMap<>();
+
+    private final CountDownLatch remaining;
+
+    BulkStateChange(final List<Long> entityIds) {
+        this.entityIds = ImmutableList.copyOf(entityIds);
+        this.remaining = new CountDownLatch(entityIds.size());
+    }
+
+    void addResult(final StateChangeResult result) {
+        if (Objects.isNull(results.putIfAbsent(result.getEntityId(), result))) {
+            remaining.countDown();
+        }
+    }
+
+    /**
+     * @return true if all entities are finished within given time
+     */
+    public boolean awaitResults(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return remaining.await(timeout, unit);
+    }
+
+    public boolean isFinished() {
+        return remaining.getCount() == 0;
+    }
+
+    public int getTotal() {
+        return entityIds.size();
+    }
+
+    /**
+     * @return results finished so far, in order of given ids
+     */
+    public List<StateChangeResult> getResults() {
+        List<StateChangeResult> orderedResults = Lists.newArrayList();
+
+        for (Long entityId : entityIds) {
+            StateChangeResult result = results.get(entityId);
+
+            if (Objects.nonNull(result)) {
+                orderedResults.add(result);
+            }
+        }
+
+        return orderedResults;
+    }
+
+}
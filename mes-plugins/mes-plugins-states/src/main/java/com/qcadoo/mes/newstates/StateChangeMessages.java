@@ -0,0 +1,40 @@
+package com.qcadoo.mes.newstates;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.model.api.validators.ErrorMessage;
+import com.qcadoo.model.api.validators.GlobalMessage;
+import com.qcadoo.view.api.ComponentMessagesHolder;
+import com.qcadoo.view.api.ComponentState;
+
+/**
+ * Messages collected during a single state change, copied to the view once the change is finished. Unlike the view itself it
+ * can be filled from a worker thread.
+ */
+public class StateChangeMessages {
+
+    private final List<Consumer<ComponentMessagesHolder>> messages = Lists.newArrayList();
+
+    public void addMessage(final String message, final ComponentState.MessageType messageType) {
+        messages.add(holder -> holder.addMessage(message, messageType));
+    }
+
+    public void addMessage(final ErrorMessage errorMessage) {
+        messages.add(holder -> holder.addMessage(errorMessage));
+    }
+
+    public void addMessage(final GlobalMessage globalMessage) {
+        messages.add(holder -> holder.addMessage(globalMessage));
+    }
+
+    public boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    public void copyTo(final ComponentMessagesHolder componentMessagesHolder) {
+        messages.forEach(message -> message.accept(componentMessagesHolder));
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.qcadoo.mes.newstates;
+
+import com.qcadoo.model.api.Entity;
+
+public class StateChangeResult {
+
+    private final Long entityId;
+
+    private final Entity entity;
+
+    private final boolean successful;
+
+    private final StateChangeMessages messages;
+
+    public StateChangeResult(final Long entityId, final Entity entity, final boolean successful,
+            final StateChangeMessages messages) {
+        this.entityId = entityId;
+        this.entity = entity;
+        this.successful = successful;
+        this.messages = messages;
+    }
+
+    public Long getEntityId() {
+        return entityId;
+    }
+
+    public Entity getEntity() {
+        return entity;
+    }
+
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    public StateChangeMessages getMessages() {
+        return messages;
+    }
+
+}
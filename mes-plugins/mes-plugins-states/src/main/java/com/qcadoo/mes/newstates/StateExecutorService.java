@@ -6,23 +6,30 @@ import static com.qcadoo.mes.states.constants.StateChangeStatus.PAUSED;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
-import org.springframework.context.annotation.Scope;
-import org.springframework.context.annotation.ScopedProxyMode;
+import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.qcadoo.mes.basic.ShiftsService;
 import com.qcadoo.mes.states.StateChangeEntityDescriber;
@@ -30,6 +37,7 @@ import com.qcadoo.mes.states.StateEnum;
 import com.qcadoo.mes.states.constants.StateChangeStatus;
 import com.qcadoo.mes.states.exception.AnotherChangeInProgressException;
 import com.qcadoo.mes.states.exception.StateTransitionNotAlloweException;
+import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.exception.EntityRuntimeException;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
@@ -39,7 +47,6 @@ import com.qcadoo.model.api.validators.GlobalMessage;
 import com.qcadoo.plugin.api.PluginUtils;
 import com.qcadoo.plugin.api.RunIfEnabled;
 import com.qcadoo.security.api.SecurityService;
-import com.qcadoo.view.api.ComponentMessagesHolder;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ViewDefinitionState;
 import com.qcadoo.view.api.components.FormComponent;
@@ -47,13 +54,16 @@ import com.qcadoo.view.api.components.GridComponent;
 import com.qcadoo.view.constants.QcadooViewConstants;
 
 @Service
-@Scope(value = "request", proxyMode = ScopedProxyMode.TARGET_CLASS)
 public class StateExecutorService {
 
     private static final Logger LOG = LoggerFactory.getLogger(StateExecutorService.class);
 
     public static final String USER_CHANGE_STATE = "user";
 
+    private static final long L_BULK_CHANGE_RESULT_WAIT_SECONDS = 5L;
+
+    private static final Object L_NULL_BULK_CHANGE_KEY = new Object();
+
     @Autowired
     private ApplicationContext applicationContext;
 
@@ -63,27 +73,44 @@ public class StateExecutorService {
     @Autowired
     private ShiftsService shiftsService;
 
-    private ComponentMessagesHolder componentMessagesHolder;
+    private final Map<Class<?>, List<? extends StateService>> stateServices = new ConcurrentHashMap<>();
 
     public <M extends StateService> void changeState(final Class<M> serviceMarker, final ViewDefinitionState view,
             final String[] args) {
-        componentMessagesHolder = view;
-
         Long userId = securityService.getCurrentUserOrQcadooBotId();
         String userName = securityService.getCurrentUserOrQcadooBotName();
 
         Optional<GridComponent> maybeGridComponent = view.tryFindComponentByReference(QcadooViewConstants.L_GRID);
 
         if (maybeGridComponent.isPresent()) {
-            maybeGridComponent.get().getSelectedEntities().forEach(entity -> {
-                entity = entity.getDataDefinition().getMasterModelEntity(entity.getId());
+            List<Entity> selectedEntities = maybeGridComponent.get().getSelectedEntities();
 
-                entity.setField(USER_CHANGE_STATE, userId);
+            if (selectedEntities.isEmpty()) {
+                return;
+            }
+
+            DataDefinition dataDefinition = selectedEntities.get(0).getDataDefinition();
+            List<Long> entityIds = Lists.newArrayList();
 
-                entity = changeState(serviceMarker, entity, userName, args[0]);
+            selectedEntities.forEach(entity -> entityIds.add(entity.getId()));
 
-                copyMessages(entity);
-            });
+            BulkStateChange bulkStateChange = changeStates(serviceMarker, dataDefinition, entityIds, userId, userName,
+                    args[0]);
+
+            try {
+                bulkStateChange.awaitResults(L_BULK_CHANGE_RESULT_WAIT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            List<StateChangeResult> results = bulkStateChange.getResults();
+
+            results.forEach(result -> result.getMessages().copyTo(view));
+
+            if (results.size() < bulkStateChange.getTotal()) {
+                view.addMessage("states.messages.change.bulk.inBackground", ComponentState.MessageType.INFO,
+                        String.valueOf(results.size()), String.valueOf(bulkStateChange.getTotal()));
+            }
         } else {
             Optional<FormComponent> maybeForm = view.tryFindComponentByReference(QcadooViewConstants.L_FORM);
 
@@ -95,7 +122,11 @@ public class StateExecutorService {
                 entity.setField(USER_CHANGE_STATE, userId);
 
                 if (entity.isValid()) {
-                    entity = changeState(serviceMarker, entity, userName, args[0]);
+                    StateChangeMessages messages = new StateChangeMessages();
+
+                    entity = changeState(serviceMarker, entity, userName, args[0], messages);
+
+                    messages.copyTo(view);
 
                     formComponent.setEntity(entity);
                 }
@@ -103,8 +134,155 @@ public class StateExecutorService {
         }
     }
 
+    /**
+     * Changes state of given entities in background, on the application task executor, and returns without waiting for
+     * them. Each entity is reloaded and changed in its own transaction, entities sharing a bulk change key (see
+     * {@link StateService#getBulkChangeKey(Entity)}) are changed one after another. Entities with a null key for any service
+     * in the chain are all changed one after another, in a single task.
+     */
+    public <M extends StateService> BulkStateChange changeStates(final Class<M> serviceMarker,
+            final DataDefinition dataDefinition, final List<Long> entityIds, final Long userId, final String userName,
+            final String targetState) {
+        List<M> services = lookupChangeStateServices(serviceMarker);
+
+        List<Entity> entities = Lists.newArrayList();
+
+        for (Long entityId : Sets.newLinkedHashSet(entityIds)) {
+            Entity entity = dataDefinition.getMasterModelEntity(entityId);
+
+            if (Objects.nonNull(entity)) {
+                entities.add(entity);
+            }
+        }
+
+        List<List<Entity>> groups = groupByBulkChangeKeys(services, entities);
+
+        LOG.info(String.format("Bulk state change started. Entity name : %S. Entities : %d, serial groups : %d",
+                dataDefinition.getName(), entities.size(), groups.size()));
+
+        BulkStateChange bulkStateChange = new BulkStateChange(
+                entities.stream().map(Entity::getId).collect(Collectors.toList()));
+
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        Locale locale = LocaleContextHolder.getLocale();
+
+        for (List<Entity> group : groups) {
+            changeStatesSerially(serviceMarker, group, userId, userName, targetState, securityContext, locale, bulkStateChange);
+        }
+
+        return bulkStateChange;
+    }
+
+    @Async
+    public <M extends StateService> void changeStatesSerially(final Class<M> serviceMarker, final List<Entity> group,
+            final Long userId, final String userName, final String targetState, final SecurityContext securityContext,
+            final Locale locale, final BulkStateChange bulkStateChange) {
+        SecurityContextHolder.setContext(securityContext);
+        LocaleContextHolder.setLocale(locale);
+
+        try {
+            for (Entity entity : group) {
+                StateChangeResult result;
+
+                try {
+                    result = changeState(serviceMarker, entity, userId, userName, targetState);
+                } catch (Throwable throwable) {
+                    LOG.error("Can't perform state change", throwable);
+
+                    result = createFailureResult(entity.getId(), entity, new StateChangeMessages());
+                }
+
+                bulkStateChange.addResult(result);
+            }
+        } finally {
+            SecurityContextHolder.clearContext();
+            LocaleContextHolder.resetLocaleContext();
+        }
+    }
+
+    private <M extends StateService> StateChangeResult changeState(final Class<M> serviceMarker, Entity entity,
+            final Long userId, final String userName, final String targetState) {
+        StateChangeMessages messages = new StateChangeMessages();
+
+        Long entityId = entity.getId();
+
+        try {
+            entity = entity.getDataDefinition().getMasterModelEntity(entityId);
+
+            entity.setField(USER_CHANGE_STATE, userId);
+
+            entity = changeState(serviceMarker, entity, userName, targetState, messages);
+
+            copyMessages(entity, null, messages);
+
+            return new StateChangeResult(entityId, entity, entity.isValid(), messages);
+        } catch (Exception exception) {
+            LOG.warn("Can't perform state change", exception);
+
+            return createFailureResult(entityId, entity, messages);
+        }
+    }
+
+    private StateChangeResult createFailureResult(final Long entityId, final Entity entity,
+            final StateChangeMessages messages) {
+        messages.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+        messages.addMessage("states.messages.change.failure.internalServerError", ComponentState.MessageType.FAILURE);
+
+        return new StateChangeResult(entityId, entity, false, messages);
+    }
+
+    private <M extends StateService> List<List<Entity>> groupByBulkChangeKeys(final List<M> services,
+            final List<Entity> entities) {
+        int[] groupIndexes = new int[entities.size()];
+
+        for (int i = 0; i < groupIndexes.length; i++) {
+            groupIndexes[i] = i;
+        }
+
+        for (M service : services) {
+            Map<Object, Integer> firstEntityIndexes = Maps.newHashMap();
+
+            for (int i = 0; i < entities.size(); i++) {
+                Object key = service.getBulkChangeKey(entities.get(i));
+
+                if (Objects.isNull(key)) {
+                    key = L_NULL_BULK_CHANGE_KEY;
+                }
+
+                Integer firstEntityIndex = firstEntityIndexes.putIfAbsent(key, i);
+
+                if (Objects.nonNull(firstEntityIndex)) {
+                    groupIndexes[findGroupIndex(groupIndexes, i)] = findGroupIndex(groupIndexes, firstEntityIndex);
+                }
+            }
+        }
+
+        Map<Integer, List<Entity>> groups = Maps.newLinkedHashMap();
+
+        for (int i = 0; i < entities.size(); i++) {
+            groups.computeIfAbsent(findGroupIndex(groupIndexes, i), groupIndex -> Lists.newArrayList()).add(entities.get(i));
+        }
+
+        return Lists.newArrayList(groups.values());
+    }
+
+    private int findGroupIndex(final int[] groupIndexes, int index) {
+        while (groupIndexes[index] != index) {
+            groupIndexes[index] = groupIndexes[groupIndexes[index]];
+
+            index = groupIndexes[index];
+        }
+
+        return index;
+    }
+
     public <M extends StateService> Entity changeState(final Class<M> serviceMarker, Entity entity, final String userName,
             final String targetState) {
+        return changeState(serviceMarker, entity, userName, targetState, new StateChangeMessages());
+    }
+
+    private <M extends StateService> Entity changeState(final Class<M> serviceMarker, Entity entity, final String userName,
+            final String targetState, final StateChangeMessages messages) {
         List<M> services = lookupChangeStateServices(serviceMarker);
 
         StateChangeEntityDescriber describer = services.stream().findFirst().get().getChangeEntityDescriber();
@@ -126,11 +304,11 @@ public class StateExecutorService {
             entity = performChangeState(services, entity, stateChangeEntity, describer);
 
             if (entity.isValid()) {
-                copyMessages(entity);
+                copyMessages(entity, null, messages);
 
                 saveStateChangeEntity(stateChangeEntity, StateChangeStatus.SUCCESSFUL);
 
-                message("states.messages.change.successful", ComponentState.MessageType.SUCCESS);
+                messages.addMessage("states.messages.change.successful", ComponentState.MessageType.SUCCESS);
 
                 LOG.info(String.format("Change state successful. Entity name : %S id : %d. Target state : %S",
                         entity.getDataDefinition().getName(), entity.getId(),
@@ -140,20 +318,20 @@ public class StateExecutorService {
 
                 entity = rollbackStateChange(entity, sourceState);
 
-                message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+                messages.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
 
                 LOG.info(String.format("Change state failure. Entity name : %S id : %d. Target state : %S",
                         entity.getDataDefinition().getName(), entity.getId(),
                         stateChangeEntity.getStringField(describer.getTargetStateFieldName())));
             }
         } catch (EntityRuntimeException entityException) {
-            copyMessages(entityException.getEntity(), entity);
+            copyMessages(entityException.getEntity(), entity, messages);
 
             entity = rollbackStateChange(entity, sourceState);
 
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
 
-            message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
 
             return entity;
         } catch (AnotherChangeInProgressException e) {
@@ -161,8 +339,8 @@ public class StateExecutorService {
 
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
 
-            message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
-            message("states.messages.change.failure.anotherChangeInProgress", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure.anotherChangeInProgress", ComponentState.MessageType.FAILURE);
 
             LOG.info(String.format("Another state change in progress. Entity name : %S id : %d. Target state : %S",
                     entity.getDataDefinition().getName(), entity.getId(), targetState));
@@ -171,8 +349,8 @@ public class StateExecutorService {
 
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
 
-            message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
-            message("states.messages.change.failure.transitionNotAllowed", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure.transitionNotAllowed", ComponentState.MessageType.FAILURE);
 
             LOG.info(String.format("State change - transition not allowed. Entity name : %S id : %d. Target state : %S",
                     entity.getDataDefinition().getName(), entity.getId(), targetState));
@@ -181,8 +359,8 @@ public class StateExecutorService {
 
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
 
-            message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
-            message("states.messages.change.failure.internalServerError", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure.internalServerError", ComponentState.MessageType.FAILURE);
 
             LOG.info(String.format("State change exception. Entity name : %S id : %d. Target state : %S",
                     entity.getDataDefinition().getName(), entity.getId(), targetState));
@@ -332,19 +510,24 @@ public class StateExecutorService {
         return entity.isValid();
     }
 
+    @SuppressWarnings("unchecked")
     private <M extends StateService> List<M> lookupChangeStateServices(final Class<M> serviceMarker) {
-        Map<String, M> stateServices = applicationContext.getBeansOfType(serviceMarker);
+        List<M> markedServices = (List<M>) stateServices.computeIfAbsent(serviceMarker, marker -> {
+            List<M> sortedServices = Lists.newArrayList(applicationContext.getBeansOfType(serviceMarker).values());
+
+            AnnotationAwareOrderComparator.sort(sortedServices);
+
+            return sortedServices;
+        });
 
         List<M> services = Lists.newArrayList();
 
-        for (M service : stateServices.values()) {
+        for (M service : markedServices) {
             if (serviceEnabled(service)) {
                 services.add(service);
             }
         }
 
-        AnnotationAwareOrderComparator.sort(services);
-
         return services;
     }
 
@@ -377,32 +560,24 @@ public class StateExecutorService {
         return true;
     }
 
-    private void copyMessages(final Entity entity, final Entity mainEntity) {
+    private void copyMessages(final Entity entity, final Entity mainEntity, final StateChangeMessages messages) {
         if (Objects.nonNull(mainEntity) && mainEntity.equals(entity)
                 && entity.getGlobalErrors() == mainEntity.getGlobalErrors()) {
             return;
         }
 
-        if (Objects.isNull(componentMessagesHolder)) {
-            return;
-        }
-
         for (ErrorMessage errorMessage : entity.getGlobalErrors()) {
-            componentMessagesHolder.addMessage(errorMessage);
+            messages.addMessage(errorMessage);
         }
         for (ErrorMessage errorMessage : entity.getErrors().values()) {
-            componentMessagesHolder.addMessage(errorMessage);
+            messages.addMessage(errorMessage);
         }
 
         for (GlobalMessage globalMessage : entity.getGlobalMessages()) {
-            componentMessagesHolder.addMessage(globalMessage);
+            messages.addMessage(globalMessage);
         }
     }
 
-    private void copyMessages(final Entity entity) {
-        copyMessages(entity, null);
-    }
-
     private Entity saveAndValidate(final Entity entity) {
         if (Objects.isNull(entity)) {
             return null;
@@ -417,12 +592,6 @@ public class StateExecutorService {
         return saved;
     }
 
-    private void message(final String msg, final ComponentState.MessageType messageType) {
-        if (Objects.nonNull(componentMessagesHolder)) {
-            componentMessagesHolder.addMessage(msg, messageType);
-        }
-    }
-
     private void checkForUnfinishedStateChange(final StateChangeEntityDescriber describer, final Entity owner) {
         final String ownerFieldName = describer.getOwnerFieldName();
         final String statusFieldName = describer.getStatusFieldName();
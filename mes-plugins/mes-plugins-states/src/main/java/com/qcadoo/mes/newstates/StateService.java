@@ -13,4 +13,11 @@ public interface StateService {
 
     public StateChangeEntityDescriber getChangeEntityDescriber();
 
+    /**
+     * Key of data touched by state change of given entity. Bulk state changes of entities sharing a key (for any service in
+     * the chain) are performed one after another. Null key means that entities can't be changed concurrently at all - a bulk
+     * change of entities with null key for any service in the chain runs serially, in a single background task.
+     */
+    public Object getBulkChangeKey(Entity entity);
+
 }
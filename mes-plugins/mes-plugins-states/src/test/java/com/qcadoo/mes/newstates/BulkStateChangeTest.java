@@ -0,0 +1,89 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.newstates;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class BulkStateChangeTest {
+
+    @Test
+    public void shouldReturnFinishedResultsInOrderOfIds() throws InterruptedException {
+        // given
+        BulkStateChange bulkStateChange = new BulkStateChange(Lists.newArrayList(3L, 1L, 2L));
+
+        // when
+        bulkStateChange.addResult(result(2L));
+        bulkStateChange.addResult(result(3L));
+
+        // then
+        List<StateChangeResult> results = bulkStateChange.getResults();
+
+        assertEquals(2, results.size());
+        assertEquals(Long.valueOf(3L), results.get(0).getEntityId());
+        assertEquals(Long.valueOf(2L), results.get(1).getEntityId());
+        assertEquals(3, bulkStateChange.getTotal());
+        assertFalse(bulkStateChange.isFinished());
+        assertFalse(bulkStateChange.awaitResults(1, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void shouldBeFinishedWhenAllEntitiesHaveResults() throws InterruptedException {
+        // given
+        BulkStateChange bulkStateChange = new BulkStateChange(Lists.newArrayList(1L, 2L));
+
+        // when
+        bulkStateChange.addResult(result(1L));
+        bulkStateChange.addResult(result(1L));
+        bulkStateChange.addResult(result(2L));
+
+        // then
+        assertTrue(bulkStateChange.isFinished());
+        assertTrue(bulkStateChange.awaitResults(0, TimeUnit.MILLISECONDS));
+        assertEquals(2, bulkStateChange.getResults().size());
+    }
+
+    @Test
+    public void shouldBeFinishedWithoutEntities() {
+        // given
+        BulkStateChange bulkStateChange = new BulkStateChange(Lists.newArrayList());
+
+        // then
+        assertTrue(bulkStateChange.isFinished());
+        assertTrue(bulkStateChange.getResults().isEmpty());
+    }
+
+    private StateChangeResult result(final Long entityId) {
+        return new StateChangeResult(entityId, null, true, new StateChangeMessages());
+    }
+
+}
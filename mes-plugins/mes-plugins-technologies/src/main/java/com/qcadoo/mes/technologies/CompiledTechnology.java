@@ -0,0 +1,326 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.technologies.constants.OperationProductInComponentFields;
+import com.qcadoo.mes.technologies.constants.OperationProductOutComponentFields;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityTree;
+
+/**
+ * Immutable, flattened form of a technology operation tree, used to compute product quantities and operation runs for any
+ * given quantity without reading entities again.
+ * 
+ * Operation product components are mapped to slots, one per distinct {@link OperationProductComponentHolder}, and operations
+ * are stored in the order in which {@link ProductQuantitiesService#traverseProductQuantitiesAndOperationRuns} visits them,
+ * together with the (needed, produced) slot pairs it multiplies by. Evaluation replays the same arithmetic, so results are
+ * equal to the tree traversal.
+ */
+public final class CompiledTechnology {
+
+    private static final String L_QUANTITY = "quantity";
+
+    private static final int L_GIVEN_QUANTITY = -1;
+
+    private final Long technologyId;
+
+    private final String technologyNumber;
+
+    private final Long technologyProductId;
+
+    private final Long[] allOperationComponentIds;
+
+    private final Long[] operationComponentIds;
+
+    private final boolean[] areProductQuantitiesDivisible;
+
+    private final boolean[] areTjDivisible;
+
+    private final int[][] inSlots;
+
+    private final int[][] outSlots;
+
+    private final int[][][] multiplications;
+
+    private final OperationProductComponentHolder[] holders;
+
+    private final BigDecimal[] baseQuantities;
+
+    private final Set<OperationProductComponentHolder> nonComponents;
+
+    private CompiledTechnology(final Builder builder) {
+        technologyId = builder.technologyId;
+        technologyNumber = builder.technologyNumber;
+        technologyProductId = builder.technologyProductId;
+        allOperationComponentIds = builder.allOperationComponentIds.toArray(new Long[0]);
+        operationComponentIds = builder.operationComponentIds.toArray(new Long[0]);
+        areProductQuantitiesDivisible = toArray(builder.areProductQuantitiesDivisible);
+        areTjDivisible = toArray(builder.areTjDivisible);
+        inSlots = builder.inSlots.toArray(new int[0][]);
+        outSlots = builder.outSlots.toArray(new int[0][]);
+        multiplications = builder.multiplications.toArray(new int[0][][]);
+        holders = builder.slots.keySet().toArray(new OperationProductComponentHolder[0]);
+        baseQuantities = builder.baseQuantities.toArray(new BigDecimal[0]);
+        nonComponents = Sets.newHashSet(builder.nonComponents);
+    }
+
+    public static CompiledTechnology compile(final Entity technology) {
+        Builder builder = new Builder(technology);
+
+        EntityTree operationComponents = technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS);
+        Entity root = operationComponents.getRoot();
+
+        if (Objects.nonNull(root)) {
+            for (Entity operationComponent : operationComponents) {
+                builder.addSlots(operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS));
+                builder.addSlots(operationComponent
+                        .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS));
+                builder.allOperationComponentIds.add(operationComponent.getId());
+            }
+
+            builder.addOperationComponent(root, null);
+        }
+
+        return new CompiledTechnology(builder);
+    }
+
+    public Long getTechnologyId() {
+        return technologyId;
+    }
+
+    /**
+     * Checks if this compiled technology still describes given technology entity.
+     */
+    public boolean isCompiledFrom(final Entity technology) {
+        Entity product = technology.getBelongsToField(TechnologyFields.PRODUCT);
+
+        return Objects.equals(technologyId, technology.getId())
+                && Objects.equals(technologyNumber, technology.getStringField(TechnologyFields.NUMBER))
+                && Objects.equals(technologyProductId, Objects.isNull(product) ? null : product.getId());
+    }
+
+    /**
+     * Computes product quantities for given quantity of technology product, putting operation runs and intermediate products
+     * to the given collections, the same way as the tree traversal does.
+     */
+    public OperationProductComponentWithQuantityContainer evaluate(final BigDecimal givenQuantity, final MathContext mathContext,
+            final Map<Long, BigDecimal> operationRuns, final Set<OperationProductComponentHolder> nonComponents) {
+        OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer = new OperationProductComponentWithQuantityContainer();
+
+        if (operationComponentIds.length == 0) {
+            return operationProductComponentWithQuantityContainer;
+        }
+
+        BigDecimal[] quantities = Arrays.copyOf(baseQuantities, baseQuantities.length);
+
+        for (Long operationComponentId : allOperationComponentIds) {
+            operationRuns.put(operationComponentId, BigDecimal.ONE);
+        }
+
+        for (int operation = 0; operation < operationComponentIds.length; operation++) {
+            for (int[] multiplication : multiplications[operation]) {
+                BigDecimal needed = (multiplication[0] == L_GIVEN_QUANTITY) ? givenQuantity : quantities[multiplication[0]];
+                BigDecimal multiplier = needed.divide(quantities[multiplication[1]], mathContext);
+
+                if (!areProductQuantitiesDivisible[operation]) {
+                    // It's intentional to round up the operation runs
+                    multiplier = multiplier.setScale(0, RoundingMode.CEILING);
+                }
+
+                BigDecimal runs = multiplier;
+
+                if (!areTjDivisible[operation]) {
+                    runs = multiplier.setScale(0, RoundingMode.CEILING);
+                }
+
+                operationRuns.put(operationComponentIds[operation], runs);
+
+                multiply(quantities, inSlots[operation], multiplier, mathContext);
+                multiply(quantities, outSlots[operation], multiplier, mathContext);
+            }
+        }
+
+        for (int slot = 0; slot < holders.length; slot++) {
+            operationProductComponentWithQuantityContainer.put(holders[slot], quantities[slot]);
+        }
+
+        nonComponents.addAll(this.nonComponents);
+
+        return operationProductComponentWithQuantityContainer;
+    }
+
+    private void multiply(final BigDecimal[] quantities, final int[] slots, final BigDecimal multiplier,
+            final MathContext mathContext) {
+        for (int slot : slots) {
+            quantities[slot] = quantities[slot].multiply(multiplier, mathContext).setScale(5, RoundingMode.CEILING);
+        }
+    }
+
+    private static boolean[] toArray(final List<Boolean> values) {
+        boolean[] array = new boolean[values.size()];
+
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+
+        return array;
+    }
+
+    private static final class Builder {
+
+        private final Long technologyId;
+
+        private final String technologyNumber;
+
+        private final Long technologyProductId;
+
+        private final List<Long> allOperationComponentIds = Lists.newArrayList();
+
+        private final List<Long> operationComponentIds = Lists.newArrayList();
+
+        private final List<Boolean> areProductQuantitiesDivisible = Lists.newArrayList();
+
+        private final List<Boolean> areTjDivisible = Lists.newArrayList();
+
+        private final List<int[]> inSlots = Lists.newArrayList();
+
+        private final List<int[]> outSlots = Lists.newArrayList();
+
+        private final List<int[][]> multiplications = Lists.newArrayList();
+
+        private final Map<OperationProductComponentHolder, Integer> slots = Maps.newLinkedHashMap();
+
+        private final List<BigDecimal> baseQuantities = Lists.newArrayList();
+
+        private final Set<OperationProductComponentHolder> nonComponents = Sets.newHashSet();
+
+        private Builder(final Entity technology) {
+            Entity product = technology.getBelongsToField(TechnologyFields.PRODUCT);
+
+            technologyId = technology.getId();
+            technologyNumber = technology.getStringField(TechnologyFields.NUMBER);
+            technologyProductId = Objects.isNull(product) ? null : product.getId();
+        }
+
+        private void addSlots(final List<Entity> operationProductComponents) {
+            for (Entity operationProductComponent : operationProductComponents) {
+                OperationProductComponentHolder holder = new OperationProductComponentHolder(operationProductComponent);
+                BigDecimal quantity = operationProductComponent.getDecimalField(L_QUANTITY);
+
+                Integer slot = slots.get(holder);
+
+                if (Objects.isNull(slot)) {
+                    slots.put(holder, baseQuantities.size());
+                    baseQuantities.add(quantity);
+                } else {
+                    baseQuantities.set(slot, quantity);
+                }
+            }
+        }
+
+        private int getSlot(final Entity operationProductComponent) {
+            OperationProductComponentHolder holder = new OperationProductComponentHolder(operationProductComponent);
+
+            Integer slot = slots.get(holder);
+
+            if (Objects.isNull(slot)) {
+                addSlots(Lists.newArrayList(operationProductComponent));
+
+                slot = slots.get(holder);
+            }
+
+            return slot;
+        }
+
+        private int[] getSlots(final List<Entity> operationProductComponents) {
+            return operationProductComponents.stream().mapToInt(this::getSlot).toArray();
+        }
+
+        private void addOperationComponent(final Entity operationComponent, final Entity previousOperationComponent) {
+            List<Entity> operationProductOutComponents = Lists.newArrayList(operationComponent
+                    .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS));
+            List<int[]> operationMultiplications = Lists.newArrayList();
+
+            if (Objects.isNull(previousOperationComponent)) {
+                for (Entity operationProductOutComponent : operationProductOutComponents) {
+                    if (operationProductOutComponent.getBelongsToField(OperationProductOutComponentFields.PRODUCT).getId()
+                            .equals(technologyProductId)) {
+                        operationMultiplications.add(new int[] { L_GIVEN_QUANTITY, getSlot(operationProductOutComponent) });
+
+                        break;
+                    }
+                }
+            } else {
+                for (Entity operationProductInComponent : previousOperationComponent
+                        .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS)) {
+                    Long productId = operationProductInComponent.getBelongsToField(OperationProductInComponentFields.PRODUCT)
+                            .getId();
+
+                    for (Entity operationProductOutComponent : operationProductOutComponents) {
+                        if (operationProductOutComponent.getBelongsToField(OperationProductOutComponentFields.PRODUCT).getId()
+                                .equals(productId)) {
+                            nonComponents.add(new OperationProductComponentHolder(operationProductInComponent));
+
+                            operationMultiplications.add(new int[] { getSlot(operationProductInComponent),
+                                    getSlot(operationProductOutComponent) });
+
+                            break;
+                        }
+                    }
+                }
+            }
+
+            operationComponentIds.add(operationComponent.getId());
+            areProductQuantitiesDivisible.add(operationComponent
+                    .getBooleanField(TechnologyOperationComponentFields.ARE_PRODUCT_QUANTITIES_DIVISIBLE));
+            areTjDivisible.add(operationComponent.getBooleanField(TechnologyOperationComponentFields.IS_TJ_DIVISIBLE));
+            inSlots.add(getSlots(operationComponent
+                    .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS)));
+            outSlots.add(getSlots(operationProductOutComponents));
+            multiplications.add(operationMultiplications.toArray(new int[0][]));
+
+            for (Entity child : operationComponent.getHasManyField(TechnologyOperationComponentFields.CHILDREN)) {
+                addOperationComponent(child, operationComponent);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,74 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Keeps compiled forms of accepted technologies. Accepted technologies can't be edited, so an entry stays valid until the
+ * technology changes its state, which evicts it.
+ */
+@Service
+public class CompiledTechnologyService {
+
+    private static final int L_MAX_TECHNOLOGIES = 1000;
+
+    private final Map<Long, CompiledTechnology> compiledTechnologies = new ConcurrentHashMap<>();
+
+    public CompiledTechnology getCompiledTechnology(final Entity technology) {
+        if (Objects.isNull(technology.getId())
+                || !TechnologyStateStringValues.ACCEPTED.equals(technology.getStringField(TechnologyFields.STATE))) {
+            return CompiledTechnology.compile(technology);
+        }
+
+        CompiledTechnology compiledTechnology = compiledTechnologies.get(technology.getId());
+
+        if (Objects.isNull(compiledTechnology) || !compiledTechnology.isCompiledFrom(technology)) {
+            compiledTechnology = CompiledTechnology.compile(technology);
+
+            if (compiledTechnologies.size() >= L_MAX_TECHNOLOGIES) {
+                compiledTechnologies.clear();
+            }
+
+            compiledTechnologies.put(technology.getId(), compiledTechnology);
+        }
+
+        return compiledTechnology;
+    }
+
+    public void evict(final Long technologyId) {
+        if (Objects.nonNull(technologyId)) {
+            compiledTechnologies.remove(technologyId);
+        }
+    }
+
+}
@@ -24,6 +24,7 @@
 package com.qcadoo.mes.technologies;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -167,6 +168,14 @@ public interface ProductQuantitiesService {
      */
     Entity getProduct(final Long productId);
 
+    /**
+     * Gets products with one query
+     *
+     * @param productIds
+     * @return products by id
+     */
+    Map<Long, Entity> getProducts(final Collection<Long> productIds);
+
     void traverseProductQuantitiesAndOperationRuns(Entity technology, BigDecimal givenQuantity, Entity operationComponent,
             Entity previousOperationComponent,
             OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer,
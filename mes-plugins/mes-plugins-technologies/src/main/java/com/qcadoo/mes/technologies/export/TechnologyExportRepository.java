@@ -0,0 +1,102 @@
+package com.qcadoo.mes.technologies.export;
+
+import com.qcadoo.mes.basic.util.StreamingJdbcTemplateFactory;
+import com.qcadoo.mes.states.constants.StateChangeStatus;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.mes.technologies.tree.ProductStructureTreeService;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.ImmutableMap;
+
+@Repository
+class TechnologyExportRepository {
+
+    /**
+     * Technologies without product structure tree or with a tree older than a state change of any technology in it, or with
+     * a node of a product whose technology to use has changed since - as checked by ProductStructureTreeService.
+     */
+    private static final String L_TECHNOLOGIES_WITH_OUTDATED_TREE_QUERY = "SELECT t.id FROM technologies_technology t "
+            + "LEFT JOIN technologies_productstructuretreenode r ON r.maintechnology_id = t.id AND r.parent_id IS NULL "
+            + "WHERE t.technologytype IS NULL AND t.active = true AND (r.id IS NULL "
+            + "OR EXISTS (SELECT 1 FROM technologies_productstructuretreenode n "
+            + "JOIN technologies_technologystatechange sc ON sc.technology_id = n.technology_id AND sc.status = :successful "
+            + "WHERE n.maintechnology_id = t.id AND sc.dateandtime > r.createdate) "
+            + "OR EXISTS (SELECT 1 FROM technologies_productstructuretreenode n "
+            + "LEFT JOIN (SELECT DISTINCT ON (product_id) product_id, id FROM technologies_technology "
+            + "WHERE technologytype IS NULL AND state IN (:accepted, :checked) ORDER BY product_id, master DESC, number) pt "
+            + "ON pt.product_id = n.product_id "
+            + "WHERE n.maintechnology_id = t.id AND ((n.entitytype = :material AND pt.id IS NOT NULL) "
+            + "OR (n.entitytype = :component AND pt.id IS DISTINCT FROM n.technology_id)))) "
+            + "ORDER BY t.number, t.id";
+
+    private static final String L_MATERIALS_QUERY = "SELECT t.id AS technologyId, t.number AS technologyNumber, "
+            + "t.name AS technologyName, t.state AS technologyState, t.master AS technologyMaster, "
+            + "t.standardperformancetechnology AS technologyStandardPerformance, "
+            + "sc.lastStateChangeDate, sc.acceptStateChangeDate, sc.outdatedStateChangeDate, "
+            + "tp.number AS technologyProductNumber, p.number AS productNumber, p.name AS productName, "
+            + "n.quantity AS productQuantity, p.unit AS productUnit "
+            + "FROM technologies_technology t "
+            + "JOIN basic_product tp ON tp.id = t.product_id "
+            + "JOIN technologies_productstructuretreenode n ON n.maintechnology_id = t.id AND n.entitytype = :material "
+            + "JOIN basic_product p ON p.id = n.product_id "
+            + "LEFT JOIN (SELECT technology_id, max(dateandtime) AS lastStateChangeDate, "
+            + "max(CASE WHEN targetstate = :accepted THEN dateandtime END) AS acceptStateChangeDate, "
+            + "max(CASE WHEN targetstate = :outdated THEN dateandtime END) AS outdatedStateChangeDate "
+            + "FROM technologies_technologystatechange WHERE status = :successful GROUP BY technology_id) sc "
+            + "ON sc.technology_id = t.id "
+            + "WHERE t.technologytype IS NULL AND t.active = true AND (:onlyAccepted = false OR t.state = :accepted) "
+            + "ORDER BY t.number, t.id, n.id";
+
+    @Value("${technologyExport.fetchSize:1000}")
+    private int fetchSize;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private StreamingJdbcTemplateFactory streamingJdbcTemplateFactory;
+
+    private NamedParameterJdbcTemplate streamingJdbcTemplate;
+
+    @PostConstruct
+    public void init() {
+        streamingJdbcTemplate = streamingJdbcTemplateFactory.create(fetchSize);
+    }
+
+    List<Long> findTechnologiesIdsWithOutdatedProductStructureTree() {
+        Map<String, Object> params = ImmutableMap.<String, Object> builder()
+                .put("material", ProductStructureTreeService.L_MATERIAL)
+                .put("component", ProductStructureTreeService.L_COMPONENT)
+                .put("accepted", TechnologyStateStringValues.ACCEPTED).put("checked", TechnologyStateStringValues.CHECKED)
+                .put("successful", StateChangeStatus.SUCCESSFUL.getStringValue()).build();
+
+        return jdbcTemplate.queryForList(L_TECHNOLOGIES_WITH_OUTDATED_TREE_QUERY, params, Long.class);
+    }
+
+    /**
+     * Passes material rows of product structure trees to the handler as they are fetched, ordered by technology number. Runs
+     * in a read only transaction, as the driver only fetches rows through a cursor when auto commit is off.
+     */
+    @Transactional(readOnly = true)
+    void processMaterials(final boolean onlyAccepted, final RowCallbackHandler rowCallbackHandler) {
+        Map<String, Object> params = ImmutableMap.<String, Object> builder()
+                .put("material", ProductStructureTreeService.L_MATERIAL)
+                .put("accepted", TechnologyStateStringValues.ACCEPTED)
+                .put("outdated", TechnologyStateStringValues.OUTDATED)
+                .put("successful", StateChangeStatus.SUCCESSFUL.getStringValue()).put("onlyAccepted", onlyAccepted).build();
+
+        streamingJdbcTemplate.query(L_MATERIALS_QUERY, params, rowCallbackHandler);
+    }
+
+}
@@ -1,21 +1,13 @@
 package com.qcadoo.mes.technologies.export;
 
+import com.google.common.collect.Maps;
 import com.qcadoo.localization.api.TranslationService;
-import com.qcadoo.mes.basic.constants.ProductFields;
-import com.qcadoo.mes.technologies.constants.ProductStructureTreeNodeFields;
 import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
-import com.qcadoo.mes.technologies.constants.TechnologyFields;
-import com.qcadoo.mes.technologies.states.constants.TechnologyStateChangeFields;
-import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
 import com.qcadoo.mes.technologies.tree.ProductStructureTreeService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
-import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.EntityTree;
 import com.qcadoo.model.api.NumberService;
 import com.qcadoo.model.api.file.FileService;
-import com.qcadoo.model.api.search.SearchOrders;
-import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.tenant.api.MultiTenantCallback;
 import com.qcadoo.tenant.api.MultiTenantService;
 
@@ -25,13 +17,17 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.net.ftp.FTP;
@@ -41,6 +37,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
@@ -57,12 +54,19 @@ public class TechnologyExportService {
 
     public static final String EMPTY = "";
 
+    private static final String GZIP_EXTENSION = ".gz";
+
+    private static final int BUFFER_SIZE = 65536;
+
     @Autowired
     private FileService fileService;
 
     @Value("${exportedCsvSeparator:','}")
     private String exportedCsvSeparator;
 
+    @Value("${technologyExport.gzip:false}")
+    private boolean exportGzip;
+
     @Value("${ftp.server}")
     private String server;
 
@@ -92,6 +96,9 @@ public class TechnologyExportService {
     @Autowired
     private MultiTenantService multiTenantService;
 
+    @Autowired
+    private TechnologyExportRepository technologyExportRepository;
+
     public void exportTechnologiesTrigger() {
         multiTenantService.doInMultiTenantContext(new MultiTenantCallback() {
 
@@ -110,53 +117,57 @@ public class TechnologyExportService {
         String dateWithTime = dateFormat.format(exportDate);
         String date = DateFormat.getDateInstance().format(exportDate);
 
+        generateProductStructureTrees();
+
         String acceptedTechnologiesFileName = "technologie_aktualne_" + dateWithTime + ".csv";
-        List<Entity> acceptedTechnologies = findAcceptedTechnologies();
-        exportTechnologiesToFile(date, acceptedTechnologiesFileName, acceptedTechnologies);
+        exportTechnologiesToFile(date, acceptedTechnologiesFileName, true);
 
         String allTechnologiesFileName = "technologie_pelna_kopia_" + dateWithTime + ".csv";
-        List<Entity> allTechnologies = findAllTechnologies();
-        exportTechnologiesToFile(date, allTechnologiesFileName, allTechnologies);
+        exportTechnologiesToFile(date, allTechnologiesFileName, false);
     }
 
-    private void exportTechnologiesToFile(String exportDate, String fileName, List<Entity> technologies) {
+    private void exportTechnologiesToFile(String exportDate, String fileName, boolean onlyAccepted) {
+        if (exportGzip) {
+            fileName = fileName + GZIP_EXTENSION;
+        }
         File exportFile = fileService.createExportFile(fileName);
-        exportToFile(exportFile, technologies, exportDate);
+        exportToFile(exportFile, onlyAccepted, exportDate);
         sendFileToFtp(fileName, exportFile);
         fileService.remove(exportFile.getPath());
     }
 
-    private List<Entity> findAcceptedTechnologies() {
-        DataDefinition technologyDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
-                TechnologiesConstants.MODEL_TECHNOLOGY);
-        return technologyDD.find().add(SearchRestrictions.isNull(TechnologyFields.TECHNOLOGY_TYPE))
-                .add(SearchRestrictions.eq(TechnologyFields.STATE, TechnologyStateStringValues.ACCEPTED))
-                .add(SearchRestrictions.eq(TechnologyFields.ACTIVE, true)).addOrder(SearchOrders.asc(TechnologyFields.NUMBER))
-                .list().getEntities();
-    }
-
-    private List<Entity> findAllTechnologies() {
+    /**
+     * Staleness of trees is checked with one query, trees are only generated again for technologies returned by it. Generating
+     * stays per technology, as trees are built by ProductStructureTreeService, shared with the technology details view.
+     */
+    private void generateProductStructureTrees() {
         DataDefinition technologyDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
                 TechnologiesConstants.MODEL_TECHNOLOGY);
-        return technologyDD.find().add(SearchRestrictions.isNull(TechnologyFields.TECHNOLOGY_TYPE))
-                .add(SearchRestrictions.eq(TechnologyFields.ACTIVE, true)).addOrder(SearchOrders.asc(TechnologyFields.NUMBER))
-                .list().getEntities();
+        for (Long technologyId : technologyExportRepository.findTechnologiesIdsWithOutdatedProductStructureTree()) {
+            productStructureTreeService.generateProductStructureTree(null, technologyDD.get(technologyId));
+        }
     }
 
-    private void exportToFile(File file, List<Entity> technologies, String exportDate) {
+    private void exportToFile(File file, boolean onlyAccepted, String exportDate) {
         LOG.info("Start export file: " + file.getName());
         BufferedWriter bufferedWriter = null;
 
         try (FileOutputStream fileOutputStream = new FileOutputStream(file)) {
-            fileOutputStream.write(239);
-            fileOutputStream.write(187);
-            fileOutputStream.write(191);
+            OutputStream outputStream = fileOutputStream;
+            if (exportGzip) {
+                outputStream = new GZIPOutputStream(fileOutputStream, BUFFER_SIZE);
+            }
+            outputStream.write(239);
+            outputStream.write(187);
+            outputStream.write(191);
 
-            bufferedWriter = new BufferedWriter(new OutputStreamWriter(fileOutputStream, Charset.forName("UTF-8")));
+            bufferedWriter = new BufferedWriter(new OutputStreamWriter(outputStream, Charset.forName("UTF-8")), BUFFER_SIZE);
 
             createHeader(bufferedWriter);
 
-            createRows(technologies, exportDate, bufferedWriter);
+            technologyExportRepository.processMaterials(onlyAccepted, new MaterialRowsWriter(bufferedWriter, exportDate));
+
+            bufferedWriter.close();
         } catch (IOException e) {
             throw new IllegalStateException(e.getMessage(), e);
         } finally {
@@ -165,80 +176,15 @@ public class TechnologyExportService {
         LOG.info("The file exported successfully.");
     }
 
-    private void createRows(List<Entity> technologies, String exportDate, BufferedWriter bufferedWriter) throws IOException {
-        for (Entity technology : technologies) {
-            EntityTree productStructureTree = productStructureTreeService.generateProductStructureTree(null, technology);
-            String technologyNumber = normalizeString(technology.getStringField(TechnologyFields.NUMBER));
-            String technologyName = normalizeString(technology.getStringField(TechnologyFields.NAME));
-            String technologyState  = translationService.translate("technologies.technology.state.value."+technology.getStringField(TechnologyFields.STATE),
-                    LocaleContextHolder.getLocale());
-            String isDefaultTechnology = defaultTechnologyToString(technology.getBooleanField(TechnologyFields.MASTER));
-            String technologyStandardPerformance = numberService.format(technology
-                    .getDecimalField(TechnologyFields.STANDARD_PERFORMANCE_TECHNOLOGY));
-            String technologyStateChange = DateFormat.getDateInstance().format(
-                    productStructureTreeService.getLastTechnologyStateChange(technology).getDateField(
-                            TechnologyStateChangeFields.DATE_AND_TIME));
-            String technologyAcceptStateChange = getTechnologyAcceptStateChange(technology);
-            String technologyOutdatedStateChange = getTechnologyOutdatedStateChange(technology);
-            String technologyProduct = normalizeString(technology.getBelongsToField(TechnologyFields.PRODUCT).getStringField(
-                    ProductFields.NUMBER));
-            for (Entity productNode : productStructureTree) {
-                if (ProductStructureTreeService.L_MATERIAL.equals(productNode
-                        .getStringField(ProductStructureTreeNodeFields.ENTITY_TYPE))) {
-                    bufferedWriter.append(BACKSLASH).append(technologyNumber).append(BACKSLASH);
-                    bufferedWriter.append(exportedCsvSeparator);
-                    bufferedWriter.append(BACKSLASH).append(technologyName).append(BACKSLASH);
-                    bufferedWriter.append(exportedCsvSeparator);
-                    bufferedWriter.append(BACKSLASH).append(technologyState).append(BACKSLASH);
-                    bufferedWriter.append(exportedCsvSeparator);
-                    bufferedWriter.append(BACKSLASH).append(isDefaultTechnology).append(BACKSLASH);
-                    bufferedWriter.append(exportedCsvSeparator);
-                    bufferedWriter.append(BACKSLASH).append(technologyStandardPerformance).append(BACKSLASH);
-                    bufferedWriter.append(exportedCsvSeparator);
-                    bufferedWriter.append(BACKSLASH).append(technologyStateChange).append(BACKSLASH);
-                    bufferedWriter.append(exportedCsvSeparator);
-                    bufferedWriter.append(BACKSLASH).append(technologyAcceptStateChange).append(BACKSLASH);
-                    bufferedWriter.append(exportedCsvSeparator);
-                    bufferedWriter.append(BACKSLASH).append(technologyOutdatedStateChange).append(BACKSLASH);
-                    bufferedWriter.append(exportedCsvSeparator);
-                    bufferedWriter.append(BACKSLASH).append(technologyProduct).append(BACKSLASH);
-                    bufferedWriter.append(exportedCsvSeparator);
-                    Entity material = productNode.getBelongsToField(ProductStructureTreeNodeFields.PRODUCT);
-                    bufferedWriter.append(BACKSLASH).append(normalizeString(material.getStringField(ProductFields.NUMBER)))
-                            .append(BACKSLASH);
-                    bufferedWriter.append(exportedCsvSeparator);
-                    bufferedWriter.append(BACKSLASH).append(normalizeString(material.getStringField(ProductFields.NAME)))
-                            .append(BACKSLASH);
-                    bufferedWriter.append(exportedCsvSeparator);
-                    bufferedWriter.append(BACKSLASH)
-                            .append(numberService.format(productNode.getDecimalField(ProductStructureTreeNodeFields.QUANTITY)))
-                            .append(BACKSLASH);
-                    bufferedWriter.append(exportedCsvSeparator);
-                    bufferedWriter.append(BACKSLASH).append(normalizeString(material.getStringField(ProductFields.UNIT)))
-                            .append(BACKSLASH);
-                    bufferedWriter.append(exportedCsvSeparator);
-                    bufferedWriter.append(BACKSLASH).append(exportDate).append(BACKSLASH);
-
-                    bufferedWriter.append(NEWLINE);
-                }
-            }
-        }
-    }
-
-    private String getTechnologyOutdatedStateChange(Entity technology) {
-        Entity stateChange = productStructureTreeService.getTechnologyOutdatedStateChange(technology);
-        if(Objects.isNull(stateChange)) {
+    private String formatDate(final Date date) {
+        if (Objects.isNull(date)) {
             return EMPTY;
         }
-        return DateFormat.getDateInstance().format(stateChange.getDateField(TechnologyStateChangeFields.DATE_AND_TIME));
+        return DateFormat.getDateInstance().format(date);
     }
 
-    private String getTechnologyAcceptStateChange(Entity technology) {
-        Entity stateChange = productStructureTreeService.getTechnologyAcceptStateChange(technology);
-        if(Objects.isNull(stateChange)) {
-            return EMPTY;
-        }
-        return DateFormat.getDateInstance().format(stateChange.getDateField(TechnologyStateChangeFields.DATE_AND_TIME));
+    private String translateState(String state) {
+        return translationService.translate("technologies.technology.state.value." + state, LocaleContextHolder.getLocale());
     }
 
     private String defaultTechnologyToString(Boolean master) {
@@ -251,6 +197,87 @@ public class TechnologyExportService {
         }
     }
 
+    /**
+     * Appends material rows straight to the writer, as they come from the cursor. Technology columns are formatted once per
+     * technology, as rows of one technology come one after another.
+     */
+    private class MaterialRowsWriter implements RowCallbackHandler {
+
+        private final BufferedWriter bufferedWriter;
+
+        private final String exportDate;
+
+        private final Map<String, String> technologyStates = Maps.newHashMap();
+
+        private Long technologyId;
+
+        private String technologyColumns;
+
+        private MaterialRowsWriter(final BufferedWriter bufferedWriter, final String exportDate) {
+            this.bufferedWriter = bufferedWriter;
+            this.exportDate = exportDate;
+        }
+
+        @Override
+        public void processRow(final ResultSet resultSet) throws SQLException {
+            Long rowTechnologyId = resultSet.getLong("technologyId");
+            if (!rowTechnologyId.equals(technologyId)) {
+                technologyId = rowTechnologyId;
+                technologyColumns = createTechnologyColumns(resultSet);
+            }
+            try {
+                bufferedWriter.append(technologyColumns);
+                bufferedWriter.append(BACKSLASH).append(normalizeString(resultSet.getString("productNumber")))
+                        .append(BACKSLASH);
+                bufferedWriter.append(exportedCsvSeparator);
+                bufferedWriter.append(BACKSLASH).append(normalizeString(resultSet.getString("productName")))
+                        .append(BACKSLASH);
+                bufferedWriter.append(exportedCsvSeparator);
+                bufferedWriter.append(BACKSLASH)
+                        .append(numberService.format(resultSet.getBigDecimal("productQuantity")))
+                        .append(BACKSLASH);
+                bufferedWriter.append(exportedCsvSeparator);
+                bufferedWriter.append(BACKSLASH).append(normalizeString(resultSet.getString("productUnit")))
+                        .append(BACKSLASH);
+                bufferedWriter.append(exportedCsvSeparator);
+                bufferedWriter.append(BACKSLASH).append(exportDate).append(BACKSLASH);
+
+                bufferedWriter.append(NEWLINE);
+            } catch (IOException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+
+        private String createTechnologyColumns(final ResultSet resultSet) throws SQLException {
+            String technologyState = technologyStates.computeIfAbsent(resultSet.getString("technologyState"),
+                    state -> translateState(state));
+
+            StringBuilder columns = new StringBuilder();
+            columns.append(BACKSLASH).append(normalizeString(resultSet.getString("technologyNumber"))).append(BACKSLASH);
+            columns.append(exportedCsvSeparator);
+            columns.append(BACKSLASH).append(normalizeString(resultSet.getString("technologyName"))).append(BACKSLASH);
+            columns.append(exportedCsvSeparator);
+            columns.append(BACKSLASH).append(technologyState).append(BACKSLASH);
+            columns.append(exportedCsvSeparator);
+            columns.append(BACKSLASH).append(defaultTechnologyToString(resultSet.getBoolean("technologyMaster")))
+                    .append(BACKSLASH);
+            columns.append(exportedCsvSeparator);
+            columns.append(BACKSLASH).append(numberService.format(resultSet.getBigDecimal("technologyStandardPerformance")))
+                    .append(BACKSLASH);
+            columns.append(exportedCsvSeparator);
+            columns.append(BACKSLASH).append(formatDate(resultSet.getTimestamp("lastStateChangeDate"))).append(BACKSLASH);
+            columns.append(exportedCsvSeparator);
+            columns.append(BACKSLASH).append(formatDate(resultSet.getTimestamp("acceptStateChangeDate"))).append(BACKSLASH);
+            columns.append(exportedCsvSeparator);
+            columns.append(BACKSLASH).append(formatDate(resultSet.getTimestamp("outdatedStateChangeDate"))).append(BACKSLASH);
+            columns.append(exportedCsvSeparator);
+            columns.append(BACKSLASH).append(normalizeString(resultSet.getString("technologyProductNumber"))).append(BACKSLASH);
+            columns.append(exportedCsvSeparator);
+            return columns.toString();
+        }
+
+    }
+
     private void createHeader(BufferedWriter bufferedWriter) throws IOException {
         bufferedWriter
                 .append(BACKSLASH)
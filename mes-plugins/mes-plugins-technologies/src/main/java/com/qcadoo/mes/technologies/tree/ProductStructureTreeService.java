@@ -62,7 +62,7 @@ public class ProductStructureTreeService {
 
     private static final String L_INTERMEDIATE = "intermediate";
 
-    private static final String L_COMPONENT = "component";
+    public static final String L_COMPONENT = "component";
 
     public static final String L_MATERIAL = "material";
 
@@ -0,0 +1,277 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.technologies.constants.OperationProductInComponentFields;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
+import com.qcadoo.mes.technologies.states.constants.TechnologyStateStringValues;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityTree;
+import com.qcadoo.model.api.NumberService;
+import com.qcadoo.testing.model.EntityListMock;
+
+public class CompiledTechnologyTest {
+
+    private static final MathContext L_MATH_CONTEXT = MathContext.DECIMAL64;
+
+    private ProductQuantitiesServiceImpl productQuantitiesService;
+
+    private CompiledTechnologyService compiledTechnologyService;
+
+    @Mock
+    private NumberService numberService;
+
+    @Mock
+    private DataDefinition productDD, operationComponentDD, inComponentDD, outComponentDD;
+
+    @Mock
+    private Entity technology, product, productA, productB, productC, productD;
+
+    @Mock
+    private Entity operationComponent1, operationComponent2, operationComponent3;
+
+    private EntityTree operationComponents;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productQuantitiesService = new ProductQuantitiesServiceImpl();
+        compiledTechnologyService = new CompiledTechnologyService();
+
+        ReflectionTestUtils.setField(productQuantitiesService, "numberService", numberService);
+        ReflectionTestUtils.setField(productQuantitiesService, "compiledTechnologyService", compiledTechnologyService);
+
+        given(numberService.getMathContext()).willReturn(L_MATH_CONTEXT);
+
+        given(inComponentDD.getName()).willReturn(TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT);
+        given(outComponentDD.getName()).willReturn(TechnologiesConstants.MODEL_OPERATION_PRODUCT_OUT_COMPONENT);
+
+        mockEntity(product, 1L, productDD);
+        mockEntity(productA, 2L, productDD);
+        mockEntity(productB, 3L, productDD);
+        mockEntity(productC, 4L, productDD);
+        mockEntity(productD, 5L, productDD);
+
+        mockEntity(operationComponent1, 11L, operationComponentDD);
+        mockEntity(operationComponent2, 12L, operationComponentDD);
+        mockEntity(operationComponent3, 13L, operationComponentDD);
+
+        // operation 1 produces 2 of product from 3 of A and 1 of B
+        mockOperationComponent(operationComponent1,
+                Lists.newArrayList(mockInComponent(101L, operationComponent1, productA, "3"),
+                        mockInComponent(102L, operationComponent1, productB, "1")),
+                Lists.newArrayList(mockOutComponent(103L, operationComponent1, product, "2")),
+                Lists.newArrayList(operationComponent2));
+        // operation 2 produces 2 of A from 5 of C
+        mockOperationComponent(operationComponent2,
+                Lists.newArrayList(mockInComponent(104L, operationComponent2, productC, "5")),
+                Lists.newArrayList(mockOutComponent(105L, operationComponent2, productA, "2")),
+                Lists.newArrayList(operationComponent3));
+        // operation 3 produces 4 of C from 1.5 of D
+        mockOperationComponent(operationComponent3,
+                Lists.newArrayList(mockInComponent(106L, operationComponent3, productD, "1.5")),
+                Lists.newArrayList(mockOutComponent(107L, operationComponent3, productC, "4")), Lists.newArrayList());
+
+        operationComponents = mock(EntityTree.class);
+
+        List<Entity> operationComponentsList = Lists.newArrayList(operationComponent1, operationComponent2,
+                operationComponent3);
+
+        given(operationComponents.getRoot()).willReturn(null);
+        given(operationComponents.iterator()).willAnswer(invocation -> operationComponentsList.iterator());
+
+        given(technology.getId()).willReturn(21L);
+        given(technology.getStringField(TechnologyFields.NUMBER)).willReturn("T1");
+        given(technology.getStringField(TechnologyFields.STATE)).willReturn(TechnologyStateStringValues.ACCEPTED);
+        given(technology.getBelongsToField(TechnologyFields.PRODUCT)).willReturn(product);
+        given(technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS)).willReturn(operationComponents);
+    }
+
+    @Test
+    public final void shouldEvaluateTheSameQuantitiesAsTreeTraversal() {
+        // given
+        setDivisible(operationComponent1, true, true);
+        setDivisible(operationComponent2, true, true);
+        setDivisible(operationComponent3, true, true);
+
+        // when & then
+        for (String givenQuantity : Lists.newArrayList("1", "7", "12.5", "0.003", "1000")) {
+            assertSameResults(new BigDecimal(givenQuantity));
+        }
+    }
+
+    @Test
+    public final void shouldEvaluateTheSameQuantitiesAsTreeTraversalForIndivisibleOperations() {
+        // given
+        setDivisible(operationComponent1, false, true);
+        setDivisible(operationComponent2, true, false);
+        setDivisible(operationComponent3, false, false);
+
+        // when & then
+        for (String givenQuantity : Lists.newArrayList("1", "7", "12.5", "0.003", "1000")) {
+            assertSameResults(new BigDecimal(givenQuantity));
+        }
+    }
+
+    @Test
+    public final void shouldReturnEmptyContainerForTechnologyWithoutOperations() {
+        // given
+        given(operationComponents.iterator()).willAnswer(invocation -> Lists.newArrayList().iterator());
+
+        Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
+        Set<OperationProductComponentHolder> nonComponents = Sets.newHashSet();
+
+        // when
+        OperationProductComponentWithQuantityContainer container = CompiledTechnology.compile(technology).evaluate(
+                BigDecimal.TEN, L_MATH_CONTEXT, operationRuns, nonComponents);
+
+        // then
+        assertTrue(container.asMap().isEmpty());
+        assertTrue(operationRuns.isEmpty());
+        assertTrue(nonComponents.isEmpty());
+    }
+
+    @Test
+    public final void shouldCacheOnlyAcceptedTechnologies() {
+        // given
+        given(operationComponents.getRoot()).willReturn(operationComponent1);
+        setDivisible(operationComponent1, true, true);
+        setDivisible(operationComponent2, true, true);
+        setDivisible(operationComponent3, true, true);
+
+        // when
+        CompiledTechnology accepted = compiledTechnologyService.getCompiledTechnology(technology);
+        CompiledTechnology acceptedAgain = compiledTechnologyService.getCompiledTechnology(technology);
+
+        compiledTechnologyService.evict(technology.getId());
+
+        CompiledTechnology acceptedAfterEviction = compiledTechnologyService.getCompiledTechnology(technology);
+
+        given(technology.getStringField(TechnologyFields.STATE)).willReturn(TechnologyStateStringValues.DRAFT);
+
+        CompiledTechnology draft = compiledTechnologyService.getCompiledTechnology(technology);
+
+        // then
+        assertSame(accepted, acceptedAgain);
+        assertFalse(accepted == acceptedAfterEviction);
+        assertFalse(acceptedAfterEviction == draft);
+        assertTrue(draft.isCompiledFrom(technology));
+    }
+
+    private void assertSameResults(final BigDecimal givenQuantity) {
+        given(operationComponents.getRoot()).willReturn(operationComponent1);
+
+        Map<Long, BigDecimal> expectedOperationRuns = Maps.newHashMap();
+        Set<OperationProductComponentHolder> expectedNonComponents = Sets.newHashSet();
+        OperationProductComponentWithQuantityContainer expected = new OperationProductComponentWithQuantityContainer();
+
+        productQuantitiesService.preloadProductQuantitiesAndOperationRuns(operationComponents, expected, expectedOperationRuns);
+        productQuantitiesService.traverseProductQuantitiesAndOperationRuns(technology, givenQuantity, operationComponent1, null,
+                expected, expectedNonComponents, expectedOperationRuns);
+
+        Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
+        Set<OperationProductComponentHolder> nonComponents = Sets.newHashSet();
+
+        OperationProductComponentWithQuantityContainer container = productQuantitiesService
+                .getProductComponentWithQuantitiesForTechnology(technology, givenQuantity, operationRuns, nonComponents);
+
+        assertEquals(expected.asMap(), container.asMap());
+        assertEquals(expectedOperationRuns, operationRuns);
+        assertEquals(expectedNonComponents, nonComponents);
+    }
+
+    private void mockEntity(final Entity entity, final Long id, final DataDefinition dataDefinition) {
+        given(entity.getId()).willReturn(id);
+        given(entity.getDataDefinition()).willReturn(dataDefinition);
+    }
+
+    private void mockOperationComponent(final Entity operationComponent, final List<Entity> inComponents,
+            final List<Entity> outComponents, final List<Entity> children) {
+        given(operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS))
+                .willAnswer(invocation -> EntityListMock.create(inComponents));
+        given(operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS))
+                .willAnswer(invocation -> EntityListMock.create(outComponents));
+        given(operationComponent.getHasManyField(TechnologyOperationComponentFields.CHILDREN)).willAnswer(
+                invocation -> EntityListMock.create(children));
+    }
+
+    private Entity mockInComponent(final Long id, final Entity operationComponent, final Entity product, final String quantity) {
+        return mockOperationProductComponent(id, operationComponent, product, quantity, inComponentDD);
+    }
+
+    private Entity mockOutComponent(final Long id, final Entity operationComponent, final Entity product, final String quantity) {
+        return mockOperationProductComponent(id, operationComponent, product, quantity, outComponentDD);
+    }
+
+    private Entity mockOperationProductComponent(final Long id, final Entity operationComponent, final Entity product,
+            final String quantity, final DataDefinition dataDefinition) {
+        Entity operationProductComponent = mock(Entity.class);
+
+        mockEntity(operationProductComponent, id, dataDefinition);
+
+        given(operationProductComponent.getBelongsToField(OperationProductInComponentFields.PRODUCT)).willReturn(product);
+        given(operationProductComponent.getBelongsToField(OperationProductInComponentFields.OPERATION_COMPONENT)).willReturn(
+                operationComponent);
+        given(operationProductComponent.getDecimalField(OperationProductInComponentFields.QUANTITY)).willReturn(
+                new BigDecimal(quantity));
+
+        return operationProductComponent;
+    }
+
+    private void setDivisible(final Entity operationComponent, final boolean areProductQuantitiesDivisible,
+            final boolean isTjDivisible) {
+        given(operationComponent.getBooleanField(TechnologyOperationComponentFields.ARE_PRODUCT_QUANTITIES_DIVISIBLE))
+                .willReturn(areProductQuantitiesDivisible);
+        given(operationComponent.getBooleanField(TechnologyOperationComponentFields.IS_TJ_DIVISIBLE)).willReturn(isTjDivisible);
+    }
+
+}
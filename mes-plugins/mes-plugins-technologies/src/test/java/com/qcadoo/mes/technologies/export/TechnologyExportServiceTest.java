@@ -0,0 +1,227 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.export;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
+import com.qcadoo.mes.technologies.tree.ProductStructureTreeService;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+
+public class TechnologyExportServiceTest {
+
+    private static final String L_GOLDEN_FILE = "/export/technologiesExport.csv";
+
+    private TechnologyExportService technologyExportService;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private TranslationService translationService;
+
+    @Mock
+    private NumberService numberService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private ProductStructureTreeService productStructureTreeService;
+
+    @Mock
+    private TechnologyExportRepository technologyExportRepository;
+
+    @Mock
+    private DataDefinition technologyDD;
+
+    private Locale defaultLocale;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        defaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.US);
+
+        technologyExportService = new TechnologyExportService();
+
+        ReflectionTestUtils.setField(technologyExportService, "translationService", translationService);
+        ReflectionTestUtils.setField(technologyExportService, "numberService", numberService);
+        ReflectionTestUtils.setField(technologyExportService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(technologyExportService, "productStructureTreeService", productStructureTreeService);
+        ReflectionTestUtils.setField(technologyExportService, "technologyExportRepository", technologyExportRepository);
+        ReflectionTestUtils.setField(technologyExportService, "exportedCsvSeparator", ",");
+
+        given(translationService.translate(anyString(), any(Locale.class))).willAnswer(
+                invocation -> invocation.getArguments()[0]);
+        given(numberService.format(any(BigDecimal.class))).willAnswer(
+                invocation -> ((BigDecimal) invocation.getArguments()[0]).toPlainString());
+        given(dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY))
+                .willReturn(technologyDD);
+    }
+
+    @After
+    public void restoreLocale() {
+        Locale.setDefault(defaultLocale);
+    }
+
+    @Test
+    public void shouldWriteSameBytesAsGoldenFile() throws Exception {
+        // given
+        Map<String, Object> first = technology(1L, "T-1", "Frame \"A\"; v2\nnew", "02accepted", true, "12.5",
+                "2020-03-02 12:00:00", "2020-03-02 12:00:00", null, "P-1");
+        Map<String, Object> second = technology(2L, "T-2", "Bracket", "04outdated", false, "3", "2020-03-03 12:00:00",
+                "2020-03-01 12:00:00", "2020-03-03 12:00:00", "P-2");
+
+        List<ResultSet> rows = Lists.newArrayList(material(first, "M-1", "Steel; sheet", "2.5", "kg"),
+                material(first, "M-2", "Bolt", "4", "szt."), material(second, "M-1", "Steel; sheet", "1", "kg"));
+
+        willAnswer(invocation -> {
+            RowCallbackHandler rowCallbackHandler = (RowCallbackHandler) invocation.getArguments()[1];
+
+            for (ResultSet row : rows) {
+                rowCallbackHandler.processRow(row);
+            }
+
+            return null;
+        }).given(technologyExportRepository).processMaterials(eq(true), any(RowCallbackHandler.class));
+
+        File file = temporaryFolder.newFile("technologies.csv");
+
+        // when
+        ReflectionTestUtils.invokeMethod(technologyExportService, "exportToFile", file, true, "Mar 4, 2020");
+
+        // then
+        assertArrayEquals(readGoldenFile(), Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void shouldGenerateOnlyOutdatedProductStructureTrees() {
+        // given
+        Entity technology = mock(Entity.class);
+
+        given(technologyExportRepository.findTechnologiesIdsWithOutdatedProductStructureTree()).willReturn(
+                Lists.newArrayList(3L));
+        given(technologyDD.get(3L)).willReturn(technology);
+
+        // when
+        ReflectionTestUtils.invokeMethod(technologyExportService, "generateProductStructureTrees");
+
+        // then
+        verify(productStructureTreeService).generateProductStructureTree(null, technology);
+        verify(technologyDD, never()).get(1L);
+    }
+
+    private Map<String, Object> technology(final Long id, final String number, final String name, final String state,
+            final boolean master, final String standardPerformance, final String lastStateChangeDate,
+            final String acceptStateChangeDate, final String outdatedStateChangeDate, final String productNumber) {
+        Map<String, Object> columns = Maps.newHashMap();
+
+        columns.put("technologyId", id);
+        columns.put("technologyNumber", number);
+        columns.put("technologyName", name);
+        columns.put("technologyState", state);
+        columns.put("technologyMaster", master);
+        columns.put("technologyStandardPerformance", new BigDecimal(standardPerformance));
+        columns.put("lastStateChangeDate", timestamp(lastStateChangeDate));
+        columns.put("acceptStateChangeDate", timestamp(acceptStateChangeDate));
+        columns.put("outdatedStateChangeDate", timestamp(outdatedStateChangeDate));
+        columns.put("technologyProductNumber", productNumber);
+
+        return columns;
+    }
+
+    private ResultSet material(final Map<String, Object> technology, final String number, final String name,
+            final String quantity, final String unit) throws SQLException {
+        Map<String, Object> columns = Maps.newHashMap(technology);
+
+        columns.put("productNumber", number);
+        columns.put("productName", name);
+        columns.put("productQuantity", new BigDecimal(quantity));
+        columns.put("productUnit", unit);
+
+        ResultSet resultSet = mock(ResultSet.class);
+
+        given(resultSet.getLong(anyString())).willAnswer(invocation -> columns.get(invocation.getArguments()[0]));
+        given(resultSet.getString(anyString())).willAnswer(invocation -> columns.get(invocation.getArguments()[0]));
+        given(resultSet.getBoolean(anyString())).willAnswer(invocation -> columns.get(invocation.getArguments()[0]));
+        given(resultSet.getBigDecimal(anyString())).willAnswer(invocation -> columns.get(invocation.getArguments()[0]));
+        given(resultSet.getTimestamp(anyString())).willAnswer(invocation -> columns.get(invocation.getArguments()[0]));
+
+        return resultSet;
+    }
+
+    private Timestamp timestamp(final String dateAndTime) {
+        if (dateAndTime == null) {
+            return null;
+        }
+
+        return Timestamp.valueOf(dateAndTime);
+    }
+
+    private byte[] readGoldenFile() throws IOException {
+        try (InputStream inputStream = getClass().getResourceAsStream(L_GOLDEN_FILE)) {
+            return IOUtils.toByteArray(inputStream);
+        }
+    }
+
+}
@@ -26,6 +26,7 @@ package com.qcadoo.mes.workPlans.pdf.document.order;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
@@ -33,6 +34,7 @@ import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.columnExtension.constants.ColumnAlignment;
 import com.qcadoo.mes.orders.constants.OrderFields;
@@ -113,31 +115,37 @@ public class WorkPlanColumnServiceImpl implements WorkPlanColumnService {
         Map<String, OperationProductColumn> identifierOperationProductColumn = applicationContext
                 .getBeansOfType(OperationProductColumn.class);
 
-        List<Entity> orders = getWorkPlanOrders(workPlan);
+        List<Entity> columns = getOperationProductColumns(productDirection);
 
-        for (Entity order : orders) {
-            Entity technology = getOrderTechnology(order);
+        Map<OperationProductColumn, ColumnAlignment> operationProductColumnWithAlignment = Maps.newLinkedHashMap();
 
-            List<Entity> operationComponents = getSortedTechnologyOperationComponents(technology);
+        for (Entity column : columns) {
+            String identifier = getIdentifier(column);
+            ColumnAlignment alignment = getColumnAlignment(column);
 
-            for (Entity operationComponent : operationComponents) {
-                List<Entity> columns = getOperationProductColumns(productDirection);
+            OperationProductColumn key = identifierOperationProductColumn.get(identifier);
 
-                Map<OperationProductColumn, ColumnAlignment> operationProductColumnWithAlignment = Maps.newLinkedHashMap();
+            if (Objects.nonNull(key)) {
+                operationProductColumnWithAlignment.put(key, alignment);
+            }
+        }
 
-                for (Entity column : columns) {
-                    String identifier = getIdentifier(column);
-                    ColumnAlignment alignment = getColumnAlignment(column);
+        List<Entity> orders = getWorkPlanOrders(workPlan);
+
+        Set<Long> technologyIds = Sets.newHashSet();
+
+        for (Entity order : orders) {
+            Entity technology = getOrderTechnology(order);
 
-                    OperationProductColumn key = identifierOperationProductColumn.get(identifier);
+            if (!technologyIds.add(technology.getId())) {
+                continue;
+            }
 
-                    if (Objects.nonNull(key)) {
-                        operationProductColumnWithAlignment.put(key, alignment);
-                    }
-                }
+            List<Entity> operationComponents = getSortedTechnologyOperationComponents(technology);
 
+            for (Entity operationComponent : operationComponents) {
                 operationComponentIdWithOperationProductColumnAndAlignment.put(operationComponent.getId(),
-                        operationProductColumnWithAlignment);
+                        Maps.newLinkedHashMap(operationProductColumnWithAlignment));
             }
         }
 
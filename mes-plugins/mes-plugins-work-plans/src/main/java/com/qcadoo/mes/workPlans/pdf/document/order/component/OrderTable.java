@@ -52,6 +52,8 @@ import com.qcadoo.report.api.pdf.PdfHelper;
 @Component
 public class OrderTable {
 
+    private static final int L_FLUSHED_ROWS = 100;
+
     private TranslationService translationService;
 
     private PdfHelper pdfHelper;
@@ -72,14 +74,21 @@ public class OrderTable {
         fill(locale, orderColumnToAlignment, headers, headerAlignments);
 
         PdfPTable orderTable = pdfHelper.createTableWithHeader(columnCount, headers, false, headerAlignments);
+        // rows are written out in chunks, so pages of large work plans don't wait for the whole table
+        orderTable.setComplete(false);
         PdfPCell defaultCell = orderTable.getDefaultCell();
+        int rows = 0;
         for (Entity order : groupingContainer.getOrders()) {
             for (Map.Entry<OrderColumn, ColumnAlignment> e : orderColumnToAlignment.entrySet()) {
                 alignColumn(defaultCell, e.getValue());
                 orderTable.addCell(orderColumnValuePhrase(order, e.getKey()));
             }
+            if (++rows % L_FLUSHED_ROWS == 0) {
+                document.add(orderTable);
+            }
         }
 
+        orderTable.setComplete(true);
         document.add(orderTable);
         document.add(Chunk.NEWLINE);
     }
@@ -32,104 +32,150 @@ import com.qcadoo.model.api.Entity;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Service;
+import org.springframework.util.ClassUtils;
 
+import javax.annotation.PostConstruct;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class ColumnFetcher {
 
     private static final String L_COLUMN_FILLER = "columnFiller";
 
+    private static final String L_GET_VALUES = "getValues";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
     @Autowired
     private ApplicationContext applicationContext;
 
+    private final Map<String, ColumnFiller> columnFillers = Maps.newHashMap();
+
+    private final Map<String, Method> columnEvaluatorMethods = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        for (ColumnFiller columnFiller : applicationContext.getBeansOfType(ColumnFiller.class).values()) {
+            columnFillers.put(ClassUtils.getUserClass(columnFiller).getName(), columnFiller);
+        }
+    }
+
     public Map<Entity, Map<String, String>> getOrderColumnValues(final List<Entity> orders) {
         Map<Entity, Map<String, String>> valuesMap = new HashMap<Entity, Map<String, String>>();
 
-        fetchColumnValues(valuesMap, WorkPlansConstants.MODEL_COLUMN_FOR_ORDERS, "getOrderValues", orders);
+        for (String className : getColumnFillerClassNames(WorkPlansConstants.MODEL_COLUMN_FOR_ORDERS)) {
+            ColumnFiller columnFiller = columnFillers.get(className);
+
+            if (columnFiller == null) {
+                mergeValues(valuesMap, invokeColumnEvaluator(className, "getOrderValues", orders));
+            } else {
+                mergeValues(valuesMap, columnFiller.getOrderValues(orders));
+            }
+        }
 
         return valuesMap;
     }
 
+    /**
+     * Fetches product component values of all given orders, calling every column filler once for all of them.
+     * 
+     * @return The Keys of the map are order ids, values are Maps productComponent -> (columnIdentifier -> columnValue)
+     */
     public Map<Long, Map<Entity, Map<String, String>>> getColumnValues(final List<Entity> orders) {
         final Map<Long, Map<Entity, Map<String, String>>> order2opColumnValues = Maps.newHashMap();
-        for (final Entity order : orders) {
-            Map<Entity, Map<String, String>> valuesMap = new HashMap<Entity, Map<String, String>>();
-            for (final String columnsModel : Arrays.asList(WorkPlansConstants.MODEL_COLUMN_FOR_INPUT_PRODUCTS,
-                    WorkPlansConstants.MODEL_COLUMN_FOR_OUTPUT_PRODUCTS)) {
-                fetchColumnValues(valuesMap, columnsModel, "getValues", Lists.newArrayList(order));
+
+        for (Entity order : orders) {
+            order2opColumnValues.put(order.getId(), new HashMap<Entity, Map<String, String>>());
+        }
+
+        Set<String> classNames = new LinkedHashSet<String>();
+
+        for (final String columnsModel : Arrays.asList(WorkPlansConstants.MODEL_COLUMN_FOR_INPUT_PRODUCTS,
+                WorkPlansConstants.MODEL_COLUMN_FOR_OUTPUT_PRODUCTS)) {
+            classNames.addAll(getColumnFillerClassNames(columnsModel));
+        }
+
+        for (String className : classNames) {
+            ColumnFiller columnFiller = columnFillers.get(className);
+
+            if (columnFiller == null) {
+                for (Entity order : orders) {
+                    mergeValues(order2opColumnValues.get(order.getId()),
+                            invokeColumnEvaluator(className, L_GET_VALUES, Lists.newArrayList(order)));
+                }
+            } else {
+                for (Entry<Long, Map<Entity, Map<String, String>>> entry : columnFiller.getValuesByOrders(orders).entrySet()) {
+                    Map<Entity, Map<String, String>> valuesMap = order2opColumnValues.get(entry.getKey());
+
+                    if (valuesMap != null) {
+                        mergeValues(valuesMap, entry.getValue());
+                    }
+                }
             }
-            order2opColumnValues.put(order.getId(), valuesMap);
         }
 
         return order2opColumnValues;
     }
 
-    @SuppressWarnings("unchecked")
-    private void fetchColumnValues(final Map<Entity, Map<String, String>> valuesMap, final String columnsModelName,
-            final String methodName, final List<Entity> orders) {
+    private Set<String> getColumnFillerClassNames(final String columnsModelName) {
         DataDefinition columnsModelDD = dataDefinitionService.get(WorkPlansConstants.PLUGIN_IDENTIFIER, columnsModelName);
 
         List<Entity> columnDefinitions = columnsModelDD.find().list().getEntities();
 
-        Set<String> classNames = new HashSet<String>();
+        Set<String> classNames = new LinkedHashSet<String>();
 
         for (Entity columnDefinition : columnDefinitions) {
-            String className = columnDefinition.getStringField(L_COLUMN_FILLER);
-            classNames.add(className);
+            classNames.add(columnDefinition.getStringField(L_COLUMN_FILLER));
         }
 
-        for (String className : classNames) {
-            Class<?> clazz;
-            try {
-                clazz = Thread.currentThread().getContextClassLoader().loadClass(className);
-            } catch (ClassNotFoundException e) {
-                throw new IllegalStateException("Failed to find class: " + className, e);
-            }
+        return classNames;
+    }
 
-            Object bean = applicationContext.getBean(clazz);
+    @SuppressWarnings("unchecked")
+    private Map<Entity, Map<String, String>> invokeColumnEvaluator(final String className, final String methodName,
+            final List<Entity> orders) {
+        Class<?> clazz;
+        try {
+            clazz = Thread.currentThread().getContextClassLoader().loadClass(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Failed to find class: " + className, e);
+        }
 
-            if (bean == null) {
-                throw new IllegalStateException("Failed to find bean for class: " + className);
-            }
+        Object bean = applicationContext.getBean(clazz);
 
-            Method method;
+        if (bean == null) {
+            throw new IllegalStateException("Failed to find bean for class: " + className);
+        }
 
+        Method method = columnEvaluatorMethods.computeIfAbsent(className + "#" + methodName, key -> {
             try {
-                method = clazz.getMethod(methodName, List.class);
-            } catch (SecurityException e) {
-                throw new IllegalStateException("Failed to find column evaulator method in class: " + className, e);
-            } catch (NoSuchMethodException e) {
+                return clazz.getMethod(methodName, List.class);
+            } catch (SecurityException | NoSuchMethodException e) {
                 throw new IllegalStateException("Failed to find column evaulator method in class: " + className, e);
             }
+        });
 
-            Map<Entity, Map<String, String>> values;
-
-            String invokeMethodError = "Failed to invoke column evaulator method";
-            try {
-                values = (Map<Entity, Map<String, String>>) method.invoke(bean, orders);
-            } catch (IllegalArgumentException e) {
-                throw new IllegalStateException(invokeMethodError, e);
-            } catch (IllegalAccessException e) {
-                throw new IllegalStateException(invokeMethodError, e);
-            } catch (InvocationTargetException e) {
-                throw new IllegalStateException(invokeMethodError, e);
-            }
+        String invokeMethodError = "Failed to invoke column evaulator method";
+        try {
+            return (Map<Entity, Map<String, String>>) method.invoke(bean, orders);
+        } catch (IllegalArgumentException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException(invokeMethodError, e);
+        }
+    }
 
-            for (Entry<Entity, Map<String, String>> entry : values.entrySet()) {
-                if (valuesMap.containsKey(entry.getKey())) {
-                    for (Entry<String, String> deepEntry : entry.getValue().entrySet()) {
-                        valuesMap.get(entry.getKey()).put(deepEntry.getKey(), deepEntry.getValue());
-                    }
-                } else {
-                    valuesMap.put(entry.getKey(), entry.getValue());
+    private void mergeValues(final Map<Entity, Map<String, String>> valuesMap, final Map<Entity, Map<String, String>> values) {
+        for (Entry<Entity, Map<String, String>> entry : values.entrySet()) {
+            if (valuesMap.containsKey(entry.getKey())) {
+                for (Entry<String, String> deepEntry : entry.getValue().entrySet()) {
+                    valuesMap.get(entry.getKey()).put(deepEntry.getKey(), deepEntry.getValue());
                 }
+            } else {
+                valuesMap.put(entry.getKey(), entry.getValue());
             }
         }
     }
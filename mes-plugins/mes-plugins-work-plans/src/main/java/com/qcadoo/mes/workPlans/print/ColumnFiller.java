@@ -23,6 +23,8 @@
  */
 package com.qcadoo.mes.workPlans.print;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.model.api.Entity;
 
 import java.util.List;
@@ -46,4 +48,22 @@ public interface ColumnFiller {
      */
     Map<Entity, Map<String, String>> getValues(final List<Entity> orders);
 
+    /**
+     * Fills product component values of many orders at once. Fillers should override it to fetch values of all orders with
+     * set-based queries, the default implementation calls {@link #getValues(List)} order by order.
+     * 
+     * @param orders
+     *            List of orders
+     * @return The Keys of the map are order ids, values are maps as returned by {@link #getValues(List)} for the order
+     */
+    default Map<Long, Map<Entity, Map<String, String>>> getValuesByOrders(final List<Entity> orders) {
+        Map<Long, Map<Entity, Map<String, String>>> values = Maps.newHashMap();
+
+        for (Entity order : orders) {
+            values.put(order.getId(), getValues(Lists.newArrayList(order)));
+        }
+
+        return values;
+    }
+
 }
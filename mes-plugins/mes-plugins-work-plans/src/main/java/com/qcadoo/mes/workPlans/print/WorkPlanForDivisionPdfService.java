@@ -25,10 +25,12 @@ package com.qcadoo.mes.workPlans.print;
 
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.ListMultimap;
 import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
 import com.lowagie.text.pdf.PdfWriter;
@@ -82,12 +84,17 @@ public class WorkPlanForDivisionPdfService extends PdfDocumentWithWriterService
 
         GroupingContainer groupingContainer = groupingContainerFactory.create(workPlan, locale);
 
-        for (Entity order : orders(workPlan)) {
+        EntityList orders = orders(workPlan);
+        Map<Long, ListMultimap<Long, Entity>> productionCountingQuantities = workPlanPdfService
+                .getProductionCountingQuantities(orders);
+
+        for (Entity order : orders) {
             OperationProductComponentWithQuantityContainer productQuantities = productQuantitiesServiceImpl
                     .getProductComponentQuantities(order);
             removeAlreadyExistsMergesForOrder(order);
             for (Entity operationComponent : operationComponents(technology(order))) {
-                Entity updatedComponent = workPlanPdfService.updateOperationProductComponents(order, operationComponent);
+                Entity updatedComponent = workPlanPdfService.updateOperationProductComponents(order, operationComponent,
+                        productionCountingQuantities.get(order.getId()));
                 groupingContainer.add(order, updatedComponent, productQuantities);
             }
         }
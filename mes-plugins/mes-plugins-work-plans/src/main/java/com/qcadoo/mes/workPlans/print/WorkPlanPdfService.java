@@ -26,18 +26,24 @@ package com.qcadoo.mes.workPlans.print;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
 import com.lowagie.text.pdf.PdfWriter;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.basicProductionCounting.BasicProductionCountingService;
+import com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingConstants;
 import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityFields;
 import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityRole;
 import com.qcadoo.mes.orders.constants.OrderFields;
@@ -57,6 +63,7 @@ import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.utils.EntityTreeUtilsService;
 import com.qcadoo.report.api.pdf.PdfDocumentWithWriterService;
 
@@ -97,12 +104,16 @@ public class WorkPlanPdfService extends PdfDocumentWithWriterService {
             throws DocumentException {
         GroupingContainer groupingContainer = groupingContainerFactory.create(workPlan, locale);
 
-        for (Entity order : orders(workPlan)) {
+        EntityList orders = orders(workPlan);
+        Map<Long, ListMultimap<Long, Entity>> productionCountingQuantities = getProductionCountingQuantities(orders);
+
+        for (Entity order : orders) {
             OperationProductComponentWithQuantityContainer productQuantities = productQuantitiesServiceImpl
                     .getProductComponentQuantities(order);
             removeAlreadyExistsMergesForOrder(order);
             for (Entity operationComponent : operationComponents(technology(order))) {
-                Entity updatedComponent = updateOperationProductComponents(order, operationComponent);
+                Entity updatedComponent = updateOperationProductComponents(order, operationComponent,
+                        productionCountingQuantities.get(order.getId()));
                 groupingContainer.add(order, updatedComponent, productQuantities);
             }
         }
@@ -111,25 +122,79 @@ public class WorkPlanPdfService extends PdfDocumentWithWriterService {
 
     }
 
+    /**
+     * Loads production counting quantities of all not pending orders with one query.
+     * 
+     * @return production counting quantities grouped by order id and then by technology operation component id
+     */
+    public Map<Long, ListMultimap<Long, Entity>> getProductionCountingQuantities(final List<Entity> orders) {
+        Map<Long, ListMultimap<Long, Entity>> productionCountingQuantities = Maps.newHashMap();
+
+        List<Long> orderIds = orders.stream()
+                .filter(order -> !OrderState.PENDING.getStringValue().equals(order.getStringField(OrderFields.STATE)))
+                .map(Entity::getId).collect(Collectors.toList());
+
+        if (orderIds.isEmpty()) {
+            return productionCountingQuantities;
+        }
+
+        for (Long orderId : orderIds) {
+            productionCountingQuantities.put(orderId, ArrayListMultimap.create());
+        }
+
+        List<Entity> quantities = dataDefinitionService
+                .get(BasicProductionCountingConstants.PLUGIN_IDENTIFIER,
+                        BasicProductionCountingConstants.MODEL_PRODUCTION_COUNTING_QUANTITY)
+                .find().add(SearchRestrictions.in(ProductionCountingQuantityFields.ORDER + ".id", orderIds))
+                .add(SearchRestrictions.isNotNull(ProductionCountingQuantityFields.TECHNOLOGY_OPERATION_COMPONENT)).list()
+                .getEntities();
+
+        for (Entity quantity : quantities) {
+            productionCountingQuantities.get(quantity.getBelongsToField(ProductionCountingQuantityFields.ORDER).getId()).put(
+                    quantity.getBelongsToField(ProductionCountingQuantityFields.TECHNOLOGY_OPERATION_COMPONENT).getId(),
+                    quantity);
+        }
+
+        return productionCountingQuantities;
+    }
+
     public Entity updateOperationProductComponents(final Entity order, final Entity operationComponent) {
         if (!OrderState.PENDING.getStringValue().equals(order.getStringField(OrderFields.STATE))) {
-            List<Entity> productionCountingQuantities = basicProductionCountingService
-                    .getMaterialsForOperationFromProductionCountingQuantities(order, operationComponent);
+            return applyProductionCountingQuantities(operationComponent, basicProductionCountingService
+                    .getMaterialsForOperationFromProductionCountingQuantities(order, operationComponent));
+        }
+        return operationComponent;
+    }
 
-            List<Entity> inComponents = updateOperationProductComponents(operationComponent, productionCountingQuantities,
-                    TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS,
-                    ProductionCountingQuantityRole.USED.getStringValue(), dataDefinitionService.get(
-                            TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT));
+    /**
+     * @param orderProductionCountingQuantities
+     *            production counting quantities of the order as returned by {@link #getProductionCountingQuantities(List)},
+     *            null for pending orders
+     */
+    public Entity updateOperationProductComponents(final Entity order, final Entity operationComponent,
+            final ListMultimap<Long, Entity> orderProductionCountingQuantities) {
+        if (Objects.nonNull(orderProductionCountingQuantities)) {
+            return applyProductionCountingQuantities(operationComponent,
+                    orderProductionCountingQuantities.get(operationComponent.getId()));
+        }
+        return operationComponent;
+    }
 
-            List<Entity> outComponents = updateOperationProductComponents(operationComponent, productionCountingQuantities,
-                    TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS,
-                    ProductionCountingQuantityRole.PRODUCED.getStringValue(), dataDefinitionService.get(
-                            TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_OPERATION_PRODUCT_OUT_COMPONENT));
+    private Entity applyProductionCountingQuantities(final Entity operationComponent,
+            final List<Entity> productionCountingQuantities) {
+        List<Entity> inComponents = updateOperationProductComponents(operationComponent, productionCountingQuantities,
+                TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS,
+                ProductionCountingQuantityRole.USED.getStringValue(), dataDefinitionService.get(
+                        TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_OPERATION_PRODUCT_IN_COMPONENT));
 
-            operationComponent.setField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS, inComponents);
-            operationComponent.setField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS, outComponents);
+        List<Entity> outComponents = updateOperationProductComponents(operationComponent, productionCountingQuantities,
+                TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS,
+                ProductionCountingQuantityRole.PRODUCED.getStringValue(), dataDefinitionService.get(
+                        TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_OPERATION_PRODUCT_OUT_COMPONENT));
+
+        operationComponent.setField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS, inComponents);
+        operationComponent.setField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS, outComponents);
 
-        }
         return operationComponent;
     }
 
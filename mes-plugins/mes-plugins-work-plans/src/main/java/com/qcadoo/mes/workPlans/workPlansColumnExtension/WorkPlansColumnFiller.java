@@ -33,6 +33,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Component;
 
+import com.google.common.collect.Maps;
 import com.qcadoo.localization.api.utils.DateUtils;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.orders.constants.OrderFields;
@@ -95,6 +96,55 @@ public class WorkPlansColumnFiller implements ColumnFiller {
         return values;
     }
 
+    @Override
+    public Map<Long, Map<Entity, Map<String, String>>> getValuesByOrders(final List<Entity> orders) {
+        Map<Long, Map<Entity, Map<String, String>>> values = Maps.newHashMap();
+        Map<Long, Map<Entity, String>> productNamesByTechnologies = Maps.newHashMap();
+
+        for (Entity order : orders) {
+            OperationProductComponentWithQuantityContainer productQuantities = productQuantitiesService
+                    .getProductComponentQuantities(order);
+            Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
+
+            Map<Entity, String> productNames = productNamesByTechnologies.computeIfAbsent(technology.getId(),
+                    technologyId -> getProductNames(technology));
+
+            Map<Entity, Map<String, String>> orderValues = new HashMap<>();
+
+            for (Map.Entry<Entity, String> productName : productNames.entrySet()) {
+                Entity operationProductComponent = productName.getKey();
+
+                initMap(orderValues, operationProductComponent);
+
+                orderValues.get(operationProductComponent).put(L_PRODUCT_NAME, productName.getValue());
+                orderValues.get(operationProductComponent).put(L_PLANNED_QUANTITY,
+                        getProductQuantityAndUnit(operationProductComponent, productQuantities));
+            }
+
+            values.put(order.getId(), orderValues);
+        }
+
+        return values;
+    }
+
+    private Map<Entity, String> getProductNames(final Entity technology) {
+        Map<Entity, String> productNames = Maps.newLinkedHashMap();
+
+        for (Entity operationComponent : technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS)) {
+            for (Entity operationProductInComponent : operationComponent
+                    .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS)) {
+                productNames.put(operationProductInComponent, getProductNameAndNumber(operationProductInComponent));
+            }
+
+            for (Entity operationProductOutComponent : operationComponent
+                    .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS)) {
+                productNames.put(operationProductOutComponent, getProductNameAndNumber(operationProductOutComponent));
+            }
+        }
+
+        return productNames;
+    }
+
     private void initMap(final Map<Entity, Map<String, String>> valuesMap, final Entity order) {
         valuesMap.computeIfAbsent(order, k -> new HashMap<>());
     }
@@ -27,6 +27,8 @@ import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.math.BigDecimal;
@@ -176,4 +178,43 @@ public class WorkPlansColumnFillerTest {
         assertEquals("product (123)", columnValues.get(operationProductComponent).get(L_PRODUCT_NAME));
         assertEquals("11.00000 abc", columnValues.get(operationProductComponent).get(L_PLANNED_QUANTITY));
     }
+
+    @Test
+    public void shouldReturnColumnValuesForProductsOfManyOrdersWithSharedTechnology() {
+        // given
+        EntityTree operComps = mockEntityTree(asList(operationComponent));
+        given(technology.getId()).willReturn(1L);
+        given(technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS)).willReturn(operComps);
+
+        EntityList prodInComps = mockEntityList(asList(operationProductComponent));
+        given(operationProductComponent.getBelongsToField(L_PRODUCT)).willReturn(product);
+        given(operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS))
+                .willReturn(prodInComps);
+        EntityList prodOutComps = mockEntityList(new ArrayList<Entity>());
+        given(operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS))
+                .willReturn(prodOutComps);
+
+        given(order.getId()).willReturn(1L);
+        given(order2.getId()).willReturn(2L);
+        given(order2.getBelongsToField(OrderFields.TECHNOLOGY)).willReturn(technology);
+
+        OperationProductComponentWithQuantityContainer quantities = new OperationProductComponentWithQuantityContainer();
+        quantities.put(operationProductComponent, new BigDecimal(11));
+        OperationProductComponentWithQuantityContainer quantities2 = new OperationProductComponentWithQuantityContainer();
+        quantities2.put(operationProductComponent, new BigDecimal(7));
+        given(productQuantitiesService.getProductComponentQuantities(order)).willReturn(quantities);
+        given(productQuantitiesService.getProductComponentQuantities(order2)).willReturn(quantities2);
+
+        // when
+        Map<Long, Map<Entity, Map<String, String>>> columnValues = workPlansColumnFiller
+                .getValuesByOrders(asList(order, order2));
+
+        // then
+        assertEquals(2, columnValues.size());
+        assertEquals("product (123)", columnValues.get(1L).get(operationProductComponent).get(L_PRODUCT_NAME));
+        assertEquals("11.00000 abc", columnValues.get(1L).get(operationProductComponent).get(L_PLANNED_QUANTITY));
+        assertEquals("product (123)", columnValues.get(2L).get(operationProductComponent).get(L_PRODUCT_NAME));
+        assertEquals("7.00000 abc", columnValues.get(2L).get(operationProductComponent).get(L_PLANNED_QUANTITY));
+        verify(technology, times(1)).getTreeField(TechnologyFields.OPERATION_COMPONENTS);
+    }
 }